@@ -15,6 +15,7 @@
  */
 package org.springframework.xd.greenplum.config;
 
+import org.springframework.xd.greenplum.gpfdist.OverflowPolicy;
 import org.springframework.xd.module.options.spi.ModuleOption;
 
 public class GPFDistSinkOptionsMetadata {
@@ -34,6 +35,8 @@ public class GPFDistSinkOptionsMetadata {
 	private String delimiter = "\n";
 	private String table;
 	private int rateInterval = 0;
+	private int bufferSize = 8192;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
 
 	public int getPort() {
 		return port;
@@ -170,4 +173,22 @@ public class GPFDistSinkOptionsMetadata {
 		this.rateInterval = rateInterval;
 	}
 
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	@ModuleOption("number of rows buffered before the overflow policy applies, a power of 2")
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	@ModuleOption("what to do with rows coming in while the buffer is full")
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.greenplum.gpfdist;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import reactor.io.buffer.Buffer;
+
+/**
+ * Collects the buffers of a flush window without copying them, so that they
+ * are copied only once, into a buffer of the exact total size, when the window
+ * is flushed.
+ *
+ * @author Eric Bottard
+ */
+public class BufferChain {
+
+	private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+
+	private int size;
+
+	/**
+	 * Add the remaining bytes of the given buffer to this chain.
+	 *
+	 * @param buffer the buffer, ready to be read
+	 * @return this chain
+	 */
+	public BufferChain add(Buffer buffer) {
+		ByteBuffer chunk = buffer.byteBuffer();
+		chunks.add(chunk);
+		size += chunk.remaining();
+		return this;
+	}
+
+	/**
+	 * Gets the number of bytes in this chain.
+	 *
+	 * @return the number of bytes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Copy the chunks of this chain into a single buffer, ready to be read.
+	 *
+	 * @return the buffer
+	 */
+	public Buffer compose() {
+		ByteBuffer composed = ByteBuffer.allocate(size);
+		for (ByteBuffer chunk : chunks) {
+			composed.put(chunk.duplicate());
+		}
+		composed.flip();
+		return new Buffer(composed);
+	}
+
+}
@@ -27,11 +27,17 @@ public class GPFDistCodec extends Codec<Buffer, Buffer, Buffer> {
 
 	final byte[] h1 = Character.toString('D').getBytes(Charset.forName("UTF-8"));
 
-	@SuppressWarnings("resource")
+	/**
+	 * Frames the given buffer, which must be ready to be read, copying it once
+	 * into a buffer of the exact frame size.
+	 */
 	@Override
 	public Buffer apply(Buffer t) {
-			byte[] h2 = ByteBuffer.allocate(4).putInt(t.flip().remaining()).array();
-			return new Buffer().append(h1).append(h2).append(t).flip();
+			ByteBuffer data = t.byteBuffer();
+			ByteBuffer frame = ByteBuffer.allocate(h1.length + 4 + data.remaining());
+			frame.put(h1).putInt(data.remaining()).put(data.duplicate());
+			frame.flip();
+			return new Buffer(frame);
 	}
 
 	@Override
@@ -15,16 +15,23 @@
  */
 package org.springframework.xd.greenplum.gpfdist;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.Date;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.reactivestreams.Processor;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.support.MetricType;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
 import org.springframework.messaging.MessageHandlingException;
 import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 import org.springframework.util.concurrent.SettableListenableFuture;
 import org.springframework.xd.greenplum.support.GreenplumLoad;
@@ -35,8 +42,6 @@ import reactor.Environment;
 import reactor.core.processor.RingBufferProcessor;
 import reactor.io.buffer.Buffer;
 
-import com.codahale.metrics.Meter;
-
 public class GPFDistMessageHandler extends AbstractGPFDistMessageHandler {
 
 	private final Log log = LogFactory.getLog(GPFDistMessageHandler.class);
@@ -53,11 +58,19 @@ public class GPFDistMessageHandler extends AbstractGPFDistMessageHandler {
 
 	private final int batchPeriod;
 
-	private final String delimiter;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte[] NO_DELIMITER = new byte[0];
+
+	private final byte[] delimiter;
 
 	private GreenplumLoad greenplumLoad;
 
-	private Processor<Buffer, Buffer> processor;
+	private RingBufferProcessor<Buffer> processor;
+
+	private int bufferSize = 8192;
+
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
 
 	private GPFDistServer gpfdistServer;
 
@@ -66,8 +79,14 @@ public class GPFDistMessageHandler extends AbstractGPFDistMessageHandler {
 	private final TaskFuture taskFuture = new TaskFuture();
 
 	private int rateInterval = 0;
-	private Meter meter =  null;
-	private int meterCount = 0;
+
+	private final AtomicLong rowCount = new AtomicLong();
+
+	private final AtomicLong byteCount = new AtomicLong();
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private volatile long startTime;
 
 	public GPFDistMessageHandler(int port, int flushCount, int flushTime, int batchTimeout, int batchCount,
 			int batchPeriod, String delimiter) {
@@ -78,24 +97,29 @@ public class GPFDistMessageHandler extends AbstractGPFDistMessageHandler {
 		this.batchTimeout = batchTimeout;
 		this.batchCount = batchCount;
 		this.batchPeriod = batchPeriod;
-		this.delimiter = StringUtils.hasLength(delimiter) ? delimiter : null;
+		this.delimiter = StringUtils.hasLength(delimiter) ? delimiter.getBytes(UTF8) : NO_DELIMITER;
 	}
 
 	@Override
 	protected void doWrite(Message<?> message) throws Exception {
 		Object payload = message.getPayload();
 		if (payload instanceof String) {
-			String data = (String)payload;
-			if (delimiter != null) {
-				processor.onNext(Buffer.wrap(data+delimiter));
-			} else {
-				processor.onNext(Buffer.wrap(data));
-			}
-			if (meter != null) {
-				if ((meterCount++ % rateInterval) == 0) {
-					meter.mark(rateInterval);
-					log.info("METER: 1 minute rate = " + meter.getOneMinuteRate() + " mean rate = " + meter.getMeanRate());
+			if (overflowPolicy != OverflowPolicy.BLOCK && processor.getAvailableCapacity() == 0) {
+				if (overflowPolicy == OverflowPolicy.FAIL) {
+					throw new MessageDeliveryException(message, "gpfdist buffer is full");
 				}
+				droppedCount.incrementAndGet();
+				return;
+			}
+			// encode straight into a buffer of the exact line size
+			byte[] data = ((String) payload).getBytes(UTF8);
+			ByteBuffer line = ByteBuffer.allocate(data.length + delimiter.length);
+			line.put(data).put(delimiter).flip();
+			processor.onNext(new Buffer(line));
+			long rows = rowCount.incrementAndGet();
+			byteCount.addAndGet(data.length + delimiter.length);
+			if (rateInterval > 0 && rows % rateInterval == 0) {
+				log.info("Transfer rate: " + getRowsPerSecond() + " rows/sec, " + getBytesPerSecond() + " bytes/sec");
 			}
 		} else {
 			throw new MessageHandlingException(message, "message not a String");
@@ -106,11 +130,12 @@ public class GPFDistMessageHandler extends AbstractGPFDistMessageHandler {
 	protected void onInit() throws Exception {
 		super.onInit();
 		Environment.initializeIfEmpty().assignErrorJournal();
-		processor = RingBufferProcessor.create(false);
+		processor = RingBufferProcessor.create("gpfdist-sink", bufferSize, false);
 	}
 
 	@Override
 	protected void doStart() {
+		startTime = System.currentTimeMillis();
 		try {
 			log.info("Creating gpfdist protocol listener on port=" + port);
 			gpfdistServer = new GPFDistServer(processor, port, flushCount, flushTime, batchTimeout, batchCount);
@@ -182,11 +207,70 @@ public class GPFDistMessageHandler extends AbstractGPFDistMessageHandler {
 		this.greenplumLoad = greenplumLoad;
 	}
 
+	/**
+	 * Sets the number of rows after which the transfer rate is logged, 0
+	 * meaning never.
+	 *
+	 * @param rateInterval the rate interval
+	 */
 	public void setRateInterval(int rateInterval) {
 		this.rateInterval = rateInterval;
-		if (rateInterval > 0) {
-			meter = new Meter();
-		}
+	}
+
+	/**
+	 * Sets the number of rows buffered before the {@link OverflowPolicy}
+	 * applies. Must be a power of 2.
+	 *
+	 * @param bufferSize the buffer size
+	 */
+	public void setBufferSize(int bufferSize) {
+		Assert.isTrue(bufferSize > 0 && Integer.bitCount(bufferSize) == 1, "bufferSize must be a power of 2");
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Sets what to do with rows coming in while the buffer is full.
+	 *
+	 * @param overflowPolicy the overflow policy
+	 */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		Assert.notNull(overflowPolicy, "overflowPolicy must not be null");
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	@ManagedAttribute
+	public String getOverflowPolicy() {
+		return overflowPolicy.name();
+	}
+
+	@ManagedMetric(metricType = MetricType.COUNTER, displayName = "Rows buffered for loading")
+	public long getRowCount() {
+		return rowCount.get();
+	}
+
+	@ManagedMetric(metricType = MetricType.COUNTER, displayName = "Bytes buffered for loading")
+	public long getByteCount() {
+		return byteCount.get();
+	}
+
+	@ManagedMetric(metricType = MetricType.COUNTER, displayName = "Rows dropped because the buffer was full")
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	@ManagedMetric(metricType = MetricType.GAUGE, displayName = "Rows per second since started")
+	public double getRowsPerSecond() {
+		return rate(rowCount.get());
+	}
+
+	@ManagedMetric(metricType = MetricType.GAUGE, displayName = "Bytes per second since started")
+	public double getBytesPerSecond() {
+		return rate(byteCount.get());
+	}
+
+	private double rate(long count) {
+		long elapsed = System.currentTimeMillis() - startTime;
+		return startTime == 0 || elapsed <= 0 ? 0 : count * 1000.0 / elapsed;
 	}
 
 	private static class TaskFuture extends SettableListenableFuture<Boolean> {
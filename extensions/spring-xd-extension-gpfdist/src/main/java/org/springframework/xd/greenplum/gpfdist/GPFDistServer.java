@@ -93,11 +93,18 @@ public class GPFDistServer {
 			@Override
 			public Publisher<Buffer> apply(Stream<Buffer> t) {
 
-				return t.reduce(new Buffer(), new BiFunction<Buffer, Buffer, Buffer>() {
+				// collect the window first, so that each buffer gets copied only once
+				return t.reduce(new BufferChain(), new BiFunction<BufferChain, Buffer, BufferChain>() {
 
 					@Override
-					public Buffer apply(Buffer prev, Buffer next) {
-						return prev.append(next);
+					public BufferChain apply(BufferChain chain, Buffer next) {
+						return chain.add(next);
+					}
+				}).map(new Function<BufferChain, Buffer>() {
+
+					@Override
+					public Buffer apply(BufferChain chain) {
+						return chain.compose();
 					}
 				});
 			}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.greenplum.gpfdist;
+
+/**
+ * What the gpfdist sink does with a message when its buffer is full, which
+ * happens when data comes in faster than Greenplum loads it.
+ *
+ * @author Eric Bottard
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Wait until there is room in the buffer, slowing the stream down.
+	 */
+	BLOCK,
+
+	/**
+	 * Discard the message.
+	 */
+	DROP,
+
+	/**
+	 * Reject the message with an exception, leaving it to the message bus
+	 * to retry or dead-letter it.
+	 */
+	FAIL
+
+}
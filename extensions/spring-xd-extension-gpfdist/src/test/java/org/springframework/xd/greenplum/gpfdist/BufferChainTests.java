@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.xd.greenplum.gpfdist;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import reactor.io.buffer.Buffer;
+
+/**
+ * Tests for {@link BufferChain}.
+ *
+ * @author Eric Bottard
+ */
+public class BufferChainTests {
+
+	@Test
+	public void testComposeAndFrame() {
+		BufferChain chain = new BufferChain().add(Buffer.wrap("foo\n")).add(Buffer.wrap("bar\n"));
+		assertThat(chain.size(), is(8));
+		Buffer composed = chain.compose();
+		assertThat(composed.asString(), is("foo\nbar\n"));
+
+		Buffer frame = new GPFDistCodec().apply(composed);
+		assertThat(frame.remaining(), is(13));
+		assertThat(frame.read(), is((byte) 'D'));
+		assertThat(frame.readInt(), is(8));
+		assertThat(frame.asString(), is("foo\nbar\n"));
+	}
+
+	@Test
+	public void testEmptyFrame() {
+		Buffer frame = new GPFDistCodec().apply(Buffer.wrap(new byte[0]));
+		assertThat(frame.remaining(), is(5));
+		assertThat(frame.read(), is((byte) 'D'));
+		assertThat(frame.readInt(), is(0));
+	}
+
+}
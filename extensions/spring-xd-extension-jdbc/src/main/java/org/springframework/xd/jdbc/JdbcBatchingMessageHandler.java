@@ -0,0 +1,340 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.jdbc;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.context.IntegrationContextUtils;
+import org.springframework.integration.handler.AbstractMessageHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.messaging.Message;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Inserts {@code Map} payloads (as produced by {@link JdbcMessagePayloadTransformer}) into a table, accumulating rows
+ * so that they are written with a single JDBC batch update.
+ *
+ * A batch is written on the calling thread as soon as it holds {@code batchSize} rows, so that failures are reported
+ * to the sender and a slow database slows the stream down. A batch that does not fill up within {@code batchTimeout}
+ * milliseconds is written in the background, and any remaining rows are written when the handler is stopped.
+ *
+ * @author Eric Bottard
+ */
+public class JdbcBatchingMessageHandler extends AbstractMessageHandler implements SmartLifecycle {
+
+	private final NamedParameterJdbcTemplate jdbcTemplate;
+
+	private final Object lock = new Object();
+
+	private String tableName;
+
+	private String[] columnNames;
+
+	private String sql;
+
+	private int batchSize = 1;
+
+	private long batchTimeout = 1000;
+
+	private volatile TaskScheduler taskScheduler;
+
+	private List<SqlParameterSource> pending = new ArrayList<SqlParameterSource>();
+
+	private ScheduledFuture<?> timeoutTask;
+
+	private volatile boolean running;
+
+	private volatile boolean autoStartup = true;
+
+	// stopped after the endpoint that feeds it, so that no row comes in after the last flush
+	private volatile int phase = Integer.MIN_VALUE;
+
+	private final AtomicLong rowCount = new AtomicLong();
+
+	private final AtomicLong batchCount = new AtomicLong();
+
+	private final AtomicLong failedRowCount = new AtomicLong();
+
+	private final AtomicLong flushNanos = new AtomicLong();
+
+	private volatile long lastFlushNanos;
+
+	private volatile long startTime;
+
+	public JdbcBatchingMessageHandler(DataSource dataSource) {
+		Assert.notNull(dataSource, "dataSource must not be null");
+		this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+	}
+
+	public void setTableName(String tableName) {
+		this.tableName = tableName;
+	}
+
+	public void setColumnNames(String columnNames) {
+		this.columnNames = StringUtils.tokenizeToStringArray(columnNames, ",");
+	}
+
+	/**
+	 * Set the number of rows written at once. Default: 1.
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Set how long (in milliseconds) rows may wait for the batch to fill up. Default: 1000.
+	 */
+	public void setBatchTimeout(long batchTimeout) {
+		Assert.isTrue(batchTimeout > 0, "batchTimeout must be positive");
+		this.batchTimeout = batchTimeout;
+	}
+
+	/**
+	 * Set the scheduler used to write partial batches. Defaults to the integration {@code taskScheduler} bean.
+	 */
+	public void setTaskScheduler(TaskScheduler taskScheduler) {
+		this.taskScheduler = taskScheduler;
+	}
+
+	public void setAutoStartup(boolean autoStartup) {
+		this.autoStartup = autoStartup;
+	}
+
+	public void setPhase(int phase) {
+		this.phase = phase;
+	}
+
+	@Override
+	protected void onInit() throws Exception {
+		super.onInit();
+		Assert.hasText(this.tableName, "tableName must be set");
+		Assert.notEmpty(this.columnNames, "columnNames must be set");
+		StringBuilder columns = new StringBuilder();
+		StringBuilder namedParams = new StringBuilder();
+		for (String column : this.columnNames) {
+			if (columns.length() > 0) {
+				columns.append(", ");
+				namedParams.append(", ");
+			}
+			columns.append(column);
+			namedParams.append(":").append(column);
+		}
+		this.sql = "insert into " + this.tableName + " (" + columns + ") values (" + namedParams + ")";
+		if (this.taskScheduler == null && this.batchSize > 1) {
+			this.taskScheduler = IntegrationContextUtils.getTaskScheduler(getBeanFactory());
+		}
+	}
+
+	@Override
+	protected void handleMessageInternal(Message<?> message) throws Exception {
+		Assert.isInstanceOf(Map.class, message.getPayload(), "payload must be a Map");
+		@SuppressWarnings("unchecked")
+		MapSqlParameterSource row = new MapSqlParameterSource((Map<String, ?>) message.getPayload());
+		for (String column : this.columnNames) {
+			// columns absent from the payload are inserted as null
+			if (!row.hasValue(column)) {
+				row.addValue(column, null);
+			}
+		}
+		List<SqlParameterSource> batch = null;
+		synchronized (this.lock) {
+			this.pending.add(row);
+			if (this.pending.size() >= this.batchSize) {
+				batch = takePending();
+			}
+			else if (this.pending.size() == 1) {
+				scheduleTimeout(this.pending);
+			}
+		}
+		if (batch != null) {
+			write(batch);
+		}
+	}
+
+	private void scheduleTimeout(final List<SqlParameterSource> batch) {
+		this.timeoutTask = this.taskScheduler.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				List<SqlParameterSource> expired = null;
+				synchronized (lock) {
+					// the batch may have filled up in the meantime
+					if (pending == batch) {
+						expired = takePending();
+					}
+				}
+				if (expired != null) {
+					try {
+						write(expired);
+					}
+					catch (Exception e) {
+						logger.error("Failed to insert " + expired.size() + " rows into " + tableName, e);
+					}
+				}
+			}
+
+		}, new Date(System.currentTimeMillis() + this.batchTimeout));
+	}
+
+	/**
+	 * Hand over the rows accumulated so far. Must be called while holding the lock.
+	 */
+	private List<SqlParameterSource> takePending() {
+		if (this.timeoutTask != null) {
+			this.timeoutTask.cancel(false);
+			this.timeoutTask = null;
+		}
+		List<SqlParameterSource> batch = this.pending;
+		this.pending = new ArrayList<SqlParameterSource>(this.batchSize);
+		return batch;
+	}
+
+	private void write(List<SqlParameterSource> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			this.jdbcTemplate.batchUpdate(this.sql, batch.toArray(new SqlParameterSource[batch.size()]));
+		}
+		catch (RuntimeException e) {
+			this.failedRowCount.addAndGet(batch.size());
+			throw e;
+		}
+		long elapsed = System.nanoTime() - start;
+		this.lastFlushNanos = elapsed;
+		this.flushNanos.addAndGet(elapsed);
+		this.rowCount.addAndGet(batch.size());
+		this.batchCount.incrementAndGet();
+	}
+
+	/**
+	 * Write the rows accumulated so far.
+	 */
+	public void flush() {
+		List<SqlParameterSource> batch;
+		synchronized (this.lock) {
+			batch = takePending();
+		}
+		write(batch);
+	}
+
+	@ManagedMetric(metricType = MetricType.COUNTER, displayName = "Rows written")
+	public long getRowCount() {
+		return this.rowCount.get();
+	}
+
+	@ManagedMetric(metricType = MetricType.COUNTER, displayName = "Rows that failed to be written")
+	public long getFailedRowCount() {
+		return this.failedRowCount.get();
+	}
+
+	@ManagedMetric(metricType = MetricType.COUNTER, displayName = "Batches written")
+	public long getBatchCount() {
+		return this.batchCount.get();
+	}
+
+	@ManagedMetric(metricType = MetricType.GAUGE, displayName = "Mean number of rows per batch")
+	public double getMeanBatchSize() {
+		long batches = this.batchCount.get();
+		return batches == 0 ? 0 : (double) this.rowCount.get() / batches;
+	}
+
+	@ManagedMetric(metricType = MetricType.GAUGE, displayName = "Mean time to write a batch, in milliseconds")
+	public double getMeanFlushLatency() {
+		long batches = this.batchCount.get();
+		return batches == 0 ? 0 : this.flushNanos.get() / 1000000.0 / batches;
+	}
+
+	@ManagedMetric(metricType = MetricType.GAUGE, displayName = "Time to write the last batch, in milliseconds")
+	public double getLastFlushLatency() {
+		return this.lastFlushNanos / 1000000.0;
+	}
+
+	@ManagedMetric(metricType = MetricType.GAUGE, displayName = "Rows written per second since started")
+	public double getRowsPerSecond() {
+		long elapsed = System.currentTimeMillis() - this.startTime;
+		return this.startTime == 0 || elapsed <= 0 ? 0 : this.rowCount.get() * 1000.0 / elapsed;
+	}
+
+	@ManagedAttribute
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	@Override
+	public void start() {
+		this.startTime = System.currentTimeMillis();
+		this.running = true;
+	}
+
+	/**
+	 * Write the rows accumulated so far.
+	 */
+	@Override
+	public void stop() {
+		this.running = false;
+		flush();
+	}
+
+	@Override
+	public void stop(Runnable callback) {
+		try {
+			stop();
+		}
+		finally {
+			callback.run();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	@Override
+	public boolean isAutoStartup() {
+		return this.autoStartup;
+	}
+
+	@Override
+	public int getPhase() {
+		return this.phase;
+	}
+
+	@Override
+	public String getComponentType() {
+		return "jdbc:batching-outbound-channel-adapter";
+	}
+
+}
@@ -16,6 +16,8 @@
 
 package org.springframework.xd.jdbc;
 
+import javax.validation.constraints.Min;
+
 import org.springframework.xd.jdbc.JdbcSinkModuleOptionsMetadata.JdbcSinkImportToJdbcMixin;
 import org.springframework.xd.module.options.spi.Mixin;
 import org.springframework.xd.module.options.spi.ModuleOption;
@@ -31,6 +33,10 @@ public class JdbcSinkModuleOptionsMetadata {
 
 	private String columns = "payload";
 
+	private int batchSize = 1;
+
+	private long batchTimeout = 1000;
+
 	@ModuleOption("the database columns to map the data to")
 	public void setColumns(String columns) {
 		this.columns = columns;
@@ -40,6 +46,26 @@ public class JdbcSinkModuleOptionsMetadata {
 		return columns;
 	}
 
+	@ModuleOption("the number of rows to insert with a single batch update")
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	@Min(1)
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	@ModuleOption("the time (ms) after which a partial batch is inserted")
+	public void setBatchTimeout(long batchTimeout) {
+		this.batchTimeout = batchTimeout;
+	}
+
+	@Min(1)
+	public long getBatchTimeout() {
+		return batchTimeout;
+	}
+
 	public static class JdbcSinkImportToJdbcMixin extends AbstractImportToJdbcOptionsMetadata {
 
 		/**
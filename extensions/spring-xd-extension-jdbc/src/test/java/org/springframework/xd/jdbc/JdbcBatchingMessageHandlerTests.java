@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * @author Eric Bottard
+ */
+public class JdbcBatchingMessageHandlerTests {
+
+	private final EmbeddedDatabase db = new EmbeddedDatabaseBuilder().build();
+
+	private final JdbcTemplate jdbcTemplate = new JdbcTemplate(db);
+
+	private final ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+
+	@Before
+	public void setUp() {
+		taskScheduler.initialize();
+		jdbcTemplate.execute("create table demo (foo varchar(20), bar_baz varchar(20))");
+	}
+
+	@After
+	public void tearDown() {
+		taskScheduler.shutdown();
+		db.shutdown();
+	}
+
+	@Test
+	public void testRowsAreWrittenByBatch() throws Exception {
+		JdbcBatchingMessageHandler handler = createHandler(3, 60000);
+		for (int i = 0; i < 4; i++) {
+			handler.handleMessage(new GenericMessage<Map<String, Object>>(row("foo" + i, "bar" + i)));
+		}
+		assertEquals(3, count());
+		assertEquals(3, handler.getRowCount());
+		assertEquals(1, handler.getBatchCount());
+		assertEquals(3.0, handler.getMeanBatchSize(), 0.0);
+		handler.stop();
+		assertEquals(4, count());
+		assertEquals(2, handler.getBatchCount());
+	}
+
+	@Test
+	public void testPartialBatchIsWrittenOnTimeout() throws Exception {
+		JdbcBatchingMessageHandler handler = createHandler(10, 100);
+		handler.handleMessage(new GenericMessage<Map<String, Object>>(row("foo", "bar")));
+		assertEquals(0, count());
+		long deadline = System.currentTimeMillis() + 5000;
+		while (count() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals(1, count());
+	}
+
+	@Test
+	public void testMissingColumnIsNull() throws Exception {
+		JdbcBatchingMessageHandler handler = createHandler(1, 60000);
+		Map<String, Object> row = new HashMap<String, Object>();
+		row.put("foo", "foo");
+		handler.handleMessage(new GenericMessage<Map<String, Object>>(row));
+		assertNull(jdbcTemplate.queryForObject("select bar_baz from demo where foo = 'foo'", String.class));
+	}
+
+	private JdbcBatchingMessageHandler createHandler(int batchSize, long batchTimeout) throws Exception {
+		JdbcBatchingMessageHandler handler = new JdbcBatchingMessageHandler(db);
+		handler.setTableName("demo");
+		handler.setColumnNames("foo, bar_baz");
+		handler.setBatchSize(batchSize);
+		handler.setBatchTimeout(batchTimeout);
+		handler.setTaskScheduler(taskScheduler);
+		handler.setBeanFactory(new DefaultListableBeanFactory());
+		handler.afterPropertiesSet();
+		handler.start();
+		return handler;
+	}
+
+	private Map<String, Object> row(String foo, String barBaz) {
+		Map<String, Object> row = new HashMap<String, Object>();
+		row.put("foo", foo);
+		row.put("bar_baz", barBaz);
+		return row;
+	}
+
+	private int count() {
+		return jdbcTemplate.queryForObject("select count(*) from demo", Integer.class);
+	}
+
+}
@@ -23,6 +23,8 @@ import org.springframework.util.Assert;
  * Represents the data stored in a valueer of a single value. Operations on it are expected to increment or decrement
  * the value. The name property is a friendly user assigned name, and should be unique.
  * 
+ * Updates of the value are thread safe.
+ * 
  * Note: Additional metadata to help in searching for Counters, such as tags and last time updated will be coming.
  * 
  * @author Mark Pollack
@@ -32,7 +34,7 @@ public class Counter implements Metric {
 
 	private final String name;
 
-	private long value;
+	private volatile long value;
 
 	/**
 	 * Construct a new Counter given a name
@@ -68,14 +70,14 @@ public class Counter implements Metric {
 	/**
 	 * Increment this counter by a given amount. Stores that manage their own value bookkeepingmay not use this method.
 	 */
-	public long increment(long amount) {
+	public synchronized long increment(long amount) {
 		return value += amount;
 	}
 
 	/**
 	 * Decrement this counter by a given amount. Stores that manage their own value bookkeepingmay not use this method.
 	 */
-	public long decrement(long amount) {
+	public synchronized long decrement(long amount) {
 		return value -= amount;
 	}
 
@@ -16,12 +16,15 @@
 
 package org.springframework.xd.analytics.metrics.integration;
 
+import java.io.Flushable;
+import java.io.IOException;
 import java.text.ParseException;
 
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.expression.Expression;
 import org.springframework.messaging.Message;
 import org.springframework.util.Assert;
@@ -34,7 +37,7 @@ import org.springframework.xd.analytics.metrics.core.AggregateCounterRepository;
  * @author Luke Taylor
  * @author Eric Bottard
  */
-public class AggregateCounterHandler extends AbstractMetricHandler {
+public class AggregateCounterHandler extends AbstractMetricHandler implements DisposableBean {
 
 	private final AggregateCounterRepository aggregateCounterRepository;
 
@@ -74,4 +77,14 @@ public class AggregateCounterHandler extends AbstractMetricHandler {
 		return message;
 	}
 
+	/**
+	 * Make sure increments buffered by the repository (if any) are written when the module is undeployed.
+	 */
+	@Override
+	public void destroy() throws IOException {
+		if (aggregateCounterRepository instanceof Flushable) {
+			((Flushable) aggregateCounterRepository).flush();
+		}
+	}
+
 }
@@ -16,6 +16,8 @@
 
 package org.springframework.xd.analytics.metrics.integration;
 
+import java.io.Flushable;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -23,6 +25,7 @@ import java.util.Map;
 
 import org.springframework.beans.BeanWrapper;
 import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.integration.transformer.MessageTransformationException;
 import org.springframework.messaging.Message;
@@ -31,23 +34,23 @@ import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.xd.analytics.metrics.core.FieldValueCounterRepository;
 import org.springframework.xd.tuple.Tuple;
-import org.springframework.xd.tuple.integration.JsonToTupleTransformer;
 
 /**
  * Counts the occurrence of values for a set of JavaBean properties or Tuple fields using a FieldValueCounterRepository.
- * Assumes a String payload is JSON and will convert it to a Tuple.
+ * Assumes a String payload is JSON, and streams through it to only extract the values of the counted field.
  *
  * @author Mark Pollack
  * @author David Turanski
  * @author Mark Fisher
+ * @author Eric Bottard
  */
-public class FieldValueCounterHandler extends AbstractMetricHandler {
+public class FieldValueCounterHandler extends AbstractMetricHandler implements DisposableBean {
 
 	private final FieldValueCounterRepository fieldValueCounterRepository;
 
 	private final String fieldName;
 
-	private final JsonToTupleTransformer jsonToTupleTransformer;
+	private final JsonFieldValueExtractor jsonFieldValueExtractor;
 
 	public FieldValueCounterHandler(FieldValueCounterRepository fieldValueCounterRepository, String nameExpression,
 			String fieldName) {
@@ -56,22 +59,16 @@ public class FieldValueCounterHandler extends AbstractMetricHandler {
 		Assert.hasText(fieldName, "Field name can not be null or empty string");
 		this.fieldValueCounterRepository = fieldValueCounterRepository;
 		this.fieldName = fieldName;
-		this.jsonToTupleTransformer = new JsonToTupleTransformer();
-
+		this.jsonFieldValueExtractor = new JsonFieldValueExtractor(fieldName);
 	}
 
 	@ServiceActivator
 	public Message<?> process(Message<?> message) {
 		Object payload = message.getPayload();
 		if (payload instanceof String) {
-			try {
-				payload = jsonToTupleTransformer.transformPayload(payload.toString());
-			}
-			catch (Exception e) {
-				throw new MessageTransformationException(message, e);
-			}
+			processJson(computeMetricName(message), message);
 		}
-		if (payload instanceof Tuple) {
+		else if (payload instanceof Tuple) {
 			processTuple(computeMetricName(message), (Tuple) payload);
 		}
 		else {
@@ -80,6 +77,19 @@ public class FieldValueCounterHandler extends AbstractMetricHandler {
 		return message;
 	}
 
+	private void processJson(String counterName, Message<?> message) {
+		List<Object> values;
+		try {
+			values = jsonFieldValueExtractor.extract(message.getPayload().toString());
+		}
+		catch (Exception e) {
+			throw new MessageTransformationException(message, e);
+		}
+		for (Object value : values) {
+			processValue(counterName, value);
+		}
+	}
+
 	private void processPojo(String counterName, Object payload) {
 		BeanWrapper beanWrapper = new BeanWrapperImpl(payload);
 		if (beanWrapper.isReadableProperty(fieldName)) {
@@ -134,4 +144,15 @@ public class FieldValueCounterHandler extends AbstractMetricHandler {
 			fieldValueCounterRepository.increment(counterName, value.toString());
 		}
 	}
+
+	/**
+	 * Make sure increments buffered by the repository (if any) are written when the module is undeployed.
+	 */
+	@Override
+	public void destroy() throws IOException {
+		if (fieldValueCounterRepository instanceof Flushable) {
+			((Flushable) fieldValueCounterRepository).flush();
+		}
+	}
+
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.analytics.metrics.integration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Extracts the values found at a given (dot separated) field path of a JSON document, while streaming through it.
+ * Only the values found at that path are materialized, the rest of the document is skipped over. Arrays encountered
+ * along the path are traversed, so that {@code entities.hashtags.text} yields the text of every hashtag. This mirrors
+ * the way {@link FieldValueCounterHandler} navigates a Tuple built from the whole document.
+ *
+ * @author Eric Bottard
+ */
+class JsonFieldValueExtractor {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private final String[] path;
+
+	JsonFieldValueExtractor(String fieldPath) {
+		this.path = StringUtils.tokenizeToStringArray(fieldPath, ".");
+		mapper.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
+	}
+
+	/**
+	 * Return the (non null) values found at the field path of the given JSON object, in document order.
+	 */
+	List<Object> extract(String json) throws IOException {
+		List<Object> values = new ArrayList<Object>();
+		JsonParser parser = mapper.getFactory().createParser(json);
+		try {
+			if (parser.nextToken() == JsonToken.START_OBJECT) {
+				extract(parser, 0, values);
+			}
+		}
+		finally {
+			parser.close();
+		}
+		return values;
+	}
+
+	/**
+	 * Look for {@code path[depth]} in the value the parser is positioned on, leaving the parser on the last token of
+	 * that value.
+	 */
+	private void extract(JsonParser parser, int depth, List<Object> values) throws IOException {
+		JsonToken token = parser.getCurrentToken();
+		if (token == JsonToken.START_ARRAY) {
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				extract(parser, depth, values);
+			}
+		}
+		else if (token == JsonToken.START_OBJECT) {
+			boolean found = false;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				JsonToken valueToken = parser.nextToken();
+				if (!found && path[depth].equals(name) && valueToken != JsonToken.VALUE_NULL) {
+					found = true;
+					if (depth == path.length - 1) {
+						values.add(mapper.readValue(parser, Object.class));
+					}
+					else {
+						extract(parser, depth + 1, values);
+					}
+				}
+				else {
+					parser.skipChildren();
+				}
+			}
+		}
+	}
+
+}
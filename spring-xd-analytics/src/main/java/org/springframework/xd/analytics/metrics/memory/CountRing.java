@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.analytics.metrics.memory;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.util.Assert;
+
+/**
+ * Fixed size storage for the counts of the most recent {@code capacity} consecutive time slots (minutes, hours,
+ * etc.), as a ring over a primitive array.
+ * <p>
+ * Slots are absolute numbers (e.g. minutes since the epoch). Incrementing a slot more recent than any seen so far
+ * moves the window forward, clearing the slots it leaves behind. Incrementing a slot that has already fallen out of
+ * the window is a no-op. Increments within the window are atomic adds that only share a read lock, so that only
+ * moving the window forward (at most once per slot) is exclusive.
+ *
+ * @author Eric Bottard
+ */
+class CountRing {
+
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private final int capacity;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Lazily allocated, so that counters that are only ever read don't take up room.
+	 */
+	private volatile AtomicLongArray counts;
+
+	/**
+	 * The most recent slot, or {@link #EMPTY}.
+	 */
+	private volatile long head = EMPTY;
+
+	CountRing(int capacity) {
+		Assert.isTrue(capacity > 0, "capacity must be positive");
+		this.capacity = capacity;
+	}
+
+	void add(long slot, long amount) {
+		Lock readLock = lock.readLock();
+		readLock.lock();
+		try {
+			long current = head;
+			if (current != EMPTY && slot <= current) {
+				if (slot > current - capacity) {
+					counts.addAndGet(index(slot), amount);
+				}
+				return;
+			}
+		}
+		finally {
+			readLock.unlock();
+		}
+
+		Lock writeLock = lock.writeLock();
+		writeLock.lock();
+		try {
+			moveTo(slot);
+			if (slot > head - capacity) {
+				counts.addAndGet(index(slot), amount);
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Make {@code slot} part of the window, if it is more recent than the current head. Must hold the write lock.
+	 */
+	private void moveTo(long slot) {
+		if (head == EMPTY) {
+			counts = new AtomicLongArray(capacity);
+			head = slot;
+		}
+		else if (slot > head) {
+			long from = Math.max(head + 1, slot - capacity + 1);
+			for (long s = from; s <= slot; s++) {
+				counts.set(index(s), 0L);
+			}
+			head = slot;
+		}
+	}
+
+	/**
+	 * Return the counts for {@code length} consecutive slots, starting at {@code fromSlot}. Slots outside of the window
+	 * read as 0.
+	 */
+	long[] get(long fromSlot, int length) {
+		long[] result = new long[length];
+		Lock readLock = lock.readLock();
+		readLock.lock();
+		try {
+			long current = head;
+			if (current == EMPTY) {
+				return result;
+			}
+			long oldest = current - capacity + 1;
+			for (int i = 0; i < length; i++) {
+				long slot = fromSlot + i;
+				if (slot >= oldest && slot <= current) {
+					result[i] = counts.get(index(slot));
+				}
+			}
+		}
+		finally {
+			readLock.unlock();
+		}
+		return result;
+	}
+
+	private int index(long slot) {
+		int index = (int) (slot % capacity);
+		return index < 0 ? index + capacity : index;
+	}
+
+}
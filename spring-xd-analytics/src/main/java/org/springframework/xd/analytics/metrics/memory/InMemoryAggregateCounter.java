@@ -16,25 +16,20 @@
 
 package org.springframework.xd.analytics.metrics.memory;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
+import java.util.EnumMap;
 import java.util.Map;
 
 import org.joda.time.Chronology;
 import org.joda.time.DateTime;
-import org.joda.time.Days;
-import org.joda.time.Duration;
+import org.joda.time.DateTimeConstants;
 import org.joda.time.Interval;
+import org.joda.time.ReadableInstant;
+import org.joda.time.chrono.ISOChronology;
 
-import org.joda.time.Months;
-import org.joda.time.Years;
 import org.springframework.util.Assert;
 import org.springframework.xd.analytics.metrics.core.AggregateCount;
 import org.springframework.xd.analytics.metrics.core.AggregateCountResolution;
 import org.springframework.xd.analytics.metrics.core.Counter;
-import org.springframework.xd.analytics.metrics.core.MetricUtils;
 
 /**
  * A counter that tracks integral values but also remembers how its value was distributed over time.
@@ -43,25 +38,55 @@ import org.springframework.xd.analytics.metrics.core.MetricUtils;
  * This core class only holds data structures. Depending on backing stores, logic for computing totals may be
  * implemented in a specialization of this class or at the repository level.
  * </p>
+ * <p>
+ * Counts are kept, for each resolution, in a {@link CountRing} retaining a fixed number of the most recent time slots
+ * (see {@link #DEFAULT_RETENTION}), so that the memory used by a counter is bounded. Time slots are numbered from the
+ * local (as in, in the time zone of the incremented or queried date) epoch. Increments are thread safe.
+ * </p>
  * 
  * @author Luke Taylor
  * @author Eric Bottard
  */
 class InMemoryAggregateCounter extends Counter {
-	private Map<Integer, long[]> monthCountsByYear = new HashMap<Integer, long[]>();
 
-	private Map<Integer, long[]> dayCountsByYear = new HashMap<Integer, long[]>();
+	/**
+	 * The number of time slots retained by default for each resolution: 3 days worth of minutes, 62 days worth of
+	 * hours, 3 years worth of days, 20 years worth of months and 100 years.
+	 */
+	static final Map<AggregateCountResolution, Integer> DEFAULT_RETENTION;
+
+	static {
+		Map<AggregateCountResolution, Integer> retention = new EnumMap<AggregateCountResolution, Integer>(
+				AggregateCountResolution.class);
+		retention.put(AggregateCountResolution.minute, 3 * 24 * 60);
+		retention.put(AggregateCountResolution.hour, 62 * 24);
+		retention.put(AggregateCountResolution.day, 3 * 366);
+		retention.put(AggregateCountResolution.month, 20 * 12);
+		retention.put(AggregateCountResolution.year, 100);
+		DEFAULT_RETENTION = retention;
+	}
+
+	private static final Chronology UTC = ISOChronology.getInstanceUTC();
 
-	private Map<Integer, long[]> hourCountsByDay = new HashMap<Integer, long[]>();
+	private static final AggregateCountResolution[] RESOLUTIONS = AggregateCountResolution.values();
 
-	private Map<Integer, long[]> minuteCountsByDay = new HashMap<Integer, long[]>();
+	private final CountRing[] rings = new CountRing[RESOLUTIONS.length];
 
 	public InMemoryAggregateCounter(String name, long value) {
-		super(name, value);
+		this(name, value, DEFAULT_RETENTION);
 	}
 
 	public InMemoryAggregateCounter(String name) {
-		super(name);
+		this(name, 0L, DEFAULT_RETENTION);
+	}
+
+	InMemoryAggregateCounter(String name, long value, Map<AggregateCountResolution, Integer> retention) {
+		super(name, value);
+		for (AggregateCountResolution resolution : RESOLUTIONS) {
+			Integer slots = retention.get(resolution);
+			Assert.notNull(slots, "No retention set for resolution " + resolution);
+			rings[resolution.ordinal()] = new CountRing(slots);
+		}
 	}
 
 	public AggregateCount getCounts(int nCounts, DateTime endDate, AggregateCountResolution resolution) {
@@ -71,144 +96,59 @@ class InMemoryAggregateCounter extends Counter {
 	}
 
 	public AggregateCount getCounts(Interval interval, AggregateCountResolution resolution) {
-		DateTime start = interval.getStart();
-		DateTime end = interval.getEnd();
-		Chronology c = interval.getChronology();
+		long start = localMillis(interval.getStart());
+		long end = localMillis(interval.getEnd());
 
-		long[] counts;
+		int size;
 		if (resolution == AggregateCountResolution.minute) {
-			List<long[]> days = accumulateDayCounts(minuteCountsByDay, start, end, 60 * 24);
-
-			counts = MetricUtils.concatArrays(days, interval.getStart().getMinuteOfDay(),
-					interval.toPeriod().toStandardMinutes().getMinutes() + 1);
+			// Same as interval.toPeriod().toStandardMinutes() + 1, but also works past a month
+			size = (int) ((end - start) / DateTimeConstants.MILLIS_PER_MINUTE) + 1;
 		}
 		else if (resolution == AggregateCountResolution.hour) {
-			List<long[]> days = accumulateDayCounts(hourCountsByDay, start, end, 24);
-
-			counts = MetricUtils.concatArrays(days, interval.getStart().getHourOfDay(),
-					interval.toPeriod().toStandardHours().getHours() + 1);
-		}
-		else if (resolution == AggregateCountResolution.day) {
-			DateTime startDay = new DateTime(c.dayOfYear().roundFloor(start.getMillis()));
-			DateTime endDay = new DateTime(c.dayOfYear().roundFloor(end.plusDays(1).getMillis()));
-			int nDays = Days.daysBetween(startDay, endDay).getDays();
-			DateTime cursor = new DateTime(c.year().roundFloor(interval.getStartMillis()));
-			List<long[]> yearDays = new ArrayList<long[]>();
-			DateTime endYear = new DateTime(c.year().roundCeiling(end.getMillis()));
-
-			while (cursor.isBefore(endYear)) {
-				long[] dayCounts = dayCountsByYear.get(cursor.getYear());
-				if (dayCounts == null) {
-					// Querying where we have no data
-					dayCounts = new long[daysInYear(cursor.getYear())];
-				}
-				yearDays.add(dayCounts);
-				cursor = cursor.plusYears(1);
-			}
-
-			counts = MetricUtils.concatArrays(yearDays, startDay.getDayOfYear() - 1, nDays);
-
-		}
-		else if (resolution == AggregateCountResolution.month) {
-			DateTime startMonth = new DateTime(c.monthOfYear().roundFloor(interval.getStartMillis()));
-			DateTime endMonth = new DateTime(c.monthOfYear().roundFloor(end.plusMonths(1).getMillis()));
-			int nMonths = Months.monthsBetween(startMonth, endMonth).getMonths();
-			DateTime cursor = new DateTime(c.year().roundFloor(interval.getStartMillis()));
-			List<long[]> yearMonths = new ArrayList<long[]>();
-			DateTime endYear = new DateTime(c.year().roundCeiling(end.getMillis()));
-
-			while (cursor.isBefore(endYear)) {
-				long[] monthCounts = monthCountsByYear.get(cursor.getYear());
-				if (monthCounts == null) {
-					monthCounts = new long[12];
-				}
-				yearMonths.add(monthCounts);
-				cursor = cursor.plusYears(1);
-			}
-
-			counts = MetricUtils.concatArrays(yearMonths, startMonth.getMonthOfYear() - 1 , nMonths);
-		}
-		else if (resolution == AggregateCountResolution.year) {
-			DateTime startYear = new DateTime(interval.getStart().getYear(), 1, 1, 0, 0);
-			DateTime endYear   =  new DateTime(end.getYear() + 1, 1, 1, 0, 0);
-			int nYears = Years.yearsBetween(startYear, endYear).getYears();
-			counts = new long[nYears];
-
-			for (int i = 0; i < nYears; i++) {
-				long[] monthCounts = monthCountsByYear.get(startYear.plusYears(i).getYear());
-				counts[i] = MetricUtils.sum(monthCounts);
-			}
-
+			size = (int) ((end - start) / DateTimeConstants.MILLIS_PER_HOUR) + 1;
 		}
 		else {
-			throw new IllegalStateException("Shouldn't happen. Unhandled resolution: " + resolution);
+			size = (int) (slot(resolution, end) - slot(resolution, start)) + 1;
 		}
+		long[] counts = rings[resolution.ordinal()].get(slot(resolution, start), size);
 		return new AggregateCount(getName(), interval, counts, resolution);
 	}
 
-	private static List<long[]> accumulateDayCounts(Map<Integer, long[]> fromDayCounts, DateTime start, DateTime end,
-			int subSize) {
-		List<long[]> days = new ArrayList<long[]>();
-		Duration step = Duration.standardDays(1);
-		long[] emptySubArray = new long[subSize];
-		end = end.plusDays(1); // Need to account for an interval which crosses days
-
-		for (DateTime now = start; now.isBefore(end); now = now.plus(step)) {
-			int countsByDayKey = now.getYear() * 1000 + now.getDayOfYear();
-			long[] dayCounts = fromDayCounts.get(countsByDayKey);
-
-			if (dayCounts == null) {
-				// Use an empty array if we don't have data
-				dayCounts = emptySubArray;
-			}
-			days.add(dayCounts);
+	long increment(long amount, DateTime dateTime) {
+		long local = localMillis(dateTime);
+		for (AggregateCountResolution resolution : RESOLUTIONS) {
+			rings[resolution.ordinal()].add(slot(resolution, local), amount);
 		}
-		return days;
+		return increment(amount);
 	}
 
-	private int daysInYear(int year) {
-		Duration d = new Duration(new DateTime(year, 1, 1, 0, 0), new DateTime(year + 1, 1, 1, 0, 0));
-		return (int)d.getStandardDays();
+	private static long localMillis(ReadableInstant instant) {
+		return instant.getZone().convertUTCToLocal(instant.getMillis());
 	}
 
-	synchronized long increment(long amount, DateTime dateTime) {
-		int year = dateTime.getYear();
-		int month = dateTime.getMonthOfYear();
-		int day = dateTime.getDayOfYear();
-		int hour = dateTime.getHourOfDay();
-		int minute = dateTime.getMinuteOfDay();
-
-		long[] monthCounts = monthCountsByYear.get(year);
-		long[] dayCounts = dayCountsByYear.get(year);
-
-		if (monthCounts == null) {
-			monthCounts = new long[12];
-			monthCountsByYear.put(year, monthCounts);
-			dayCounts = new long[daysInYear(year)];
-			dayCountsByYear.put(year, dayCounts);
-		}
-
-		int countsByDayKey = year * 1000 + day;
-		long[] hourCounts = hourCountsByDay.get(countsByDayKey);
-
-		if (hourCounts == null) {
-			hourCounts = new long[24];
-			hourCountsByDay.put(countsByDayKey, hourCounts);
+	/**
+	 * Return the number of the time slot the given local time falls into, at the given resolution.
+	 */
+	private static long slot(AggregateCountResolution resolution, long localMillis) {
+		switch (resolution) {
+			case minute:
+				return floorDiv(localMillis, DateTimeConstants.MILLIS_PER_MINUTE);
+			case hour:
+				return floorDiv(localMillis, DateTimeConstants.MILLIS_PER_HOUR);
+			case day:
+				return floorDiv(localMillis, DateTimeConstants.MILLIS_PER_DAY);
+			case month:
+				return UTC.year().get(localMillis) * 12L + UTC.monthOfYear().get(localMillis) - 1;
+			case year:
+				return UTC.year().get(localMillis);
+			default:
+				throw new IllegalStateException("Shouldn't happen. Unhandled resolution: " + resolution);
 		}
+	}
 
-		long[] minuteCounts = minuteCountsByDay.get(countsByDayKey);
-
-		if (minuteCounts == null) {
-			minuteCounts = new long[60 * 24];
-			minuteCountsByDay.put(countsByDayKey, minuteCounts);
-		}
-
-		minuteCounts[minute] += amount;
-		monthCounts[month-1] += amount;
-		dayCounts[day-1] += amount;
-		hourCounts[hour] += amount;
-
-		return increment(amount);
+	private static long floorDiv(long x, long y) {
+		long q = x / y;
+		return (x % y < 0) ? q - 1 : q;
 	}
 
 }
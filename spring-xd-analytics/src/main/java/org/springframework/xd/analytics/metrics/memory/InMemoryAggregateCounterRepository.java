@@ -17,13 +17,16 @@
 package org.springframework.xd.analytics.metrics.memory;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.util.Assert;
 import org.springframework.xd.analytics.metrics.core.AggregateCount;
 import org.springframework.xd.analytics.metrics.core.AggregateCountResolution;
 import org.springframework.xd.analytics.metrics.core.AggregateCounterRepository;
@@ -33,7 +36,8 @@ import org.springframework.xd.store.AbstractInMemoryRepository;
 /**
  * In-memory aggregate counter with minute resolution.
  * <p/>
- * Note that the data is permanently accumulated, so will grow steadily in size until the host process is restarted.
+ * Each counter only retains a fixed number of the most recent minutes, hours, days, months and years (configurable
+ * per resolution), so that its size is bounded. Older counts read as 0.
  *
  * @author Luke Taylor
  * @author Eric Bottard
@@ -42,7 +46,50 @@ import org.springframework.xd.store.AbstractInMemoryRepository;
 public class InMemoryAggregateCounterRepository extends AbstractInMemoryRepository<Counter, String> implements
 		AggregateCounterRepository {
 
-	private Map<String, InMemoryAggregateCounter> aggregates = new HashMap<String, InMemoryAggregateCounter>();
+	private final ConcurrentMap<String, InMemoryAggregateCounter> aggregates = new ConcurrentHashMap<String, InMemoryAggregateCounter>();
+
+	private final Map<AggregateCountResolution, Integer> retention = new EnumMap<AggregateCountResolution, Integer>(
+			InMemoryAggregateCounter.DEFAULT_RETENTION);
+
+	/**
+	 * Set the number of most recent minutes retained by newly created counters. Defaults to 3 days worth.
+	 */
+	public void setMinuteRetention(int minutes) {
+		setRetention(AggregateCountResolution.minute, minutes);
+	}
+
+	/**
+	 * Set the number of most recent hours retained by newly created counters. Defaults to 62 days worth.
+	 */
+	public void setHourRetention(int hours) {
+		setRetention(AggregateCountResolution.hour, hours);
+	}
+
+	/**
+	 * Set the number of most recent days retained by newly created counters. Defaults to 3 years worth.
+	 */
+	public void setDayRetention(int days) {
+		setRetention(AggregateCountResolution.day, days);
+	}
+
+	/**
+	 * Set the number of most recent months retained by newly created counters. Defaults to 20 years worth.
+	 */
+	public void setMonthRetention(int months) {
+		setRetention(AggregateCountResolution.month, months);
+	}
+
+	/**
+	 * Set the number of most recent years retained by newly created counters. Defaults to 100.
+	 */
+	public void setYearRetention(int years) {
+		setRetention(AggregateCountResolution.year, years);
+	}
+
+	private void setRetention(AggregateCountResolution resolution, int slots) {
+		Assert.isTrue(slots > 0, resolution + " retention must be positive");
+		retention.put(resolution, slots);
+	}
 
 	@Override
 	public long increment(String name) {
@@ -85,11 +132,14 @@ public class InMemoryAggregateCounterRepository extends AbstractInMemoryReposito
 		return getOrCreate(name).getCounts(nCounts, end, resolution);
 	}
 
-	private synchronized InMemoryAggregateCounter getOrCreate(String name) {
+	private InMemoryAggregateCounter getOrCreate(String name) {
 		InMemoryAggregateCounter c = aggregates.get(name);
 		if (c == null) {
-			c = new InMemoryAggregateCounter(name);
-			aggregates.put(name, c);
+			c = new InMemoryAggregateCounter(name, 0L, retention);
+			InMemoryAggregateCounter existing = aggregates.putIfAbsent(name, c);
+			if (existing != null) {
+				c = existing;
+			}
 		}
 		return c;
 	}
@@ -34,6 +34,7 @@ import org.springframework.xd.analytics.metrics.core.MetricRepository;
  * Only handles single values (not lists, maps etc).
  * 
  * @author Luke Taylor
+ * @author Eric Bottard
  */
 abstract class AbstractRedisMetricRepository<M extends Metric, V> implements MetricRepository<M> {
 
@@ -167,7 +168,7 @@ abstract class AbstractRedisMetricRepository<M extends Metric, V> implements Met
 		// Need to keep track of created instances explicitly.
 		Set<String> keys = this.redisOperations.keys(this.metricPrefix + "*");
 		for (String key : keys) {
-			if (!key.matches(metricPrefix + ".+?_\\d{4}\\.\\d{2}\\.\\d{2}-\\d{2}:\\d{2}")) {
+			if (!isTimeBucketKey(key)) {
 				V value = this.valueOperations.get(key);
 				String name = key.substring(metricPrefix.length());
 				M m = create(name, value);
@@ -178,6 +179,14 @@ abstract class AbstractRedisMetricRepository<M extends Metric, V> implements Met
 
 	}
 
+	/**
+	 * Whether the given key holds a time bucket of a metric (suffixed with {@code _yyyy.MM.dd-HH:mm}) rather than a
+	 * metric itself.
+	 */
+	boolean isTimeBucketKey(String key) {
+		return key.matches(metricPrefix + ".+?_\\d{4}\\.\\d{2}\\.\\d{2}-\\d{2}:\\d{2}");
+	}
+
 	@Override
 	public Iterable<M> findAll(Iterable<String> keys) {
 		List<M> results = new ArrayList<M>();
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.analytics.metrics.redis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+/**
+ * The redis commands that write one batch of {@link WriteBehindBuffer write-behind} increments. They are run by a Lua
+ * script that first claims a marker key named after the batch, and does nothing if that key already exists: writing
+ * the same batch again, after a failure that may or may not have reached redis, does not apply it twice. Commands are
+ * sent in chunks of {@value #CHUNK_SIZE}, each with its own marker, so that a large batch does not block redis for
+ * too long.
+ * <p>
+ * Requires redis 2.6.12 or later.
+ *
+ * @author Eric Bottard
+ */
+class IncrementBatch {
+
+	static final String MARKER_PREFIX = "metric_meta.batches.";
+
+	private static final int CHUNK_SIZE = 1000;
+
+	/**
+	 * How long (in seconds) a batch is remembered as written.
+	 */
+	private static final String MARKER_TTL = "3600";
+
+	/**
+	 * KEYS[1] is the marker, and KEYS[n + 1] the key of the n-th command. ARGV[1] is the marker time to live, followed
+	 * by the name, argument count and arguments of each command.
+	 */
+	private static final RedisScript<Long> SCRIPT = new DefaultRedisScript<Long>(
+			"if not redis.call('SET', KEYS[1], '1', 'NX', 'EX', ARGV[1]) then\n" +
+			"  return 0\n" +
+			"end\n" +
+			"local a = 2\n" +
+			"for k = 2, #KEYS do\n" +
+			"  local n = tonumber(ARGV[a + 1])\n" +
+			"  redis.call(ARGV[a], KEYS[k], unpack(ARGV, a + 2, a + 1 + n))\n" +
+			"  a = a + 2 + n\n" +
+			"end\n" +
+			"return 1", Long.class);
+
+	private final String batchId;
+
+	private final List<Chunk> chunks = new ArrayList<Chunk>();
+
+	IncrementBatch(String batchId) {
+		this.batchId = batchId;
+	}
+
+	void incrBy(String key, long amount) {
+		add("INCRBY", key, Long.toString(amount));
+	}
+
+	void hIncrBy(String key, String field, long amount) {
+		add("HINCRBY", key, field, Long.toString(amount));
+	}
+
+	void zIncrBy(String key, String member, double amount) {
+		add("ZINCRBY", key, Double.toString(amount), member);
+	}
+
+	void zAdd(String key, String member, double score) {
+		add("ZADD", key, Double.toString(score), member);
+	}
+
+	void sAdd(String key, String member) {
+		add("SADD", key, member);
+	}
+
+	private void add(String command, String key, String... args) {
+		Chunk chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+		if (chunk == null || chunk.keys.size() > CHUNK_SIZE) {
+			chunk = new Chunk(MARKER_PREFIX + batchId + "." + chunks.size());
+			chunks.add(chunk);
+		}
+		chunk.keys.add(key);
+		chunk.args.add(command);
+		chunk.args.add(Integer.toString(args.length));
+		for (String arg : args) {
+			chunk.args.add(arg);
+		}
+	}
+
+	/**
+	 * Run the commands of this batch that have not been applied yet. Commands must be added in the same order each
+	 * time the same batch is written.
+	 */
+	void execute(RedisOperations<String, String> redisOperations) {
+		for (Chunk chunk : chunks) {
+			// a null result means the retry template gave up, and the chunk may not have been applied
+			if (redisOperations.execute(SCRIPT, chunk.keys, chunk.args.toArray()) == null) {
+				throw new DataAccessResourceFailureException("Failed to write increments batch " + batchId);
+			}
+		}
+	}
+
+	private static final class Chunk {
+
+		private final List<String> keys = new ArrayList<String>();
+
+		private final List<String> args = new ArrayList<String>();
+
+		private Chunk(String marker) {
+			keys.add(marker);
+			args.add(MARKER_TTL);
+		}
+	}
+
+}
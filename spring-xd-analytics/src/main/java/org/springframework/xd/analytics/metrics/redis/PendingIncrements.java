@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.analytics.metrics.redis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces increments per key in memory, until they are {@link #drain() drained} to be written in one go. Adding is
+ * lock-free: a drained count is marked as such, so that a concurrent increment retries on a fresh count instead of
+ * being lost.
+ *
+ * @author Eric Bottard
+ */
+class PendingIncrements<K> {
+
+	private static final long DRAINED = Long.MIN_VALUE;
+
+	private final ConcurrentMap<K, AtomicLong> counts = new ConcurrentHashMap<K, AtomicLong>();
+
+	/**
+	 * Add to the pending count of the given key.
+	 * @return the pending count for that key, after the addition
+	 */
+	long add(K key, long amount) {
+		while (true) {
+			AtomicLong count = counts.get(key);
+			if (count == null) {
+				count = counts.putIfAbsent(key, new AtomicLong(amount));
+				if (count == null) {
+					return amount;
+				}
+			}
+			for (long current = count.get(); current != DRAINED; current = count.get()) {
+				if (count.compareAndSet(current, current + amount)) {
+					return current + amount;
+				}
+			}
+			// drained while we were adding: make sure it's gone and try again
+			counts.remove(key, count);
+		}
+	}
+
+	/**
+	 * Remove and return all the non zero pending counts. Not meant to be called concurrently with itself.
+	 */
+	Map<K, Long> drain() {
+		Map<K, Long> result = new HashMap<K, Long>();
+		for (Map.Entry<K, AtomicLong> entry : counts.entrySet()) {
+			long value = entry.getValue().getAndSet(DRAINED);
+			counts.remove(entry.getKey(), entry.getValue());
+			if (value != DRAINED && value != 0L) {
+				result.put(entry.getKey(), value);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return the pending count of the given key.
+	 */
+	long get(K key) {
+		AtomicLong count = counts.get(key);
+		long value = count == null ? 0L : count.get();
+		return value == DRAINED ? 0L : value;
+	}
+
+	boolean isEmpty() {
+		return counts.isEmpty();
+	}
+
+}
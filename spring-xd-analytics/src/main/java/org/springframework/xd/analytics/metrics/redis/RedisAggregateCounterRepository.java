@@ -26,6 +26,8 @@ import org.joda.time.MutableDateTime;
 import org.joda.time.ReadableDateTime;
 import org.joda.time.Years;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.HashOperations;
@@ -34,12 +36,17 @@ import org.springframework.data.redis.serializer.GenericToStringSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.retry.RetryOperations;
 import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
 import org.springframework.xd.analytics.metrics.core.AggregateCount;
 import org.springframework.xd.analytics.metrics.core.AggregateCountResolution;
 import org.springframework.xd.analytics.metrics.core.AggregateCounterRepository;
+import org.springframework.xd.analytics.metrics.core.Counter;
 import org.springframework.xd.analytics.metrics.core.MetricUtils;
 
+import java.io.Flushable;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -47,20 +54,40 @@ import java.util.Set;
 /**
  * Redis implementation of {@link AggregateCounterRepository}. Subclasses and intercepts calls to
  * {@link RedisCounterRepository} to also track counts in various redis hashes.
+ * <p>
+ * By default, each increment is written to redis right away. When a {@link #setFlushInterval(long) flush interval}
+ * is set, increments are instead coalesced in memory per counter and bucket (write-behind), and written to redis in
+ * batches every {@code flushInterval} milliseconds, or as soon as {@link #setFlushSize(int) flushSize} increments are
+ * pending, whichever comes first. Pending increments are also flushed before querying counters and when this
+ * repository is destroyed, but are lost if the process dies: the loss window is bounded by those two settings.
+ * Batches that fail to be written are kept, and written again with the next flush without being applied twice (see
+ * {@link IncrementBatch}, which requires redis 2.6.12 or later).
+ * <p>
+ * In write-behind mode, {@code increment} methods still return the total of the counter, i.e. its value in redis plus
+ * the increments not written yet, which takes a round trip to redis.
  *
  * @author Eric Bottard
  * @author Luke Taylor
  */
 @Qualifier("aggregate")
-public class RedisAggregateCounterRepository extends RedisCounterRepository implements AggregateCounterRepository {
+public class RedisAggregateCounterRepository extends RedisCounterRepository implements AggregateCounterRepository,
+		Flushable, InitializingBean, DisposableBean {
 
 	protected HashOperations<String, String, Long> hashOperations;
 
 	protected SetOperations<String, String> setOperations;
 
+	private final RedisRetryTemplate<String, String> redisTemplate;
+
+	private long flushInterval = 0L;
+
+	private int flushSize = 10000;
+
+	private WriteBehindBuffer<Bucket> writeBehind;
+
 	public RedisAggregateCounterRepository(RedisConnectionFactory redisConnectionFactory, RetryOperations retryOperations) {
 		super("aggregatecounters", redisConnectionFactory, retryOperations);
-		RedisRetryTemplate<String, String> redisTemplate = new RedisRetryTemplate<String, String>();
+		redisTemplate = new RedisRetryTemplate<String, String>();
 		redisTemplate.setConnectionFactory(redisConnectionFactory);
 		redisTemplate.setKeySerializer(new StringRedisSerializer());
 		redisTemplate.setValueSerializer(new StringRedisSerializer());
@@ -72,6 +99,55 @@ public class RedisAggregateCounterRepository extends RedisCounterRepository impl
 		setOperations = redisTemplate.opsForSet();
 	}
 
+	/**
+	 * Set the maximum time (in milliseconds) increments may stay in memory before being written to redis. A value of
+	 * 0 (the default) disables write-behind, and writes each increment right away.
+	 */
+	public void setFlushInterval(long flushInterval) {
+		Assert.isTrue(flushInterval >= 0, "flushInterval must not be negative");
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Set the number of pending increments that triggers a flush before the flush interval elapses. Only used when
+	 * write-behind is enabled.
+	 */
+	public void setFlushSize(int flushSize) {
+		Assert.isTrue(flushSize > 0, "flushSize must be positive");
+		this.flushSize = flushSize;
+	}
+
+	private boolean isWriteBehind() {
+		return writeBehind != null;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if (flushInterval > 0L) {
+			writeBehind = new WriteBehindBuffer<Bucket>("aggregate-counter-flush-", flushInterval, flushSize) {
+
+				@Override
+				protected void write(Map<Bucket, Long> increments, String batchId) {
+					writeIncrements(increments, batchId);
+				}
+
+				@Override
+				protected long read(Bucket bucket) {
+					Long value = bucket.hashKey == null ? longOperations.get(bucket.key)
+							: hashOperations.get(bucket.key, bucket.hashKey);
+					return value == null ? 0L : value;
+				}
+			};
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (writeBehind != null) {
+			writeBehind.close();
+		}
+	}
+
 	@Override
 	public long increment(String name) {
 		return increment(name, 1, new DateTime());
@@ -86,6 +162,18 @@ public class RedisAggregateCounterRepository extends RedisCounterRepository impl
 	public long increment(String name, long amount, DateTime dateTime) {
 		final AggregateKeyGenerator akg = new AggregateKeyGenerator(getPrefix(), name, dateTime);
 
+		if (isWriteBehind()) {
+			writeBehind.add(new Bucket(name, akg.getYearsKey(), akg.getYear()), amount);
+			writeBehind.add(new Bucket(name, akg.getYearKey(), akg.getMonth()), amount);
+			writeBehind.add(new Bucket(name, akg.getMonthKey(), akg.getDay()), amount);
+			writeBehind.add(new Bucket(name, akg.getDayKey(), akg.getHour()), amount);
+			writeBehind.add(new Bucket(name, akg.getHourKey(), akg.getMinute()), amount);
+			Bucket total = new Bucket(name, redisKeyFromId(name), null);
+			writeBehind.add(total, amount);
+			writeBehind.incremented();
+			return writeBehind.currentValue(total);
+		}
+
 		String bookkeepingKey = bookkeepingKeyFor(name);
 
 		doIncrementHash(akg.getYearsKey(), akg.getYear(), amount, bookkeepingKey);
@@ -97,6 +185,44 @@ public class RedisAggregateCounterRepository extends RedisCounterRepository impl
 		return super.increment(name, amount);
 	}
 
+	/**
+	 * Write all pending increments to redis. Does nothing unless write-behind is enabled.
+	 */
+	@Override
+	public void flush() {
+		if (writeBehind != null) {
+			writeBehind.flush();
+		}
+	}
+
+	private void writeIncrements(Map<Bucket, Long> increments, String batchId) {
+		IncrementBatch batch = new IncrementBatch(batchId);
+		Map<String, Set<String>> hashKeysPerCounter = new HashMap<String, Set<String>>();
+		for (Map.Entry<Bucket, Long> increment : increments.entrySet()) {
+			Bucket bucket = increment.getKey();
+			if (bucket.hashKey == null) {
+				batch.incrBy(bucket.key, increment.getValue());
+				// see trackMembership()
+				batch.zAdd(getPrefix(), bucket.key, 0.0D);
+			}
+			else {
+				batch.hIncrBy(bucket.key, bucket.hashKey, increment.getValue());
+				Set<String> hashKeys = hashKeysPerCounter.get(bucket.counterName);
+				if (hashKeys == null) {
+					hashKeys = new LinkedHashSet<String>();
+					hashKeysPerCounter.put(bucket.counterName, hashKeys);
+				}
+				hashKeys.add(bucket.key);
+			}
+		}
+		for (Map.Entry<String, Set<String>> hashKeys : hashKeysPerCounter.entrySet()) {
+			for (String hashKey : hashKeys.getValue()) {
+				batch.sAdd(bookkeepingKeyFor(hashKeys.getKey()), hashKey);
+			}
+		}
+		batch.execute(redisTemplate);
+	}
+
 	/**
 	 * Return the key under which are stored the names of the other keys used for the given counter.
 	 */
@@ -142,6 +268,10 @@ public class RedisAggregateCounterRepository extends RedisCounterRepository impl
 	 */
 	@Override
 	public AggregateCount getCounts(String name, Interval interval, AggregateCountResolution resolution) {
+		if (isWriteBehind()) {
+			// read our own writes
+			flush();
+		}
 
 		DateTime end = interval.getEnd();
 		Chronology c = interval.getChronology();
@@ -274,8 +404,28 @@ public class RedisAggregateCounterRepository extends RedisCounterRepository impl
 		return values;
 	}
 
+	@Override
+	public Counter findOne(String name) {
+		if (isWriteBehind()) {
+			flush();
+		}
+		return super.findOne(name);
+	}
+
+	@Override
+	public void reset(String name) {
+		if (isWriteBehind()) {
+			flush();
+		}
+		super.reset(name);
+	}
+
 	@Override
 	public void delete(String id) {
+		if (isWriteBehind()) {
+			// don't let pending increments resurrect the counter
+			flush();
+		}
 		String metricMetaKey = bookkeepingKeyFor(id);
 		super.delete(id);
 		Set<String> otherKeys = setOperations.members(metricMetaKey);
@@ -283,4 +433,39 @@ public class RedisAggregateCounterRepository extends RedisCounterRepository impl
 		otherKeys.add(metricMetaKey);
 		redisOperations.delete(otherKeys);
 	}
+
+	/**
+	 * A hash field (or the plain counter itself, if {@code hashKey} is null) increments are pending for.
+	 */
+	private static final class Bucket {
+
+		private final String counterName;
+
+		private final String key;
+
+		private final String hashKey;
+
+		private Bucket(String counterName, String key, String hashKey) {
+			this.counterName = counterName;
+			this.key = key;
+			this.hashKey = hashKey;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Bucket)) {
+				return false;
+			}
+			Bucket other = (Bucket) o;
+			return key.equals(other.key) && ObjectUtils.nullSafeEquals(hashKey, other.hashKey);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * key.hashCode() + ObjectUtils.nullSafeHashCode(hashKey);
+		}
+	}
 }
@@ -16,6 +16,8 @@
 
 package org.springframework.xd.analytics.metrics.redis;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.data.redis.connection.DataType;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
@@ -24,6 +26,7 @@ import org.springframework.util.Assert;
 import org.springframework.xd.analytics.metrics.core.FieldValueCounter;
 import org.springframework.xd.analytics.metrics.core.FieldValueCounterRepository;
 
+import java.io.Flushable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -31,7 +34,21 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-public class RedisFieldValueCounterRepository implements FieldValueCounterRepository {
+/**
+ * Redis implementation of {@link FieldValueCounterRepository}, that stores each counter as a sorted set of field values.
+ * <p>
+ * By default, each increment is written to redis right away. When a {@link #setFlushInterval(long) flush interval}
+ * is set, increments are instead pre-aggregated in memory per counter and field value (write-behind), and written to
+ * redis in batches of {@code ZINCRBY} every {@code flushInterval} milliseconds, or as soon as
+ * {@link #setFlushSize(int) flushSize} increments are pending, whichever comes first. Pending increments are flushed
+ * before reading or modifying counters otherwise, and when this repository is destroyed. Batches that fail to be
+ * written are written again with the next flush, without being applied twice (see {@link IncrementBatch}, which
+ * requires redis 2.6.12 or later).
+ *
+ * @author Eric Bottard
+ */
+public class RedisFieldValueCounterRepository implements FieldValueCounterRepository, Flushable, InitializingBean,
+		DisposableBean {
 
 	private final String metricPrefix;
 
@@ -39,6 +56,12 @@ public class RedisFieldValueCounterRepository implements FieldValueCounterReposi
 
 	private static final String MARKER = "_marker_";
 
+	private long flushInterval = 0L;
+
+	private int flushSize = 10000;
+
+	private WriteBehindBuffer<FieldKey> writeBehind;
+
 	public RedisFieldValueCounterRepository(RedisConnectionFactory connectionFactory, RetryOperations retryOperations) {
 		this(connectionFactory, "fieldvaluecounters.", retryOperations);
 	}
@@ -54,12 +77,70 @@ public class RedisFieldValueCounterRepository implements FieldValueCounterReposi
 		redisTemplate.afterPropertiesSet();
 	}
 
+	/**
+	 * Set the maximum time (in milliseconds) increments may stay in memory before being written to redis. A value of
+	 * 0 (the default) disables write-behind, and writes each increment right away.
+	 */
+	public void setFlushInterval(long flushInterval) {
+		Assert.isTrue(flushInterval >= 0, "flushInterval must not be negative");
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Set the number of pending increments that triggers a flush before the flush interval elapses. Only used when
+	 * write-behind is enabled.
+	 */
+	public void setFlushSize(int flushSize) {
+		Assert.isTrue(flushSize > 0, "flushSize must be positive");
+		this.flushSize = flushSize;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if (flushInterval > 0L) {
+			writeBehind = new WriteBehindBuffer<FieldKey>("field-value-counter-flush-", flushInterval, flushSize) {
+
+				@Override
+				protected void write(Map<FieldKey, Long> increments, String batchId) {
+					writeIncrements(increments, batchId);
+				}
+			};
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (writeBehind != null) {
+			writeBehind.close();
+		}
+	}
+
+	/**
+	 * Write all pending increments to redis. Does nothing unless write-behind is enabled.
+	 */
+	@Override
+	public void flush() {
+		if (writeBehind != null) {
+			writeBehind.flush();
+		}
+	}
+
+	private void writeIncrements(Map<FieldKey, Long> increments, String batchId) {
+		IncrementBatch batch = new IncrementBatch(batchId);
+		for (Map.Entry<FieldKey, Long> increment : increments.entrySet()) {
+			FieldKey fieldKey = increment.getKey();
+			batch.zIncrBy(getMetricKey(fieldKey.counterName), fieldKey.fieldName, increment.getValue());
+		}
+		batch.execute(redisTemplate);
+	}
+
 	/*
 	 * Note: Handler implementations typically use increment() variants to save state. The save() contract
 	 * is to store the counter as a whole. Simplest approach is erase/rewrite.
 	 */
 	@Override
 	public <S extends FieldValueCounter> S save(S fieldValueCounter) {
+		flush();
 		delete(fieldValueCounter.getName());
 		increment(fieldValueCounter.getName(), MARKER, 0);
 		for (Map.Entry<String, Double> entry : fieldValueCounter.getFieldValueCount().entrySet()) {
@@ -82,12 +163,14 @@ public class RedisFieldValueCounterRepository implements FieldValueCounterReposi
 	@Override
 	public void delete(String name) {
 		Assert.notNull(name, "The name of the FieldValueCounter must not be null");
+		flush();
 		this.redisTemplate.delete(getMetricKey(name));
 	}
 
 	@Override
 	public void delete(FieldValueCounter fieldValueCounter) {
 		Assert.notNull(fieldValueCounter, "The FieldValueCounter must not be null");
+		flush();
 		this.redisTemplate.delete(getMetricKey(fieldValueCounter.getName()));
 
 	}
@@ -102,6 +185,7 @@ public class RedisFieldValueCounterRepository implements FieldValueCounterReposi
 	@Override
 	public FieldValueCounter findOne(String name) {
 		Assert.notNull(name, "The name of the FieldValueCounter must not be null");
+		flush();
 		String metricKey = getMetricKey(name);
 		if (redisTemplate.hasKey(metricKey)) {
 			Map<String, Double> values = getZSetData(metricKey);
@@ -120,6 +204,7 @@ public class RedisFieldValueCounterRepository implements FieldValueCounterReposi
 
 	@Override
 	public List<FieldValueCounter> findAll() {
+		flush();
 		List<FieldValueCounter> counters = new ArrayList<FieldValueCounter>();
 		// TODO asking for keys is not recommended. See
 		// http://redis.io/commands/keys
@@ -159,6 +244,7 @@ public class RedisFieldValueCounterRepository implements FieldValueCounterReposi
 
 	@Override
 	public void deleteAll() {
+		flush();
 		Set<String> keys = redisTemplate.keys(metricPrefix + "*");
 		if (keys.size() > 0) {
 			redisTemplate.delete(keys);
@@ -167,6 +253,11 @@ public class RedisFieldValueCounterRepository implements FieldValueCounterReposi
 
 	@Override
 	public void increment(String counterName, String fieldName) {
+		if (writeBehind != null) {
+			writeBehind.add(new FieldKey(counterName, fieldName), 1L);
+			writeBehind.incremented();
+			return;
+		}
 		redisTemplate.boundZSetOps(getMetricKey(counterName)).incrementScore(fieldName, 1.0);
 	}
 
@@ -176,6 +267,11 @@ public class RedisFieldValueCounterRepository implements FieldValueCounterReposi
 
 	@Override
 	public void decrement(String counterName, String fieldName) {
+		if (writeBehind != null) {
+			writeBehind.add(new FieldKey(counterName, fieldName), -1L);
+			writeBehind.incremented();
+			return;
+		}
 		redisTemplate.boundZSetOps(getMetricKey(counterName)).incrementScore(fieldName, -1.0);
 	}
 
@@ -186,6 +282,7 @@ public class RedisFieldValueCounterRepository implements FieldValueCounterReposi
 
 	@Override
 	public void reset(String counterName, String fieldName) {
+		flush();
 		redisTemplate.boundZSetOps(getMetricKey(counterName)).remove(fieldName);
 	}
 
@@ -216,4 +313,37 @@ public class RedisFieldValueCounterRepository implements FieldValueCounterReposi
 		return values;
 	}
 
+	/**
+	 * Identifies a pending increment of a given field value of a given counter.
+	 */
+	private static final class FieldKey {
+
+		private final String counterName;
+
+		private final String fieldName;
+
+		private FieldKey(String counterName, String fieldName) {
+			this.counterName = counterName;
+			this.fieldName = fieldName;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof FieldKey)) {
+				return false;
+			}
+			FieldKey other = (FieldKey) o;
+			return counterName.equals(other.counterName) && fieldName.equals(other.fieldName);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * counterName.hashCode() + fieldName.hashCode();
+		}
+
+	}
+
 }
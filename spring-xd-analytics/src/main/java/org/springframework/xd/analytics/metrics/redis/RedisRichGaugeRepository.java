@@ -18,25 +18,42 @@ package org.springframework.xd.analytics.metrics.redis;
 
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.retry.RetryCallback;
 import org.springframework.retry.RetryContext;
 import org.springframework.retry.RetryOperations;
 import org.springframework.retry.backoff.ExponentialBackOffPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
+import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 import org.springframework.xd.analytics.metrics.core.MetricUtils;
 import org.springframework.xd.analytics.metrics.core.RichGauge;
 import org.springframework.xd.analytics.metrics.core.RichGaugeRepository;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Repository for rich-gauges backed by Redis.
+ * <p>
+ * By default, gauges are stored as a space delimited string and updated optimistically (WATCH / MULTI / EXEC), retrying
+ * on contention. With {@link #setScriptedUpdates(boolean) scripted updates}, each sample is instead applied by a Lua
+ * script running in Redis, in a single round trip with no retry, and gauges are stored as hashes. Both encodings are
+ * always readable: a string encoded gauge is converted to a hash the first time the script updates it, and a hash
+ * encoded gauge back to a string the first time it is updated optimistically.
  *
  * @author Luke Taylor
  * @author Eric Bottard
@@ -46,8 +63,46 @@ public class RedisRichGaugeRepository extends
 
 	private static final String ZERO = serialize(new RichGauge("ZERO"));
 
+	private static final StringRedisSerializer stringSerializer = new StringRedisSerializer();
+
+	/**
+	 * Does the same computation as {@link RichGauge#set(double, double)}, starting from either encoding.
+	 */
+	private static final RedisScript<Long> RECORD_VALUE_SCRIPT = new DefaultRedisScript<Long>(
+			"local value = tonumber(ARGV[1])\n" +
+			"local alpha = tonumber(ARGV[2])\n" +
+			"local last, average, max, min, count = 0, 0, 0, 0, 0\n" +
+			"local type = redis.call('TYPE', KEYS[1])['ok']\n" +
+			"if type == 'hash' then\n" +
+			"  local g = redis.call('HMGET', KEYS[1], 'value', 'average', 'max', 'min', 'count')\n" +
+			"  last, average, max, min, count = tonumber(g[1]), tonumber(g[2]), tonumber(g[3]), tonumber(g[4]), tonumber(g[5])\n" +
+			"elseif type == 'string' then\n" +
+			"  local g = {}\n" +
+			"  for part in string.gmatch(redis.call('GET', KEYS[1]), '%S+') do g[#g + 1] = part end\n" +
+			"  last, average, max, min, count = tonumber(g[1]), tonumber(g[3]), tonumber(g[4]), tonumber(g[5]), tonumber(g[6])\n" +
+			"  redis.call('DEL', KEYS[1])\n" +
+			"end\n" +
+			"if count == 0 then\n" +
+			"  max, min = value, value\n" +
+			"elseif value > max then\n" +
+			"  max = value\n" +
+			"elseif value < min then\n" +
+			"  min = value\n" +
+			"end\n" +
+			"if alpha > 0 and count > 0 then\n" +
+			"  average = alpha * last + (1 - alpha) * average\n" +
+			"else\n" +
+			"  average = (average * count + value) / (count + 1)\n" +
+			"end\n" +
+			"count = count + 1\n" +
+			"redis.call('HMSET', KEYS[1], 'value', ARGV[1], 'alpha', ARGV[2], 'average', string.format('%.17g', average),\n" +
+			"    'max', string.format('%.17g', max), 'min', string.format('%.17g', min), 'count', string.format('%d', count))\n" +
+			"return count\n", Long.class);
+
 	private RetryTemplate retryTemplate;
 
+	private boolean scriptedUpdates;
+
 	public RedisRichGaugeRepository(RedisConnectionFactory connectionFactory, RetryOperations retryOperations) {
 		super(connectionFactory, "richgauges.", String.class, retryOperations);
 
@@ -92,10 +147,73 @@ public class RedisRichGaugeRepository extends
 		return serialize(metric);
 	}
 
+	/**
+	 * Whether to update gauges atomically using a server side script (which requires Redis 2.6 or later), storing
+	 * them as hashes, which older versions can't read. Defaults to {@code false}.
+	 */
+	public void setScriptedUpdates(boolean scriptedUpdates) {
+		this.scriptedUpdates = scriptedUpdates;
+	}
+
+	@Override
+	public RichGauge findOne(final String name) {
+		Assert.notNull(name, "The name of the metric must not be null");
+		final byte[] key = stringSerializer.serialize(getMetricKey(name));
+		return getRedisOperations().execute(new RedisCallback<RichGauge>() {
+
+			@Override
+			public RichGauge doInRedis(RedisConnection connection) throws DataAccessException {
+				DataType type = connection.type(key);
+				if (type == DataType.STRING) {
+					return create(name, stringSerializer.deserialize(connection.get(key)));
+				}
+				else if (type == DataType.HASH) {
+					return create(name, connection.hGetAll(key));
+				}
+				return null;
+			}
+		});
+	}
+
+	private RichGauge create(String name, Map<byte[], byte[]> hash) {
+		Map<String, String> fields = new HashMap<String, String>();
+		for (Map.Entry<byte[], byte[]> field : hash.entrySet()) {
+			fields.put(stringSerializer.deserialize(field.getKey()), stringSerializer.deserialize(field.getValue()));
+		}
+		return new RichGauge(name, Double.valueOf(fields.get("value")), Double.valueOf(fields.get("alpha")),
+				Double.valueOf(fields.get("average")), Double.valueOf(fields.get("max")),
+				Double.valueOf(fields.get("min")), Long.valueOf(fields.get("count")));
+	}
+
+	@Override
+	public List<RichGauge> findAll() {
+		String prefix = getMetricKey("");
+		Set<String> keys = getRedisOperations().keys(prefix + "*");
+		List<RichGauge> gauges = new ArrayList<RichGauge>(keys.size());
+		for (String key : keys) {
+			if (isTimeBucketKey(key)) {
+				continue;
+			}
+			RichGauge gauge = findOne(key.substring(prefix.length()));
+			if (gauge != null) {
+				gauges.add(gauge);
+			}
+		}
+		return gauges;
+	}
+
 	@Override
 	public void recordValue(final String name, final double value, final double alpha) {
 		final String key = getMetricKey(name);
 
+		if (scriptedUpdates) {
+			Assert.isTrue(alpha == -1 || (alpha > 0.0 && alpha < 1.0),
+					"Smoothing constant must be between 0 and 1, or -1 to use arithmetic mean");
+			getRedisOperations().execute(RECORD_VALUE_SCRIPT, Collections.singletonList(key), Double.toString(value),
+					Double.toString(alpha));
+			return;
+		}
+
 		retryTemplate.execute(new RetryCallback<Void, RuntimeException>() {
 
 			@Override
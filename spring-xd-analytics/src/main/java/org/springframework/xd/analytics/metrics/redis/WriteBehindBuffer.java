@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.analytics.metrics.redis;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Write-behind support for repositories: coalesces increments in memory and hands them over to
+ * {@link #write(Map, String)} every {@code flushInterval} milliseconds, or as soon as {@code flushSize} increments are
+ * pending, whichever comes first. A size triggered flush happens on the incrementing thread, unless another flush is
+ * already in progress.
+ * <p>
+ * If writing fails, the very same batch, with the same id, is written again with the next flush, before any newer
+ * increments. As a failed write may have been partially applied, implementations must make sure that writing a batch
+ * again does not apply it twice.
+ *
+ * @author Eric Bottard
+ */
+abstract class WriteBehindBuffer<K> {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+	private final PendingIncrements<K> pendingIncrements = new PendingIncrements<K>();
+
+	private final AtomicInteger pendingCount = new AtomicInteger();
+
+	private final ReentrantLock flushLock = new ReentrantLock();
+
+	private final int flushSize;
+
+	/**
+	 * A batch that failed to be written, to be written again before anything else. Guarded by the flush lock.
+	 */
+	private Map<K, Long> unwritten;
+
+	private String unwrittenId;
+
+	private final ScheduledExecutorService flushExecutor;
+
+	WriteBehindBuffer(String threadNamePrefix, long flushInterval, int flushSize) {
+		Assert.isTrue(flushInterval > 0, "flushInterval must be positive");
+		Assert.isTrue(flushSize > 0, "flushSize must be positive");
+		this.flushSize = flushSize;
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+		threadFactory.setDaemon(true);
+		flushExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		flushExecutor.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					flush();
+				}
+				catch (RuntimeException e) {
+					logger.error("Failed to flush pending increments", e);
+				}
+			}
+		}, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Add to the pending count of the given key. Callers should then invoke {@link #incremented()} once per logical
+	 * increment, which may have touched several keys.
+	 * @return the pending count for that key, after the addition
+	 */
+	long add(K key, long amount) {
+		return pendingIncrements.add(key, amount);
+	}
+
+	/**
+	 * Signal that one more increment is pending, flushing if enough of them are.
+	 */
+	void incremented() {
+		if (pendingCount.incrementAndGet() >= flushSize && flushLock.tryLock()) {
+			try {
+				doFlush();
+			}
+			catch (RuntimeException e) {
+				// the increment itself is safe in the buffer, so don't fail the caller
+				logger.error("Failed to flush pending increments, will retry with the next flush", e);
+			}
+			finally {
+				flushLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Return the current value of the given key: its written value, as returned by {@link #read(Object)}, plus the
+	 * increments not written yet. Flushes are held off meanwhile, so that no increment is missed or counted twice.
+	 */
+	long currentValue(K key) {
+		flushLock.lock();
+		try {
+			long value = read(key) + pendingIncrements.get(key);
+			if (unwritten != null && unwritten.containsKey(key)) {
+				value += unwritten.get(key);
+			}
+			return value;
+		}
+		finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Write all pending increments.
+	 * @throws RuntimeException if writing failed, in which case the increments are still pending
+	 */
+	void flush() {
+		flushLock.lock();
+		try {
+			doFlush();
+		}
+		finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Stop flushing periodically, and write any pending increments.
+	 */
+	void close() {
+		flushExecutor.shutdown();
+		flush();
+	}
+
+	private void doFlush() {
+		pendingCount.set(0);
+		if (unwritten != null) {
+			write(unwritten, unwrittenId);
+			unwritten = null;
+			unwrittenId = null;
+		}
+		Map<K, Long> increments = pendingIncrements.drain();
+		if (increments.isEmpty()) {
+			return;
+		}
+		String batchId = UUID.randomUUID().toString();
+		try {
+			write(increments, batchId);
+		}
+		catch (RuntimeException e) {
+			unwritten = increments;
+			unwrittenId = batchId;
+			throw e;
+		}
+	}
+
+	/**
+	 * Write the given (non empty) coalesced increments. The same batch may be written again, with the same id, if a
+	 * previous attempt failed: it must then not be applied twice.
+	 */
+	protected abstract void write(Map<K, Long> increments, String batchId);
+
+	/**
+	 * Read the written value of the given key, for {@link #currentValue(Object)}.
+	 */
+	protected long read(K key) {
+		throw new UnsupportedOperationException("Reading values is not supported by " + getClass().getName());
+	}
+
+}
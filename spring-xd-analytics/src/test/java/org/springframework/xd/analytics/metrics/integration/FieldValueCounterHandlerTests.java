@@ -17,6 +17,7 @@
 package org.springframework.xd.analytics.metrics.integration;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 import java.util.Arrays;
@@ -26,6 +27,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.transformer.MessageTransformationException;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.support.GenericMessage;
 import org.springframework.xd.analytics.metrics.core.FieldValueCounterRepository;
@@ -106,4 +108,36 @@ public class FieldValueCounterHandlerTests {
 		Map<String, Double> counts = repo.findOne("hashtags").getFieldValueCount();
 		assertThat(counts.get("hello"), equalTo(1.0));
 	}
+
+	@Test
+	public void extractsNestedFieldsThroughArrays() {
+		String json = "{'id':1,'entities':{'urls':[],'hashtags':[{'text':'hello','indices':[1,2]},{'indices':[3]},"
+				+ "{'text':null},{'text':'there'}],'user_mentions':[{'text':'ignored'}]},"
+				+ "'text':'hello'}";
+		FieldValueCounterHandler handler = new FieldValueCounterHandler(repo, "'hashtags'", "entities.hashtags.text");
+		handler.process(new GenericMessage<String>(json));
+		Map<String, Double> counts = repo.findOne("hashtags").getFieldValueCount();
+		assertThat(counts.size(), equalTo(2));
+		assertThat(counts.get("hello"), equalTo(1.0));
+		assertThat(counts.get("there"), equalTo(1.0));
+	}
+
+	@Test
+	public void countsScalarsAndArraysAtLeaf() {
+		FieldValueCounterHandler handler = new FieldValueCounterHandler(repo, "'langs'", "user.lang");
+		handler.process(new GenericMessage<String>("{\"user\":{\"lang\":\"fr\"}}"));
+		handler.process(new GenericMessage<String>("{\"user\":{\"lang\":[\"fr\", 42]}}"));
+		handler.process(new GenericMessage<String>("{\"user\":{\"name\":\"joe\"}}"));
+		handler.process(new GenericMessage<String>("[{\"user\":{\"lang\":\"en\"}}]"));
+		Map<String, Double> counts = repo.findOne("langs").getFieldValueCount();
+		assertThat(counts.get("fr"), equalTo(2.0));
+		assertThat(counts.get("42"), equalTo(1.0));
+		assertThat(counts.get("en"), nullValue());
+	}
+
+	@Test(expected = MessageTransformationException.class)
+	public void rejectsInvalidJson() {
+		FieldValueCounterHandler handler = new FieldValueCounterHandler(repo, "'langs'", "lang");
+		handler.process(new GenericMessage<String>("{\"lang\":\"fr\", \"text\": }"));
+	}
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2011-2013 the original author or authors.
+ * Copyright 2011-2015 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,12 +16,23 @@
 
 package org.springframework.xd.analytics.metrics.memory;
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
 import org.junit.Before;
+import org.junit.Test;
 
 import org.springframework.xd.analytics.metrics.AbstractAggregateCounterTests;
+import org.springframework.xd.analytics.metrics.core.AggregateCountResolution;
 
 /**
  * @author Luke Taylor
+ * @author Eric Bottard
  */
 public class InMemoryAggregateCounterTests extends AbstractAggregateCounterTests {
 
@@ -29,4 +40,55 @@ public class InMemoryAggregateCounterTests extends AbstractAggregateCounterTests
 	public void createService() {
 		aggregateCounterRepository = new InMemoryAggregateCounterRepository();
 	}
+
+	@Test
+	public void testOnlyRecentMinutesAreRetained() {
+		InMemoryAggregateCounterRepository repository = new InMemoryAggregateCounterRepository();
+		repository.setMinuteRetention(60);
+		final DateTime start = new DateTime(2013, 6, 28, 23, 0, 0, 0);
+		for (int i = 0; i < 90; i++) {
+			repository.increment(counterName, 1, start.plusMinutes(i));
+		}
+		// too old to be retained
+		repository.increment(counterName, 1, start);
+
+		long[] counts = repository.getCounts(counterName, new Interval(start, start.plusMinutes(89)),
+				AggregateCountResolution.minute).getCounts();
+		assertEquals(90, counts.length);
+		for (int i = 0; i < 90; i++) {
+			assertEquals("count at index " + i, i < 30 ? 0 : 1, counts[i]);
+		}
+
+		counts = repository.getCounts(counterName, new Interval(start, start.plusMinutes(89)),
+				AggregateCountResolution.hour).getCounts();
+		assertEquals(61, counts[0]);
+		assertEquals(30, counts[1]);
+		assertEquals(91, repository.findOne(counterName).getValue());
+	}
+
+	@Test
+	public void testConcurrentIncrements() throws Exception {
+		final InMemoryAggregateCounterRepository repository = new InMemoryAggregateCounterRepository();
+		repository.setMinuteRetention(10);
+		final DateTime start = new DateTime(2013, 6, 28, 23, 0, 0, 0);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int t = 0; t < 4; t++) {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					for (int i = 0; i < 10000; i++) {
+						repository.increment(counterName, 1, start.plusMinutes(i % 20));
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(30, TimeUnit.SECONDS);
+
+		assertEquals(40000, repository.findOne(counterName).getValue());
+		long[] counts = repository.getCounts(counterName, new Interval(start, start.plusMinutes(19)),
+				AggregateCountResolution.hour).getCounts();
+		assertEquals(40000, counts[0]);
+	}
 }
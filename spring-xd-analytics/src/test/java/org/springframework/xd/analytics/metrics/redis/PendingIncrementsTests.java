@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.analytics.metrics.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author Eric Bottard
+ */
+public class PendingIncrementsTests {
+
+	@Test
+	public void testCoalesce() {
+		PendingIncrements<String> pending = new PendingIncrements<String>();
+		assertEquals(1L, pending.add("foo", 1L));
+		assertEquals(3L, pending.add("foo", 2L));
+		pending.add("bar", 5L);
+		pending.add("baz", 0L);
+		Map<String, Long> drained = pending.drain();
+		assertEquals(2, drained.size());
+		assertEquals(Long.valueOf(3L), drained.get("foo"));
+		assertEquals(Long.valueOf(5L), drained.get("bar"));
+		assertTrue(pending.isEmpty());
+		assertEquals(1L, pending.add("foo", 1L));
+	}
+
+	@Test
+	public void testNoIncrementLostWhileDraining() throws Exception {
+		final PendingIncrements<String> pending = new PendingIncrements<String>();
+		final int threads = 4;
+		final int iterations = 100000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					for (int i = 0; i < iterations; i++) {
+						pending.add(i % 2 == 0 ? "even" : "odd", 1L);
+					}
+					done.countDown();
+				}
+			});
+		}
+		long total = 0L;
+		while (!done.await(1, TimeUnit.MILLISECONDS)) {
+			total += sum(pending.drain());
+		}
+		total += sum(pending.drain());
+		executor.shutdown();
+		assertEquals((long) threads * iterations, total);
+	}
+
+	private long sum(Map<String, Long> drained) {
+		long result = 0L;
+		for (Long value : drained.values()) {
+			result += value;
+		}
+		return result;
+	}
+
+}
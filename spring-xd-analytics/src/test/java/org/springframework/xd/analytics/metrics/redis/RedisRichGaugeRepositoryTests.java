@@ -27,6 +27,7 @@ import org.junit.runner.RunWith;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.AnnotationConfigContextLoader;
@@ -106,6 +107,64 @@ public class RedisRichGaugeRepositoryTests extends AbstractRichGaugeRepositoryTe
 	}
 
 
+	@Test
+	public void testScriptedUpdatesMatchOptimisticUpdates() {
+		RedisRichGaugeRepository scripted = new RedisRichGaugeRepository(connectionFactory, null);
+		scripted.setScriptedUpdates(true);
+		double[] values = { 3.0D, 1.5D, 42.0D, -7.25D, 0.1D };
+		for (double alpha : new double[] { -1.0D, 0.3D }) {
+			for (double value : values) {
+				repo.recordValue("optimistic", value, alpha);
+				scripted.recordValue("scripted", value, alpha);
+			}
+			RichGauge expected = repo.findOne("optimistic");
+			RichGauge actual = scripted.findOne("scripted");
+			assertThat(actual.getValue(), equalTo(expected.getValue()));
+			assertThat(actual.getAlpha(), equalTo(expected.getAlpha()));
+			assertThat(actual.getAverage(), equalTo(expected.getAverage()));
+			assertThat(actual.getMax(), equalTo(expected.getMax()));
+			assertThat(actual.getMin(), equalTo(expected.getMin()));
+			assertThat(actual.getCount(), equalTo(expected.getCount()));
+			repo.deleteAll();
+		}
+	}
+
+	@Test
+	public void testScriptedUpdateOfStringEncodedGauge() {
+		repo.recordValue("foo", 1.0D, -1.0D);
+		RedisRichGaugeRepository scripted = new RedisRichGaugeRepository(connectionFactory, null);
+		scripted.setScriptedUpdates(true);
+		scripted.recordValue("foo", 42.0D, -1.0D);
+
+		RichGauge result = scripted.findOne("foo");
+		assertThat(result.getAverage(), equalTo(21.5D));
+		assertThat(result.getMax(), equalTo(42.0D));
+		assertThat(result.getCount(), equalTo(2L));
+		assertThat(scripted.findAll().size(), equalTo(1));
+
+		// hash encoded gauges are read without scripted updates too
+		result = repo.findOne("foo");
+		assertThat(result.getAverage(), equalTo(21.5D));
+		assertThat(result.getCount(), equalTo(2L));
+		assertThat(repo.findAll().size(), equalTo(1));
+
+		// and back
+		repo.recordValue("foo", 3.0D, -1.0D);
+		assertThat(scripted.findOne("foo").getMax(), equalTo(42.0D));
+		assertThat(scripted.findOne("foo").getCount(), equalTo(3L));
+	}
+
+	@Test
+	public void testScriptedFindAllSkipsTimeBuckets() {
+		RedisRichGaugeRepository scripted = new RedisRichGaugeRepository(connectionFactory, null);
+		scripted.setScriptedUpdates(true);
+		scripted.recordValue("foo", 1.0D, -1.0D);
+		new StringRedisTemplate(connectionFactory).opsForValue().set("richgauges.foo_2015.01.01-12:00", "1");
+
+		assertThat(scripted.findAll().size(), equalTo(1));
+		assertThat(scripted.findAll().get(0).getName(), equalTo("foo"));
+	}
+
 	@Override
 	protected RichGaugeRepository createService() {
 		return repo;
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.analytics.metrics.redis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.Flushable;
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.xd.analytics.metrics.AbstractAggregateCounterTests;
+import org.springframework.xd.analytics.metrics.common.RedisRepositoriesConfig;
+import org.springframework.xd.test.redis.RedisTestSupport;
+
+/**
+ * Runs the aggregate counter tests against a repository that buffers increments (write-behind).
+ *
+ * @author Eric Bottard
+ */
+@ContextConfiguration(classes = RedisWriteBehindAggregateCounterTests.WriteBehindConfig.class)
+@RunWith(SpringJUnit4ClassRunner.class)
+public class RedisWriteBehindAggregateCounterTests extends AbstractAggregateCounterTests {
+
+	@Rule
+	public RedisTestSupport redisAvailableRule = new RedisTestSupport();
+
+	@Autowired
+	private StringRedisTemplate redisTemplate;
+
+	@Before
+	@After
+	public void beforeAndAfter() {
+		aggregateCounterRepository.delete(counterName);
+	}
+
+	@Test
+	public void testIncrementReturnsTotal() throws Exception {
+		DateTime now = new DateTime();
+		assertEquals(2L, aggregateCounterRepository.increment(counterName, 2L, now));
+		assertEquals(5L, aggregateCounterRepository.increment(counterName, 3L, now));
+		((Flushable) aggregateCounterRepository).flush();
+		assertEquals(5L, aggregateCounterRepository.findOne(counterName).getValue());
+		assertEquals(6L, aggregateCounterRepository.increment(counterName, 1L, now));
+		assertEquals(6L, aggregateCounterRepository.findOne(counterName).getValue());
+	}
+
+	@Test
+	public void testBatchWrittenTwiceIsAppliedOnce() {
+		String key = "test.batch";
+		String marker = IncrementBatch.MARKER_PREFIX + "test-batch.0";
+		redisTemplate.delete(Arrays.asList(key, marker));
+		try {
+			IncrementBatch batch = new IncrementBatch("test-batch");
+			batch.incrBy(key, 2L);
+			batch.execute(redisTemplate);
+			batch.execute(redisTemplate);
+			assertEquals("2", redisTemplate.opsForValue().get(key));
+		}
+		finally {
+			redisTemplate.delete(Arrays.asList(key, marker));
+		}
+	}
+
+	@Configuration
+	public static class WriteBehindConfig extends RedisRepositoriesConfig {
+
+		@Bean
+		@Override
+		public RedisAggregateCounterRepository redisAggregateCounterRepository() {
+			RedisAggregateCounterRepository repository = super.redisAggregateCounterRepository();
+			repository.setFlushInterval(60000L);
+			repository.setFlushSize(7);
+			return repository;
+		}
+	}
+
+}
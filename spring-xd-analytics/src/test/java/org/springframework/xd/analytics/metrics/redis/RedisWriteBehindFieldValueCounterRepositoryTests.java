@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.analytics.metrics.redis;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.xd.analytics.metrics.AbstractFieldValueCounterRepositoryTests;
+import org.springframework.xd.analytics.metrics.common.RedisRepositoriesConfig;
+import org.springframework.xd.test.redis.RedisTestSupport;
+
+/**
+ * Runs the field value counter tests against a repository that buffers increments (write-behind).
+ *
+ * @author Eric Bottard
+ */
+@ContextConfiguration(classes = RedisWriteBehindFieldValueCounterRepositoryTests.WriteBehindConfig.class)
+@RunWith(SpringJUnit4ClassRunner.class)
+public class RedisWriteBehindFieldValueCounterRepositoryTests extends AbstractFieldValueCounterRepositoryTests {
+
+	@Rule
+	public RedisTestSupport redisAvailableRule = new RedisTestSupport();
+
+	@Autowired
+	private StringRedisTemplate stringRedisTemplate;
+
+	@After
+	@Before
+	public void beforeAndAfter() {
+		fieldValueCounterRepository.deleteAll();
+	}
+
+	@Test
+	public void testIncrementsArePreAggregated() {
+		for (int i = 0; i < 5; i++) {
+			fieldValueCounterRepository.increment("hashtags", "spring");
+		}
+		fieldValueCounterRepository.increment("hashtags", "xd");
+		fieldValueCounterRepository.decrement("hashtags", "spring");
+		assertThat(stringRedisTemplate.opsForZSet().score("fieldvaluecounters.hashtags", "spring"), is(nullValue()));
+
+		// 8th increment reaches flushSize
+		fieldValueCounterRepository.increment("hashtags", "xd");
+		assertThat(stringRedisTemplate.opsForZSet().score("fieldvaluecounters.hashtags", "spring"), equalTo(4.0));
+
+		fieldValueCounterRepository.increment("hashtags", "xd");
+		Map<String, Double> counts = fieldValueCounterRepository.findOne("hashtags").getFieldValueCount();
+		assertThat(counts.get("spring"), equalTo(4.0));
+		assertThat(counts.get("xd"), equalTo(3.0));
+	}
+
+	@Configuration
+	public static class WriteBehindConfig extends RedisRepositoriesConfig {
+
+		@Bean
+		@Override
+		public RedisFieldValueCounterRepository redisFieldValueCounterRepository() {
+			RedisFieldValueCounterRepository repository = super.redisFieldValueCounterRepository();
+			repository.setFlushInterval(60000L);
+			repository.setFlushSize(8);
+			return repository;
+		}
+	}
+
+}
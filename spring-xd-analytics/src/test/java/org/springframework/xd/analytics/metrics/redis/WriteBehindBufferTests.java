@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.analytics.metrics.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Eric Bottard
+ */
+public class WriteBehindBufferTests {
+
+	private final List<Map<String, Long>> written = new ArrayList<Map<String, Long>>();
+
+	private final List<String> batchIds = new ArrayList<String>();
+
+	private boolean failing;
+
+	private final WriteBehindBuffer<String> buffer = new WriteBehindBuffer<String>("test-flush-", 60000L, 3) {
+
+		@Override
+		protected void write(Map<String, Long> increments, String batchId) {
+			batchIds.add(batchId);
+			if (failing) {
+				throw new IllegalStateException("planned");
+			}
+			written.add(increments);
+		}
+
+		@Override
+		protected long read(String key) {
+			return 10L;
+		}
+	};
+
+	@After
+	public void tearDown() {
+		failing = false;
+		buffer.close();
+	}
+
+	@Test
+	public void testFailedFlushKeepsIncrements() {
+		buffer.add("foo", 2L);
+		buffer.add("bar", 1L);
+		failing = true;
+		try {
+			buffer.flush();
+			fail("expected the write failure");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+		buffer.add("foo", 1L);
+		assertEquals(13L, buffer.currentValue("foo"));
+		failing = false;
+		buffer.flush();
+		// the failed batch is written again as is, then the newer increments
+		assertEquals(2, written.size());
+		assertEquals(Long.valueOf(2L), written.get(0).get("foo"));
+		assertEquals(Long.valueOf(1L), written.get(0).get("bar"));
+		assertEquals(Long.valueOf(1L), written.get(1).get("foo"));
+		assertEquals(3, batchIds.size());
+		assertEquals(batchIds.get(0), batchIds.get(1));
+		assertFalse(batchIds.get(1).equals(batchIds.get(2)));
+	}
+
+	@Test
+	public void testFailedSizeTriggeredFlushDoesNotFailIncrement() {
+		failing = true;
+		for (int i = 0; i < 3; i++) {
+			buffer.add("foo", 1L);
+			buffer.incremented();
+		}
+		failing = false;
+		buffer.flush();
+		assertEquals(1, written.size());
+		assertEquals(Long.valueOf(3L), written.get(0).get("foo"));
+		assertEquals(10L, buffer.currentValue("foo"));
+	}
+
+}
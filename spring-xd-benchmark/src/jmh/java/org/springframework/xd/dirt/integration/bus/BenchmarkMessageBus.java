@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.bus;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.xd.dirt.integration.bus.serializer.AbstractCodec;
+import org.springframework.xd.dirt.integration.bus.serializer.CompositeCodec;
+import org.springframework.xd.dirt.integration.bus.serializer.kryo.PojoCodec;
+import org.springframework.xd.tuple.Tuple;
+import org.springframework.xd.tuple.serializer.kryo.TupleCodec;
+
+/**
+ * A {@link MessageBusSupport} that binds nothing, used to exercise its (protected) serialization and partitioning
+ * support from benchmarks. Configured with the same codecs as a container.
+ *
+ * @author Eric Bottard
+ */
+public class BenchmarkMessageBus extends MessageBusSupport {
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BenchmarkMessageBus() throws Exception {
+		Map<Class<?>, AbstractCodec<?>> codecs = new HashMap<>();
+		codecs.put(Tuple.class, new TupleCodec());
+		setCodec(new CompositeCodec(codecs, new PojoCodec()));
+		GenericApplicationContext context = new GenericApplicationContext();
+		context.refresh();
+		setApplicationContext(context);
+		setIntegrationEvaluationContext(new StandardEvaluationContext());
+		afterPropertiesSet();
+	}
+
+	@Override
+	public void bindConsumer(String name, MessageChannel channel, Properties properties) {
+	}
+
+	@Override
+	public void bindPubSubConsumer(String name, MessageChannel moduleInputChannel, Properties properties) {
+	}
+
+	@Override
+	public void bindPubSubProducer(String name, MessageChannel moduleOutputChannel, Properties properties) {
+	}
+
+	@Override
+	public void bindProducer(String name, MessageChannel channel, Properties properties) {
+	}
+
+	@Override
+	public void bindRequestor(String name, MessageChannel requests, MessageChannel replies, Properties properties) {
+	}
+
+	@Override
+	public void bindReplier(String name, MessageChannel requests, MessageChannel replies, Properties properties) {
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.bus;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+
+/**
+ * Measures how fast {@link EmbeddedHeadersMessageConverter} embeds headers into, and extracts them from, payloads
+ * sent over buses that don't support headers natively (Redis, Kafka).
+ *
+ * @author Eric Bottard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbeddedHeadersBenchmark {
+
+	@Param({ "json", "binary" })
+	public EmbeddedHeadersMessageConverter.Format format;
+
+	@Param({ "100", "10000" })
+	public int payloadSize;
+
+	private final EmbeddedHeadersMessageConverter converter = new EmbeddedHeadersMessageConverter();
+
+	private MessageValues original;
+
+	private Message<byte[]> embedded;
+
+	@Setup
+	public void setUp() throws Exception {
+		converter.setFormat(format);
+		Message<byte[]> message = MessageBuilder.withPayload(new byte[payloadSize])
+				.setHeader(MessageHeaders.CONTENT_TYPE, "application/x-xd-tuple")
+				.setHeader(XdHeaders.XD_ORIGINAL_CONTENT_TYPE, "application/x-java-object;type=foo.Bar")
+				.setCorrelationId("2a9ba1b0-9f05-4f5a-b5b5-0c5b2e5b2f1e")
+				.setSequenceNumber(3)
+				.setSequenceSize(10)
+				.build();
+		original = new MessageValues(message);
+		embedded = MessageBuilder.withPayload(converter.embedHeaders(original, XdHeaders.STANDARD_HEADERS)).build();
+	}
+
+	@Benchmark
+	public byte[] embed() throws Exception {
+		return converter.embedHeaders(original, XdHeaders.STANDARD_HEADERS);
+	}
+
+	@Benchmark
+	public MessageValues extract() throws Exception {
+		return converter.extractHeaders(embedded, false);
+	}
+
+	@Benchmark
+	public MessageValues extractWithoutCopy() throws Exception {
+		return converter.extractHeaders(embedded, false, false);
+	}
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.bus;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.xd.tuple.TupleBuilder;
+
+/**
+ * Measures the payload (de)serialization done by {@link MessageBusSupport} on either side of a remote bus.
+ *
+ * @author Eric Bottard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBusSupportBenchmark {
+
+	@Param({ "string", "tuple", "pojo" })
+	public String payloadType;
+
+	private BenchmarkMessageBus messageBus;
+
+	private Message<?> message;
+
+	private Message<?> serialized;
+
+	@Setup
+	public void setUp() throws Exception {
+		messageBus = new BenchmarkMessageBus();
+		Object payload;
+		switch (payloadType) {
+			case "string":
+				payload = "{\"id\":\"2a9ba1b0\",\"name\":\"spring-xd\",\"value\":1234,\"tags\":[\"a\",\"b\",\"c\"]}";
+				break;
+			case "tuple":
+				payload = TupleBuilder.tuple().put("id", "2a9ba1b0").put("name", "spring-xd").put("value", 1234)
+						.put("ratio", 0.75d).put("active", true).build();
+				break;
+			default:
+				payload = new Pojo("2a9ba1b0", "spring-xd", 1234);
+		}
+		message = new GenericMessage<Object>(payload);
+		serialized = messageBus.serializePayloadIfNecessary(message).toMessage();
+	}
+
+	@Benchmark
+	public MessageValues serialize() {
+		return messageBus.serializePayloadIfNecessary(message);
+	}
+
+	@Benchmark
+	public MessageValues deserialize() {
+		return messageBus.deserializePayloadIfNecessary(serialized);
+	}
+
+	@Benchmark
+	public MessageValues roundTrip() {
+		return messageBus.deserializePayloadIfNecessary(messageBus.serializePayloadIfNecessary(message).toMessage());
+	}
+
+	public static class Pojo {
+
+		private String id;
+
+		private String name;
+
+		private int value;
+
+		public Pojo() {
+		}
+
+		public Pojo(String id, String name, int value) {
+			this.id = id;
+			this.name = name;
+			this.value = value;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getValue() {
+			return value;
+		}
+
+	}
+
+}
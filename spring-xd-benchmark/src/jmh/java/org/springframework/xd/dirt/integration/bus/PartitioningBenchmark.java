@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.bus;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.xd.dirt.integration.bus.MessageBusSupport.PartitioningMetadata;
+import org.springframework.xd.tuple.Tuple;
+import org.springframework.xd.tuple.TupleBuilder;
+
+/**
+ * Measures {@link MessageBusSupport#determinePartition(Message, PartitioningMetadata)}, which runs for every message
+ * sent by a partitioned producer, for the various ways of extracting the key and selecting the partition.
+ *
+ * @author Eric Bottard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartitioningBenchmark {
+
+	@Param({ "keyExpression", "selectorExpression", "extractorClass", "selectorClass" })
+	public String strategy;
+
+	private BenchmarkMessageBus messageBus;
+
+	private PartitioningMetadata metadata;
+
+	private Message<Tuple> message;
+
+	@Setup
+	public void setUp() throws Exception {
+		messageBus = new BenchmarkMessageBus();
+		Properties properties = new Properties();
+		switch (strategy) {
+			case "keyExpression":
+				properties.setProperty(BusProperties.PARTITION_KEY_EXPRESSION, "payload.getString('id')");
+				break;
+			case "selectorExpression":
+				properties.setProperty(BusProperties.PARTITION_KEY_EXPRESSION, "payload.getString('id')");
+				properties.setProperty(BusProperties.PARTITION_SELECTOR_EXPRESSION, "hashCode()");
+				break;
+			case "extractorClass":
+				properties.setProperty(BusProperties.PARTITION_KEY_EXTRACTOR_CLASS, IdExtractor.class.getName());
+				break;
+			case "selectorClass":
+				properties.setProperty(BusProperties.PARTITION_KEY_EXPRESSION, "payload.getString('id')");
+				properties.setProperty(BusProperties.PARTITION_SELECTOR_CLASS, HashSelector.class.getName());
+				break;
+			default:
+				throw new IllegalArgumentException(strategy);
+		}
+		metadata = new PartitioningMetadata(new AbstractBusPropertiesAccessor(properties) {
+		}, 7);
+		message = new GenericMessage<Tuple>(TupleBuilder.tuple().put("id", "2a9ba1b0").put("value", 1234).build());
+	}
+
+	@Benchmark
+	public int determinePartition() {
+		return messageBus.determinePartition(message, metadata);
+	}
+
+	public static class IdExtractor implements PartitionKeyExtractorStrategy {
+
+		@Override
+		public Object extractKey(Message<?> message) {
+			return ((Tuple) message.getPayload()).getString("id");
+		}
+
+	}
+
+	public static class HashSelector implements PartitionSelectorStrategy {
+
+		@Override
+		public int selectPartition(Object key, int partitionCount) {
+			return key.hashCode();
+		}
+
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.bus.local;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.scheduling.PollerMetadata;
+import org.springframework.integration.support.DefaultMessageBuilderFactory;
+import org.springframework.integration.support.utils.IntegrationUtils;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.PeriodicTrigger;
+import org.springframework.xd.tuple.Tuple;
+import org.springframework.xd.tuple.TupleBuilder;
+
+/**
+ * Measures end to end throughput of the {@link LocalMessageBus}, from a producer's output channel to a consumer's input
+ * channel, either through a direct (same thread) binding or through a named queue.
+ *
+ * @author Eric Bottard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalMessageBusBenchmark {
+
+	private static final int BATCH = 1000;
+
+	@Param({ "direct", "queue" })
+	public String binding;
+
+	private final DirectChannel output = new DirectChannel();
+
+	private final DirectChannel input = new DirectChannel();
+
+	private final Message<Tuple> message = new GenericMessage<Tuple>(TupleBuilder.tuple().put("id", "2a9ba1b0")
+			.put("value", 1234).build());
+
+	private volatile CountDownLatch latch;
+
+	private GenericApplicationContext context;
+
+	private ThreadPoolTaskScheduler scheduler;
+
+	private LocalMessageBus messageBus;
+
+	private String name;
+
+	@Setup
+	public void setUp() throws Exception {
+		context = new GenericApplicationContext();
+		context.getBeanFactory().registerSingleton(IntegrationUtils.INTEGRATION_MESSAGE_BUILDER_FACTORY_BEAN_NAME,
+				new DefaultMessageBuilderFactory());
+		scheduler = new ThreadPoolTaskScheduler();
+		scheduler.initialize();
+		context.getBeanFactory().registerSingleton("taskScheduler", scheduler);
+		context.refresh();
+
+		messageBus = new LocalMessageBus();
+		messageBus.setApplicationContext(context);
+		PollerMetadata poller = new PollerMetadata();
+		poller.setTrigger(new PeriodicTrigger(0));
+		poller.setMaxMessagesPerPoll(-1);
+		poller.setReceiveTimeout(1000);
+		messageBus.setPoller(poller);
+		messageBus.afterPropertiesSet();
+
+		input.subscribe(new MessageHandler() {
+
+			@Override
+			public void handleMessage(Message<?> message) throws MessagingException {
+				latch.countDown();
+			}
+		});
+		name = "queue".equals(binding) ? "queue:benchmark" : "benchmark.0";
+		messageBus.bindConsumer(name, input, new Properties());
+		messageBus.bindProducer(name, output, new Properties());
+	}
+
+	@TearDown
+	public void tearDown() {
+		messageBus.unbindProducers(name);
+		messageBus.unbindConsumers(name);
+		context.close();
+		scheduler.shutdown();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void sendAndReceive() throws InterruptedException {
+		latch = new CountDownLatch(BATCH);
+		for (int i = 0; i < BATCH; i++) {
+			output.send(message);
+		}
+		latch.await();
+	}
+
+}
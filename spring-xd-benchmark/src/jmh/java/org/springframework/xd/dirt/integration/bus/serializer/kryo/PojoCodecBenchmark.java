@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.bus.serializer.kryo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures round trips of a plain object through {@link PojoCodec}.
+ *
+ * @author Eric Bottard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PojoCodecBenchmark {
+
+	private final PojoCodec pojoCodec = new PojoCodec();
+
+	private Pojo pojo;
+
+	private byte[] pojoBytes;
+
+	@Setup
+	public void setUp() throws IOException {
+		pojo = new Pojo("2a9ba1b0", "spring-xd", 1234, new ArrayList<String>(Arrays.asList("a", "b", "c")));
+		pojoBytes = pojoCodec.serialize(pojo);
+	}
+
+	@Benchmark
+	public byte[] serializePojo() throws IOException {
+		return pojoCodec.serialize(pojo);
+	}
+
+	@Benchmark
+	public Object deserializePojo() throws IOException {
+		return pojoCodec.deserialize(pojoBytes, Pojo.class);
+	}
+
+	@Benchmark
+	public Object roundTripPojo() throws IOException {
+		return pojoCodec.deserialize(pojoCodec.serialize(pojo), Pojo.class);
+	}
+
+	public static class Pojo {
+
+		private String id;
+
+		private String name;
+
+		private int value;
+
+		private List<String> tags;
+
+		public Pojo() {
+		}
+
+		public Pojo(String id, String name, int value, List<String> tags) {
+			this.id = id;
+			this.name = name;
+			this.value = value;
+			this.tags = tags;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getValue() {
+			return value;
+		}
+
+		public List<String> getTags() {
+			return tags;
+		}
+
+	}
+
+}
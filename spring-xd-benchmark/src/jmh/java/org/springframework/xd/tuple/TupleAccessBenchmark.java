@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.tuple;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link DefaultTuple} creation and field access, by name and by index, for tuples of varying width.
+ *
+ * @author Eric Bottard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TupleAccessBenchmark {
+
+	@Param({ "4", "32" })
+	public int fieldCount;
+
+	private Tuple tuple;
+
+	private String lastField;
+
+	@Setup
+	public void setUp() {
+		TupleBuilder builder = TupleBuilder.tuple();
+		for (int i = 0; i < fieldCount; i++) {
+			builder.put("field" + i, i);
+		}
+		tuple = builder.build();
+		lastField = "field" + (fieldCount - 1);
+	}
+
+	@Benchmark
+	public Object getValueByName() {
+		return tuple.getValue(lastField);
+	}
+
+	@Benchmark
+	public Object getValueByIndex() {
+		return tuple.getValue(fieldCount - 1);
+	}
+
+	@Benchmark
+	public int getIntByName() {
+		return tuple.getInt(lastField);
+	}
+
+	@Benchmark
+	public String getStringByName() {
+		return tuple.getString(lastField);
+	}
+
+	@Benchmark
+	public boolean hasFieldName() {
+		return tuple.hasFieldName(lastField);
+	}
+
+	@Benchmark
+	public Tuple create() {
+		return TupleBuilder.tuple().put("id", "2a9ba1b0").put("value", 1234).put("ratio", 0.75d).build();
+	}
+
+}
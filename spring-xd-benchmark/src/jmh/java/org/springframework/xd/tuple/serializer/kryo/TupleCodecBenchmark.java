@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.tuple.serializer.kryo;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.xd.tuple.Tuple;
+import org.springframework.xd.tuple.TupleBuilder;
+
+/**
+ * Measures round trips through {@link TupleCodec}, with and without the schema encoding.
+ *
+ * @author Eric Bottard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TupleCodecBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean tupleSchemaEncoding;
+
+	private TupleCodec tupleCodec;
+
+	private Tuple tuple;
+
+	private byte[] tupleBytes;
+
+	@Setup
+	public void setUp() throws IOException {
+		tupleCodec = new TupleCodec(tupleSchemaEncoding);
+		tuple = TupleBuilder.tuple().put("id", "2a9ba1b0").put("name", "spring-xd").put("value", 1234)
+				.put("ratio", 0.75d).put("active", true).put("count", 42L)
+				.put("nested", TupleBuilder.tuple().put("lat", 48.85d).put("lon", 2.35d).build())
+				.build();
+		tupleBytes = tupleCodec.serialize(tuple);
+	}
+
+	@Benchmark
+	public byte[] serializeTuple() throws IOException {
+		return tupleCodec.serialize(tuple);
+	}
+
+	@Benchmark
+	public Tuple deserializeTuple() throws IOException {
+		return tupleCodec.deserialize(tupleBytes);
+	}
+
+	@Benchmark
+	public Tuple roundTripTuple() throws IOException {
+		return tupleCodec.deserialize(tupleCodec.serialize(tuple));
+	}
+
+}
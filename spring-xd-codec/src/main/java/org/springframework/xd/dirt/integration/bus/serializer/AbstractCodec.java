@@ -17,6 +17,7 @@
 package org.springframework.xd.dirt.integration.bus.serializer;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import org.springframework.core.serializer.Deserializer;
@@ -39,4 +40,28 @@ public abstract class AbstractCodec<T> implements Serializer<T>, Deserializer<T>
 	public T deserialize(byte[] bytes) throws IOException {
 		return deserialize(new ByteArrayInputStream(bytes));
 	}
+
+	/**
+	 * Deserialize a region of a byte array.
+	 * 
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 */
+	public T deserialize(byte[] bytes, int offset, int length) throws IOException {
+		return deserialize(new ByteArrayInputStream(bytes, offset, length));
+	}
+
+	/**
+	 * Serialize an object to a byte array.
+	 * 
+	 * @param object
+	 * @throws IOException
+	 */
+	public byte[] serialize(T object) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		serialize(object, bos);
+		return bos.toByteArray();
+	}
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.bus.serializer;
+
+import java.io.IOException;
+
+
+/**
+ * A {@link MultiTypeCodec} that can also work on byte arrays directly, without going through streams. Callers should
+ * check for this interface and fall back to the stream based methods of {@link MultiTypeCodec} otherwise.
+ * @author Eric Bottard
+ */
+public interface ByteArrayMultiTypeCodec<T> extends MultiTypeCodec<T> {
+
+	/**
+	 * Deserialize an object of a given type from a region of a byte array, without copying it
+	 * @param bytes the byte array containing the serialized object
+	 * @param offset the offset of the serialized object in the array
+	 * @param length the length of the serialized object
+	 * @param type the object's class
+	 * @return the object
+	 * @throws IOException
+	 */
+	public abstract T deserialize(byte[] bytes, int offset, int length, Class<? extends T> type) throws IOException;
+
+	/**
+	 * Serialize an object to an exactly sized byte array
+	 * @param object the object to be serialized
+	 * @return the serialized bytes
+	 * @throws IOException
+	 */
+	public abstract byte[] serialize(T object) throws IOException;
+}
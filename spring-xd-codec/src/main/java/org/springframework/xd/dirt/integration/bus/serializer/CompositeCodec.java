@@ -17,6 +17,7 @@
 package org.springframework.xd.dirt.integration.bus.serializer;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -31,7 +32,7 @@ import org.springframework.util.Assert;
  * 
  * @author David Turanski
  */
-public class CompositeCodec<P> implements MultiTypeCodec<Object> {
+public class CompositeCodec<P> implements ByteArrayMultiTypeCodec<Object> {
 
 	private final MultiTypeCodec<P> defaultCodec;
 
@@ -75,7 +76,40 @@ public class CompositeCodec<P> implements MultiTypeCodec<Object> {
 
 	@Override
 	public Object deserialize(byte[] bytes, Class<?> type) throws IOException {
-		return deserialize(new ByteArrayInputStream(bytes), type);
+		return deserialize(bytes, 0, bytes.length, type);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Object deserialize(byte[] bytes, int offset, int length, Class<?> type) throws IOException {
+		AbstractCodec<P> codec = findDelegate(type);
+		if (codec != null) {
+			return codec.deserialize(bytes, offset, length);
+		}
+		else if (defaultCodec instanceof ByteArrayMultiTypeCodec) {
+			return ((ByteArrayMultiTypeCodec<P>) defaultCodec).deserialize(bytes, offset, length, (Class<P>) type);
+		}
+		else {
+			return defaultCodec.deserialize(new ByteArrayInputStream(bytes, offset, length), (Class<P>) type);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public byte[] serialize(Object object) throws IOException {
+		Assert.notNull(object, "cannot serialize a null object");
+		AbstractCodec<P> codec = findDelegate(object.getClass());
+		if (codec != null) {
+			return codec.serialize((P) object);
+		}
+		else if (defaultCodec instanceof ByteArrayMultiTypeCodec) {
+			return ((ByteArrayMultiTypeCodec<P>) defaultCodec).serialize((P) object);
+		}
+		else {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			defaultCodec.serialize((P) object, bos);
+			return bos.toByteArray();
+		}
 	}
 
 	private AbstractCodec<P> findDelegate(Class<?> type) {
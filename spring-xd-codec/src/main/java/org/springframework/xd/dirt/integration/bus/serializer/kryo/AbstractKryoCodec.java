@@ -16,7 +16,6 @@
 
 package org.springframework.xd.dirt.integration.bus.serializer.kryo;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -49,10 +48,30 @@ public abstract class AbstractKryoCodec<T> extends AbstractCodec<T> {
 	protected final static int LONG_REGISTRATION_ID = 44;
 	
 
+	private static final int BUFFER_SIZE = 4096;
+
+	/**
+	 * Buffers that grew larger than this (to serialize an unusually large object) are not kept for reuse.
+	 */
+	private static final int MAX_REUSABLE_BUFFER_SIZE = 1024 * 1024;
+
+	private static final byte[] NO_BYTES = new byte[0];
+
 	private final KryoFactory factory;
 
 	protected final KryoPool pool;
 
+	/*
+	 * Kryo Output/Input instances, and their buffers, are reused by the thread that borrowed a Kryo instance from
+	 * the pool. An instance is removed from its ThreadLocal while in use, so that a nested (re-entrant) call on the
+	 * same thread gets a fresh one instead of corrupting it.
+	 */
+	private final ThreadLocal<Output> outputs = new ThreadLocal<Output>();
+
+	private final ThreadLocal<Input> streamInputs = new ThreadLocal<Input>();
+
+	private final ThreadLocal<Input> arrayInputs = new ThreadLocal<Input>();
+
 	protected AbstractKryoCodec() {
 		factory = new KryoFactory() {
 			public Kryo create() {
@@ -76,16 +95,46 @@ public abstract class AbstractKryoCodec<T> extends AbstractCodec<T> {
 	@Override
 	public void serialize(final T object, OutputStream outputStream) throws IOException {
 		Assert.notNull(outputStream, "'outputSteam' cannot be null");
-		final Output output = new Output(outputStream);
-		pool.run(new KryoCallback<Object>() {
-			@Override
-			public Object execute(Kryo kryo) {
-				doSerialize(kryo, object, output);
-				return Void.class;
-			}
-		});
+		final Output output = borrowOutput();
+		try {
+			output.setOutputStream(outputStream);
+			pool.run(new KryoCallback<Object>() {
+				@Override
+				public Object execute(Kryo kryo) {
+					doSerialize(kryo, object, output);
+					return Void.class;
+				}
+			});
+			output.close();
+		}
+		finally {
+			releaseOutput(output);
+		}
+	}
 
-		output.close();
+	/**
+	 * Serialize an object to an exactly sized byte array, using a reusable buffer
+	 *
+	 * @param object the object to be serialized
+	 * @return the serialized bytes
+	 * @throws IOException
+	 */
+	@Override
+	public byte[] serialize(final T object) throws IOException {
+		final Output output = borrowOutput();
+		try {
+			pool.run(new KryoCallback<Object>() {
+				@Override
+				public Object execute(Kryo kryo) {
+					doSerialize(kryo, object, output);
+					return Void.class;
+				}
+			});
+			return output.toBytes();
+		}
+		finally {
+			releaseOutput(output);
+		}
 	}
 
 	/**
@@ -97,15 +146,20 @@ public abstract class AbstractKryoCodec<T> extends AbstractCodec<T> {
 	 */
 	@Override
 	public T deserialize(InputStream inputStream) throws IOException {
-		final Input input = new Input(inputStream);
-		T result = pool.run(new KryoCallback<T>() {
-			@Override
-			public T execute(Kryo kryo) {
-				return doDeserialize(kryo, input);
-			}
-		});
-		input.close();
-		return result;
+		final Input input = borrowInput(inputStream);
+		try {
+			T result = pool.run(new KryoCallback<T>() {
+				@Override
+				public T execute(Kryo kryo) {
+					return doDeserialize(kryo, input);
+				}
+			});
+			input.close();
+			return result;
+		}
+		finally {
+			releaseInput(input);
+		}
 	}
 
 	/**
@@ -117,7 +171,93 @@ public abstract class AbstractKryoCodec<T> extends AbstractCodec<T> {
 	 */
 	@Override
 	public T deserialize(byte[] bytes) throws IOException {
-		return deserialize(new ByteArrayInputStream(bytes));
+		return deserialize(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Deserialize an object when the type is known, reading directly from the array
+	 *
+	 * @param bytes the byte array containing the serialized object
+	 * @param offset the offset of the serialized object in the array
+	 * @param length the length of the serialized object
+	 * @return the object
+	 * @throws IOException
+	 */
+	@Override
+	public T deserialize(byte[] bytes, int offset, int length) throws IOException {
+		final Input input = borrowInput(bytes, offset, length);
+		try {
+			return pool.run(new KryoCallback<T>() {
+				@Override
+				public T execute(Kryo kryo) {
+					return doDeserialize(kryo, input);
+				}
+			});
+		}
+		finally {
+			releaseInput(input);
+		}
+	}
+
+	/**
+	 * Obtain an {@link Input} reading from the stream; must be handed back with {@link #releaseInput(Input)}.
+	 */
+	protected Input borrowInput(InputStream inputStream) {
+		Input input = this.streamInputs.get();
+		if (input == null) {
+			input = new Input(BUFFER_SIZE);
+		}
+		else {
+			this.streamInputs.set(null);
+		}
+		input.setInputStream(inputStream);
+		return input;
+	}
+
+	/**
+	 * Obtain an {@link Input} reading from the array region; must be handed back with {@link #releaseInput(Input)}.
+	 */
+	protected Input borrowInput(byte[] bytes, int offset, int length) {
+		Input input = this.arrayInputs.get();
+		if (input == null) {
+			input = new Input();
+		}
+		else {
+			this.arrayInputs.set(null);
+		}
+		input.setBuffer(bytes, offset, length);
+		return input;
+	}
+
+	protected void releaseInput(Input input) {
+		if (input.getInputStream() != null) {
+			input.setInputStream(null);
+			if (input.getBuffer().length <= MAX_REUSABLE_BUFFER_SIZE) {
+				this.streamInputs.set(input);
+			}
+		}
+		else {
+			// don't hold on to the caller's array
+			input.setBuffer(NO_BYTES);
+			this.arrayInputs.set(input);
+		}
+	}
+
+	private Output borrowOutput() {
+		Output output = this.outputs.get();
+		if (output == null) {
+			return new Output(BUFFER_SIZE, -1);
+		}
+		this.outputs.set(null);
+		output.clear();
+		return output;
+	}
+
+	private void releaseOutput(Output output) {
+		output.setOutputStream(null);
+		if (output.getBuffer().length <= MAX_REUSABLE_BUFFER_SIZE) {
+			this.outputs.set(output);
+		}
 	}
 
 	protected abstract void doSerialize(Kryo kryo, T object, Output output);
@@ -16,12 +16,11 @@
 
 package org.springframework.xd.dirt.integration.bus.serializer.kryo;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.ParameterizedType;
 
-import org.springframework.xd.dirt.integration.bus.serializer.MultiTypeCodec;
+import org.springframework.xd.dirt.integration.bus.serializer.ByteArrayMultiTypeCodec;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
@@ -33,7 +32,7 @@ import com.esotericsoftware.kryo.pool.KryoCallback;
  * @author David Turanski
  * @since 1.0
  */
-abstract class AbstractKryoMultiTypeCodec<T> extends AbstractKryoCodec<T> implements MultiTypeCodec<T> {
+abstract class AbstractKryoMultiTypeCodec<T> extends AbstractKryoCodec<T> implements ByteArrayMultiTypeCodec<T> {
 
 	/**
 	 * Deserialize an object of a given type
@@ -45,7 +44,34 @@ abstract class AbstractKryoMultiTypeCodec<T> extends AbstractKryoCodec<T> implem
 	 */
 	@Override
 	public T deserialize(byte[] bytes, Class<? extends T> type) throws IOException {
-		return deserialize(new ByteArrayInputStream(bytes), type);
+		return deserialize(bytes, 0, bytes.length, type);
+	}
+
+	/**
+	 * Deserialize an object of a given type, reading directly from the array
+	 *
+	 * @param bytes the byte array containing the serialized object
+	 * @param offset the offset of the serialized object in the array
+	 * @param length the length of the serialized object
+	 * @param type the object's class
+	 * @return the object
+	 * @throws IOException
+	 */
+	@Override
+	public T deserialize(byte[] bytes, int offset, int length, final Class<? extends T> type) throws IOException {
+		final Input input = borrowInput(bytes, offset, length);
+		try {
+			return pool.run(new KryoCallback<T>() {
+
+				@Override
+				public T execute(Kryo kryo) {
+					return doDeserialize(kryo, input, type);
+				}
+			});
+		}
+		finally {
+			releaseInput(input);
+		}
 	}
 
 	/**
@@ -57,16 +83,21 @@ abstract class AbstractKryoMultiTypeCodec<T> extends AbstractKryoCodec<T> implem
 	 */
 	@Override
 	public T deserialize(InputStream inputStream, final Class<? extends T> type) throws IOException {
-		final Input input = new Input(inputStream);
-		T result = pool.run(new KryoCallback<T>() {
+		final Input input = borrowInput(inputStream);
+		try {
+			T result = pool.run(new KryoCallback<T>() {
 
-			@Override
-			public T execute(Kryo kryo) {
-				return doDeserialize(kryo, input, type);
-			}
-		});
-		input.close();
-		return result;
+				@Override
+				public T execute(Kryo kryo) {
+					return doDeserialize(kryo, input, type);
+				}
+			});
+			input.close();
+			return result;
+		}
+		finally {
+			releaseInput(input);
+		}
 	}
 
 	/**
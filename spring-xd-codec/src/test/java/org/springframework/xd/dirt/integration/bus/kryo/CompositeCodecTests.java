@@ -20,6 +20,8 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -27,6 +29,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import org.springframework.xd.dirt.integration.bus.serializer.AbstractCodec;
+import org.springframework.xd.dirt.integration.bus.serializer.ByteArrayMultiTypeCodec;
 import org.springframework.xd.dirt.integration.bus.serializer.CompositeCodec;
 import org.springframework.xd.dirt.integration.bus.serializer.MultiTypeCodec;
 import org.springframework.xd.dirt.integration.bus.serializer.kryo.PojoCodec;
@@ -57,6 +60,48 @@ public class CompositeCodecTests {
 		assertEquals(foo, foo2);
 	}
 
+	@Test
+	public void testPojoByteArraySerialization() throws IOException {
+		ByteArrayMultiTypeCodec<Object> arrayCodec = (ByteArrayMultiTypeCodec<Object>) codec;
+		SomeClassWithNoDefaultConstructors foo = new SomeClassWithNoDefaultConstructors("hello", 123);
+		byte[] bytes = arrayCodec.serialize(foo);
+		SomeClassWithNoDefaultConstructors foo2 = (SomeClassWithNoDefaultConstructors) arrayCodec.deserialize(
+				bytes, 0, bytes.length,
+				SomeClassWithNoDefaultConstructors.class);
+		assertEquals(foo, foo2);
+	}
+
+	@Test
+	public void testByteArraySerializationWithStreamOnlyDefaultCodec() throws IOException {
+		final PojoCodec pojoCodec = new PojoCodec();
+		CompositeCodec<Object> arrayCodec = new CompositeCodec<Object>(new MultiTypeCodec<Object>() {
+
+			@Override
+			public void serialize(Object object, OutputStream outputStream) throws IOException {
+				pojoCodec.serialize(object, outputStream);
+			}
+
+			@Override
+			public Object deserialize(InputStream inputStream, Class<? extends Object> type) throws IOException {
+				return pojoCodec.deserialize(inputStream, type);
+			}
+
+			@Override
+			public Object deserialize(byte[] bytes, Class<? extends Object> type) throws IOException {
+				return pojoCodec.deserialize(bytes, type);
+			}
+
+		});
+		SomeClassWithNoDefaultConstructors foo = new SomeClassWithNoDefaultConstructors("hello", 123);
+		byte[] serialized = arrayCodec.serialize(foo);
+		byte[] bytes = new byte[serialized.length + 1];
+		System.arraycopy(serialized, 0, bytes, 1, serialized.length);
+		SomeClassWithNoDefaultConstructors foo2 = (SomeClassWithNoDefaultConstructors) arrayCodec.deserialize(
+				bytes, 1, serialized.length,
+				SomeClassWithNoDefaultConstructors.class);
+		assertEquals(foo, foo2);
+	}
+
 	static class SomeClassWithNoDefaultConstructors {
 
 		private String val1;
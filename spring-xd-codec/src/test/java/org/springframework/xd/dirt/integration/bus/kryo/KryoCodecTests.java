@@ -16,8 +16,10 @@
 
 package org.springframework.xd.dirt.integration.bus.kryo;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -157,6 +159,34 @@ public class KryoCodecTests {
 
 
 
+	@Test
+	public void testByteArraySerialization() throws IOException {
+		PojoCodec serializer = new PojoCodec();
+		SomeClassWithNoDefaultConstructors foo = new SomeClassWithNoDefaultConstructors("foo", 123);
+		byte[] bytes = serializer.serialize(foo);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		serializer.serialize(foo, bos);
+		assertArrayEquals(bos.toByteArray(), bytes);
+
+		byte[] padded = new byte[bytes.length + 4];
+		System.arraycopy(bytes, 0, padded, 2, bytes.length);
+		Object foo2 = serializer.deserialize(padded, 2, bytes.length, SomeClassWithNoDefaultConstructors.class);
+		assertEquals(foo, foo2);
+	}
+
+	@Test
+	public void testBuffersReused() throws IOException {
+		StringCodec serializer = new StringCodec();
+		// grow the reused buffer, then make sure a shorter value isn't polluted by leftovers
+		String big = new String(new char[10000]).replace('\0', 'x');
+		assertEquals(big, serializer.deserialize(serializer.serialize(big)));
+		assertEquals("hello", serializer.deserialize(serializer.serialize("hello")));
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		serializer.serialize("world", bos);
+		assertEquals("world", serializer.deserialize(new ByteArrayInputStream(bos.toByteArray())));
+		assertEquals("world", serializer.deserialize(bos.toByteArray()));
+	}
+
 	static class Foo {
 
 		private Map<Object, Object> map;
@@ -37,6 +37,7 @@ import org.springframework.util.StringUtils;
  * @author David Turanski
  * @author Ilayaperumal Gopinathan
  * @author Gary Russell
+ * @author Eric Bottard
  */
 public class ContainerAttributes implements Map<String, String>, Comparable<ContainerAttributes> {
 
@@ -52,6 +53,31 @@ public class ContainerAttributes implements Map<String, String>, Comparable<Cont
 
 	public final static String MGMT_PORT_KEY = "managementPort";
 
+	/**
+	 * Number of modules deployed to the container, as of its last heartbeat.
+	 */
+	public final static String MODULE_COUNT_KEY = "moduleCount";
+
+	/**
+	 * System load average per available processor, as of the container's last heartbeat.
+	 */
+	public final static String CPU_LOAD_KEY = "cpuLoad";
+
+	/**
+	 * Ratio of used to maximum heap memory, as of the container's last heartbeat.
+	 */
+	public final static String HEAP_USAGE_KEY = "heapUsage";
+
+	/**
+	 * Sum of the mean send rates of the input channels of the container's modules, as of its last heartbeat.
+	 */
+	public final static String MESSAGE_RATE_KEY = "messageRate";
+
+	/**
+	 * Time (in milliseconds since the epoch) of the container's last heartbeat.
+	 */
+	public final static String HEARTBEAT_KEY = "heartbeat";
+
 	private final List<String> commonAttributeKeys = Arrays.asList(CONTAINER_ID_KEY, PROCESS_ID_KEY,
 			HOST_KEY, IP_ADDRESS_KEY, GROUPS_KEY);
 
@@ -111,6 +137,66 @@ public class ContainerAttributes implements Map<String, String>, Comparable<Cont
 		return Integer.parseInt(this.get(PROCESS_ID_KEY));
 	}
 
+	/**
+	 * Return the number of modules deployed to this container, or {@code null} if not published (or not a number).
+	 */
+	public Integer getModuleCount() {
+		Long value = getLong(MODULE_COUNT_KEY);
+		return value == null ? null : value.intValue();
+	}
+
+	/**
+	 * Return the system load average per processor of this container, or {@code null} if not published (or not a
+	 * number).
+	 */
+	public Double getCpuLoad() {
+		return getDouble(CPU_LOAD_KEY);
+	}
+
+	/**
+	 * Return the ratio of used to maximum heap memory of this container, or {@code null} if not published (or not a
+	 * number).
+	 */
+	public Double getHeapUsage() {
+		return getDouble(HEAP_USAGE_KEY);
+	}
+
+	/**
+	 * Return the total message rate of the modules of this container, or {@code null} if not published (or not a
+	 * number).
+	 */
+	public Double getMessageRate() {
+		return getDouble(MESSAGE_RATE_KEY);
+	}
+
+	/**
+	 * Return the time in milliseconds of the last heartbeat of this container, or {@code null} if it never published
+	 * one.
+	 */
+	public Long getHeartbeat() {
+		return getLong(HEARTBEAT_KEY);
+	}
+
+	private Double getDouble(String key) {
+		String value = this.get(key);
+		try {
+			return value == null ? null : Double.valueOf(value);
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private Long getLong(String key) {
+		String value = this.get(key);
+		try {
+			return value == null ? null : Long.valueOf(value);
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
 	public Set<String> getGroups() {
 		Set<String> groupSet;
 		String groups = this.get(GROUPS_KEY);
@@ -138,6 +224,35 @@ public class ContainerAttributes implements Map<String, String>, Comparable<Cont
 		return this;
 	}
 
+	/**
+	 * Set the load figures published on a heartbeat. A {@code null} figure is removed from the attributes.
+	 *
+	 * @param moduleCount the number of deployed modules
+	 * @param cpuLoad the system load average per processor
+	 * @param heapUsage the ratio of used to maximum heap memory
+	 * @param messageRate the total message rate of the deployed modules
+	 * @param heartbeat the time of the heartbeat
+	 * @return these attributes
+	 */
+	public ContainerAttributes setLoad(Integer moduleCount, Double cpuLoad, Double heapUsage, Double messageRate,
+			long heartbeat) {
+		putOrRemove(MODULE_COUNT_KEY, moduleCount);
+		putOrRemove(CPU_LOAD_KEY, cpuLoad);
+		putOrRemove(HEAP_USAGE_KEY, heapUsage);
+		putOrRemove(MESSAGE_RATE_KEY, messageRate);
+		this.put(HEARTBEAT_KEY, String.valueOf(heartbeat));
+		return this;
+	}
+
+	private void putOrRemove(String key, Object value) {
+		if (value == null) {
+			this.remove(key);
+		}
+		else {
+			this.put(key, String.valueOf(value));
+		}
+	}
+
 	/**
 	 * Retrieve the custom attributes for this container. This will not include the values for common keys:
 	 * {@value #CONTAINER_ID_KEY}, {@value #PROCESS_ID_KEY}, {@value #HOST_KEY}, {@value #IP_ADDRESS_KEY} and
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.cluster;
+
+import java.util.HashMap;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Snapshot of the message rates of a deployed module, as pushed by containers to the admin. A snapshot is written in
+ * the compact form {@code inputRate,outputRate,errorCount}, where a rate is empty if the module has no such channel.
+ *
+ * @author Eric Bottard
+ */
+public class ModuleMessageRates {
+
+	/**
+	 * Key of the mean send rate of the input channel in {@link #toMap()}.
+	 */
+	public static final String INPUT_KEY = "input";
+
+	/**
+	 * Key of the mean send rate of the output channel in {@link #toMap()}.
+	 */
+	public static final String OUTPUT_KEY = "output";
+
+	/**
+	 * Key of the number of send errors of the input and output channels in {@link #toMap()}.
+	 */
+	public static final String ERRORS_KEY = "errors";
+
+	private final Double input;
+
+	private final Double output;
+
+	private final long errors;
+
+	/**
+	 * Construct a snapshot.
+	 *
+	 * @param input mean send rate of the input channel; may be null
+	 * @param output mean send rate of the output channel; may be null
+	 * @param errors number of send errors of the input and output channels
+	 */
+	public ModuleMessageRates(Double input, Double output, long errors) {
+		this.input = input;
+		this.output = output;
+		this.errors = errors;
+	}
+
+	/**
+	 * Parse a snapshot written by {@link #toString()}.
+	 *
+	 * @param value the compact form of the snapshot
+	 * @return the snapshot
+	 * @throws IllegalArgumentException if the value is not a snapshot
+	 */
+	public static ModuleMessageRates parse(String value) {
+		String[] parts = StringUtils.delimitedListToStringArray(value, ",");
+		if (parts.length != 3) {
+			throw new IllegalArgumentException("Not a module message rates snapshot: " + value);
+		}
+		try {
+			return new ModuleMessageRates(parseRate(parts[0]), parseRate(parts[1]), Long.parseLong(parts[2]));
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a module message rates snapshot: " + value, e);
+		}
+	}
+
+	private static Double parseRate(String rate) {
+		return rate.isEmpty() ? null : Double.valueOf(rate);
+	}
+
+	public Double getInput() {
+		return input;
+	}
+
+	public Double getOutput() {
+		return output;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Return this snapshot in the form exposed by the containers REST endpoint.
+	 */
+	public HashMap<String, Double> toMap() {
+		HashMap<String, Double> map = new HashMap<String, Double>();
+		if (input != null) {
+			map.put(INPUT_KEY, input);
+		}
+		if (output != null) {
+			map.put(OUTPUT_KEY, output);
+		}
+		map.put(ERRORS_KEY, (double) errors);
+		return map;
+	}
+
+	/**
+	 * Return the compact form of this snapshot.
+	 */
+	@Override
+	public String toString() {
+		return (input == null ? "" : input.toString()) + ',' + (output == null ? "" : output.toString()) + ','
+				+ errors;
+	}
+
+}
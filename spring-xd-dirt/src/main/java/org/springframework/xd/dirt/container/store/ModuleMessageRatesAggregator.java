@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.container.store;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.utils.ThreadUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.ContextStoppedEvent;
+import org.springframework.util.Assert;
+import org.springframework.xd.dirt.cluster.ModuleMessageRates;
+import org.springframework.xd.dirt.zookeeper.Paths;
+import org.springframework.xd.dirt.zookeeper.ZooKeeperConnection;
+import org.springframework.xd.dirt.zookeeper.ZooKeeperUtils;
+
+/**
+ * Keeps in memory the snapshots of module message rates that containers push under {@link Paths#METRICS} on each
+ * heartbeat, so that listing containers does not require a request to each of them.
+ *
+ * @author Eric Bottard
+ */
+public class ModuleMessageRatesAggregator implements ApplicationListener<ApplicationEvent> {
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final ZooKeeperConnection zkConnection;
+
+	/**
+	 * Atomic reference to the {@link PathChildrenCache} for the snapshots under the {@link Paths#METRICS} node. This
+	 * reference should <em>not</em> be used directly; instead use {@link #ensureCache} to ensure the cache is
+	 * initialized.
+	 */
+	private final AtomicReference<PathChildrenCache> cacheRef = new AtomicReference<PathChildrenCache>();
+
+	/**
+	 * Construct a {@code ModuleMessageRatesAggregator}.
+	 *
+	 * @param zkConnection the ZooKeeper connection
+	 */
+	@Autowired
+	public ModuleMessageRatesAggregator(ZooKeeperConnection zkConnection) {
+		this.zkConnection = zkConnection;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void onApplicationEvent(ApplicationEvent event) {
+		if (event instanceof ContextStoppedEvent || event instanceof ContextClosedEvent) {
+			closeCache();
+		}
+	}
+
+	/**
+	 * Return the message rates last pushed by the given container, keyed by module, in the form expected by
+	 * {@link DetailedContainer#setMessageRates(Map)}.
+	 *
+	 * @param containerId the container id
+	 * @return the message rates, or {@code null} if the container did not push any
+	 */
+	public Map<String, HashMap<String, Double>> getMessageRates(String containerId) {
+		ChildData data = ensureCache().getCurrentData(Paths.build(Paths.METRICS, containerId));
+		if (data == null || data.getData() == null) {
+			return null;
+		}
+		Map<String, HashMap<String, Double>> messageRates = new HashMap<String, HashMap<String, Double>>();
+		for (Map.Entry<String, String> entry : ZooKeeperUtils.bytesToMap(data.getData()).entrySet()) {
+			try {
+				messageRates.put(entry.getKey(), ModuleMessageRates.parse(entry.getValue()).toMap());
+			}
+			catch (IllegalArgumentException e) {
+				logger.debug("Ignoring message rates of module {} in container {}: {}", entry.getKey(), containerId,
+						e.getMessage());
+			}
+		}
+		return messageRates;
+	}
+
+	/**
+	 * Close the {@link PathChildrenCache snapshot cache} and null out the {@link #cacheRef atomic reference}.
+	 */
+	private void closeCache() {
+		PathChildrenCache cache = cacheRef.get();
+		if (cache != null) {
+			try {
+				cache.close();
+			}
+			catch (Exception e) {
+				// ignore exception on close
+			}
+			finally {
+				cacheRef.compareAndSet(cache, null);
+			}
+		}
+	}
+
+	/**
+	 * Return a {@link PathChildrenCache} for snapshots, creating and initializing a new instance if necessary.
+	 *
+	 * @return a {@code PathChildrenCache} for snapshots
+	 * @throws java.lang.IllegalStateException if the cache could not be initialized (likely due to a ZooKeeper
+	 *         connection error)
+	 */
+	private PathChildrenCache ensureCache() {
+		if (cacheRef.get() == null) {
+			synchronized (cacheRef) {
+				if (cacheRef.get() == null) {
+					CuratorFramework client = zkConnection.getClient();
+					PathChildrenCache cache = new PathChildrenCache(client, Paths.METRICS, true,
+							ThreadUtils.newThreadFactory("ModuleMessageRatesCache"));
+					cache.getListenable().addListener(new PathChildrenCacheListener() {
+
+						@Override
+						public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) {
+							// shut down the cache if ZooKeeper connection goes away
+							if (event.getType() == PathChildrenCacheEvent.Type.CONNECTION_SUSPENDED ||
+									event.getType() == PathChildrenCacheEvent.Type.CONNECTION_LOST) {
+								closeCache();
+							}
+						}
+					});
+					try {
+						Paths.ensurePath(client, Paths.METRICS);
+						cacheRef.set(cache);
+						cache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+					}
+					catch (Exception e) {
+						try {
+							cache.close();
+						}
+						catch (Exception ce) {
+							// ignore exception on close
+						}
+						finally {
+							cacheRef.compareAndSet(cache, null);
+						}
+						throw ZooKeeperUtils.wrapThrowable(e);
+					}
+				}
+			}
+		}
+
+		PathChildrenCache cache = cacheRef.get();
+		Assert.state(cache != null, "Module message rates cache not initialized " +
+				"(likely as a result of a ZooKeeper connection error)");
+		return cache;
+	}
+
+}
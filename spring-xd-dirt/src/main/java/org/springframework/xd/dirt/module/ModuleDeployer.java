@@ -56,6 +56,7 @@ import org.springframework.xd.module.core.Plugin;
  * @author Ilayaperumal Gopinathan
  * @author David Turanski
  * @author Patrick Peralta
+ * @author Eric Bottard
  */
 public class ModuleDeployer implements ApplicationContextAware, InitializingBean {
 
@@ -189,22 +190,27 @@ public class ModuleDeployer implements ApplicationContextAware, InitializingBean
 	 *     <li>starting the module</li>
 	 *     <li>registering the module with this container</li>
 	 * </ul>
+	 * This method may be invoked concurrently for different modules: plugins
+	 * are still applied to one module at a time, but module application contexts
+	 * are initialized and started outside of this deployer's lock.
 	 *
 	 * @param module the module to deploy
 	 * @param descriptor descriptor for the module instance
 	 */
-	public synchronized void deploy(Module module, ModuleDescriptor descriptor) {
+	public void deploy(Module module, ModuleDescriptor descriptor) {
 		String group = descriptor.getGroup();
 
 		module.setParentContext(this.globalContext);
 		doDeploy(module);
 		logger.info("Deployed {}", module);
-		Map<Integer, Module> modules = this.deployedModules.get(group);
-		if (modules == null) {
-			modules = new HashMap<Integer, Module>();
-			this.deployedModules.put(group, modules);
+		synchronized (this) {
+			Map<Integer, Module> modules = this.deployedModules.get(group);
+			if (modules == null) {
+				modules = new HashMap<Integer, Module>();
+				this.deployedModules.put(group, modules);
+			}
+			modules.put(descriptor.getIndex(), module);
 		}
-		modules.put(descriptor.getIndex(), module);
 	}
 
 	/**
@@ -213,9 +219,25 @@ public class ModuleDeployer implements ApplicationContextAware, InitializingBean
 	 * @param module module to deploy
 	 */
 	private void doDeploy(Module module) {
-		preProcessModule(module);
-		module.initialize();
-		postProcessModule(module);
+		try {
+			synchronized (this) {
+				preProcessModule(module);
+			}
+			module.initialize();
+			synchronized (this) {
+				postProcessModule(module);
+			}
+		}
+		catch (RuntimeException e) {
+			// the module won't be registered, hence never undeployed: release what it holds (e.g. its ClassLoader)
+			try {
+				module.destroy();
+			}
+			catch (RuntimeException destroyException) {
+				logger.warn("Failed to destroy {} after its deployment failed", module, destroyException);
+			}
+			throw e;
+		}
 		module.start();
 	}
 
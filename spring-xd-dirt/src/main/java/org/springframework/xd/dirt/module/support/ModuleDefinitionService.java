@@ -39,6 +39,7 @@ import org.springframework.xd.module.ModuleDefinition;
 import org.springframework.xd.module.ModuleDefinitions;
 import org.springframework.xd.module.ModuleDescriptor;
 import org.springframework.xd.module.ModuleType;
+import org.springframework.xd.module.options.CachingModuleOptionsMetadataResolver;
 
 /**
  * A service that knows how to handle registration of new module definitions, be it through composition or
@@ -59,6 +60,8 @@ public class ModuleDefinitionService {
 
 	private final PagingUtility<ModuleDefinition> pagingUtility = new PagingUtility<ModuleDefinition>();
 
+	private CachingModuleOptionsMetadataResolver moduleOptionsMetadataCache;
+
 	@Autowired
 	public ModuleDefinitionService(WritableModuleRegistry registry, XDStreamParser parser, ModuleDependencyRepository dependencyRepository) {
 		this.registry = registry;
@@ -66,6 +69,14 @@ public class ModuleDefinitionService {
 		this.dependencyRepository = dependencyRepository;
 	}
 
+	/**
+	 * Set the cache of module options metadata to keep in synch with uploads and deletions, if any.
+	 */
+	@Autowired(required = false)
+	public void setModuleOptionsMetadataCache(CachingModuleOptionsMetadataResolver moduleOptionsMetadataCache) {
+		this.moduleOptionsMetadataCache = moduleOptionsMetadataCache;
+	}
+
 	public ModuleDefinition findDefinition(String name, ModuleType type) {
 		return registry.findDefinition(name, type);
 	}
@@ -105,6 +116,7 @@ public class ModuleDefinitionService {
 
 		ModuleDefinition definition = new UploadedModuleDefinition(name, type, bytes);
 		Assert.isTrue(this.registry.registerNew(definition), definition + " could not be saved");
+		evictModuleOptionsMetadata(name, type);
 		return definition;
 	}
 
@@ -137,6 +149,7 @@ public class ModuleDefinitionService {
 					if (!registry.delete(definition)) {
 						throw new ModuleAlreadyExistsException("There is already a module named '%s' with type '%s', and it cannot be updated", name, type);
 					}
+					evictModuleOptionsMetadata(name, type);
 				}
 			}
 		}
@@ -155,6 +168,13 @@ public class ModuleDefinitionService {
 
 		boolean result = this.registry.delete(definition);
 		Assert.isTrue(result, String.format("Could not delete module '%s:%s'", type, name));
+		evictModuleOptionsMetadata(name, type);
+	}
+
+	private void evictModuleOptionsMetadata(String name, ModuleType type) {
+		if (moduleOptionsMetadataCache != null) {
+			moduleOptionsMetadataCache.evict(name, type);
+		}
 	}
 
 	private List<ModuleDefinition> createComposedModuleDefinitions(
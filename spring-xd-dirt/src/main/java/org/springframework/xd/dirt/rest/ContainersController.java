@@ -16,9 +16,23 @@
 
 package org.springframework.xd.dirt.rest;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.curator.utils.ThreadUtils;
 
 import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
@@ -48,8 +62,10 @@ import org.springframework.xd.dirt.cluster.Container;
 import org.springframework.xd.dirt.cluster.ContainerShutdownException;
 import org.springframework.xd.dirt.container.store.DetailedContainer;
 import org.springframework.xd.dirt.cluster.ModuleMessageRateNotFoundException;
+import org.springframework.xd.dirt.cluster.ModuleMessageRates;
 import org.springframework.xd.dirt.cluster.NoSuchContainerException;
 import org.springframework.xd.dirt.container.store.ContainerRepository;
+import org.springframework.xd.dirt.container.store.ModuleMessageRatesAggregator;
 import org.springframework.xd.rest.domain.DetailedContainerResource;
 
 /**
@@ -57,6 +73,7 @@ import org.springframework.xd.rest.domain.DetailedContainerResource;
  *
  * @author Ilayaperumal Gopinathan
  * @author Mark Fisher
+ * @author Eric Bottard
  */
 @Controller
 @RequestMapping("/runtime/containers")
@@ -74,7 +91,12 @@ public class ContainersController {
 	private ResourceAssemblerSupport<DetailedContainer, DetailedContainerResource> resourceAssembler =
 			new RuntimeContainerResourceAssembler();
 
-	private RestTemplate restTemplate = new RestTemplate(new SimpleClientHttpRequestFactory());
+	@Autowired(required = false)
+	private ModuleMessageRatesAggregator messageRatesAggregator;
+
+	private RestTemplate restTemplate;
+
+	private ExecutorService messageRatesPullExecutor;
 
 	@Value("${management.contextPath:/management}")
 	private String managementContextPath;
@@ -82,6 +104,15 @@ public class ContainersController {
 	@Value("${xd.messageRateMonitoring.enabled:false}")
 	private String enableMessageRates;
 
+	@Value("${xd.messageRateMonitoring.pullFallback:true}")
+	private boolean pullMessageRates;
+
+	@Value("${xd.messageRateMonitoring.pullTimeout:2000}")
+	private int pullTimeout;
+
+	@Value("${xd.messageRateMonitoring.pullConcurrency:8}")
+	private int pullConcurrency;
+
 	private final static String CONTAINER_HOST_URI_PROTOCOL = "http://";
 
 	private final static String SHUTDOWN_ENDPOINT = "/shutdown";
@@ -97,6 +128,23 @@ public class ContainersController {
 		this.containerRepository = containerRepository;
 	}
 
+	@PostConstruct
+	public void initialize() {
+		SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+		requestFactory.setConnectTimeout(pullTimeout);
+		requestFactory.setReadTimeout(pullTimeout);
+		restTemplate = new RestTemplate(requestFactory);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(pullConcurrency, pullConcurrency, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), ThreadUtils.newThreadFactory("MessageRatesPull"));
+		executor.allowCoreThreadTimeOut(true);
+		messageRatesPullExecutor = executor;
+	}
+
+	@PreDestroy
+	public void destroy() {
+		messageRatesPullExecutor.shutdownNow();
+	}
+
 	/**
 	 * List all the available containers along with the message rates for
 	 * each deployed modules.
@@ -110,66 +158,173 @@ public class ContainersController {
 	public PagedResources<DetailedContainerResource> list(Pageable pageable,
 			PagedResourcesAssembler<DetailedContainer> assembler) throws ModuleMessageRateNotFoundException {
 		Page<DetailedContainer> containers = containerRepository.findAllRuntimeContainers(pageable);
-		for (DetailedContainer container : containers) {
-			if (!container.getDeployedModules().isEmpty()) {
-				setMessageRates(container);
+		if (enableMessageRates.equalsIgnoreCase("true")) {
+			List<DetailedContainer> pulled = new ArrayList<DetailedContainer>();
+			List<Callable<Map<String, HashMap<String, Double>>>> pulls =
+					new ArrayList<Callable<Map<String, HashMap<String, Double>>>>();
+			for (final DetailedContainer container : containers) {
+				if (container.getDeployedModules().isEmpty()) {
+					continue;
+				}
+				Map<String, HashMap<String, Double>> messageRates = pushedMessageRates(container);
+				if (messageRates != null) {
+					container.setMessageRates(messageRates);
+				}
+				else if (pullMessageRates) {
+					pulled.add(container);
+					pulls.add(new Callable<Map<String, HashMap<String, Double>>>() {
+
+						@Override
+						public Map<String, HashMap<String, Double>> call() {
+							return requestMessageRates(container);
+						}
+
+					});
+				}
 			}
+			pullMessageRates(pulled, pulls);
 		}
 		return assembler.toResource(containers, resourceAssembler);
 	}
 
 	/**
-	 * Set the message rates of all the deployed modules in the given container.
+	 * Return the message rates last pushed by the given container, if any.
 	 *
-	 * @param container the container to set the message rates
+	 * @param container the container
+	 * @return the message rates, or {@code null} if they should be pulled from the container
 	 */
-	private void setMessageRates(DetailedContainer container) {
-		String containerHost = container.getAttributes().getIp();
-		String containerManagementPort = container.getAttributes().getManagementPort();
-		if (StringUtils.hasText(containerManagementPort) && enableMessageRates.equalsIgnoreCase("true")) {
-			Map<String, HashMap<String, Double>> messageRates = new HashMap<String, HashMap<String, Double>>();
-			String request = String.format("%s%s:%s%s", CONTAINER_HOST_URI_PROTOCOL, containerHost,
-					containerManagementPort, JOLOKIA_XD_MODULE_MBEAN_URL);
+	private Map<String, HashMap<String, Double>> pushedMessageRates(DetailedContainer container) {
+		if (messageRatesAggregator == null) {
+			return null;
+		}
+		try {
+			return messageRatesAggregator.getMessageRates(container.getName());
+		}
+		catch (RuntimeException e) {
+			logger.warn(String.format("Error reading pushed message rates for %s", container.getName()), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Pull the message rates of several containers concurrently and set those received in time. Rates are only set
+	 * from this (the request) thread: a task that is still blocked reading its response when the timeout expires
+	 * is abandoned and its result, if it ever completes, is discarded.
+	 *
+	 * @param containers the containers to pull the message rates of
+	 * @param pulls the tasks requesting the message rates of each container, in the same order
+	 */
+	private void pullMessageRates(List<DetailedContainer> containers,
+			List<Callable<Map<String, HashMap<String, Double>>>> pulls) {
+		if (pulls.isEmpty()) {
+			return;
+		}
+		List<Future<Map<String, HashMap<String, Double>>>> results;
+		try {
+			// connecting and reading may each take up to pullTimeout, plus some time for queueing
+			results = messageRatesPullExecutor.invokeAll(pulls, 3L * pullTimeout, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		for (int i = 0; i < results.size(); i++) {
+			Future<Map<String, HashMap<String, Double>>> result = results.get(i);
+			DetailedContainer container = containers.get(i);
+			if (result.isCancelled()) {
+				logger.warn("Timed out getting message rate metrics for {}", container.getName());
+				continue;
+			}
 			try {
-				String response = restTemplate.getForObject(request, String.class).toString();
-				JSONObject jObject = new JSONObject(response);
-				JSONObject value = jObject.getJSONObject("value");
-				JSONArray jsonArray = value.names();
-				// iterate over each module MBean
-				for (int i = 0; i < jsonArray.length(); i++) {
-					String mbeanKey = (String) jsonArray.get(i);
-					StringTokenizer tokenizer = new StringTokenizer(mbeanKey, ",");
-					if (mbeanKey.contains("component=MessageChannel")
-							&& (mbeanKey.contains("name=" + INPUT_CHANNEL_NAME) || mbeanKey.contains("name=" + OUTPUT_CHANNEL_NAME))) {
-						while (tokenizer.hasMoreElements()) {
-							String element = (String) tokenizer.nextElement();
-							if (element.startsWith("module=")) {
-								String key = String.format("%s", element.substring(element.indexOf("=") + 1));
-								HashMap<String, Double> rate = (messageRates.get(key) != null) ? messageRates.get(key)
-										: new HashMap<String, Double>();
-								Double rateValue = (Double) value.getJSONObject((String) jsonArray.get(i)).get("MeanSendRate");
-								if (mbeanKey.contains("name=" + INPUT_CHANNEL_NAME)) {
-									rate.put(INPUT_CHANNEL_NAME, rateValue);
-								}
-								else if (mbeanKey.contains("name=" + OUTPUT_CHANNEL_NAME)) {
-									rate.put(OUTPUT_CHANNEL_NAME, rateValue);
-								}
-								messageRates.put(key, rate);
-							}
-						}
-					}
+				Map<String, HashMap<String, Double>> messageRates = result.get();
+				if (messageRates != null) {
+					container.setMessageRates(messageRates);
 				}
-				container.setMessageRates(messageRates);
 			}
-			catch (RestClientException e) {
-				logger.warn(String.format("Error getting message rate metrics for %s", container.getName()), e);
+			catch (ExecutionException e) {
+				logger.warn(String.format("Error getting message rate metrics for %s", container.getName()),
+						e.getCause());
 			}
-			catch (JSONException jse) {
-				logger.warn(String.format("Error getting message rate metrics for %s", container.getName()), jse);
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
 			}
 		}
 	}
 
+	/**
+	 * Request the message rates of all the deployed modules in the given container from the container, in the same
+	 * form as the rates the containers push.
+	 *
+	 * @param container the container to request the message rates from
+	 * @return the message rates, or {@code null} if the container does not expose them
+	 */
+	Map<String, HashMap<String, Double>> requestMessageRates(DetailedContainer container) {
+		String containerHost = container.getAttributes().getIp();
+		String containerManagementPort = container.getAttributes().getManagementPort();
+		if (!StringUtils.hasText(containerManagementPort)) {
+			return null;
+		}
+		String request = String.format("%s%s:%s%s", CONTAINER_HOST_URI_PROTOCOL, containerHost,
+				containerManagementPort, JOLOKIA_XD_MODULE_MBEAN_URL);
+		try {
+			return parseMessageRates(restTemplate.getForObject(request, String.class));
+		}
+		catch (RestClientException e) {
+			logger.warn(String.format("Error getting message rate metrics for %s", container.getName()), e);
+		}
+		catch (JSONException jse) {
+			logger.warn(String.format("Error getting message rate metrics for %s", container.getName()), jse);
+		}
+		return null;
+	}
+
+	/**
+	 * Extract the message rates of each module from a Jolokia read of the module MBeans, summing the send errors of
+	 * the input and output channels as containers do when they push their rates.
+	 *
+	 * @param response the Jolokia response
+	 * @return the message rates, keyed by module
+	 * @throws JSONException if the response could not be parsed
+	 */
+	static Map<String, HashMap<String, Double>> parseMessageRates(String response) throws JSONException {
+		Map<String, Double> inputs = new HashMap<String, Double>();
+		Map<String, Double> outputs = new HashMap<String, Double>();
+		Map<String, Long> errors = new HashMap<String, Long>();
+		JSONObject value = new JSONObject(response).getJSONObject("value");
+		JSONArray jsonArray = value.names();
+		// iterate over each module MBean
+		for (int i = 0; jsonArray != null && i < jsonArray.length(); i++) {
+			String mbeanKey = (String) jsonArray.get(i);
+			if (!mbeanKey.contains("component=MessageChannel")) {
+				continue;
+			}
+			boolean input = mbeanKey.contains("name=" + INPUT_CHANNEL_NAME);
+			if (!input && !mbeanKey.contains("name=" + OUTPUT_CHANNEL_NAME)) {
+				continue;
+			}
+			StringTokenizer tokenizer = new StringTokenizer(mbeanKey, ",");
+			while (tokenizer.hasMoreElements()) {
+				String element = (String) tokenizer.nextElement();
+				if (element.startsWith("module=")) {
+					String module = element.substring(element.indexOf("=") + 1);
+					JSONObject attributes = value.getJSONObject(mbeanKey);
+					(input ? inputs : outputs).put(module, attributes.getDouble("MeanSendRate"));
+					long errorCount = attributes.optLong("SendErrorCount");
+					Long previous = errors.get(module);
+					errors.put(module, previous == null ? errorCount : previous + errorCount);
+				}
+			}
+		}
+		Map<String, HashMap<String, Double>> messageRates = new HashMap<String, HashMap<String, Double>>();
+		for (Map.Entry<String, Long> entry : errors.entrySet()) {
+			String module = entry.getKey();
+			messageRates.put(module,
+					new ModuleMessageRates(inputs.get(module), outputs.get(module), entry.getValue()).toMap());
+		}
+		return messageRates;
+	}
+
 	/**
 	 * Shutdown container by the given containerId.
 	 *
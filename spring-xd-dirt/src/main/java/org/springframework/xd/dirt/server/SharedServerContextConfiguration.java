@@ -32,6 +32,8 @@ import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.PropertiesPropertySource;
 import org.springframework.integration.config.EnableIntegration;
+import org.springframework.jmx.export.annotation.AnnotationMBeanExporter;
+import org.springframework.jmx.support.RegistrationPolicy;
 import org.springframework.util.StringUtils;
 import org.springframework.xd.dirt.util.ConfigLocations;
 import org.springframework.xd.dirt.util.XdProfiles;
@@ -47,6 +49,7 @@ import org.springframework.xd.dirt.zookeeper.ZooKeeperConnection;
  * @author Ilayaperumal Gopinathan
  * @author Gary Russell
  * @author Patrick Peralta
+ * @author Eric Bottard
  */
 @Configuration
 @EnableIntegration
@@ -66,6 +69,19 @@ public class SharedServerContextConfiguration {
 
 	public static final String ZK_PROPERTIES_SOURCE = "zk-properties";
 
+	/**
+	 * Export the shared beans annotated with {@link org.springframework.jmx.export.annotation.ManagedResource} (such
+	 * as the message bus metrics) when JMX is enabled.
+	 */
+	@Bean
+	@ConditionalOnExpression("${XD_JMX_ENABLED:false}")
+	public AnnotationMBeanExporter sharedServerMBeanExporter() {
+		AnnotationMBeanExporter exporter = new AnnotationMBeanExporter();
+		exporter.setDefaultDomain("xd.shared.server");
+		exporter.setRegistrationPolicy(RegistrationPolicy.IGNORE_EXISTING);
+		return exporter;
+	}
+
 	@Configuration
 	@Profile(XdProfiles.SINGLENODE_PROFILE)
 	static class SingleNodeZooKeeperConfig extends ZookeeperConnectionConfig {
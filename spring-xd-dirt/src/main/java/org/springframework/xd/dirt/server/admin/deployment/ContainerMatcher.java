@@ -21,12 +21,15 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.context.expression.MapAccessor;
 import org.springframework.expression.EvaluationException;
+import org.springframework.expression.Expression;
 import org.springframework.expression.spel.SpelEvaluationException;
 import org.springframework.expression.spel.SpelMessage;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
@@ -52,13 +55,14 @@ import org.springframework.xd.module.ModuleDescriptor;
  * count of 0 indicates that all containers for which the criteria evaluates to {@code true} should deploy the module.
  * If no criteria expression is specified, all containers will deploy the module.
  * <p/>
- * In cases where all containers are not deploying a module, an attempt at container round robin distribution for module
- * deployments will be made (but not guaranteed).
+ * In cases where all containers are not deploying a module, the containers are chosen by a
+ * {@link ContainerPlacementStrategy}, which defaults to a round robin distribution.
  *
  * @author Patrick Peralta
  * @author Mark Fisher
  * @author David Turanski
  * @author Ilayaperumal Gopinathan
+ * @author Eric Bottard
  */
 public class ContainerMatcher {
 
@@ -68,9 +72,9 @@ public class ContainerMatcher {
 	private static final Logger logger = LoggerFactory.getLogger(ContainerMatcher.class);
 
 	/**
-	 * Current index for iterating over containers.
+	 * Maximum number of parsed criteria expressions kept in {@link #expressions}.
 	 */
-	private int index;
+	private static final int MAX_CACHED_EXPRESSIONS = 256;
 
 	/**
 	 * Parser for criteria expressions.
@@ -82,11 +86,20 @@ public class ContainerMatcher {
 	 */
 	private final StandardEvaluationContext evaluationContext = new StandardEvaluationContext();
 
+	/**
+	 * Parsed criteria expressions, keyed by their text.
+	 */
+	private final ConcurrentMap<String, Expression> expressions = new ConcurrentHashMap<String, Expression>();
+
 	/**
 	 * Collection of {@link ContainerFilter}s to apply to the candidate Containers.
 	 */
 	private final Collection<ContainerFilter> containerFilters;
 
+	/**
+	 * Strategy choosing among the candidate containers.
+	 */
+	private volatile ContainerPlacementStrategy placementStrategy = new RoundRobinContainerPlacementStrategy();
 
 	/**
 	 * Creates a container matcher instance and prepares the SpEL evaluation context to support Map properties directly.
@@ -106,6 +119,17 @@ public class ContainerMatcher {
 		evaluationContext.addPropertyAccessor(new MapAccessor());
 	}
 
+	/**
+	 * Set the strategy choosing among the candidate containers when fewer module instances than candidates are
+	 * requested.
+	 *
+	 * @param placementStrategy the placement strategy
+	 */
+	public void setPlacementStrategy(ContainerPlacementStrategy placementStrategy) {
+		Assert.notNull(placementStrategy, "'placementStrategy' cannot be null.");
+		this.placementStrategy = placementStrategy;
+	}
+
 
 	/**
 	 * Matches the provided module against one of the candidate containers.
@@ -132,7 +156,7 @@ public class ContainerMatcher {
 			logger.warn("No currently available containers match deployment criteria '{}' for module '{}'.", criteria,
 					moduleDescriptor.getModuleName());
 		}
-		return distributeForRequestedCount(results, deploymentProperties.getCount());
+		return distributeForRequestedCount(moduleDescriptor, results, deploymentProperties.getCount());
 	}
 
 	/**
@@ -150,15 +174,17 @@ public class ContainerMatcher {
 	}
 
 	/**
-	 * Select a subset of containers to satisfy the requested number of module instances using a round robin
-	 * distribution for successive calls. A count of 0 means all members that matched the criteria expression. count >=
-	 * candidates means each of the candidates should host a module.
+	 * Select a subset of containers to satisfy the requested number of module instances using the
+	 * {@link ContainerPlacementStrategy}. A count of 0 means all members that matched the criteria expression.
+	 * count >= candidates means each of the candidates should host a module.
 	 *
+	 * @param moduleDescriptor the module to deploy
 	 * @param candidates the list of available containers that match the selection criteria
 	 * @param count the requested number of module instances to deploy
 	 * @return a subset of candidates <= count
 	 */
-	private Collection<Container> distributeForRequestedCount(List<Container> candidates, int count) {
+	private Collection<Container> distributeForRequestedCount(ModuleDescriptor moduleDescriptor,
+			List<Container> candidates, int count) {
 		int candidateCount = candidates.size();
 		if (candidateCount == 0) {
 			return candidates;
@@ -168,17 +194,8 @@ public class ContainerMatcher {
 
 			return candidates;
 		}
-		else if (count == 1) {
-			return Collections.singleton(candidates.get(getAndRotateIndex(candidateCount)));
-		}
 		else {
-			// create a new list with the specific number of targeted containers;
-			List<Container> targets = new ArrayList<Container>();
-			while (targets.size() < count) {
-				targets.add(candidates.get(getAndRotateIndex(candidateCount)));
-
-			}
-			return targets;
+			return placementStrategy.select(moduleDescriptor, candidates, count);
 		}
 	}
 
@@ -196,10 +213,11 @@ public class ContainerMatcher {
 		}
 
 		List<Container> candidates = new ArrayList<Container>();
+		Expression expression = StringUtils.hasText(criteria) ? getExpression(criteria) : null;
 
 		for (Container container : containers) {
 			logger.trace("Evaluating container {}", container);
-			if (StringUtils.isEmpty(criteria) || isCandidate(container, criteria)) {
+			if (expression == null || isCandidate(container, expression)) {
 				logger.trace("\tAdded container {}", container);
 				candidates.add(container);
 			}
@@ -207,22 +225,40 @@ public class ContainerMatcher {
 		return candidates;
 	}
 
+	/**
+	 * Return the parsed criteria expression, parsing it only if it was not recently used.
+	 *
+	 * @param criteria the criteria expression
+	 * @return the parsed expression
+	 */
+	private Expression getExpression(String criteria) {
+		Expression expression = expressions.get(criteria);
+		if (expression == null) {
+			if (expressions.size() >= MAX_CACHED_EXPRESSIONS) {
+				expressions.clear();
+			}
+			expression = expressionParser.parseExpression(criteria);
+			expressions.put(criteria, expression);
+		}
+		return expression;
+	}
+
 	/**
 	 * Evaluate the criteria expression against the attributes of the provided container to see if it is a candidate for
 	 * module deployment.
 	 *
 	 * @param container the container instance whose attributes should be considered
-	 * @param criteria the criteria expression to evaluate against the container attributes
+	 * @param criteria the parsed criteria expression to evaluate against the container attributes
 	 * @return whether the container is a candidate
 	 */
-	private boolean isCandidate(Container container, String criteria) {
+	private boolean isCandidate(Container container, Expression criteria) {
 		try {
-			return expressionParser.parseExpression(criteria).getValue(evaluationContext, container.getAttributes(),
-					Boolean.class);
+			return criteria.getValue(evaluationContext, container.getAttributes(), Boolean.class);
 		}
 		catch (SpelEvaluationException e) {
 			if (e.getMessageCode().equals(SpelMessage.PROPERTY_OR_FIELD_NOT_READABLE)) {
-				logger.debug("candidate does not contain an attribute referenced in the criteria {}", criteria);
+				logger.debug("candidate does not contain an attribute referenced in the criteria {}",
+						criteria.getExpressionString());
 			}
 			return false;
 		}
@@ -232,19 +268,4 @@ public class ContainerMatcher {
 		}
 	}
 
-	/**
-	 * Rotate the cached index over the number of available containers.
-	 *
-	 * @param availableContainerCount the number of available containers
-	 * @return the current count before rotating
-	 */
-	private synchronized int getAndRotateIndex(int availableContainerCount) {
-		if (availableContainerCount <= 0) {
-			return 0;
-		}
-		int i = index % availableContainerCount;
-		index = i + 1;
-		return i;
-	}
-
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.server.admin.deployment;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.xd.dirt.cluster.Container;
+import org.springframework.xd.module.ModuleDescriptor;
+
+/**
+ * Strategy used by {@link ContainerMatcher} to choose which of the containers matching the deployment criteria of a
+ * module should deploy it, when fewer instances than matching containers are requested.
+ *
+ * @author Eric Bottard
+ */
+public interface ContainerPlacementStrategy {
+
+	/**
+	 * Select the containers to deploy the given module to.
+	 *
+	 * @param moduleDescriptor the module to deploy
+	 * @param candidates the containers matching the deployment criteria of the module
+	 * @param count the number of module instances to deploy; strictly between 0 and the number of candidates
+	 * @return {@code count} distinct containers among the candidates
+	 */
+	Collection<Container> select(ModuleDescriptor moduleDescriptor, List<Container> candidates, int count);
+
+}
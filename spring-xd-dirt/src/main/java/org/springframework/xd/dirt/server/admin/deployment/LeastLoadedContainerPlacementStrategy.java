@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.server.admin.deployment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.ObjectUtils;
+import org.springframework.xd.dirt.cluster.Container;
+import org.springframework.xd.dirt.cluster.ContainerAttributes;
+import org.springframework.xd.module.ModuleDescriptor;
+
+/**
+ * A {@link ContainerPlacementStrategy} that selects the least loaded candidates, according to the figures each
+ * container publishes in its {@link ContainerAttributes} on a heartbeat. The load of a container is a weighted sum of
+ * <ul>
+ * <li>its number of deployed modules, relative to the busiest candidate,</li>
+ * <li>its CPU load (load average per processor),</li>
+ * <li>its heap usage (ratio of used to maximum heap) and</li>
+ * <li>its message rate, relative to the busiest candidate.</li>
+ * </ul>
+ * Figures that a container does not publish count as 0. As published figures are only refreshed on heartbeats, the
+ * modules placed by this strategy on a container are added to its published module count until its next heartbeat,
+ * so that successive deployments do not all land on the same container. Ties are broken in favor of the first
+ * candidate.
+ *
+ * @author Eric Bottard
+ */
+public class LeastLoadedContainerPlacementStrategy implements ContainerPlacementStrategy {
+
+	private static final Logger logger = LoggerFactory.getLogger(LeastLoadedContainerPlacementStrategy.class);
+
+	private volatile double moduleCountWeight = 1.0;
+
+	private volatile double cpuLoadWeight = 1.0;
+
+	private volatile double heapUsageWeight = 0.5;
+
+	private volatile double messageRateWeight = 1.0;
+
+	/**
+	 * Time in milliseconds after which placements are forgotten even if the container did not publish a heartbeat.
+	 */
+	private volatile long placementExpiry = 60000;
+
+	/**
+	 * Modules placed on each container since its last heartbeat, keyed by container name.
+	 */
+	@GuardedBy("this")
+	private final Map<String, Placements> placements = new HashMap<String, Placements>();
+
+	public void setModuleCountWeight(double moduleCountWeight) {
+		this.moduleCountWeight = moduleCountWeight;
+	}
+
+	public void setCpuLoadWeight(double cpuLoadWeight) {
+		this.cpuLoadWeight = cpuLoadWeight;
+	}
+
+	public void setHeapUsageWeight(double heapUsageWeight) {
+		this.heapUsageWeight = heapUsageWeight;
+	}
+
+	public void setMessageRateWeight(double messageRateWeight) {
+		this.messageRateWeight = messageRateWeight;
+	}
+
+	public void setPlacementExpiry(long placementExpiry) {
+		this.placementExpiry = placementExpiry;
+	}
+
+	@Override
+	public synchronized Collection<Container> select(ModuleDescriptor moduleDescriptor, List<Container> candidates,
+			int count) {
+		long now = System.currentTimeMillis();
+		expirePlacements(now);
+
+		int size = candidates.size();
+		double[] moduleCounts = new double[size];
+		double[] messageRates = new double[size];
+		double maxModuleCount = 0;
+		double maxMessageRate = 0;
+		for (int i = 0; i < size; i++) {
+			Container container = candidates.get(i);
+			moduleCounts[i] = valueOf(container.getAttributes().getModuleCount()) + placed(container);
+			messageRates[i] = valueOf(container.getAttributes().getMessageRate());
+			maxModuleCount = Math.max(maxModuleCount, moduleCounts[i]);
+			maxMessageRate = Math.max(maxMessageRate, messageRates[i]);
+		}
+
+		final double[] scores = new double[size];
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			ContainerAttributes attributes = candidates.get(i).getAttributes();
+			scores[i] = moduleCountWeight * ratio(moduleCounts[i], maxModuleCount)
+					+ cpuLoadWeight * valueOf(attributes.getCpuLoad())
+					+ heapUsageWeight * valueOf(attributes.getHeapUsage())
+					+ messageRateWeight * ratio(messageRates[i], maxMessageRate);
+			order[i] = i;
+		}
+		// stable sort, so that ties keep the order of candidates
+		Arrays.sort(order, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Double.compare(scores[i1], scores[i2]);
+			}
+
+		});
+
+		List<Container> targets = new ArrayList<Container>(count);
+		for (int i = 0; i < count; i++) {
+			Container container = candidates.get(order[i]);
+			logger.debug("Selected container {} with load score {} for module {}", container.getName(),
+					scores[order[i]], moduleDescriptor);
+			recordPlacement(container, now);
+			targets.add(container);
+		}
+		return targets;
+	}
+
+	/**
+	 * Return the number of modules placed on the given container since its last heartbeat.
+	 */
+	private int placed(Container container) {
+		Placements placed = placements.get(container.getName());
+		if (placed == null) {
+			return 0;
+		}
+		if (!ObjectUtils.nullSafeEquals(placed.heartbeat, container.getAttributes().getHeartbeat())) {
+			// the container published its load since, which accounts for these placements
+			placements.remove(container.getName());
+			return 0;
+		}
+		return placed.count;
+	}
+
+	private void recordPlacement(Container container, long now) {
+		Long heartbeat = container.getAttributes().getHeartbeat();
+		Placements placed = placements.get(container.getName());
+		if (placed == null || !ObjectUtils.nullSafeEquals(placed.heartbeat, heartbeat)) {
+			placed = new Placements(heartbeat);
+			placements.put(container.getName(), placed);
+		}
+		placed.count++;
+		placed.lastPlacement = now;
+	}
+
+	private void expirePlacements(long now) {
+		for (Iterator<Placements> iterator = placements.values().iterator(); iterator.hasNext();) {
+			if (now - iterator.next().lastPlacement > placementExpiry) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Return the given load figure of a container, or 0 if it was not published or is not a number.
+	 */
+	private static double valueOf(Number figure) {
+		return figure == null ? 0 : Math.max(0, figure.doubleValue());
+	}
+
+	private static double ratio(double value, double max) {
+		return max > 0 ? value / max : 0;
+	}
+
+	private static class Placements {
+
+		private final Long heartbeat;
+
+		private int count;
+
+		private long lastPlacement;
+
+		private Placements(Long heartbeat) {
+			this.heartbeat = heartbeat;
+		}
+
+	}
+
+}
@@ -30,10 +30,12 @@ import org.springframework.xd.module.ModuleDescriptor;
  * Status of a module deployment for a container. In addition
  * to the {@code get...} methods, this class provides a {@link #toMap}
  * method which returns a map that contains the state and error
- * description which can be written to ZooKeeper. The module deployment
+ * description (as well as the time it took to deploy the module, if
+ * known) which can be written to ZooKeeper. The module deployment
  * status path can be obtained via {@link #buildPath()}.
  *
  * @author Patrick Peralta
+ * @author Eric Bottard
  */
 public class ModuleDeploymentStatus {
 
@@ -50,6 +52,13 @@ public class ModuleDeploymentStatus {
 	 */
 	private static final String ERROR_DESCRIPTION_KEY = "errorDescription";
 
+	/**
+	 * Key used in status map to provide the time (in milliseconds) the
+	 * container took to deploy the module.
+	 * The status map is written by the container deploying the module.
+	 */
+	private static final String DEPLOYMENT_TIME_KEY = "deploymentTime";
+
 	/**
 	 * Module deployment states.
 	 */
@@ -91,6 +100,12 @@ public class ModuleDeploymentStatus {
 	 */
 	private final String errorDescription;
 
+	/**
+	 * Time in milliseconds the container took to deploy the module;
+	 * will be null if unknown.
+	 */
+	private final Long deploymentTime;
+
 	/**
 	 * Construct a {@code ModuleDeploymentStatus}.
 	 *
@@ -102,11 +117,27 @@ public class ModuleDeploymentStatus {
 	 */
 	public ModuleDeploymentStatus(String container, int moduleSequence, ModuleDescriptor.Key key,
 			State state, String errorDescription) {
+		this(container, moduleSequence, key, state, errorDescription, null);
+	}
+
+	/**
+	 * Construct a {@code ModuleDeploymentStatus}.
+	 *
+	 * @param container         target container name
+	 * @param moduleSequence    module sequence number
+	 * @param key               module descriptor key
+	 * @param state             deployment state
+	 * @param errorDescription  error description (may be null)
+	 * @param deploymentTime    time in milliseconds taken to deploy the module (may be null)
+	 */
+	public ModuleDeploymentStatus(String container, int moduleSequence, ModuleDescriptor.Key key,
+			State state, String errorDescription, Long deploymentTime) {
 		this.container = container;
 		this.moduleSequence = moduleSequence;
 		this.key = key;
 		this.state = state;
 		this.errorDescription = errorDescription;
+		this.deploymentTime = deploymentTime;
 	}
 
 	/**
@@ -115,7 +146,7 @@ public class ModuleDeploymentStatus {
 	 * @param container  target container name
 	 * @param moduleSequence    module sequence number
 	 * @param key        module descriptor key
-	 * @param map        map containing status and (possibly) an error description
+	 * @param map        map containing status and (possibly) an error description and deployment time
 	 */
 	public ModuleDeploymentStatus(String container, int moduleSequence, ModuleDescriptor.Key key,
 			Map<String, String> map) {
@@ -126,6 +157,7 @@ public class ModuleDeploymentStatus {
 				String.format("missing key '%s' from map; contents: %s", STATUS_KEY, map));
 		this.state = State.valueOf(map.get(STATUS_KEY));
 		this.errorDescription = map.get(ERROR_DESCRIPTION_KEY);
+		this.deploymentTime = map.containsKey(DEPLOYMENT_TIME_KEY) ? Long.valueOf(map.get(DEPLOYMENT_TIME_KEY)) : null;
 	}
 
 	/**
@@ -183,8 +215,17 @@ public class ModuleDeploymentStatus {
 	}
 
 	/**
-	 * Return a map containing the state and error description
-	 * (if any) for this status. This map may be serialized
+	 * @return time in milliseconds taken to deploy the module; may be null
+	 *
+	 * @see #deploymentTime
+	 */
+	public Long getDeploymentTime() {
+		return deploymentTime;
+	}
+
+	/**
+	 * Return a map containing the state, error description
+	 * and deployment time (if any) for this status. This map may be serialized
 	 * into ZooKeeper to write out the module deployment status.
 	 *
 	 * @return map containing the module deployment status
@@ -196,6 +237,9 @@ public class ModuleDeploymentStatus {
 		if (StringUtils.hasText(errorDescription)) {
 			map.put(ERROR_DESCRIPTION_KEY, errorDescription);
 		}
+		if (deploymentTime != null) {
+			map.put(DEPLOYMENT_TIME_KEY, deploymentTime.toString());
+		}
 		return Collections.unmodifiableMap(map);
 	}
 
@@ -226,6 +270,7 @@ public class ModuleDeploymentStatus {
 				", key=" + key +
 				", state=" + state +
 				", errorDescription='" + errorDescription + '\'' +
+				", deploymentTime=" + deploymentTime +
 				'}';
 	}
 
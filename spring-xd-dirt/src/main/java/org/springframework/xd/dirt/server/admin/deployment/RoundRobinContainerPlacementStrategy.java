@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.server.admin.deployment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.xd.dirt.cluster.Container;
+import org.springframework.xd.module.ModuleDescriptor;
+
+/**
+ * A {@link ContainerPlacementStrategy} that rotates over the candidate containers for successive calls, regardless
+ * of their load. As the list of candidates may change between calls, an even distribution is attempted but not
+ * guaranteed.
+ *
+ * @author Patrick Peralta
+ * @author Mark Fisher
+ * @author Eric Bottard
+ */
+public class RoundRobinContainerPlacementStrategy implements ContainerPlacementStrategy {
+
+	/**
+	 * Current index for iterating over containers.
+	 */
+	private int index;
+
+	@Override
+	public synchronized Collection<Container> select(ModuleDescriptor moduleDescriptor, List<Container> candidates,
+			int count) {
+		List<Container> targets = new ArrayList<Container>(count);
+		while (targets.size() < count) {
+			targets.add(candidates.get(getAndRotateIndex(candidates.size())));
+		}
+		return targets;
+	}
+
+	/**
+	 * Rotate the cached index over the number of available containers.
+	 *
+	 * @param availableContainerCount the number of available containers
+	 * @return the current count before rotating
+	 */
+	private int getAndRotateIndex(int availableContainerCount) {
+		if (availableContainerCount <= 0) {
+			return 0;
+		}
+		int i = index % availableContainerCount;
+		index = i + 1;
+		return i;
+	}
+
+}
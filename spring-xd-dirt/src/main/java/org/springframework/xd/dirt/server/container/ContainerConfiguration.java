@@ -17,6 +17,7 @@
 package org.springframework.xd.dirt.server.container;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.autoconfigure.AuditAutoConfiguration;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.batch.BatchAutoConfiguration;
@@ -28,11 +29,13 @@ import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.event.SourceFilteringListener;
+import org.springframework.util.StringUtils;
 import org.springframework.xd.dirt.cluster.ContainerAttributes;
 import org.springframework.xd.dirt.container.store.ContainerRepository;
 import org.springframework.xd.dirt.job.JobFactory;
 import org.springframework.xd.dirt.module.ModuleDeployer;
 import org.springframework.xd.dirt.module.ModuleRegistry;
+import org.springframework.xd.dirt.server.admin.deployment.RoundRobinContainerPlacementStrategy;
 import org.springframework.xd.dirt.stream.JobDefinitionRepository;
 import org.springframework.xd.dirt.stream.StreamDefinitionRepository;
 import org.springframework.xd.dirt.stream.StreamFactory;
@@ -48,6 +51,7 @@ import org.springframework.xd.module.options.ModuleOptionsMetadataResolver;
  * @author David Turanski
  * @author Ilayaperumal Gopinathan
  * @author Marius Bogoevici
+ * @author Eric Bottard
  */
 @Configuration
 @EnableAutoConfiguration(exclude = {BatchAutoConfiguration.class, JmxAutoConfiguration.class,
@@ -94,9 +98,14 @@ public class ContainerConfiguration {
 		return new SourceFilteringListener(context, delegate);
 	}
 
+	@Value("${xd.module.classLoader.shared:true}")
+	private boolean shareModuleClassLoaders;
+
 	@Bean
 	public ModuleFactory moduleFactory() {
-		return new ModuleFactory(moduleOptionsMetadataResolver);
+		ModuleFactory moduleFactory = new ModuleFactory(moduleOptionsMetadataResolver);
+		moduleFactory.setShareModuleClassLoaders(shareModuleClassLoaders);
+		return moduleFactory;
 	}
 
 	@Bean
@@ -112,6 +121,9 @@ public class ContainerConfiguration {
 				containerRepository, deploymentListener());
 	}
 
+	@Value("${xd.module.deployment.concurrency:4}")
+	private int moduleDeploymentConcurrency;
+
 	@Bean
 	public DeploymentListener deploymentListener() {
 		initializeZooKeeperConnection();
@@ -121,7 +133,42 @@ public class ContainerConfiguration {
 		JobFactory jobFactory = new JobFactory(jobDefinitionRepository, moduleRegistry,
 				moduleOptionsMetadataResolver);
 		return new DeploymentListener(zooKeeperConnection, moduleDeployer, containerAttributes, jobFactory,
-				streamFactory);
+				streamFactory, moduleDeploymentConcurrency);
+	}
+
+	/**
+	 * Heartbeat interval used when none is configured but something reads what heartbeats publish.
+	 */
+	private static final long DEFAULT_HEARTBEAT_INTERVAL = 10000;
+
+	@Value("${xd.heartbeat.interval:}")
+	private String heartbeatInterval;
+
+	@Value("${xd.messageRateMonitoring.enabled:false}")
+	private boolean messageRateMonitoring;
+
+	@Value("${xd.deployment.placementStrategy:}")
+	private String placementStrategy;
+
+	@Bean
+	public ContainerHeartbeat containerHeartbeat() {
+		ContainerHeartbeat heartbeat = new ContainerHeartbeat(zooKeeperConnection, containerAttributes,
+				containerRepository, moduleDeployer, heartbeatInterval());
+		heartbeat.setPublishMessageRates(messageRateMonitoring);
+		return heartbeat;
+	}
+
+	/**
+	 * Return the configured heartbeat interval or, if none is, enable heartbeats only if their figures are used: by
+	 * message rate monitoring, or by a placement strategy other than round robin (which ignores them).
+	 */
+	private long heartbeatInterval() {
+		if (StringUtils.hasText(heartbeatInterval)) {
+			return Long.parseLong(heartbeatInterval.trim());
+		}
+		boolean loadAwarePlacement = StringUtils.hasText(placementStrategy)
+				&& !RoundRobinContainerPlacementStrategy.class.getName().equals(placementStrategy.trim());
+		return messageRateMonitoring || loadAwarePlacement ? DEFAULT_HEARTBEAT_INTERVAL : 0;
 	}
 
 	private void initializeZooKeeperConnection() {
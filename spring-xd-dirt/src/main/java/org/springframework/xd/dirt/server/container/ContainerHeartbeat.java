@@ -0,0 +1,265 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.server.container;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.utils.ThreadUtils;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.xd.dirt.cluster.Container;
+import org.springframework.xd.dirt.cluster.ContainerAttributes;
+import org.springframework.xd.dirt.cluster.ModuleMessageRates;
+import org.springframework.xd.dirt.container.store.ContainerRepository;
+import org.springframework.xd.dirt.module.ModuleDeployer;
+import org.springframework.xd.dirt.zookeeper.Paths;
+import org.springframework.xd.dirt.zookeeper.ZooKeeperConnection;
+import org.springframework.xd.dirt.zookeeper.ZooKeeperUtils;
+import org.springframework.xd.module.core.Module;
+
+/**
+ * Periodically publishes the load of this container (number of deployed modules, CPU load, heap usage and message
+ * rate) into its {@link ContainerAttributes}, and hence into its ZooKeeper node, so that the admin can take it into
+ * account when placing modules.
+ * <p>
+ * If message rate monitoring is enabled, a snapshot of the message rates of each module is also pushed to an
+ * ephemeral node under {@link Paths#METRICS}, where the admin reads them from when listing containers.
+ *
+ * @author Eric Bottard
+ */
+class ContainerHeartbeat implements InitializingBean, DisposableBean, Runnable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ContainerHeartbeat.class);
+
+	/**
+	 * Pattern matching the channels of all modules, as exported by
+	 * {@link org.springframework.xd.dirt.module.jmx.ModuleObjectNamingStrategy}.
+	 */
+	private static final String CHANNEL_MBEANS = "xd.*:component=MessageChannel,*";
+
+	private static final String[] CHANNEL_ATTRIBUTES = { "MeanSendRate", "SendErrorCount" };
+
+	private static final String INPUT_CHANNEL_NAME = "input";
+
+	private static final String OUTPUT_CHANNEL_NAME = "output";
+
+	private final ZooKeeperConnection zkConnection;
+
+	private final ContainerAttributes containerAttributes;
+
+	private final ContainerRepository containerRepository;
+
+	private final ModuleDeployer moduleDeployer;
+
+	private final long interval;
+
+	private volatile boolean publishMessageRates;
+
+	private volatile ScheduledExecutorService executor;
+
+	/**
+	 * Create a heartbeat for the given container.
+	 *
+	 * @param zkConnection ZooKeeper connection
+	 * @param containerAttributes attributes of this container
+	 * @param containerRepository repository the attributes are saved to
+	 * @param moduleDeployer deployer of the modules of this container
+	 * @param interval time in milliseconds between two heartbeats; 0 disables heartbeats
+	 */
+	public ContainerHeartbeat(ZooKeeperConnection zkConnection, ContainerAttributes containerAttributes,
+			ContainerRepository containerRepository, ModuleDeployer moduleDeployer, long interval) {
+		this.zkConnection = zkConnection;
+		this.containerAttributes = containerAttributes;
+		this.containerRepository = containerRepository;
+		this.moduleDeployer = moduleDeployer;
+		this.interval = interval;
+	}
+
+	/**
+	 * Set whether the message rates of each module should be pushed to the admin on each heartbeat.
+	 */
+	public void setPublishMessageRates(boolean publishMessageRates) {
+		this.publishMessageRates = publishMessageRates;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if (interval > 0) {
+			executor = Executors.newSingleThreadScheduledExecutor(ThreadUtils.newThreadFactory("ContainerHeartbeat"));
+			executor.scheduleWithFixedDelay(this, interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			String containerId = containerAttributes.getId();
+			Map<String, ModuleMessageRates> moduleMessageRates = moduleMessageRates();
+			boolean registered;
+			synchronized (containerAttributes) {
+				// same locking as ContainerRegistrar, so that a heartbeat does not
+				// race with the registration of the container node
+				containerAttributes.setLoad(moduleCount(), cpuLoad(), heapUsage(), messageRate(moduleMessageRates),
+						System.currentTimeMillis());
+				registered = zkConnection.isConnected() && containerRepository.exists(containerId);
+				if (registered) {
+					containerRepository.update(new Container(containerId, containerAttributes));
+				}
+			}
+			if (registered && publishMessageRates && moduleMessageRates != null) {
+				publish(containerId, moduleMessageRates);
+			}
+		}
+		catch (Exception e) {
+			logger.debug("Could not publish container heartbeat", e);
+		}
+	}
+
+	private Integer moduleCount() {
+		int count = 0;
+		for (Map<Integer, Module> modules : moduleDeployer.getDeployedModules().values()) {
+			count += modules.size();
+		}
+		return count;
+	}
+
+	private Double cpuLoad() {
+		double loadAverage = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+		if (loadAverage < 0) {
+			// not available on this platform
+			return null;
+		}
+		return round(loadAverage / Runtime.getRuntime().availableProcessors());
+	}
+
+	private Double heapUsage() {
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+		return max > 0 ? round((double) heap.getUsed() / max) : null;
+	}
+
+	/**
+	 * Return the total send rate of the modules input channels, or {@code null} if unknown.
+	 */
+	private Double messageRate(Map<String, ModuleMessageRates> moduleMessageRates) {
+		if (moduleMessageRates == null || moduleMessageRates.isEmpty()) {
+			return null;
+		}
+		double rate = 0;
+		for (ModuleMessageRates rates : moduleMessageRates.values()) {
+			if (rates.getInput() != null) {
+				rate += rates.getInput();
+			}
+		}
+		return round(rate);
+	}
+
+	/**
+	 * Return the message rates of the modules of this container, keyed by their {@code module} MBean key, or
+	 * {@code null} if they cannot be read. Modules are missing if their channels are not exported (for example when
+	 * JMX is disabled).
+	 */
+	private Map<String, ModuleMessageRates> moduleMessageRates() {
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		try {
+			Map<String, Double> inputs = new HashMap<String, Double>();
+			Map<String, Double> outputs = new HashMap<String, Double>();
+			Map<String, Long> errors = new HashMap<String, Long>();
+			for (ObjectName name : mbeanServer.queryNames(new ObjectName(CHANNEL_MBEANS), null)) {
+				String channel = name.getKeyProperty("name");
+				String module = name.getKeyProperty("module");
+				if (module == null || !(INPUT_CHANNEL_NAME.equals(channel) || OUTPUT_CHANNEL_NAME.equals(channel))) {
+					continue;
+				}
+				Double rate = null;
+				long errorCount = 0;
+				for (Attribute attribute : mbeanServer.getAttributes(name, CHANNEL_ATTRIBUTES).asList()) {
+					if (!(attribute.getValue() instanceof Number)) {
+						continue;
+					}
+					Number value = (Number) attribute.getValue();
+					if (CHANNEL_ATTRIBUTES[0].equals(attribute.getName())) {
+						rate = round(value.doubleValue());
+					}
+					else {
+						errorCount = value.longValue();
+					}
+				}
+				(INPUT_CHANNEL_NAME.equals(channel) ? inputs : outputs).put(module, rate);
+				Long previous = errors.get(module);
+				errors.put(module, previous == null ? errorCount : previous + errorCount);
+			}
+			Map<String, ModuleMessageRates> result = new HashMap<String, ModuleMessageRates>();
+			for (Map.Entry<String, Long> entry : errors.entrySet()) {
+				String module = entry.getKey();
+				result.put(module, new ModuleMessageRates(inputs.get(module), outputs.get(module), entry.getValue()));
+			}
+			return result;
+		}
+		catch (Exception e) {
+			logger.trace("Could not read module message rates", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Write the message rates of the modules of this container to its metrics node.
+	 */
+	private void publish(String containerId, Map<String, ModuleMessageRates> moduleMessageRates) throws Exception {
+		Map<String, String> snapshot = new HashMap<String, String>();
+		for (Map.Entry<String, ModuleMessageRates> entry : moduleMessageRates.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().toString());
+		}
+		byte[] data = ZooKeeperUtils.mapToBytes(snapshot);
+		CuratorFramework client = zkConnection.getClient();
+		String path = Paths.build(Paths.METRICS, containerId);
+		try {
+			client.setData().forPath(path, data);
+		}
+		catch (KeeperException.NoNodeException e) {
+			client.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(path, data);
+		}
+	}
+
+	private static double round(double value) {
+		return Math.round(value * 1000) / 1000d;
+	}
+
+}
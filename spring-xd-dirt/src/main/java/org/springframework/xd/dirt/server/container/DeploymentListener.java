@@ -35,6 +35,7 @@ import org.apache.zookeeper.Watcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.util.CollectionUtils;
 import org.springframework.xd.dirt.cluster.ContainerAttributes;
 import org.springframework.xd.dirt.core.Job;
@@ -61,8 +62,9 @@ import org.springframework.xd.module.core.Module;
  * @author David Turanski
  * @author Ilayaperumal Gopinathan Listener for deployment requests for a container instance under {@link
  *         org.springframework.xd.dirt.zookeeper.Paths#DEPLOYMENTS}.
+ * @author Eric Bottard
  */
-class DeploymentListener implements PathChildrenCacheListener {
+class DeploymentListener implements PathChildrenCacheListener, DisposableBean {
 
 	private static final Logger logger = LoggerFactory.getLogger(DeploymentListener.class);
 
@@ -106,6 +108,17 @@ class DeploymentListener implements PathChildrenCacheListener {
 	 */
 	private static final String TAP_CHANNEL_PREFIX = "tap:";
 
+	/**
+	 * Maximum time in milliseconds to wait for in-flight deployments before undeploying all modules.
+	 */
+	private static final long UNDEPLOY_ALL_TIMEOUT = 60000;
+
+	/**
+	 * Executor processing deployment requests for different streams and jobs concurrently; null if deployment
+	 * requests are processed one at a time on the ZooKeeper event thread.
+	 */
+	private final DeploymentUnitExecutor deploymentExecutor;
+
 	/**
 	 * Map of deployed modules.
 	 */
@@ -127,6 +140,24 @@ class DeploymentListener implements PathChildrenCacheListener {
 	 */
 	public DeploymentListener(ZooKeeperConnection zkConnection, ModuleDeployer moduleDeployer,
 			ContainerAttributes containerAttributes, JobFactory jobFactory, StreamFactory streamFactory) {
+		this(zkConnection, moduleDeployer, containerAttributes, jobFactory, streamFactory, 1);
+	}
+
+	/**
+	 * Create an instance that will deploy the modules of up to {@code deploymentConcurrency} streams or jobs
+	 * concurrently. Deployment requests for the modules of the same stream or job are always processed one at a time
+	 * and in the order they were issued by the admin.
+	 *
+	 * @param containerAttributes runtime and configured attributes for the container
+	 * @param streamFactory factory to construct {@link Stream}
+	 * @param jobFactory factory to construct {@link Job}
+	 * @param moduleDeployer module deployer
+	 * @param zkConnection ZooKeeper connection
+	 * @param deploymentConcurrency maximum number of streams or jobs whose modules are deployed concurrently
+	 */
+	public DeploymentListener(ZooKeeperConnection zkConnection, ModuleDeployer moduleDeployer,
+			ContainerAttributes containerAttributes, JobFactory jobFactory, StreamFactory streamFactory,
+			int deploymentConcurrency) {
 		this.zkConnection = zkConnection;
 		this.jobModuleWatcher = new JobModuleWatcher();
 		this.streamModuleWatcher = new StreamModuleWatcher();
@@ -134,28 +165,70 @@ class DeploymentListener implements PathChildrenCacheListener {
 		this.containerAttributes = containerAttributes;
 		this.jobFactory = jobFactory;
 		this.streamFactory = streamFactory;
+		this.deploymentExecutor = deploymentConcurrency > 1 ? new DeploymentUnitExecutor(deploymentConcurrency) : null;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+	public void childEvent(final CuratorFramework client, final PathChildrenCacheEvent event) throws Exception {
 		ZooKeeperUtils.logCacheEvent(logger, event);
 		switch (event.getType()) {
 			case INITIALIZED:
 				break;
 			case CHILD_ADDED:
-				onChildAdded(client, event.getData());
-				break;
 			case CHILD_REMOVED:
-				onChildRemoved(client, event.getData());
+				if (deploymentExecutor == null) {
+					processEvent(client, event);
+				}
+				else {
+					String unitName = new ModuleDeploymentsPath(event.getData().getPath()).getDeploymentUnitName();
+					deploymentExecutor.execute(unitName, new Runnable() {
+
+						@Override
+						public void run() {
+							try {
+								processEvent(client, event);
+							}
+							catch (Exception e) {
+								throw ZooKeeperUtils.wrapThrowable(e);
+							}
+						}
+
+					});
+				}
 				break;
 			default:
 				break;
 		}
 	}
 
+	/**
+	 * Handle a module deployment or removal event.
+	 *
+	 * @param client curator client
+	 * @param event the CHILD_ADDED or CHILD_REMOVED event
+	 */
+	void processEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+		if (event.getType() == PathChildrenCacheEvent.Type.CHILD_ADDED) {
+			onChildAdded(client, event.getData());
+		}
+		else {
+			onChildRemoved(client, event.getData());
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void destroy() {
+		if (deploymentExecutor != null) {
+			deploymentExecutor.shutdown();
+		}
+	}
+
 	/**
 	 * Event handler for new module deployments.
 	 *
@@ -177,22 +250,25 @@ class DeploymentListener implements PathChildrenCacheListener {
 		RuntimeModuleDeploymentProperties properties = new RuntimeModuleDeploymentProperties();
 		properties.putAll(ZooKeeperUtils.bytesToMap(data.getData()));
 
+		long start = System.currentTimeMillis();
 		try {
 			module = (ModuleType.job.toString().equals(moduleType)) ?
 					deployJobModule(client, unitName, moduleLabel, properties) :
 					deployStreamModule(client, unitName, moduleType, moduleLabel, properties);
 			if (module == null) {
 				status = new ModuleDeploymentStatus(container, moduleSequence, key, ModuleDeploymentStatus.State.failed,
-						"Module deployment returned null");
+						"Module deployment returned null", System.currentTimeMillis() - start);
 			}
 			else {
 				status = new ModuleDeploymentStatus(container, moduleSequence, key,
-						ModuleDeploymentStatus.State.deployed, null);
+						ModuleDeploymentStatus.State.deployed, null, System.currentTimeMillis() - start);
+				logger.info("Deployed module {} of type {} for {} in {} ms", moduleLabel, moduleType, unitName,
+						status.getDeploymentTime());
 			}
 		}
 		catch (Exception e) {
 			status = new ModuleDeploymentStatus(container, moduleSequence, key, ModuleDeploymentStatus.State.failed,
-					ZooKeeperUtils.getStackTrace(e));
+					ZooKeeperUtils.getStackTrace(e), System.currentTimeMillis() - start);
 			logger.error("Exception deploying module", e);
 		}
 
@@ -465,6 +541,16 @@ class DeploymentListener implements PathChildrenCacheListener {
 	}
 
 	void undeployAllModules() {
+		if (deploymentExecutor != null) {
+			try {
+				if (!deploymentExecutor.cancelAndAwait(UNDEPLOY_ALL_TIMEOUT)) {
+					logger.warn("Timed out waiting for in-flight module deployments; undeploying modules anyway");
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 		for (Iterator<ModuleDescriptor.Key> iterator = mapDeployedModules.keySet().iterator(); iterator.hasNext(); ) {
 			ModuleDescriptor.Key key = iterator.next();
 			try {
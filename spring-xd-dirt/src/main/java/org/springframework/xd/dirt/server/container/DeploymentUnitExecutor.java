@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.server.container;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.apache.curator.utils.ThreadUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * Runs module deployment and undeployment tasks on a bounded number of threads. Tasks submitted for the same
+ * deployment unit (stream or job) are run one at a time and in submission order, which preserves the order in which
+ * the admin deploys the modules of a stream; tasks for different deployment units run concurrently.
+ *
+ * @author Eric Bottard
+ */
+class DeploymentUnitExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger(DeploymentUnitExecutor.class);
+
+	private final ExecutorService executor;
+
+	/**
+	 * Pending tasks per deployment unit. The head of each queue is the task that is either running or about to be
+	 * run; a deployment unit is present in this map as long as it has such a task.
+	 */
+	@GuardedBy("this")
+	private final Map<String, Queue<Runnable>> queues = new HashMap<String, Queue<Runnable>>();
+
+	/**
+	 * Create an executor running tasks for at most {@code concurrency} deployment units at a time.
+	 *
+	 * @param concurrency maximum number of deployment units processed concurrently
+	 */
+	DeploymentUnitExecutor(int concurrency) {
+		Assert.isTrue(concurrency > 0, "concurrency must be positive");
+		ThreadPoolExecutor threadPool = new ThreadPoolExecutor(concurrency, concurrency, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), ThreadUtils.newThreadFactory("DeploymentUnitExecutor"));
+		threadPool.allowCoreThreadTimeOut(true);
+		this.executor = threadPool;
+	}
+
+	/**
+	 * Run the given task once all the tasks previously submitted for the same deployment unit have completed.
+	 *
+	 * @param deploymentUnitName name of the stream or job the task applies to
+	 * @param task the task to run
+	 */
+	synchronized void execute(String deploymentUnitName, Runnable task) {
+		if (executor.isShutdown()) {
+			logger.debug("Ignoring deployment event for {} received after shutdown", deploymentUnitName);
+			return;
+		}
+		Queue<Runnable> queue = queues.get(deploymentUnitName);
+		if (queue == null) {
+			queue = new ArrayDeque<Runnable>();
+			queue.add(task);
+			queues.put(deploymentUnitName, queue);
+			executor.execute(new Worker(deploymentUnitName));
+		}
+		else {
+			queue.add(task);
+		}
+	}
+
+	/**
+	 * Discard the tasks that have not been started yet, and wait for the others to complete.
+	 *
+	 * @param timeout maximum time to wait, in milliseconds
+	 * @return whether all tasks completed in time
+	 */
+	synchronized boolean cancelAndAwait(long timeout) throws InterruptedException {
+		discardPendingTasks();
+		long deadline = System.currentTimeMillis() + timeout;
+		long remaining = timeout;
+		while (!queues.isEmpty() && remaining > 0) {
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return queues.isEmpty();
+	}
+
+	/**
+	 * Stop accepting tasks; tasks that have not been started yet are discarded, and tasks that are running are left to
+	 * complete. Synchronized with {@link #execute} and the resubmission of workers, so that no task is ever handed to
+	 * the executor after it was shut down.
+	 */
+	synchronized void shutdown() {
+		executor.shutdown();
+		discardPendingTasks();
+	}
+
+	/**
+	 * Remove all the tasks but the head of each queue, which is running or about to be run by a worker.
+	 */
+	private void discardPendingTasks() {
+		for (Queue<Runnable> queue : queues.values()) {
+			Iterator<Runnable> iterator = queue.iterator();
+			iterator.next();
+			while (iterator.hasNext()) {
+				iterator.next();
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Runs the head task of a deployment unit, then resubmits itself if more tasks are queued for that unit, so that
+	 * a unit with many pending tasks does not hold on to a thread.
+	 */
+	private class Worker implements Runnable {
+
+		private final String deploymentUnitName;
+
+		private Worker(String deploymentUnitName) {
+			this.deploymentUnitName = deploymentUnitName;
+		}
+
+		@Override
+		public void run() {
+			Runnable task;
+			synchronized (DeploymentUnitExecutor.this) {
+				// a worker still queued in the executor when it was shut down has not started its task
+				task = executor.isShutdown() ? null : queues.get(deploymentUnitName).peek();
+			}
+			try {
+				if (task != null) {
+					task.run();
+				}
+			}
+			catch (Throwable t) {
+				logger.error("Exception processing deployment event for " + deploymentUnitName, t);
+			}
+			finally {
+				synchronized (DeploymentUnitExecutor.this) {
+					Queue<Runnable> queue = queues.get(deploymentUnitName);
+					queue.poll();
+					if (executor.isShutdown()) {
+						queue.clear();
+					}
+					if (queue.isEmpty()) {
+						queues.remove(deploymentUnitName);
+						DeploymentUnitExecutor.this.notifyAll();
+					}
+					else {
+						executor.execute(this);
+					}
+				}
+			}
+		}
+
+	}
+
+}
@@ -29,6 +29,7 @@ import org.springframework.xd.dirt.module.store.ModuleMetadata;
  *
  * @author Patrick Peralta
  * @author David Turanski
+ * @author Eric Bottard
  */
 public class Paths {
 
@@ -107,6 +108,12 @@ public class Paths {
 	 */
 	public static final String STATUS = "status";
 
+	/**
+	 * Name of the metrics node. Each container writes a snapshot of the message rates of its modules
+	 * to an ephemeral child of this node.
+	 */
+	public static final String METRICS = "metrics";
+
 	/**
 	 * Name of the queue node.
 	 */
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ModuleMessageRates}.
+ *
+ * @author Eric Bottard
+ */
+public class ModuleMessageRatesTests {
+
+	@Test
+	public void testRoundTrip() {
+		ModuleMessageRates rates = ModuleMessageRates.parse(new ModuleMessageRates(1.5, 2.25, 3).toString());
+		assertEquals(Double.valueOf(1.5), rates.getInput());
+		assertEquals(Double.valueOf(2.25), rates.getOutput());
+		assertEquals(3, rates.getErrors());
+	}
+
+	@Test
+	public void testMissingChannel() {
+		ModuleMessageRates source = new ModuleMessageRates(null, 4.0, 0);
+		assertEquals(",4.0,0", source.toString());
+		ModuleMessageRates rates = ModuleMessageRates.parse(source.toString());
+		assertNull(rates.getInput());
+		Map<String, Double> map = rates.toMap();
+		assertFalse(map.containsKey(ModuleMessageRates.INPUT_KEY));
+		assertEquals(Double.valueOf(4.0), map.get(ModuleMessageRates.OUTPUT_KEY));
+		assertEquals(Double.valueOf(0), map.get(ModuleMessageRates.ERRORS_KEY));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotASnapshot() {
+		ModuleMessageRates.parse("1.0,foo,2");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingParts() {
+		ModuleMessageRates.parse("1.0,2");
+	}
+
+}
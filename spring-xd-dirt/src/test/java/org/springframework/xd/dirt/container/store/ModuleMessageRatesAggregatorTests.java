@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.container.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.xd.dirt.cluster.ModuleMessageRates;
+import org.springframework.xd.dirt.container.store.ModuleMessageRatesAggregatorTests.ModuleMessageRatesAggregatorTestsConfig;
+import org.springframework.xd.dirt.zookeeper.EmbeddedZooKeeper;
+import org.springframework.xd.dirt.zookeeper.Paths;
+import org.springframework.xd.dirt.zookeeper.ZooKeeperConnection;
+import org.springframework.xd.dirt.zookeeper.ZooKeeperUtils;
+
+/**
+ * Tests for {@link ModuleMessageRatesAggregator}.
+ *
+ * @author Eric Bottard
+ */
+@ContextConfiguration(classes = ModuleMessageRatesAggregatorTestsConfig.class)
+@RunWith(SpringJUnit4ClassRunner.class)
+public class ModuleMessageRatesAggregatorTests {
+
+	@Autowired
+	private ModuleMessageRatesAggregator aggregator;
+
+	@Autowired
+	private ZooKeeperConnection zooKeeperConnection;
+
+	@Test
+	public void testPushedRates() throws Exception {
+		String containerId = "test" + UUID.randomUUID().toString();
+		Map<String, String> snapshot = new HashMap<String, String>();
+		snapshot.put("mystream.processor.transform.1", new ModuleMessageRates(1.5, 2.25, 3).toString());
+		snapshot.put("mystream.source.http.0", new ModuleMessageRates(null, 4.0, 0).toString());
+		snapshot.put("mystream.sink.log.2", "not a snapshot");
+		zooKeeperConnection.getClient().create().creatingParentsIfNeeded().forPath(
+				Paths.build(Paths.METRICS, containerId), ZooKeeperUtils.mapToBytes(snapshot));
+
+		Map<String, HashMap<String, Double>> messageRates = awaitMessageRates(containerId);
+		assertNotNull(messageRates);
+		assertEquals(2, messageRates.size());
+		HashMap<String, Double> processor = messageRates.get("mystream.processor.transform.1");
+		assertEquals(Double.valueOf(1.5), processor.get(ModuleMessageRates.INPUT_KEY));
+		assertEquals(Double.valueOf(2.25), processor.get(ModuleMessageRates.OUTPUT_KEY));
+		assertEquals(Double.valueOf(3), processor.get(ModuleMessageRates.ERRORS_KEY));
+		HashMap<String, Double> source = messageRates.get("mystream.source.http.0");
+		assertFalse(source.containsKey(ModuleMessageRates.INPUT_KEY));
+		assertEquals(Double.valueOf(4.0), source.get(ModuleMessageRates.OUTPUT_KEY));
+		assertEquals(Double.valueOf(0), source.get(ModuleMessageRates.ERRORS_KEY));
+	}
+
+	@Test
+	public void testNoPushedRates() {
+		assertNull(aggregator.getMessageRates("test" + UUID.randomUUID().toString()));
+	}
+
+	private Map<String, HashMap<String, Double>> awaitMessageRates(String containerId) throws InterruptedException {
+		long timeout = System.currentTimeMillis() + 15000;
+		Map<String, HashMap<String, Double>> messageRates = aggregator.getMessageRates(containerId);
+		while (messageRates == null && System.currentTimeMillis() < timeout) {
+			Thread.sleep(200);
+			messageRates = aggregator.getMessageRates(containerId);
+		}
+		return messageRates;
+	}
+
+	@Configuration
+	public static class ModuleMessageRatesAggregatorTestsConfig {
+
+		@Bean
+		public EmbeddedZooKeeper embeddedZooKeeper() {
+			return new EmbeddedZooKeeper();
+		}
+
+		@Bean
+		public ZooKeeperConnection zooKeeperConnection() {
+			return new ZooKeeperConnection("localhost:" + embeddedZooKeeper().getClientPort());
+		}
+
+		@Bean
+		public ModuleMessageRatesAggregator moduleMessageRatesAggregator() {
+			return new ModuleMessageRatesAggregator(zooKeeperConnection());
+		}
+
+	}
+
+}
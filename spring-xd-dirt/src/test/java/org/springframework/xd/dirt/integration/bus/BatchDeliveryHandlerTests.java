@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.bus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * @author Eric Bottard
+ */
+public class BatchDeliveryHandlerTests {
+
+	private final ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+
+	private final QueueChannel output = new QueueChannel();
+
+	@Before
+	public void setUp() {
+		taskScheduler.initialize();
+	}
+
+	@After
+	public void tearDown() {
+		taskScheduler.shutdown();
+	}
+
+	@Test
+	public void testFullBatchIsDeliveredWithHeaders() throws Exception {
+		BatchDeliveryHandler handler = createHandler(output, 3, 60000, null);
+		for (int i = 0; i < 4; i++) {
+			handler.handleMessage(MessageBuilder.withPayload("foo" + i).setHeader("index", i).build());
+		}
+		Message<?> batch = output.receive(0);
+		assertNotNull(batch);
+		assertEquals(Arrays.asList("foo0", "foo1", "foo2"), batch.getPayload());
+		@SuppressWarnings("unchecked")
+		List<MessageHeaders> headers = (List<MessageHeaders>) batch.getHeaders().get(XdHeaders.XD_BATCH_HEADERS);
+		assertEquals(3, headers.size());
+		assertEquals(2, headers.get(2).get("index"));
+		assertNull(output.receive(0));
+		// the last message is delivered on stop
+		handler.stop();
+		assertEquals(Arrays.asList("foo3"), output.receive(0).getPayload());
+	}
+
+	@Test
+	public void testPartialBatchIsDeliveredOnTimeout() throws Exception {
+		BatchDeliveryHandler handler = createHandler(output, 10, 100, null);
+		handler.handleMessage(MessageBuilder.withPayload("foo").build());
+		handler.handleMessage(MessageBuilder.withPayload("bar").build());
+		Message<?> batch = output.receive(5000);
+		assertNotNull(batch);
+		assertEquals(Arrays.asList("foo", "bar"), batch.getPayload());
+	}
+
+	@Test
+	public void testAcknowledgerSeesOutcome() throws Exception {
+		final AtomicInteger acknowledged = new AtomicInteger();
+		final AtomicInteger rejected = new AtomicInteger();
+		BatchDeliveryHandler.Acknowledger acknowledger = new BatchDeliveryHandler.Acknowledger() {
+
+			@Override
+			public void acknowledge(List<MessageHeaders> headers, boolean delivered) {
+				(delivered ? acknowledged : rejected).addAndGet(headers.size());
+			}
+
+		};
+		DirectChannel failing = new DirectChannel();
+		failing.subscribe(new MessageHandler() {
+
+			@Override
+			public void handleMessage(Message<?> message) throws MessagingException {
+				throw new MessagingException(message, "planned");
+			}
+
+		});
+		BatchDeliveryHandler handler = createHandler(failing, 2, 60000, acknowledger);
+		handler.handleMessage(MessageBuilder.withPayload("foo").build());
+		handler.handleMessage(MessageBuilder.withPayload("bar").build());
+		assertEquals(0, acknowledged.get());
+		assertEquals(2, rejected.get());
+
+		handler = createHandler(output, 2, 60000, acknowledger);
+		handler.handleMessage(MessageBuilder.withPayload("foo").build());
+		assertEquals(0, acknowledged.get());
+		handler.handleMessage(MessageBuilder.withPayload("bar").build());
+		assertEquals(2, acknowledged.get());
+	}
+
+	@Test
+	public void testFailedBatchIsRetriedThenRecovered() throws Exception {
+		final AtomicInteger attempts = new AtomicInteger();
+		DirectChannel failing = new DirectChannel();
+		failing.subscribe(new MessageHandler() {
+
+			@Override
+			public void handleMessage(Message<?> message) throws MessagingException {
+				attempts.incrementAndGet();
+				throw new MessagingException(message, "planned");
+			}
+
+		});
+		final List<Object> recovered = new ArrayList<Object>();
+		final AtomicInteger acknowledged = new AtomicInteger();
+		BatchDeliveryHandler handler = createHandler(failing, 2, 60000, new BatchDeliveryHandler.Acknowledger() {
+
+			@Override
+			public void acknowledge(List<MessageHeaders> headers, boolean delivered) {
+				if (delivered) {
+					acknowledged.addAndGet(headers.size());
+				}
+			}
+
+		});
+		SimpleRetryPolicy retryPolicy = new SimpleRetryPolicy();
+		retryPolicy.setMaxAttempts(3);
+		RetryTemplate retryTemplate = new RetryTemplate();
+		retryTemplate.setRetryPolicy(retryPolicy);
+		handler.setRetryOperations(retryTemplate);
+		handler.setRecoverer(new MessageHandler() {
+
+			@Override
+			public void handleMessage(Message<?> message) throws MessagingException {
+				recovered.add(message.getPayload());
+			}
+
+		});
+		handler.handleMessage(MessageBuilder.withPayload("foo").build());
+		handler.handleMessage(MessageBuilder.withPayload("bar").build());
+		assertEquals(3, attempts.get());
+		assertEquals(Arrays.asList("foo", "bar"), recovered);
+		// recovered messages are done with
+		assertEquals(2, acknowledged.get());
+	}
+
+	@Test
+	public void testStopDeliversAndStops() throws Exception {
+		BatchDeliveryHandler handler = createHandler(output, 10, 60000, null);
+		handler.start();
+		assertTrue(handler.isRunning());
+		handler.stop();
+		assertFalse(handler.isRunning());
+		assertNull(output.receive(0));
+		// messages still arriving before the endpoint stops are not held
+		handler.handleMessage(MessageBuilder.withPayload("foo").build());
+		assertEquals(Arrays.asList("foo"), output.receive(0).getPayload());
+	}
+
+	private BatchDeliveryHandler createHandler(MessageChannel channel, int batchSize,
+			long batchTimeout, BatchDeliveryHandler.Acknowledger acknowledger) throws Exception {
+		BatchDeliveryHandler handler = new BatchDeliveryHandler(channel, batchSize, batchTimeout, acknowledger);
+		handler.setTaskScheduler(taskScheduler);
+		handler.setBeanFactory(new DefaultListableBeanFactory());
+		handler.afterPropertiesSet();
+		return handler;
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.bus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ConsistentHashPartitionSelector}.
+ *
+ * @author Eric Bottard
+ */
+public class ConsistentHashPartitionSelectorTests {
+
+	private static final int KEYS = 10000;
+
+	private final ConsistentHashPartitionSelector selector = new ConsistentHashPartitionSelector();
+
+	@Test
+	public void testKeysAreSpreadEvenly() {
+		int[] counts = new int[5];
+		for (int i = 0; i < KEYS; i++) {
+			counts[selector.selectPartition("key" + i, counts.length)]++;
+		}
+		for (int count : counts) {
+			assertTrue("Uneven spread: " + count, Math.abs(count - KEYS / counts.length) < KEYS / 20);
+		}
+	}
+
+	@Test
+	public void testOnlyKeysOfNewPartitionMove() {
+		int moved = 0;
+		for (int i = 0; i < KEYS; i++) {
+			String key = "key" + i;
+			int before = selector.selectPartition(key, 4);
+			int after = selector.selectPartition(key, 5);
+			if (before != after) {
+				assertEquals(4, after);
+				moved++;
+			}
+		}
+		assertTrue("Too many keys moved: " + moved, moved < KEYS / 4);
+	}
+
+	@Test
+	public void testKeysAreHashedByContent() {
+		assertEquals(selector.selectPartition("foo", 7), selector.selectPartition(new StringBuilder("foo"), 7));
+		assertEquals(selector.selectPartition(42, 7), selector.selectPartition(42L, 7));
+		assertEquals(selector.selectPartition(new byte[] { 1, 2, 3 }, 7),
+				selector.selectPartition(new byte[] { 1, 2, 3 }, 7));
+	}
+
+}
@@ -16,11 +16,14 @@
 
 package org.springframework.xd.dirt.integration.bus;
 
+import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -29,6 +32,7 @@ import java.util.Properties;
 import org.junit.Before;
 import org.junit.Test;
 
+import org.springframework.context.support.GenericApplicationContext;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
@@ -38,6 +42,7 @@ import org.springframework.messaging.support.GenericMessage;
 import org.springframework.util.MimeType;
 import org.springframework.util.MimeTypeUtils;
 import org.springframework.xd.dirt.integration.bus.MessageBusSupport.JavaClassMimeTypeConversion;
+import org.springframework.xd.dirt.integration.bus.MessageBusSupport.PartitioningMetadata;
 import org.springframework.xd.dirt.integration.bus.serializer.AbstractCodec;
 import org.springframework.xd.dirt.integration.bus.serializer.CompositeCodec;
 import org.springframework.xd.dirt.integration.bus.serializer.kryo.PojoCodec;
@@ -49,6 +54,7 @@ import org.springframework.xd.tuple.TupleBuilder;
 /**
  * @author Gary Russell
  * @author David Turanski
+ * @author Eric Bottard
  */
 public class MessageBusSupportTests {
 
@@ -197,6 +203,32 @@ public class MessageBusSupportTests {
 		assertNull(reconstructed.get(MessageHeaders.CONTENT_TYPE));
 	}
 
+	@Test
+	public void testPojoSerializationForEmbedding() throws Exception {
+		MessageValues convertedValues = messageBus.serializePayloadForEmbedding(
+				new GenericMessage<Foo>(new Foo("bar")));
+		assertThat(convertedValues.getPayload(), instanceOf(ByteBuffer.class));
+		byte[] embedded = new EmbeddedHeadersMessageConverter().embedHeaders(convertedValues,
+				MessageHeaders.CONTENT_TYPE);
+
+		MessageValues extracted = new EmbeddedHeadersMessageConverter().extractHeaders(
+				MessageBuilder.withPayload(embedded).build(), false, false);
+		MessageValues reconstructed = messageBus.deserializePayloadIfNecessary(extracted);
+		assertEquals("bar", ((Foo) reconstructed.getPayload()).getBar());
+		assertNull(reconstructed.get(MessageHeaders.CONTENT_TYPE));
+	}
+
+	@Test
+	public void testBytesPayloadViewMaterialized() throws Exception {
+		Message<byte[]> message = MessageBuilder.withPayload("foo".getBytes()).build();
+		byte[] embedded = new EmbeddedHeadersMessageConverter().embedHeaders(
+				messageBus.serializePayloadForEmbedding(message), MessageHeaders.CONTENT_TYPE);
+		MessageValues extracted = new EmbeddedHeadersMessageConverter().extractHeaders(
+				MessageBuilder.withPayload(embedded).build(), false, false);
+		MessageValues reconstructed = messageBus.deserializePayloadIfNecessary(extracted);
+		assertEquals("foo", new String((byte[]) reconstructed.getPayload()));
+	}
+
 	@Test
 	public void mimeTypeIsSimpleObject() throws ClassNotFoundException {
 		MimeType mt = JavaClassMimeTypeConversion.mimeTypeFromObject(new Object());
@@ -232,6 +264,54 @@ public class MessageBusSupportTests {
 		assertEquals(int[][][].class, Class.forName(className));
 	}
 
+	@Test
+	public void testSimplePartitionKeyExpressions() throws Exception {
+		initMessageBus();
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("id", "a");
+		Message<?> message = MessageBuilder.withPayload(payload).setHeader("id2", "b").build();
+		assertEquals(partition("a", 3), messageBus.determinePartition(message, partitioning("payload.id", 3)));
+		assertEquals(partition("a", 3), messageBus.determinePartition(message, partitioning("payload['id']", 3)));
+		assertEquals(partition("b", 3), messageBus.determinePartition(message, partitioning("headers['id2']", 3)));
+		// not a simple expression, or not a Map payload: falls back to SpEL
+		assertEquals(partition("a", 3), messageBus.determinePartition(message, partitioning("payload.get('id')", 3)));
+		Message<Foo> pojoMessage = MessageBuilder.withPayload(new Foo("c")).build();
+		assertEquals(partition("c", 3), messageBus.determinePartition(pojoMessage, partitioning("payload.bar", 3)));
+	}
+
+	@Test
+	public void testPartitionStrategiesResolvedOnce() throws Exception {
+		GenericApplicationContext context = initMessageBus();
+		Properties properties = new Properties();
+		properties.setProperty(BusProperties.PARTITION_KEY_EXTRACTOR_CLASS, PartitionTestSupport.class.getName());
+		properties.setProperty(BusProperties.PARTITION_SELECTOR_CLASS, PartitionTestSupport.class.getName());
+		PartitioningMetadata meta = new PartitioningMetadata(new AbstractBusPropertiesAccessor(properties) {
+		}, 3);
+		assertEquals(2, messageBus.determinePartition(new GenericMessage<Integer>(5), meta));
+		Object strategy = context.getBean(PartitionTestSupport.class.getName());
+		assertEquals(1, messageBus.determinePartition(new GenericMessage<Integer>(7), meta));
+		assertSame(strategy, context.getBean(PartitionTestSupport.class.getName()));
+	}
+
+	private GenericApplicationContext initMessageBus() throws Exception {
+		GenericApplicationContext context = new GenericApplicationContext();
+		context.refresh();
+		messageBus.setApplicationContext(context);
+		messageBus.afterPropertiesSet();
+		return context;
+	}
+
+	private PartitioningMetadata partitioning(String keyExpression, int partitionCount) {
+		Properties properties = new Properties();
+		properties.setProperty(BusProperties.PARTITION_KEY_EXPRESSION, keyExpression);
+		return new PartitioningMetadata(new AbstractBusPropertiesAccessor(properties) {
+		}, partitionCount);
+	}
+
+	private int partition(Object key, int partitionCount) {
+		return Math.abs(key.hashCode()) % partitionCount;
+	}
+
 	public static class Foo {
 
 		private String bar;
@@ -20,8 +20,12 @@ import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -33,12 +37,18 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import kafka.api.OffsetRequest;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.TimeoutException;
 import org.hamcrest.CoreMatchers;
 import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import org.springframework.beans.DirectFieldAccessor;
 import org.springframework.integration.channel.DirectChannel;
@@ -51,7 +61,11 @@ import org.springframework.integration.kafka.listener.KafkaMessageListenerContai
 import org.springframework.integration.kafka.listener.MessageListener;
 import org.springframework.integration.kafka.support.ProducerConfiguration;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
 import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.ErrorMessage;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.xd.dirt.integration.bus.Binding;
 import org.springframework.xd.dirt.integration.bus.BusProperties;
 import org.springframework.xd.dirt.integration.bus.MessageBus;
@@ -368,6 +382,117 @@ public class KafkaMessageBusTests extends PartitionCapableBusTests {
 		messageBus.unbindProducers("foo" + uniqueBindingId);
 	}
 
+	@Test
+	public void testBoundedInFlightWindow() throws Exception {
+		KafkaTestMessageBus messageBus = (KafkaTestMessageBus) getMessageBus();
+		DirectChannel moduleOutputChannel = new DirectChannel();
+		QueueChannel moduleInputChannel = new QueueChannel();
+		Properties producerProperties = new Properties();
+		producerProperties.put(KafkaMessageBus.MAX_IN_FLIGHT, "2");
+		String name = "inFlight" + System.currentTimeMillis() + ".0";
+		messageBus.bindProducer(name, moduleOutputChannel, producerProperties);
+		messageBus.bindConsumer(name, moduleInputChannel, null);
+		// Let the consumer actually bind to the producer before sending a msg
+		busBindUnbindLatency();
+		for (int i = 0; i < 10; i++) {
+			moduleOutputChannel.send(new GenericMessage<>(("foo" + i).getBytes()));
+		}
+		for (int i = 0; i < 10; i++) {
+			assertNotNull(moduleInputChannel.receive(5000));
+		}
+		// unbinding waits for the window to drain
+		messageBus.unbindProducers(name);
+		messageBus.unbindConsumers(name);
+		KafkaMessageBus coreMessageBus = messageBus.getCoreMessageBus();
+		assertEquals(10, coreMessageBus.getSendSuccessCount());
+		assertEquals(0, coreMessageBus.getSendFailureCount());
+		assertEquals(0, coreMessageBus.getInFlightCount());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testFailedSendGoesToErrorChannel() throws Exception {
+		KafkaTestMessageBus messageBus = (KafkaTestMessageBus) getMessageBus();
+		DirectChannel moduleOutputChannel = new DirectChannel();
+		QueueChannel errorChannel = new QueueChannel();
+		Properties producerProperties = new Properties();
+		producerProperties.put(KafkaMessageBus.MAX_IN_FLIGHT, "2");
+		String name = "sendFailure" + System.currentTimeMillis() + ".0";
+		messageBus.bindProducer(name, moduleOutputChannel, producerProperties);
+		DirectFieldAccessor accessor = new DirectFieldAccessor(messageBus.getCoreMessageBus());
+		List<Binding> bindings = (List<Binding>) accessor.getPropertyValue("bindings");
+		DirectFieldAccessor endpointAccessor = new DirectFieldAccessor(bindings.get(bindings.size() - 1).getEndpoint());
+		DirectFieldAccessor handlerAccessor = new DirectFieldAccessor(endpointAccessor.getPropertyValue("handler"));
+		// the brokers never acknowledge the record
+		Producer<byte[], byte[]> producer = mock(Producer.class);
+		doAnswer(new Answer<Object>() {
+
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				((Callback) invocation.getArguments()[1]).onCompletion(null, new TimeoutException("planned"));
+				return null;
+			}
+		}).when(producer).send(any(ProducerRecord.class), any(Callback.class));
+		handlerAccessor.setPropertyValue("producer", producer);
+		KafkaMessageBus coreMessageBus = messageBus.getCoreMessageBus();
+		long failures = coreMessageBus.getSendFailureCount();
+
+		Message<byte[]> failing = MessageBuilder.withPayload("foo".getBytes()).setErrorChannel(errorChannel).build();
+		moduleOutputChannel.send(failing);
+		Message<?> error = errorChannel.receive(5000);
+		assertThat(error, instanceOf(ErrorMessage.class));
+		MessageDeliveryException exception = (MessageDeliveryException) error.getPayload();
+		assertEquals(failing, exception.getFailedMessage());
+		assertThat(exception.getCause(), instanceOf(TimeoutException.class));
+		assertEquals(failures + 1, coreMessageBus.getSendFailureCount());
+		assertEquals(0, coreMessageBus.getInFlightCount());
+
+		// the next record is not blamed for the previous failure
+		moduleOutputChannel.send(new GenericMessage<>("bar".getBytes()));
+		messageBus.unbindProducers(name);
+	}
+
+	@Test
+	public void testDynamicPartitionAssignment() throws Exception {
+		KafkaTestMessageBus messageBus = (KafkaTestMessageBus) getMessageBus();
+		messageBus.getCoreMessageBus().setDynamicPartitionAssignment(true);
+		try {
+			DirectChannel moduleOutputChannel = new DirectChannel();
+			QueueChannel input1 = new QueueChannel();
+			QueueChannel input2 = new QueueChannel();
+			Properties consumerProperties = new Properties();
+			consumerProperties.put(BusProperties.COUNT, "2");
+			String name = "dynamic" + System.currentTimeMillis() + ".0";
+			messageBus.bindConsumer(name, input1, consumerProperties);
+			messageBus.bindConsumer(name, input2, consumerProperties);
+			messageBus.bindProducer(name, moduleOutputChannel, null);
+			busBindUnbindLatency();
+			for (int i = 0; i < 10; i++) {
+				moduleOutputChannel.send(new GenericMessage<>(("foo" + i).getBytes()));
+			}
+			int received = 0;
+			while (input1.receive(1000) != null || input2.receive(1000) != null) {
+				received++;
+			}
+			assertEquals(10, received);
+
+			// the surviving consumer takes over all partitions
+			messageBus.unbindConsumer(name, input1);
+			busBindUnbindLatency();
+			for (int i = 0; i < 10; i++) {
+				moduleOutputChannel.send(new GenericMessage<>(("bar" + i).getBytes()));
+			}
+			for (int i = 0; i < 10; i++) {
+				assertNotNull(input2.receive(5000));
+			}
+			messageBus.unbindProducers(name);
+			messageBus.unbindConsumers(name);
+		}
+		finally {
+			messageBus.getCoreMessageBus().setDynamicPartitionAssignment(false);
+		}
+	}
+
 	@Test
 	@Ignore("Kafka message bus does not support direct binding")
 	@Override
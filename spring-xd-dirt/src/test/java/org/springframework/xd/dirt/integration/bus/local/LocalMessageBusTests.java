@@ -17,11 +17,17 @@
 package org.springframework.xd.dirt.integration.bus.local;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -133,6 +139,76 @@ public class LocalMessageBusTests extends AbstractMessageBusTests {
 		assertNotSame(Thread.currentThread(), tapThread.get());
 	}
 
+	@Test
+	public void testRingBufferKeepsOrderPerKey() throws Exception {
+		LocalMessageBus bus = (LocalMessageBus) getMessageBus();
+		bus.setUseRingBuffer(true);
+		bus.setRingBufferSize(16);
+		bus.setRingBufferConcurrency(3);
+		bus.setRingBufferOrderingExpression("headers['key']");
+		DirectChannel moduleOutputChannel = new DirectChannel();
+		bus.bindProducer("ring.0", moduleOutputChannel, null);
+		final int count = 300;
+		final CountDownLatch latch = new CountDownLatch(count);
+		final Map<Object, List<Integer>> received = new ConcurrentHashMap<Object, List<Integer>>();
+		final AtomicReference<Thread> consumerThread = new AtomicReference<Thread>();
+		bus.bindConsumer("ring.0", new DirectChannel() {
+
+			@Override
+			protected boolean doSend(Message<?> message, long timeout) {
+				consumerThread.set(Thread.currentThread());
+				List<Integer> sequence = received.get(message.getHeaders().get("key"));
+				synchronized (sequence) {
+					sequence.add((Integer) message.getPayload());
+				}
+				latch.countDown();
+				return true;
+			}
+		}, null);
+		for (int key = 0; key < 5; key++) {
+			received.put(key, new ArrayList<Integer>());
+		}
+		for (int i = 0; i < count; i++) {
+			moduleOutputChannel.send(MessageBuilder.withPayload(i).setHeader("key", i % 5).build());
+		}
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertNotSame(Thread.currentThread(), consumerThread.get());
+		for (Map.Entry<Object, List<Integer>> entry : received.entrySet()) {
+			List<Integer> sequence = entry.getValue();
+			assertEquals(count / 5, sequence.size());
+			for (int i = 0; i < sequence.size(); i++) {
+				assertEquals(Integer.valueOf(i * 5 + (Integer) entry.getKey()), sequence.get(i));
+			}
+		}
+		bus.destroy();
+	}
+
+	@Test
+	public void testRingBufferDestroyedWhenLastBindingUnbound() throws Exception {
+		LocalMessageBus bus = (LocalMessageBus) getMessageBus();
+		bus.setUseRingBuffer(true);
+		bus.setRingBufferSize(16);
+		DirectChannel moduleOutputChannel = new DirectChannel();
+		DirectChannel moduleInputChannel = new DirectChannel();
+		bus.bindProducer("ring.1", moduleOutputChannel, null);
+		bus.bindConsumer("ring.1", moduleInputChannel, null);
+		RingBufferChannel ringBufferChannel = bus.getBean("ring.1", RingBufferChannel.class);
+
+		bus.unbindProducer("ring.1", moduleOutputChannel);
+		// still used by the consumer
+		assertSame(ringBufferChannel, bus.getBean("ring.1", RingBufferChannel.class));
+		assertNotNull(TestUtils.getPropertyValue(ringBufferChannel, "lanes"));
+
+		bus.unbindConsumers("ring.1");
+		assertNull(TestUtils.getPropertyValue(ringBufferChannel, "lanes"));
+		assertFalse(TestUtils.getPropertyValue(bus, "applicationContext", GenericApplicationContext.class)
+				.containsBean("ring.1"));
+
+		bus.bindConsumer("ring.1", moduleInputChannel, null);
+		assertNotSame(ringBufferChannel, bus.getBean("ring.1", RingBufferChannel.class));
+		bus.destroy();
+	}
+
 	private void verifyPayloadConversion(final Object expectedValue, final LocalMessageBus bus) {
 		DirectChannel myChannel = new DirectChannel();
 		bus.bindConsumer("in", myChannel, null);
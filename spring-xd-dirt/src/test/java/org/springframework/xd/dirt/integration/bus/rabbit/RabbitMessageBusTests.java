@@ -31,6 +31,8 @@ import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -38,6 +40,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.Deflater;
 
 import org.aopalliance.aop.Advice;
@@ -562,6 +565,58 @@ public class RabbitMessageBusTests extends PartitionCapableBusTests {
 		admin.deleteExchange("xdbustest.DLX");
 	}
 
+	@Test
+	public void testBatchDeliveryWithAutoBindDLQ() throws Exception {
+		RabbitAdmin admin = new RabbitAdmin(this.rabbitAvailableRule.getResource());
+
+		MessageBus bus = getMessageBus();
+		Properties properties = new Properties();
+		properties.put("prefix", "xdbustest.");
+		properties.put("autoBindDLQ", "true");
+		properties.put("batchDelivery", "true");
+		properties.put("batchSize", "2");
+		properties.put("maxAttempts", "2");
+		properties.put("backOffInitialInterval", "10");
+		final AtomicInteger attempts = new AtomicInteger();
+		DirectChannel moduleInputChannel = new DirectChannel();
+		moduleInputChannel.setBeanName("dlqBatchTest");
+		moduleInputChannel.subscribe(new MessageHandler() {
+
+			@Override
+			public void handleMessage(Message<?> message) throws MessagingException {
+				attempts.incrementAndGet();
+				throw new RuntimeException("foo");
+			}
+
+		});
+		bus.bindConsumer("dlqbatchtest", moduleInputChannel, properties);
+
+		RabbitTemplate template = new RabbitTemplate(this.rabbitAvailableRule.getResource());
+		template.convertAndSend("", "xdbustest.dlqbatchtest", "foo");
+		template.convertAndSend("", "xdbustest.dlqbatchtest", "bar");
+
+		List<Object> deadLetters = new ArrayList<Object>();
+		int n = 0;
+		while (n++ < 100 && deadLetters.size() < 2) {
+			Object deadLetter = template.receiveAndConvert("xdbustest.dlqbatchtest.dlq");
+			if (deadLetter != null) {
+				deadLetters.add(deadLetter);
+			}
+			else {
+				Thread.sleep(100);
+			}
+		}
+		assertEquals(Arrays.asList("foo", "bar"), deadLetters);
+		// retried once as a batch, then rejected rather than requeued
+		assertEquals(2, attempts.get());
+
+		bus.unbindConsumer("dlqbatchtest", moduleInputChannel);
+		assertNull(template.receive("xdbustest.dlqbatchtest"));
+		admin.deleteQueue("xdbustest.dlqbatchtest.dlq");
+		admin.deleteQueue("xdbustest.dlqbatchtest");
+		admin.deleteExchange("xdbustest.DLX");
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void testBatchingAndCompression() throws Exception {
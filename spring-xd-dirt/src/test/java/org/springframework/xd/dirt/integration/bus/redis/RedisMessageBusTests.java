@@ -21,12 +21,14 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -43,8 +45,11 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.expression.Expression;
 import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.endpoint.AbstractEndpoint;
 import org.springframework.integration.redis.inbound.RedisQueueMessageDrivenEndpoint;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.support.GenericMessage;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.xd.dirt.integration.bus.Binding;
@@ -52,11 +57,13 @@ import org.springframework.xd.dirt.integration.bus.BusProperties;
 import org.springframework.xd.dirt.integration.bus.EmbeddedHeadersMessageConverter;
 import org.springframework.xd.dirt.integration.bus.MessageBus;
 import org.springframework.xd.dirt.integration.bus.PartitionCapableBusTests;
+import org.springframework.xd.dirt.integration.bus.XdHeaders;
 import org.springframework.xd.dirt.integration.redis.RedisMessageBus;
 import org.springframework.xd.test.redis.RedisTestSupport;
 
 /**
  * @author Gary Russell
+ * @author Eric Bottard
  */
 public class RedisMessageBusTests extends PartitionCapableBusTests {
 
@@ -336,6 +343,107 @@ public class RedisMessageBusTests extends PartitionCapableBusTests {
 		assertThat(new String((byte[]) rightPop), containsString("foo"));
 	}
 
+	@Test
+	public void testBatchingConsumerFailWithoutRetry() {
+		MessageBus bus = getMessageBus();
+		DirectChannel channel = new DirectChannel();
+		bus.bindProducer("batchfail.0", channel, null);
+		Properties props = new Properties();
+		props.put("maxAttempts", "1");
+		props.put("batchingEnabled", "true");
+		props.put("batchSize", "2");
+		bus.bindConsumer("batchfail.0", new DirectChannel(), props); // no subscriber
+		channel.send(new GenericMessage<String>("foo"));
+		RedisTemplate<String, Object> template = createTemplate();
+		Object rightPop = template.boundListOps("ERRORS:batchfail.0").rightPop(5, TimeUnit.SECONDS);
+		assertNotNull(rightPop);
+		assertThat(new String((byte[]) rightPop), containsString("foo"));
+		bus.unbindProducers("batchfail.0");
+		bus.unbindConsumers("batchfail.0");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testBatching() throws Exception {
+		MessageBus bus = getMessageBus();
+		Properties properties = new Properties();
+		properties.put("batchingEnabled", "true");
+		properties.put("batchSize", "3");
+		properties.put("batchTimeout", "30000");
+		DirectChannel output = new DirectChannel();
+		bus.bindProducer("batching.0", output, properties);
+		createTemplate().delete("queue.batching.0");
+
+		output.send(new GenericMessage<String>("foo"));
+		output.send(new GenericMessage<String>("bar"));
+		Spy spy = spyOn("batching.0");
+		assertNull(spy.receive(true));
+		output.send(new GenericMessage<String>("baz"));
+		assertEquals("foo", spy.receive(false));
+		assertEquals("bar", spy.receive(false));
+		assertEquals("baz", spy.receive(false));
+
+		// released by unbinding
+		output.send(new GenericMessage<String>("qux"));
+		assertNull(spy.receive(true));
+		bus.unbindProducers("batching.0");
+		assertEquals("qux", spy.receive(false));
+
+		// released by the timeout
+		properties.put("batchTimeout", "100");
+		bus.bindProducer("batching.0", output, properties);
+		output.send(new GenericMessage<String>("foo"));
+		byte[] bytes = (byte[]) createTemplate().boundListOps("queue.batching.0").rightPop(5, TimeUnit.SECONDS);
+		assertNotNull(bytes);
+
+		Properties consumerProperties = new Properties();
+		consumerProperties.put("batchingEnabled", "true");
+		consumerProperties.put("batchSize", "2");
+		consumerProperties.put("concurrency", "1");
+		QueueChannel input = new QueueChannel();
+		bus.bindConsumer("batching.0", input, consumerProperties);
+		for (int i = 0; i < 5; i++) {
+			output.send(new GenericMessage<String>("foo" + i));
+		}
+		for (int i = 0; i < 5; i++) {
+			Message<String> in = (Message<String>) input.receive(10000);
+			assertNotNull(in);
+			assertEquals("foo" + i, in.getPayload());
+		}
+
+		bus.unbindProducers("batching.0");
+		bus.unbindConsumers("batching.0");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testBatchDelivery() throws Exception {
+		RedisTestMessageBus bus = (RedisTestMessageBus) getMessageBus();
+		DirectChannel output = new DirectChannel();
+		bus.bindProducer("batchDelivery.0", output, null);
+		Properties consumerProperties = new Properties();
+		consumerProperties.put("batchDelivery", "true");
+		consumerProperties.put("batchSize", "3");
+		consumerProperties.put("batchTimeout", "100");
+		QueueChannel input = new QueueChannel();
+		bus.bindConsumer("batchDelivery.0", input, consumerProperties);
+		for (int i = 0; i < 5; i++) {
+			output.send(new GenericMessage<String>("foo" + i));
+		}
+		List<Object> received = new ArrayList<Object>();
+		while (received.size() < 5) {
+			Message<List<Object>> batch = (Message<List<Object>>) input.receive(10000);
+			assertNotNull(batch);
+			List<MessageHeaders> headers = (List<MessageHeaders>) batch.getHeaders().get(XdHeaders.XD_BATCH_HEADERS);
+			assertEquals(batch.getPayload().size(), headers.size());
+			received.addAll(batch.getPayload());
+		}
+		assertEquals(Arrays.asList("foo0", "foo1", "foo2", "foo3", "foo4"), received);
+
+		bus.unbindProducers("batchDelivery.0");
+		bus.unbindConsumers("batchDelivery.0");
+	}
+
 	@Test
 	public void testMoreHeaders() {
 		RedisMessageBus bus = new RedisMessageBus(mock(RedisConnectionFactory.class), getCodec(), "foo", "bar");
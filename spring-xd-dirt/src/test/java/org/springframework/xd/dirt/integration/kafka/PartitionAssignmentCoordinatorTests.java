@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.kafka;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.I0Itec.zkclient.ZkClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.integration.kafka.core.Partition;
+import org.springframework.xd.dirt.zookeeper.EmbeddedZooKeeper;
+
+/**
+ * Tests for {@link PartitionAssignmentCoordinator}.
+ *
+ * @author Eric Bottard
+ */
+public class PartitionAssignmentCoordinatorTests {
+
+	private static final String ROOT = "/coordinator-tests";
+
+	private static final String TOPIC = "topic";
+
+	private final EmbeddedZooKeeper zooKeeper = new EmbeddedZooKeeper();
+
+	private ZkClient observer;
+
+	/**
+	 * Which member consumes each partition.
+	 */
+	private final Map<Integer, String> consumers = new HashMap<Integer, String>();
+
+	/**
+	 * The partitions that were assigned to a member while another one was still consuming them.
+	 */
+	private final List<Integer> overlaps = new ArrayList<Integer>();
+
+	@Before
+	public void setUp() {
+		zooKeeper.start();
+		observer = new ZkClient("localhost:" + zooKeeper.getClientPort(), 10000, 10000, KafkaMessageBus.utf8Serializer);
+	}
+
+	@After
+	public void tearDown() {
+		observer.close();
+		zooKeeper.stop();
+	}
+
+	@Test
+	public void testPartitionsReleasedBeforeLeaving() throws Exception {
+		RecordingCoordinator first = new RecordingCoordinator("a");
+		RecordingCoordinator second = new RecordingCoordinator("b");
+		first.start();
+		second.start();
+		awaitAssignment(first, 0, 2);
+		awaitAssignment(second, 1, 3);
+
+		first.stop();
+		Assignment last = first.lastAssignment();
+		assertTrue(last.partitions.isEmpty());
+		assertTrue("offsets must be flushed while the member is still registered", last.memberRegistered);
+		assertFalse(observer.exists(ROOT + "/" + TOPIC + "/members/a"));
+
+		awaitAssignment(second, 0, 1, 2, 3);
+		second.stop();
+	}
+
+	@Test
+	public void testPartitionsHandedOverWhenMemberJoins() throws Exception {
+		RecordingCoordinator first = new RecordingCoordinator("a");
+		RecordingCoordinator second = new RecordingCoordinator("b");
+		first.start();
+		awaitAssignment(first, 0, 1, 2, 3);
+
+		second.start();
+		awaitAssignment(first, 0, 2);
+		awaitAssignment(second, 1, 3);
+		synchronized (consumers) {
+			assertTrue("partitions consumed by two members at once: " + overlaps, overlaps.isEmpty());
+		}
+
+		second.stop();
+		first.stop();
+	}
+
+	private void awaitAssignment(RecordingCoordinator coordinator, Integer... ids) throws InterruptedException {
+		List<Integer> expected = Arrays.asList(ids);
+		for (int i = 0; i < 100; i++) {
+			if (expected.equals(coordinator.lastAssignment().ids())) {
+				return;
+			}
+			Thread.sleep(100);
+		}
+		assertEquals(expected, coordinator.lastAssignment().ids());
+	}
+
+	private class RecordingCoordinator extends PartitionAssignmentCoordinator {
+
+		private final String memberId;
+
+		private final List<Assignment> assignments = new ArrayList<Assignment>();
+
+		private RecordingCoordinator(String memberId) {
+			super("localhost:" + zooKeeper.getClientPort(), ROOT, TOPIC, memberId, 1);
+			this.memberId = memberId;
+		}
+
+		@Override
+		protected Collection<Partition> getPartitions() {
+			return Arrays.asList(new Partition(TOPIC, 3), new Partition(TOPIC, 1), new Partition(TOPIC, 2),
+					new Partition(TOPIC, 0));
+		}
+
+		@Override
+		protected Collection<Partition> ensurePartitions(int count) {
+			return getPartitions();
+		}
+
+		@Override
+		protected void assign(List<Partition> partitions) {
+			boolean registered = observer.exists(ROOT + "/" + TOPIC + "/members/" + this.memberId);
+			List<Integer> ids = new Assignment(partitions, registered).ids();
+			synchronized (consumers) {
+				for (Integer id : ids) {
+					String consumer = consumers.get(id);
+					if (consumer != null && !consumer.equals(this.memberId)) {
+						overlaps.add(id);
+					}
+					consumers.put(id, this.memberId);
+				}
+			}
+			synchronized (this.assignments) {
+				this.assignments.add(new Assignment(partitions, registered));
+			}
+			// take some time to release (and flush) the partitions we lost, as a real consumer would
+			try {
+				Thread.sleep(200);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized (consumers) {
+				for (Iterator<Map.Entry<Integer, String>> it = consumers.entrySet().iterator(); it.hasNext();) {
+					Map.Entry<Integer, String> entry = it.next();
+					if (entry.getValue().equals(this.memberId) && !ids.contains(entry.getKey())) {
+						it.remove();
+					}
+				}
+			}
+		}
+
+		private Assignment lastAssignment() {
+			synchronized (this.assignments) {
+				return this.assignments.isEmpty() ? new Assignment(new ArrayList<Partition>(), false)
+						: this.assignments.get(this.assignments.size() - 1);
+			}
+		}
+
+	}
+
+	private static class Assignment {
+
+		private final List<Partition> partitions;
+
+		private final boolean memberRegistered;
+
+		private Assignment(List<Partition> partitions, boolean memberRegistered) {
+			this.partitions = partitions;
+			this.memberRegistered = memberRegistered;
+		}
+
+		private List<Integer> ids() {
+			List<Integer> ids = new ArrayList<Integer>();
+			for (Partition partition : this.partitions) {
+				ids.add(partition.getId());
+			}
+			return ids;
+		}
+
+	}
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PagedResourcesAssembler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.xd.dirt.cluster.Container;
+import org.springframework.xd.dirt.cluster.ContainerAttributes;
+import org.springframework.xd.dirt.cluster.ModuleMessageRates;
+import org.springframework.xd.dirt.container.store.ContainerRepository;
+import org.springframework.xd.dirt.container.store.DetailedContainer;
+import org.springframework.xd.dirt.container.store.ModuleMessageRatesAggregator;
+import org.springframework.xd.dirt.module.store.ModuleMetadata;
+
+/**
+ * Tests for how {@link ContainersController} obtains the message rates of the listed containers.
+ *
+ * @author Eric Bottard
+ */
+public class ContainersControllerMessageRatesTests {
+
+	private final Pageable pageable = new PageRequest(0, 20);
+
+	private final ContainerRepository containerRepository = mock(ContainerRepository.class);
+
+	private final ModuleMessageRatesAggregator aggregator = mock(ModuleMessageRatesAggregator.class);
+
+	private final List<String> pulled = Collections.synchronizedList(new ArrayList<String>());
+
+	private volatile long pullDelay;
+
+	private final ContainersController controller = new ContainersController(containerRepository) {
+
+		@Override
+		Map<String, HashMap<String, Double>> requestMessageRates(DetailedContainer container) {
+			pulled.add(container.getName());
+			try {
+				Thread.sleep(pullDelay);
+			}
+			catch (InterruptedException e) {
+				// ignored, like a blocked socket read would
+			}
+			return rates("pulled." + container.getName(), 2.0);
+		}
+
+	};
+
+	private DetailedContainer pushing;
+
+	private DetailedContainer silent;
+
+	@Before
+	public void setUp() {
+		pushing = container("1");
+		silent = container("2");
+		when(containerRepository.findAllRuntimeContainers(pageable)).thenReturn(
+				new PageImpl<DetailedContainer>(Arrays.asList(pushing, silent)));
+		when(aggregator.getMessageRates("1")).thenReturn(rates("pushed.1", 1.0));
+		when(aggregator.getMessageRates("2")).thenReturn(null);
+		ReflectionTestUtils.setField(controller, "messageRatesAggregator", aggregator);
+		ReflectionTestUtils.setField(controller, "enableMessageRates", "true");
+		ReflectionTestUtils.setField(controller, "pullMessageRates", true);
+		ReflectionTestUtils.setField(controller, "pullTimeout", 100);
+		ReflectionTestUtils.setField(controller, "pullConcurrency", 2);
+		controller.initialize();
+	}
+
+	@After
+	public void tearDown() {
+		controller.destroy();
+	}
+
+	@Test
+	public void testPullsOnlyContainersThatDidNotPush() throws Exception {
+		controller.list(pageable, mock(PagedResourcesAssembler.class));
+		assertEquals(Arrays.asList("2"), pulled);
+		assertEquals(rates("pushed.1", 1.0), pushing.getMessageRates());
+		assertEquals(rates("pulled.2", 2.0), silent.getMessageRates());
+	}
+
+	@Test
+	public void testNoPullWithoutFallback() throws Exception {
+		ReflectionTestUtils.setField(controller, "pullMessageRates", false);
+		controller.list(pageable, mock(PagedResourcesAssembler.class));
+		assertEquals(Collections.emptyList(), pulled);
+		assertEquals(rates("pushed.1", 1.0), pushing.getMessageRates());
+		assertNull(silent.getMessageRates());
+	}
+
+	@Test
+	public void testLatePullIsDiscarded() throws Exception {
+		pullDelay = 1000;
+		controller.list(pageable, mock(PagedResourcesAssembler.class));
+		assertEquals(Arrays.asList("2"), pulled);
+		assertNull(silent.getMessageRates());
+		// the abandoned task completing later must not touch the listed container
+		Thread.sleep(1000);
+		assertNull(silent.getMessageRates());
+	}
+
+	@Test
+	public void testPulledRatesHaveSameKeysAsPushedOnes() throws Exception {
+		String response = "{\"value\":{"
+				+ "\"xd.s:module=source.http.0,component=MessageChannel,name=output\":"
+				+ "{\"MeanSendRate\":4.0,\"SendErrorCount\":1},"
+				+ "\"xd.s:module=sink.log.1,component=MessageChannel,name=input\":"
+				+ "{\"MeanSendRate\":3.5,\"SendErrorCount\":2},"
+				+ "\"xd.s:module=sink.log.1,component=MessageHandler,name=handler\":"
+				+ "{\"MeanDuration\":1.0}}}";
+		Map<String, HashMap<String, Double>> messageRates = ContainersController.parseMessageRates(response);
+		assertEquals(new ModuleMessageRates(null, 4.0, 1).toMap(), messageRates.get("source.http.0"));
+		assertEquals(new ModuleMessageRates(3.5, null, 2).toMap(), messageRates.get("sink.log.1"));
+		assertFalse(messageRates.containsKey("handler"));
+		assertEquals(2, messageRates.size());
+	}
+
+	private static DetailedContainer container(String id) {
+		DetailedContainer container = new DetailedContainer(new Container(id, new ContainerAttributes(id)));
+		container.setDeployedModules(Arrays.asList(mock(ModuleMetadata.class)));
+		return container;
+	}
+
+	private static Map<String, HashMap<String, Double>> rates(String module, double input) {
+		return Collections.singletonMap(module, new ModuleMessageRates(input, null, 0).toMap());
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.server.admin.deployment;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.springframework.xd.dirt.cluster.Container;
+import org.springframework.xd.dirt.cluster.ContainerAttributes;
+import org.springframework.xd.module.ModuleDescriptor;
+import org.springframework.xd.module.ModuleType;
+import org.springframework.xd.module.TestModuleDefinitions;
+
+/**
+ * Tests for {@link LeastLoadedContainerPlacementStrategy}.
+ *
+ * @author Eric Bottard
+ */
+public class LeastLoadedContainerPlacementStrategyTests {
+
+	private final LeastLoadedContainerPlacementStrategy strategy = new LeastLoadedContainerPlacementStrategy();
+
+	private final ModuleDescriptor moduleDescriptor = new ModuleDescriptor.Builder()
+			.setModuleDefinition(TestModuleDefinitions.dummy("foo", ModuleType.processor))
+			.setGroup("test1")
+			.setModuleLabel("amodule")
+			.setIndex(0)
+			.build();
+
+	@Test
+	public void testSelectsContainerWithFewestModules() {
+		List<Container> containers = Arrays.asList(container("c1", 5, "0.1", "1"), container("c2", 1, "0.1", "1"),
+				container("c3", 3, "0.1", "1"));
+		assertEquals(Arrays.asList("c2"), names(strategy.select(moduleDescriptor, containers, 1)));
+		assertEquals(Arrays.asList("c2", "c3"), names(strategy.select(moduleDescriptor, containers, 2)));
+	}
+
+	@Test
+	public void testSelectsContainerWithLowestCpu() {
+		List<Container> containers = Arrays.asList(container("c1", 2, "0.9", "1"), container("c2", 2, "0.2", "1"));
+		assertEquals(Arrays.asList("c2"), names(strategy.select(moduleDescriptor, containers, 1)));
+	}
+
+	@Test
+	public void testPlacementsCountUntilNextHeartbeat() {
+		List<Container> containers = Arrays.asList(container("c1", 0, null, "1"), container("c2", 0, null, "1"));
+		assertEquals(Arrays.asList("c1"), names(strategy.select(moduleDescriptor, containers, 1)));
+		assertEquals(Arrays.asList("c2"), names(strategy.select(moduleDescriptor, containers, 1)));
+		assertEquals(Arrays.asList("c1"), names(strategy.select(moduleDescriptor, containers, 1)));
+
+		// c1 now reports the 2 modules placed on it, c2 has not published a heartbeat yet
+		containers = Arrays.asList(container("c1", 2, null, "2"), container("c2", 0, null, "1"));
+		assertEquals(Arrays.asList("c2"), names(strategy.select(moduleDescriptor, containers, 1)));
+		assertEquals(Arrays.asList("c1"), names(strategy.select(moduleDescriptor, containers, 1)));
+	}
+
+	@Test
+	public void testMissingFiguresCountAsZero() {
+		Map<String, String> attributes = new HashMap<String, String>();
+		attributes.put(ContainerAttributes.CPU_LOAD_KEY, "not a number");
+		List<Container> containers = Arrays.asList(container("c1", 1, null, null),
+				new Container("c2", attributes));
+		assertEquals(Arrays.asList("c2"), names(strategy.select(moduleDescriptor, containers, 1)));
+	}
+
+	private Container container(String name, int moduleCount, String cpuLoad, String heartbeat) {
+		Map<String, String> attributes = new HashMap<String, String>();
+		attributes.put(ContainerAttributes.MODULE_COUNT_KEY, String.valueOf(moduleCount));
+		if (cpuLoad != null) {
+			attributes.put(ContainerAttributes.CPU_LOAD_KEY, cpuLoad);
+		}
+		if (heartbeat != null) {
+			attributes.put(ContainerAttributes.HEARTBEAT_KEY, heartbeat);
+		}
+		return new Container(name, attributes);
+	}
+
+	private List<String> names(Collection<Container> containers) {
+		String[] names = new String[containers.size()];
+		int i = 0;
+		for (Container container : containers) {
+			names[i++] = container.getName();
+		}
+		return Arrays.asList(names);
+	}
+
+}
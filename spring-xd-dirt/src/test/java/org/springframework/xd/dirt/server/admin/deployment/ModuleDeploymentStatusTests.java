@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.server.admin.deployment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.springframework.xd.module.ModuleDescriptor;
+import org.springframework.xd.module.ModuleType;
+
+/**
+ * Tests for {@link ModuleDeploymentStatus}.
+ *
+ * @author Eric Bottard
+ */
+public class ModuleDeploymentStatusTests {
+
+	private final ModuleDescriptor.Key key = new ModuleDescriptor.Key("mystream", ModuleType.sink, "log");
+
+	@Test
+	public void testDeploymentTimeRoundTrip() {
+		ModuleDeploymentStatus status = new ModuleDeploymentStatus("container", 1, key,
+				ModuleDeploymentStatus.State.deployed, null, 1234L);
+		ModuleDeploymentStatus read = new ModuleDeploymentStatus("container", 1, key, status.toMap());
+		assertEquals(ModuleDeploymentStatus.State.deployed, read.getState());
+		assertEquals(Long.valueOf(1234L), read.getDeploymentTime());
+		assertNull(read.getErrorDescription());
+	}
+
+	@Test
+	public void testMissingDeploymentTime() {
+		ModuleDeploymentStatus status = new ModuleDeploymentStatus("container", 1, key,
+				ModuleDeploymentStatus.State.failed, "boom");
+		Map<String, String> map = status.toMap();
+		assertFalse(map.containsKey("deploymentTime"));
+		ModuleDeploymentStatus read = new ModuleDeploymentStatus("container", 1, key, map);
+		assertEquals(ModuleDeploymentStatus.State.failed, read.getState());
+		assertEquals("boom", read.getErrorDescription());
+		assertNull(read.getDeploymentTime());
+	}
+
+	@Test
+	public void testReadStatusWrittenBeforeDeploymentTime() {
+		ModuleDeploymentStatus read = new ModuleDeploymentStatus("container", 1, key,
+				Collections.singletonMap("status", "deployed"));
+		assertEquals(ModuleDeploymentStatus.State.deployed, read.getState());
+		assertNull(read.getDeploymentTime());
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.server.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for the dispatching of deployment events by {@link DeploymentListener}.
+ *
+ * @author Eric Bottard
+ */
+public class DeploymentListenerTests {
+
+	private RecordingDeploymentListener listener;
+
+	@After
+	public void tearDown() {
+		if (listener != null) {
+			listener.destroy();
+		}
+	}
+
+	@Test
+	public void testEventsOfSameStreamProcessedInOrder() throws Exception {
+		listener = new RecordingDeploymentListener(4);
+		for (String module : Arrays.asList("sink.log.1", "processor.transform.1", "source.http.0")) {
+			listener.childEvent(null, event(PathChildrenCacheEvent.Type.CHILD_ADDED, "mystream." + module));
+		}
+		listener.childEvent(null, event(PathChildrenCacheEvent.Type.CHILD_REMOVED, "mystream.source.http.0"));
+		assertTrue(listener.await(4));
+		assertEquals(Arrays.asList("CHILD_ADDED mystream.sink.log.1", "CHILD_ADDED mystream.processor.transform.1",
+				"CHILD_ADDED mystream.source.http.0", "CHILD_REMOVED mystream.source.http.0"), listener.processed);
+	}
+
+	@Test
+	public void testEventsOfDifferentStreamsProcessedConcurrently() throws Exception {
+		final CountDownLatch bothStarted = new CountDownLatch(2);
+		listener = new RecordingDeploymentListener(4) {
+
+			@Override
+			void processEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+				bothStarted.countDown();
+				// only completes if the other stream's event is being processed at the same time
+				assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+				super.processEvent(client, event);
+			}
+
+		};
+		listener.childEvent(null, event(PathChildrenCacheEvent.Type.CHILD_ADDED, "foo.sink.log.1"));
+		listener.childEvent(null, event(PathChildrenCacheEvent.Type.CHILD_ADDED, "bar.sink.log.1"));
+		assertTrue(listener.await(2));
+		assertNotSame(Thread.currentThread(), listener.threads.get("foo.sink.log.1"));
+		assertNotSame(listener.threads.get("foo.sink.log.1"), listener.threads.get("bar.sink.log.1"));
+	}
+
+	@Test
+	public void testEventsProcessedOnEventThreadWithoutConcurrency() throws Exception {
+		listener = new RecordingDeploymentListener(1);
+		listener.childEvent(null, event(PathChildrenCacheEvent.Type.CHILD_ADDED, "foo.sink.log.1"));
+		assertEquals(Arrays.asList("CHILD_ADDED foo.sink.log.1"), listener.processed);
+		assertSame(Thread.currentThread(), listener.threads.get("foo.sink.log.1"));
+	}
+
+	private static PathChildrenCacheEvent event(PathChildrenCacheEvent.Type type, String deployment) {
+		String path = "/xd/deployments/modules/allocated/container-1/" + deployment;
+		return new PathChildrenCacheEvent(type, new ChildData(path, null, null));
+	}
+
+	private static class RecordingDeploymentListener extends DeploymentListener {
+
+		private final List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+
+		private final Map<String, Thread> threads = new ConcurrentHashMap<String, Thread>();
+
+		private RecordingDeploymentListener(int deploymentConcurrency) {
+			super(null, null, null, null, null, deploymentConcurrency);
+		}
+
+		@Override
+		void processEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+			String path = event.getData().getPath();
+			String deployment = path.substring(path.lastIndexOf('/') + 1);
+			Thread.sleep(20);
+			threads.put(deployment, Thread.currentThread());
+			processed.add(event.getType() + " " + deployment);
+		}
+
+		private boolean await(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (processed.size() < count && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			return processed.size() == count;
+		}
+
+	}
+
+}
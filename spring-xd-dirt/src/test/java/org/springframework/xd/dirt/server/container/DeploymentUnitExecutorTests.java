@@ -0,0 +1,211 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.server.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for {@link DeploymentUnitExecutor}.
+ *
+ * @author Eric Bottard
+ */
+public class DeploymentUnitExecutorTests {
+
+	private final DeploymentUnitExecutor executor = new DeploymentUnitExecutor(2);
+
+	@After
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void testTasksOfSameUnitRunInOrder() throws Exception {
+		final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+		for (final String module : Arrays.asList("sink", "processor", "source")) {
+			executor.execute("stream", new Runnable() {
+
+				@Override
+				public void run() {
+					sleep(50);
+					order.add(module);
+				}
+
+			});
+		}
+		assertTrue(awaitOrder(order, 3));
+		assertEquals(Arrays.asList("sink", "processor", "source"), order);
+	}
+
+	@Test
+	public void testUnitsRunConcurrently() throws Exception {
+		final CountDownLatch started = new CountDownLatch(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		for (String unit : Arrays.asList("foo", "bar")) {
+			executor.execute(unit, new Runnable() {
+
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						release.await(5, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+
+			});
+		}
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		release.countDown();
+	}
+
+	@Test
+	public void testCancelDiscardsPendingTasks() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+		executor.execute("stream", new Runnable() {
+
+			@Override
+			public void run() {
+				started.countDown();
+				sleep(100);
+				ran.add("first");
+			}
+
+		});
+		executor.execute("stream", new Runnable() {
+
+			@Override
+			public void run() {
+				ran.add("second");
+			}
+
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertTrue(executor.cancelAndAwait(5000));
+		assertEquals(Arrays.asList("first"), ran);
+	}
+
+	@Test
+	public void testFailingTaskDoesNotBlockUnit() throws Exception {
+		final CountDownLatch ran = new CountDownLatch(1);
+		executor.execute("stream", new Runnable() {
+
+			@Override
+			public void run() {
+				throw new IllegalStateException("expected");
+			}
+
+		});
+		executor.execute("stream", new Runnable() {
+
+			@Override
+			public void run() {
+				ran.countDown();
+			}
+
+		});
+		assertTrue(ran.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testTasksIgnoredAfterShutdown() throws Exception {
+		final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+		executor.shutdown();
+		executor.execute("stream", new Runnable() {
+
+			@Override
+			public void run() {
+				ran.add("late");
+			}
+
+		});
+		assertTrue(executor.cancelAndAwait(1000));
+		assertTrue(ran.isEmpty());
+	}
+
+	@Test
+	public void testPendingTasksDiscardedOnShutdown() throws Exception {
+		final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch started = new CountDownLatch(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		for (final String unit : Arrays.asList("a", "b")) {
+			executor.execute(unit, new Runnable() {
+
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						release.await(5, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					ran.add(unit);
+				}
+
+			});
+		}
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		// "a2" is queued behind "a", and the worker for "c" waits for a thread
+		for (final String task : Arrays.asList("a2", "c")) {
+			executor.execute(task.substring(0, 1), new Runnable() {
+
+				@Override
+				public void run() {
+					ran.add(task);
+				}
+
+			});
+		}
+		executor.shutdown();
+		release.countDown();
+		assertTrue(executor.cancelAndAwait(5000));
+		Collections.sort(ran);
+		assertEquals(Arrays.asList("a", "b"), ran);
+	}
+
+	private boolean awaitOrder(List<String> order, int size) {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (order.size() < size && System.currentTimeMillis() < deadline) {
+			sleep(10);
+		}
+		return order.size() == size;
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -27,6 +27,7 @@ import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.Lifecycle;
 import org.springframework.data.hadoop.store.DataStoreWriter;
+import org.springframework.data.hadoop.store.PartitionDataStoreWriter;
 import org.springframework.data.hadoop.store.codec.CodecInfo;
 import org.springframework.data.hadoop.store.output.PartitionTextFileWriter;
 import org.springframework.data.hadoop.store.output.TextFileWriter;
@@ -37,15 +38,19 @@ import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.messaging.Message;
 import org.springframework.util.StringUtils;
+import org.springframework.xd.integration.hadoop.outbound.CoalescingDataStoreWriter;
+import org.springframework.xd.integration.hadoop.outbound.CoalescingPartitionDataStoreWriter;
 import org.springframework.xd.integration.hadoop.partition.MessagePartitionStrategy;
 
 /**
  * A {@link FactoryBean} creating a {@link DataStoreWriter}. Created writer will be either
  * {@link PartitionTextFileWriter} or {@link TextFileWriter} depending whether partition
- * path expression is set.
+ * path expression is set, wrapped in a {@link CoalescingDataStoreWriter} if a write
+ * buffer size is set.
  *
  * @author Janne Valkealahti
  * @author Gary Russell
+ * @author Eric Bottard
  */
 public class StoreWriterFactoryBean implements InitializingBean, DisposableBean, FactoryBean<DataStoreWriter<?>>,
 		BeanFactoryAware, Lifecycle {
@@ -80,6 +85,10 @@ public class StoreWriterFactoryBean implements InitializingBean, DisposableBean,
 
 	private volatile EvaluationContext evaluationContext;
 
+	private volatile int writeBufferSize;
+
+	private volatile long writeBufferTimeout = 1000;
+
 	@Override
 	public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
 		this.beanFactory = beanFactory;
@@ -110,17 +119,20 @@ public class StoreWriterFactoryBean implements InitializingBean, DisposableBean,
 		if (this.evaluationContext == null) {
 			this.evaluationContext = IntegrationContextUtils.getEvaluationContext(this.beanFactory);
 		}
+		MessagePartitionStrategy<String> partitionStrategy = null;
 		if (StringUtils.hasText(partitionExpression)) {
 			if (!(evaluationContext instanceof StandardEvaluationContext)) {
 				throw new RuntimeException("Expecting evaluationContext of type StandardEvaluationContext but was "
 						+ evaluationContext);
 			}
-			MessagePartitionStrategy<String> partitionStrategy = new MessagePartitionStrategy<String>(
+			partitionStrategy = new MessagePartitionStrategy<String>(
 					partitionExpression, (StandardEvaluationContext) evaluationContext);
+			// coalesced chunks must be written to the path their records were buffered under
 			PartitionTextFileWriter<Message<?>> writer = new PartitionTextFileWriter<Message<?>>(configuration,
 					basePath,
 					codec,
-					partitionStrategy);
+					writeBufferSize > 0 ? CoalescingPartitionDataStoreWriter.pathPreserving(partitionStrategy)
+							: partitionStrategy);
 			writer.setIdleTimeout(idleTimeout);
 			writer.setCloseTimeout(closeTimeout);
 			writer.setInWritingPrefix(inUsePrefix);
@@ -156,6 +168,28 @@ public class StoreWriterFactoryBean implements InitializingBean, DisposableBean,
 		if (storeWriter instanceof InitializingBean) {
 			((InitializingBean) storeWriter).afterPropertiesSet();
 		}
+		if (writeBufferSize > 0) {
+			storeWriter = createCoalescingWriter(storeWriter, partitionStrategy);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private CoalescingDataStoreWriter createCoalescingWriter(DataStoreWriter<?> writer,
+			MessagePartitionStrategy<String> partitionStrategy) {
+		CoalescingDataStoreWriter coalescingWriter;
+		if (partitionStrategy != null) {
+			coalescingWriter = new CoalescingPartitionDataStoreWriter(
+					(PartitionDataStoreWriter<String, Message<?>>) writer, partitionStrategy.getPartitionResolver(),
+					writeBufferSize, writeBufferTimeout);
+		}
+		else {
+			coalescingWriter = new CoalescingDataStoreWriter((DataStoreWriter<String>) writer, writeBufferSize,
+					writeBufferTimeout);
+		}
+		if (beanFactory != null && writeBufferTimeout > 0) {
+			coalescingWriter.setTaskScheduler(IntegrationContextUtils.getTaskScheduler(beanFactory));
+		}
+		return coalescingWriter;
 	}
 
 	@Override
@@ -281,6 +315,27 @@ public class StoreWriterFactoryBean implements InitializingBean, DisposableBean,
 		this.fileOpenAttempts = fileOpenAttempts;
 	}
 
+	/**
+	 * Sets the size, in characters, of the buffer in which records are
+	 * coalesced before being written. Records are written one by one if
+	 * not positive, which is the default.
+	 *
+	 * @param writeBufferSize the new write buffer size
+	 */
+	public void setWriteBufferSize(int writeBufferSize) {
+		this.writeBufferSize = writeBufferSize;
+	}
+
+	/**
+	 * Sets the time in milliseconds after which buffered records are
+	 * written even if the buffer is not full.
+	 *
+	 * @param writeBufferTimeout the new write buffer timeout
+	 */
+	public void setWriteBufferTimeout(long writeBufferTimeout) {
+		this.writeBufferTimeout = writeBufferTimeout;
+	}
+
 	/**
 	 * Sets the naming strategy.
 	 *
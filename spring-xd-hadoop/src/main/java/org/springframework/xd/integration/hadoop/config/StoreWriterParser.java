@@ -51,6 +51,8 @@ public class StoreWriterParser extends AbstractSimpleBeanDefinitionParser {
 		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, "rollover-strategy");
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "partition-expression");
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "file-open-attempts");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "write-buffer-size");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "write-buffer-timeout");
 	}
 
 	@Override
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.integration.hadoop.outbound;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.context.Lifecycle;
+import org.springframework.data.hadoop.store.DataStoreWriter;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link DataStoreWriter} buffering text records in memory and handing them to a delegate writer as a single,
+ * newline separated chunk. This turns many small writes, each paying for the delegate's rollover and idle checks and
+ * for the codec's per call overhead, into a few large contiguous ones.
+ * <p>
+ * A chunk is written once it holds {@code bufferSize} characters, {@code bufferTimeout} milliseconds after its first
+ * record was buffered (if a {@link TaskScheduler} is set), and when this writer is flushed, stopped or closed. As the
+ * delegate checks rollover before each write, a file may exceed its rollover size by up to one chunk.
+ * <p>
+ * A chunk is only discarded once written. If writing a full chunk fails, the record that filled it is taken out again
+ * and the failure is thrown to its writer; the rest of the chunk stays buffered and is written again later, along with
+ * chunks that failed to be written on timeout, flush, stop or close.
+ *
+ * @author Eric Bottard
+ */
+public class CoalescingDataStoreWriter implements DataStoreWriter<String>, Lifecycle {
+
+	private static final Logger logger = LoggerFactory.getLogger(CoalescingDataStoreWriter.class);
+
+	/**
+	 * Same as the delimiter the text writers append after each write.
+	 */
+	private static final char DELIMITER = '\n';
+
+	private final DataStoreWriter<String> delegate;
+
+	private final int bufferSize;
+
+	private final long bufferTimeout;
+
+	private final Object lock = new Object();
+
+	private final Map<Object, Chunk> chunks = new LinkedHashMap<Object, Chunk>();
+
+	private volatile TaskScheduler taskScheduler;
+
+	private ScheduledFuture<?> timeoutTask;
+
+	/**
+	 * Instantiates a new coalescing data store writer.
+	 *
+	 * @param delegate the writer chunks are written to
+	 * @param bufferSize the number of characters after which a chunk is written
+	 * @param bufferTimeout the time in milliseconds after which a chunk is written
+	 */
+	public CoalescingDataStoreWriter(DataStoreWriter<String> delegate, int bufferSize, long bufferTimeout) {
+		Assert.notNull(delegate, "Delegate writer must be set");
+		Assert.isTrue(bufferSize > 0, "Buffer size must be positive");
+		this.delegate = delegate;
+		this.bufferSize = bufferSize;
+		this.bufferTimeout = bufferTimeout;
+	}
+
+	/**
+	 * Sets the task scheduler used to write chunks after the buffer timeout.
+	 *
+	 * @param taskScheduler the new task scheduler
+	 */
+	public void setTaskScheduler(TaskScheduler taskScheduler) {
+		this.taskScheduler = taskScheduler;
+	}
+
+	/**
+	 * Gets the delegate writer.
+	 *
+	 * @return the delegate writer
+	 */
+	public DataStoreWriter<String> getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public void write(String entity) throws IOException {
+		buffer(null, entity);
+	}
+
+	/**
+	 * Buffers an entity in the chunk for the given key, writing the chunk if it is full.
+	 *
+	 * @param key the key of the chunk, records with different keys are never written together
+	 * @param entity the entity
+	 * @throws IOException if the chunk could not be written, in which case the entity is not buffered
+	 */
+	protected void buffer(Object key, String entity) throws IOException {
+		synchronized (lock) {
+			Chunk chunk = chunks.get(key);
+			int previousLength = -1;
+			if (chunk == null) {
+				chunk = new Chunk();
+				chunks.put(key, chunk);
+			}
+			else {
+				previousLength = chunk.text.length();
+				chunk.text.append(DELIMITER);
+			}
+			chunk.text.append(entity);
+			try {
+				if (chunk.text.length() >= bufferSize) {
+					writeChunk(chunk.text.toString(), key);
+					chunks.remove(key);
+				}
+			}
+			catch (IOException e) {
+				if (previousLength < 0) {
+					chunks.remove(key);
+				}
+				else {
+					chunk.text.setLength(previousLength);
+				}
+				throw e;
+			}
+			finally {
+				if (chunks.isEmpty()) {
+					cancelTimeout();
+				}
+				else if (timeoutTask == null && taskScheduler != null) {
+					scheduleTimeout();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes a chunk to the delegate writer.
+	 *
+	 * @param chunk the newline separated records
+	 * @param key the key the records of the chunk were buffered with
+	 * @throws IOException if the chunk could not be written
+	 */
+	protected void writeChunk(String chunk, Object key) throws IOException {
+		delegate.write(chunk);
+	}
+
+	private void scheduleTimeout() {
+		timeoutTask = taskScheduler.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				synchronized (lock) {
+					timeoutTask = null;
+				}
+				try {
+					writeChunks(true);
+				}
+				catch (IOException e) {
+					logger.error("Error writing buffered records", e);
+				}
+			}
+
+		}, new Date(System.currentTimeMillis() + bufferTimeout));
+	}
+
+	private void cancelTimeout() {
+		if (timeoutTask != null) {
+			timeoutTask.cancel(false);
+			timeoutTask = null;
+		}
+	}
+
+	/**
+	 * Writes all buffered chunks to the delegate writer.
+	 *
+	 * @param retryLater whether to try again after the buffer timeout if a chunk could not be written
+	 * @throws IOException if a chunk could not be written, in which case it and the following chunks stay buffered
+	 */
+	private void writeChunks(boolean retryLater) throws IOException {
+		synchronized (lock) {
+			cancelTimeout();
+			try {
+				for (Iterator<Map.Entry<Object, Chunk>> iterator = chunks.entrySet().iterator(); iterator.hasNext();) {
+					Map.Entry<Object, Chunk> entry = iterator.next();
+					writeChunk(entry.getValue().text.toString(), entry.getKey());
+					iterator.remove();
+				}
+			}
+			finally {
+				if (retryLater && !chunks.isEmpty() && taskScheduler != null) {
+					scheduleTimeout();
+				}
+			}
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writeChunks(true);
+		delegate.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			writeChunks(false);
+		}
+		finally {
+			delegate.close();
+		}
+	}
+
+	@Override
+	public void start() {
+		if (delegate instanceof Lifecycle) {
+			((Lifecycle) delegate).start();
+		}
+	}
+
+	@Override
+	public void stop() {
+		try {
+			writeChunks(false);
+		}
+		catch (IOException e) {
+			logger.error("Error writing buffered records", e);
+		}
+		if (delegate instanceof Lifecycle) {
+			((Lifecycle) delegate).stop();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return delegate instanceof Lifecycle && ((Lifecycle) delegate).isRunning();
+	}
+
+	private static class Chunk {
+
+		private final StringBuilder text = new StringBuilder();
+
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.integration.hadoop.outbound;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.Path;
+
+import org.springframework.data.hadoop.store.PartitionDataStoreWriter;
+import org.springframework.data.hadoop.store.partition.AbstractPartitionStrategy;
+import org.springframework.data.hadoop.store.partition.PartitionResolver;
+import org.springframework.data.hadoop.store.partition.PartitionStrategy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link CoalescingDataStoreWriter} for a {@link PartitionDataStoreWriter}. Records are buffered per partition path,
+ * resolved when each record is written, so that a chunk only ever holds records of the same partition.
+ * <p>
+ * Each chunk is written to the path its records were resolved to, even if the partition expression would now resolve
+ * to another one (for example, if it depends on the current time). This requires the delegate to use a partition
+ * strategy {@link #pathPreserving(PartitionStrategy) decorated} to honor the path a chunk is written with.
+ *
+ * @author Eric Bottard
+ */
+public class CoalescingPartitionDataStoreWriter extends CoalescingDataStoreWriter implements
+		PartitionDataStoreWriter<String, Message<?>> {
+
+	/**
+	 * Header of the partition key chunks are written with, holding the path of their records.
+	 */
+	private static final String PARTITION_PATH_HEADER = CoalescingPartitionDataStoreWriter.class.getName()
+			+ ".partitionPath";
+
+	private final PartitionDataStoreWriter<String, Message<?>> delegate;
+
+	private final PartitionResolver<Message<?>> partitionResolver;
+
+	/**
+	 * Instantiates a new coalescing partition data store writer.
+	 *
+	 * @param delegate the writer chunks are written to, which should use a {@link #pathPreserving(PartitionStrategy)
+	 *        path preserving} partition strategy
+	 * @param partitionResolver the resolver of the partition path of each record
+	 * @param bufferSize the number of characters after which a chunk is written
+	 * @param bufferTimeout the time in milliseconds after which a chunk is written
+	 */
+	public CoalescingPartitionDataStoreWriter(PartitionDataStoreWriter<String, Message<?>> delegate,
+			PartitionResolver<Message<?>> partitionResolver, int bufferSize, long bufferTimeout) {
+		super(delegate, bufferSize, bufferTimeout);
+		Assert.notNull(partitionResolver, "Partition resolver must be set");
+		this.delegate = delegate;
+		this.partitionResolver = partitionResolver;
+	}
+
+	/**
+	 * Decorates a partition strategy so that the chunks written by a {@code CoalescingPartitionDataStoreWriter} go to
+	 * the path their records were resolved to when buffered.
+	 *
+	 * @param partitionStrategy the partition strategy
+	 * @return the decorated partition strategy
+	 */
+	public static <T> PartitionStrategy<T, Message<?>> pathPreserving(PartitionStrategy<T, Message<?>> partitionStrategy) {
+		final PartitionResolver<Message<?>> partitionResolver = partitionStrategy.getPartitionResolver();
+		return new AbstractPartitionStrategy<T, Message<?>>(new PartitionResolver<Message<?>>() {
+
+			@Override
+			public Path resolvePath(Message<?> partitionKey) {
+				Object path = partitionKey.getHeaders().get(PARTITION_PATH_HEADER);
+				return path instanceof Path ? (Path) path : partitionResolver.resolvePath(partitionKey);
+			}
+
+		}, partitionStrategy.getPartitionKeyResolver()) {
+		};
+	}
+
+	@Override
+	public void write(String entity, Message<?> partitionKey) throws IOException {
+		buffer(partitionResolver.resolvePath(partitionKey), entity);
+	}
+
+	@Override
+	protected void writeChunk(String chunk, Object key) throws IOException {
+		if (key instanceof Path) {
+			delegate.write(chunk, MessageBuilder.withPayload(chunk).setHeader(PARTITION_PATH_HEADER, key).build());
+		}
+		else {
+			delegate.write(chunk);
+		}
+	}
+
+}
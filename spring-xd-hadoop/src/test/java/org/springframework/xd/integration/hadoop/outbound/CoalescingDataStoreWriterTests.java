@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.integration.hadoop.outbound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+import org.springframework.data.hadoop.store.PartitionDataStoreWriter;
+import org.springframework.data.hadoop.store.partition.AbstractPartitionStrategy;
+import org.springframework.data.hadoop.store.partition.PartitionKeyResolver;
+import org.springframework.data.hadoop.store.partition.PartitionResolver;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Tests for {@link CoalescingDataStoreWriter} and {@link CoalescingPartitionDataStoreWriter}.
+ *
+ * @author Eric Bottard
+ */
+public class CoalescingDataStoreWriterTests {
+
+	@Test
+	public void testWritesChunkWhenFull() throws Exception {
+		RecordingWriter delegate = new RecordingWriter();
+		CoalescingDataStoreWriter writer = new CoalescingDataStoreWriter(delegate, 8, 0);
+		writer.write("foo");
+		writer.write("bar");
+		assertTrue(delegate.chunks.isEmpty());
+		writer.write("baz");
+		assertEquals(Arrays.asList("foo\nbar\nbaz"), delegate.chunks);
+		writer.write("qux");
+		writer.close();
+		assertEquals(Arrays.asList("foo\nbar\nbaz", "qux"), delegate.chunks);
+		assertTrue(delegate.closed);
+	}
+
+	@Test
+	public void testWritesChunkOnTimeout() throws Exception {
+		ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.initialize();
+		try {
+			RecordingWriter delegate = new RecordingWriter();
+			CoalescingDataStoreWriter writer = new CoalescingDataStoreWriter(delegate, 1024, 100);
+			writer.setTaskScheduler(taskScheduler);
+			writer.write("foo");
+			long deadline = System.currentTimeMillis() + 5000;
+			while (delegate.size() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			assertEquals(Arrays.asList("foo"), delegate.chunks);
+		}
+		finally {
+			taskScheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void testChunksArePerPartition() throws Exception {
+		final AtomicInteger generation = new AtomicInteger();
+		PartitionResolver<Message<?>> resolver = new PartitionResolver<Message<?>>() {
+
+			@Override
+			public Path resolvePath(Message<?> partitionKey) {
+				return new Path("/" + partitionKey.getHeaders().get("partition") + "/" + generation.get());
+			}
+
+		};
+		RecordingWriter delegate = new RecordingWriter(CoalescingPartitionDataStoreWriter.pathPreserving(
+				new AbstractPartitionStrategy<String, Message<?>>(resolver, new PartitionKeyResolver<String, Message<?>>() {
+
+					@Override
+					public Message<?> resolvePartitionKey(String entity) {
+						return MessageBuilder.withPayload(entity).build();
+					}
+
+				}) {
+				}).getPartitionResolver());
+		CoalescingPartitionDataStoreWriter writer = new CoalescingPartitionDataStoreWriter(delegate, resolver, 1024, 0);
+		writer.write("foo", MessageBuilder.withPayload("foo").setHeader("partition", "a").build());
+		writer.write("bar", MessageBuilder.withPayload("bar").setHeader("partition", "b").build());
+		writer.write("baz", MessageBuilder.withPayload("baz").setHeader("partition", "a").build());
+		// records must be written to the path they were resolved to, not the one resolved when writing
+		generation.incrementAndGet();
+		writer.flush();
+		assertEquals(Arrays.asList("foo\nbaz", "bar"), delegate.chunks);
+		assertEquals(Arrays.asList(new Path("/a/0"), new Path("/b/0")), delegate.partitions);
+	}
+
+	@Test
+	public void testFailedChunkIsKept() throws Exception {
+		RecordingWriter delegate = new RecordingWriter();
+		CoalescingDataStoreWriter writer = new CoalescingDataStoreWriter(delegate, 8, 0);
+		writer.write("foo");
+		writer.write("bar");
+		delegate.failing = true;
+		try {
+			writer.write("baz");
+			fail("expected the write failure");
+		}
+		catch (IOException e) {
+			// expected
+		}
+		try {
+			writer.flush();
+			fail("expected the write failure");
+		}
+		catch (IOException e) {
+			// expected
+		}
+		delegate.failing = false;
+		writer.close();
+		assertEquals(Arrays.asList("foo\nbar"), delegate.chunks);
+	}
+
+	private static class RecordingWriter implements PartitionDataStoreWriter<String, Message<?>> {
+
+		private final List<String> chunks = new ArrayList<String>();
+
+		private final List<Path> partitions = new ArrayList<Path>();
+
+		private final PartitionResolver<Message<?>> resolver;
+
+		private volatile boolean failing;
+
+		private boolean closed;
+
+		private RecordingWriter() {
+			this(null);
+		}
+
+		private RecordingWriter(PartitionResolver<Message<?>> resolver) {
+			this.resolver = resolver;
+		}
+
+		@Override
+		public synchronized void write(String entity) throws IOException {
+			if (failing) {
+				throw new IOException("planned");
+			}
+			chunks.add(entity);
+		}
+
+		@Override
+		public synchronized void write(String entity, Message<?> partitionKey) throws IOException {
+			write(entity);
+			partitions.add(resolver.resolvePath(partitionKey));
+		}
+
+		@Override
+		public void flush() throws IOException {
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+		}
+
+		private synchronized int size() {
+			return chunks.size();
+		}
+
+	}
+
+}
@@ -24,22 +24,32 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import kafka.admin.AdminUtils;
 import kafka.api.OffsetRequest;
-import kafka.serializer.Decoder;
 import kafka.serializer.DefaultDecoder;
 import kafka.utils.ZkUtils;
 
 import org.I0Itec.zkclient.ZkClient;
 import org.I0Itec.zkclient.exception.ZkMarshallingError;
 import org.I0Itec.zkclient.serialize.ZkSerializer;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.serialization.ByteArraySerializer;
 
 import org.springframework.beans.factory.DisposableBean;
@@ -48,6 +58,7 @@ import org.springframework.integration.channel.FixedSubscriberChannel;
 import org.springframework.integration.endpoint.EventDrivenConsumer;
 import org.springframework.integration.handler.AbstractMessageHandler;
 import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
+import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.kafka.core.ConnectionFactory;
 import org.springframework.integration.kafka.core.DefaultConnectionFactory;
 import org.springframework.integration.kafka.core.Partition;
@@ -63,11 +74,16 @@ import org.springframework.integration.kafka.support.ProducerFactoryBean;
 import org.springframework.integration.kafka.support.ProducerMetadata;
 import org.springframework.integration.kafka.support.ZookeeperConnect;
 import org.springframework.integration.x.kafka.WindowingOffsetManager;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
 import org.springframework.messaging.MessageHandler;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.support.ErrorMessage;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.retry.RetryCallback;
 import org.springframework.retry.RetryContext;
@@ -75,10 +91,12 @@ import org.springframework.retry.RetryOperations;
 import org.springframework.retry.backoff.ExponentialBackOffPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.xd.dirt.integration.bus.AbstractBusPropertiesAccessor;
+import org.springframework.xd.dirt.integration.bus.BatchDeliveryHandler;
 import org.springframework.xd.dirt.integration.bus.Binding;
 import org.springframework.xd.dirt.integration.bus.BusProperties;
 import org.springframework.xd.dirt.integration.bus.EmbeddedHeadersMessageConverter;
@@ -120,6 +138,7 @@ import scala.collection.Seq;
  * @author David Turanski
  * @author Gary Russell
  */
+@ManagedResource
 public class KafkaMessageBus extends MessageBusSupport {
 
 	public static final ByteArraySerializer BYTE_ARRAY_SERIALIZER = new ByteArraySerializer();
@@ -142,12 +161,26 @@ public class KafkaMessageBus extends MessageBusSupport {
 
 	public static final String AUTO_COMMIT_OFFSET_ENABLED = "autoCommitOffsetEnabled";
 
+	public static final String MAX_IN_FLIGHT = "maxInFlight";
+
 	private static final String DEFAULT_COMPRESSION_CODEC = "none";
 
 	private static final int DEFAULT_REQUIRED_ACKS = 1;
 
 	private static final boolean DEFAULT_AUTO_COMMIT_OFFSET_ENABLED = true;
 
+	private static final int DEFAULT_MAX_IN_FLIGHT = 0;
+
+	/**
+	 * How long an unbinding producer waits for its in-flight sends to complete.
+	 */
+	private static final long IN_FLIGHT_DRAIN_TIMEOUT = 30000;
+
+	/**
+	 * How often producers re-read the partition count of their topic, when partitions are assigned dynamically.
+	 */
+	private static final long PARTITION_COUNT_REFRESH_INTERVAL = 10000;
+
 	private RetryOperations retryOperations;
 
 	/**
@@ -192,6 +225,7 @@ public class KafkaMessageBus extends MessageBusSupport {
 			.add(AUTO_COMMIT_OFFSET_ENABLED)
 			.add(FETCH_SIZE)
 			.add(QUEUE_SIZE)
+			.addAll(CONSUMER_BATCH_DELIVERY_PROPERTIES)
 			.build();
 
 	/**
@@ -217,11 +251,13 @@ public class KafkaMessageBus extends MessageBusSupport {
 			.addAll(PRODUCER_STANDARD_PROPERTIES)
 			.addAll(PRODUCER_BATCHING_BASIC_PROPERTIES)
 			.addAll(PRODUCER_COMPRESSION_PROPERTIES)
+			.add(MAX_IN_FLIGHT)
 			.build();
 
 
 	private static final Set<Object> KAFKA_PRODUCER_PROPERTIES = new SetBuilder()
 			.add(BusProperties.MIN_PARTITION_COUNT)
+			.add(MAX_IN_FLIGHT)
 			.build();
 
 	/**
@@ -262,6 +298,8 @@ public class KafkaMessageBus extends MessageBusSupport {
 
 	private int defaultMinPartitionCount = 1;
 
+	private int defaultMaxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
 	private ConnectionFactory connectionFactory;
 
 	private String offsetStoreTopic = "SpringXdOffsets";
@@ -292,6 +330,23 @@ public class KafkaMessageBus extends MessageBusSupport {
 
 	private Mode mode = Mode.embeddedHeaders;
 
+	private boolean dynamicPartitionAssignment = false;
+
+	private String partitionAssignmentPath = "/xd/bus/kafka/consumers";
+
+	/**
+	 * Refreshes the partition count of producer topics, when partitions are assigned dynamically.
+	 */
+	private ScheduledExecutorService partitionCountRefresher;
+
+	// -------- Producer metrics, for producers with a bounded in-flight window -------
+
+	private final AtomicLong sendSuccessCount = new AtomicLong();
+
+	private final AtomicLong sendFailureCount = new AtomicLong();
+
+	private final AtomicInteger inFlightCount = new AtomicInteger();
+
 	public KafkaMessageBus(ZookeeperConnect zookeeperConnect, String brokers, String zkAddress,
 			MultiTypeCodec<Object> codec, String... headersToMap) {
 		this.zookeeperConnect = zookeeperConnect;
@@ -393,6 +448,11 @@ public class KafkaMessageBus extends MessageBusSupport {
 			retryTemplate.setBackOffPolicy(backOffPolicy);
 			retryOperations = retryTemplate;
 		}
+		if (this.dynamicPartitionAssignment) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("kafka-partition-count-");
+			threadFactory.setDaemon(true);
+			this.partitionCountRefresher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		}
 	}
 
 	/**
@@ -457,10 +517,77 @@ public class KafkaMessageBus extends MessageBusSupport {
 		this.defaultMaxWait = defaultMaxWait;
 	}
 
+	/**
+	 * Set the default maximum number of records a producer may have sent but not yet acknowledged. When positive,
+	 * producers track the completion of each send (see {@link #getSendSuccessCount()} and
+	 * {@link #getSendFailureCount()}) and only block the upstream module when that many records are pending. A record
+	 * that the brokers fail to acknowledge is sent, wrapped in a {@link MessageDeliveryException}, to the error channel
+	 * of its message (or the global {@code errorChannel} of the bus, or the log, if it has none). When {@code 0} (the
+	 * default), sends are not tracked.
+	 * @param defaultMaxInFlight the default window size
+	 */
+	public void setDefaultMaxInFlight(int defaultMaxInFlight) {
+		this.defaultMaxInFlight = defaultMaxInFlight;
+	}
+
+	/**
+	 * @return the number of records acknowledged by the brokers, across producers that use an in-flight window
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, displayName = "Records acknowledged by the brokers")
+	public long getSendSuccessCount() {
+		return this.sendSuccessCount.get();
+	}
+
+	/**
+	 * @return the number of records that could not be sent, across producers that use an in-flight window
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, displayName = "Records that could not be sent")
+	public long getSendFailureCount() {
+		return this.sendFailureCount.get();
+	}
+
+	/**
+	 * @return the number of records currently sent but not yet acknowledged, across producers that use an in-flight
+	 * window
+	 */
+	@ManagedMetric(metricType = MetricType.GAUGE, displayName = "Records sent but not yet acknowledged")
+	public int getInFlightCount() {
+		return this.inFlightCount.get();
+	}
+
 	public void setMode(Mode mode) {
 		this.mode = mode;
 	}
 
+	/**
+	 * When {@code true}, the partitions of a point-to-point topic are shared among the consumers that are currently
+	 * bound to it, rather than statically by module sequence. Consumers register in ZooKeeper (see
+	 * {@link #setPartitionAssignmentPath(String)}) and the partitions of a consumer that goes away are taken over by
+	 * the others, resuming from the last committed offsets. Consumers of partitioned streams keep their static
+	 * assignment.
+	 * @param dynamicPartitionAssignment whether to assign partitions dynamically
+	 */
+	public void setDynamicPartitionAssignment(boolean dynamicPartitionAssignment) {
+		this.dynamicPartitionAssignment = dynamicPartitionAssignment;
+	}
+
+	/**
+	 * Set the ZooKeeper path under which consumers register when partitions are assigned dynamically.
+	 * @param partitionAssignmentPath the path
+	 */
+	public void setPartitionAssignmentPath(String partitionAssignmentPath) {
+		this.partitionAssignmentPath = partitionAssignmentPath;
+	}
+
+	/**
+	 * Set the format used to embed headers when in {@link Mode#embeddedHeaders} mode.
+	 * @param embeddedHeadersFormat the format.
+	 * @see EmbeddedHeadersMessageConverter#setFormat(EmbeddedHeadersMessageConverter.Format)
+	 */
+	public void setEmbeddedHeadersFormat(EmbeddedHeadersMessageConverter.Format embeddedHeadersFormat) {
+		this.embeddedHeadersMessageConverter.setFormat(embeddedHeadersFormat);
+	}
+
 	@Override
 	public void bindConsumer(String name, final MessageChannel moduleInputChannel, Properties properties) {
 		// Point-to-point consumers reset at the earliest time, which allows them to catch up with all messages
@@ -517,12 +644,13 @@ public class KafkaMessageBus extends MessageBusSupport {
 					new ProducerFactoryBean<>(producerMetadata, brokers, additionalProps);
 
 			try {
+				Producer<byte[], byte[]> producer = producerFB.getObject();
 				final ProducerConfiguration<byte[], byte[]> producerConfiguration = new ProducerConfiguration<>(
-						producerMetadata, producerFB.getObject());
+						producerMetadata, producer);
 
-				MessageHandler handler = new SendingHandler(topicName, producerPropertiesAccessor,
-						partitions.size(), producerConfiguration);
-				EventDrivenConsumer consumer = new EventDrivenConsumer((SubscribableChannel) moduleOutputChannel,
+				SendingHandler handler = new SendingHandler(topicName, producerPropertiesAccessor,
+						partitions.size(), producerConfiguration, producer);
+				EventDrivenConsumer consumer = new KafkaProducerBusAdapter((SubscribableChannel) moduleOutputChannel,
 						handler);
 				consumer.setBeanFactory(this.getBeanFactory());
 				consumer.setBeanName("outbound." + name);
@@ -628,70 +756,92 @@ public class KafkaMessageBus extends MessageBusSupport {
 		int numPartitions = accessor.getNumberOfKafkaPartitionsForConsumer();
 		Collection<Partition> allPartitions = ensureTopicCreated(topic, numPartitions, defaultReplicationFactor);
 
-		Decoder<byte[]> valueDecoder = new DefaultDecoder(null);
-		Decoder<byte[]> keyDecoder = new DefaultDecoder(null);
+		// a batch is acknowledged once delivered, unless the module acknowledges messages itself
+		BatchDeliveryHandler batchDeliveryHandler = createBatchDeliveryHandlerIfNeeded(name, moduleInputChannel,
+				accessor, accessor.getAutoCommitOffsetEnabled(this.defaultAutoCommitOffsetEnabled)
+						? new BatchAcknowledger() : null);
 
-		Collection<Partition> listenedPartitions;
+		ReceivingHandler rh = new ReceivingHandler();
+		rh.setOutputChannel(batchDeliveryHandler == null ? moduleInputChannel
+				: new FixedSubscriberChannel(batchDeliveryHandler));
 
-		int moduleCount = accessor.getCount();
+		final FixedSubscriberChannel bridge = new FixedSubscriberChannel(rh);
+		bridge.setBeanName("bridge." + name);
 
-		if (moduleCount == 1) {
-			listenedPartitions = allPartitions;
+		EventDrivenConsumer edc;
+		if (this.dynamicPartitionAssignment && POINT_TO_POINT_SEMANTICS_CONSUMER_GROUP.equals(group)
+				&& accessor.getPartitionIndex() == -1) {
+			RebalancingConsumer rebalancingConsumer = new RebalancingConsumer(topic, accessor, group, maxConcurrency,
+					referencePoint, bridge);
+			edc = new RebalancingConsumerBusAdapter(bridge, rh, rebalancingConsumer);
 		}
 		else {
-			listenedPartitions = new ArrayList<Partition>();
-			for (Partition partition : allPartitions) {
-				// divide partitions across modules
-				if (accessor.getPartitionIndex() != -1) {
-					if ((partition.getId() % moduleCount) == accessor.getPartitionIndex()) {
-						listenedPartitions.add(partition);
-					}
-				}
-				else {
-					int moduleSequence = accessor.getSequence();
-					if (moduleCount == 0) {
-						throw new IllegalArgumentException("The Kafka transport does not support 0-count modules");
+			Collection<Partition> listenedPartitions;
+
+			int moduleCount = accessor.getCount();
+
+			if (moduleCount == 1) {
+				listenedPartitions = allPartitions;
+			}
+			else {
+				listenedPartitions = new ArrayList<Partition>();
+				for (Partition partition : allPartitions) {
+					// divide partitions across modules
+					if (accessor.getPartitionIndex() != -1) {
+						if ((partition.getId() % moduleCount) == accessor.getPartitionIndex()) {
+							listenedPartitions.add(partition);
+						}
 					}
 					else {
-						// sequence numbers are zero-based
-						if ((partition.getId() % moduleCount) == (moduleSequence - 1)) {
-							listenedPartitions.add(partition);
+						int moduleSequence = accessor.getSequence();
+						if (moduleCount == 0) {
+							throw new IllegalArgumentException("The Kafka transport does not support 0-count modules");
+						}
+						else {
+							// sequence numbers are zero-based
+							if ((partition.getId() % moduleCount) == (moduleSequence - 1)) {
+								listenedPartitions.add(partition);
+							}
 						}
 					}
 				}
 			}
-		}
-
-		ReceivingHandler rh = new ReceivingHandler();
-		rh.setOutputChannel(moduleInputChannel);
 
-		final FixedSubscriberChannel bridge = new FixedSubscriberChannel(rh);
-		bridge.setBeanName("bridge." + name);
+			final KafkaMessageListenerContainer messageListenerContainer =
+					createMessageListenerContainer(accessor, group, maxConcurrency, listenedPartitions,
+							referencePoint);
 
-		final KafkaMessageListenerContainer messageListenerContainer =
-				createMessageListenerContainer(accessor, group, maxConcurrency, listenedPartitions,
-						referencePoint);
-
-		final KafkaMessageDrivenChannelAdapter kafkaMessageDrivenChannelAdapter =
-				new KafkaMessageDrivenChannelAdapter(messageListenerContainer);
-		kafkaMessageDrivenChannelAdapter.setBeanFactory(this.getBeanFactory());
-		kafkaMessageDrivenChannelAdapter.setKeyDecoder(keyDecoder);
-		kafkaMessageDrivenChannelAdapter.setPayloadDecoder(valueDecoder);
-		kafkaMessageDrivenChannelAdapter.setOutputChannel(bridge);
-		kafkaMessageDrivenChannelAdapter.setAutoCommitOffset(accessor.getAutoCommitOffsetEnabled(this.defaultAutoCommitOffsetEnabled));
-		kafkaMessageDrivenChannelAdapter.afterPropertiesSet();
-		kafkaMessageDrivenChannelAdapter.start();
+			final KafkaMessageDrivenChannelAdapter kafkaMessageDrivenChannelAdapter =
+					createMessageDrivenChannelAdapter(messageListenerContainer, accessor, bridge);
+			kafkaMessageDrivenChannelAdapter.start();
 
-
-		EventDrivenConsumer edc = new KafkaConsumerBusAdapter(bridge, rh, kafkaMessageDrivenChannelAdapter, messageListenerContainer);
+			edc = new KafkaConsumerBusAdapter(bridge, rh, kafkaMessageDrivenChannelAdapter, messageListenerContainer);
+		}
 		edc.setBeanName("inbound." + name);
 
 		Binding consumerBinding = Binding.forConsumer(name, edc, moduleInputChannel, accessor);
+		consumerBinding.setBatchDeliveryHandler(batchDeliveryHandler);
 		addBinding(consumerBinding);
 		consumerBinding.start();
 
 	}
 
+	private KafkaMessageDrivenChannelAdapter createMessageDrivenChannelAdapter(
+			KafkaMessageListenerContainer messageListenerContainer, KafkaPropertiesAccessor accessor,
+			MessageChannel bridge) {
+		KafkaMessageDrivenChannelAdapter kafkaMessageDrivenChannelAdapter =
+				new KafkaMessageDrivenChannelAdapter(messageListenerContainer);
+		kafkaMessageDrivenChannelAdapter.setBeanFactory(this.getBeanFactory());
+		kafkaMessageDrivenChannelAdapter.setKeyDecoder(new DefaultDecoder(null));
+		kafkaMessageDrivenChannelAdapter.setPayloadDecoder(new DefaultDecoder(null));
+		kafkaMessageDrivenChannelAdapter.setOutputChannel(bridge);
+		// offsets of batched messages are committed once their batch is delivered
+		kafkaMessageDrivenChannelAdapter.setAutoCommitOffset(!accessor.isBatchDelivery(false)
+				&& accessor.getAutoCommitOffsetEnabled(this.defaultAutoCommitOffsetEnabled));
+		kafkaMessageDrivenChannelAdapter.afterPropertiesSet();
+		return kafkaMessageDrivenChannelAdapter;
+	}
+
 	public KafkaMessageListenerContainer createMessageListenerContainer(Properties properties, String group,
 			int maxConcurrency, String topic, long referencePoint) {
 		return createMessageListenerContainer(new KafkaPropertiesAccessor(properties), group, maxConcurrency, topic,
@@ -761,7 +911,7 @@ public class KafkaMessageBus extends MessageBusSupport {
 
 	@Override
 	public void doManualAck(LinkedList<MessageHeaders> messageHeadersList) {
-		Iterator<MessageHeaders> iterator = messageHeadersList.iterator();
+		Iterator<MessageHeaders> iterator = unbatchHeaders(messageHeadersList).iterator();
 		while (iterator.hasNext()) {
 			MessageHeaders headers = iterator.next();
 			Acknowledgment acknowledgment = (Acknowledgment) headers.get(KafkaHeaders.ACKNOWLEDGMENT);
@@ -771,6 +921,33 @@ public class KafkaMessageBus extends MessageBusSupport {
 		}
 	}
 
+	/**
+	 * Commits the offsets of a batch once it has been delivered. The offsets of a batch that could not be delivered are
+	 * not committed, so that its messages are consumed again after a restart unless a later batch of the same
+	 * partition is committed first; the position of each of its messages is logged.
+	 */
+	private class BatchAcknowledger implements BatchDeliveryHandler.Acknowledger {
+
+		@Override
+		public void acknowledge(List<MessageHeaders> headers, boolean delivered) {
+			if (!delivered) {
+				for (MessageHeaders messageHeaders : headers) {
+					logger.error("Failed to deliver message at offset " + messageHeaders.get(KafkaHeaders.OFFSET)
+							+ " of topic " + messageHeaders.get(KafkaHeaders.TOPIC) + ", partition "
+							+ messageHeaders.get(KafkaHeaders.PARTITION_ID) + "; its offset is not committed");
+				}
+				return;
+			}
+			for (MessageHeaders messageHeaders : headers) {
+				Acknowledgment acknowledgment = (Acknowledgment) messageHeaders.get(KafkaHeaders.ACKNOWLEDGMENT);
+				if (acknowledgment != null) {
+					acknowledgment.acknowledge();
+				}
+			}
+		}
+
+	}
+
 	private static class KafkaConsumerBusAdapter extends EventDrivenConsumer {
 
 		private final KafkaMessageDrivenChannelAdapter kafkaMessageDrivenChannelAdapter;
@@ -800,6 +977,133 @@ public class KafkaMessageBus extends MessageBusSupport {
 		}
 	}
 
+	private static class RebalancingConsumerBusAdapter extends EventDrivenConsumer {
+
+		private final RebalancingConsumer rebalancingConsumer;
+
+		public RebalancingConsumerBusAdapter(FixedSubscriberChannel bridge, ReceivingHandler rh,
+				RebalancingConsumer rebalancingConsumer) {
+			super(bridge, rh);
+			this.rebalancingConsumer = rebalancingConsumer;
+		}
+
+		@Override
+		protected void doStart() {
+			super.doStart();
+			this.rebalancingConsumer.start();
+		}
+
+		@Override
+		protected void doStop() {
+			// leave the group first, so that the other consumers take over our partitions from the flushed offsets
+			this.rebalancingConsumer.stop();
+			super.doStop();
+		}
+	}
+
+	/**
+	 * Consumes the partitions that the coordinator currently assigns to this consumer, replacing the listener
+	 * container whenever that assignment changes.
+	 */
+	private class RebalancingConsumer extends PartitionAssignmentCoordinator {
+
+		private final String topic;
+
+		private final KafkaPropertiesAccessor accessor;
+
+		private final String group;
+
+		private final int maxConcurrency;
+
+		private final long referencePoint;
+
+		private final MessageChannel bridge;
+
+		private List<Partition> assignedPartitions = Collections.emptyList();
+
+		private KafkaMessageListenerContainer messageListenerContainer;
+
+		private KafkaMessageDrivenChannelAdapter kafkaMessageDrivenChannelAdapter;
+
+		private RebalancingConsumer(String topic, KafkaPropertiesAccessor accessor, String group, int maxConcurrency,
+				long referencePoint, MessageChannel bridge) {
+			super(zkAddress, partitionAssignmentPath + "/" + group, topic, UUID.randomUUID().toString(),
+					maxConcurrency);
+			this.topic = topic;
+			this.accessor = accessor;
+			this.group = group;
+			this.maxConcurrency = maxConcurrency;
+			this.referencePoint = referencePoint;
+			this.bridge = bridge;
+		}
+
+		@Override
+		protected Collection<Partition> getPartitions() {
+			connectionFactory.refreshMetadata(Collections.singleton(this.topic));
+			return connectionFactory.getPartitions(this.topic);
+		}
+
+		@Override
+		protected Collection<Partition> ensurePartitions(int count) {
+			return ensureTopicCreated(this.topic, count, defaultReplicationFactor);
+		}
+
+		@Override
+		protected synchronized void assign(List<Partition> partitions) {
+			if (partitions.equals(this.assignedPartitions)) {
+				return;
+			}
+			if (this.kafkaMessageDrivenChannelAdapter != null) {
+				// closing the offset manager flushes the offsets the next owners will resume from
+				this.kafkaMessageDrivenChannelAdapter.stop();
+				if (this.messageListenerContainer.getOffsetManager() instanceof DisposableBean) {
+					try {
+						((DisposableBean) this.messageListenerContainer.getOffsetManager()).destroy();
+					}
+					catch (Exception e) {
+						logger.error("Error while closing the offset manager", e);
+					}
+				}
+				this.kafkaMessageDrivenChannelAdapter = null;
+				this.messageListenerContainer = null;
+			}
+			this.assignedPartitions = partitions;
+			if (!partitions.isEmpty()) {
+				// a new offset manager reads the offsets committed by the previous owners of these partitions
+				this.messageListenerContainer = createMessageListenerContainer(this.accessor, this.group,
+						this.maxConcurrency, partitions, this.referencePoint);
+				this.kafkaMessageDrivenChannelAdapter = createMessageDrivenChannelAdapter(this.messageListenerContainer,
+						this.accessor, this.bridge);
+				this.kafkaMessageDrivenChannelAdapter.start();
+			}
+		}
+
+	}
+
+	private static class KafkaProducerBusAdapter extends EventDrivenConsumer {
+
+		private final SendingHandler sendingHandler;
+
+		public KafkaProducerBusAdapter(SubscribableChannel moduleOutputChannel, SendingHandler sendingHandler) {
+			super(moduleOutputChannel, sendingHandler);
+			this.sendingHandler = sendingHandler;
+		}
+
+		@Override
+		protected void doStart() {
+			super.doStart();
+			this.sendingHandler.startRefreshingPartitionCount();
+		}
+
+		@Override
+		protected void doStop() {
+			// stop accepting messages, then give the records already handed to the producer a chance to complete
+			super.doStop();
+			this.sendingHandler.stopRefreshingPartitionCount();
+			this.sendingHandler.awaitInFlight(IN_FLIGHT_DRAIN_TIMEOUT);
+		}
+	}
+
 	private class KafkaPropertiesAccessor extends AbstractBusPropertiesAccessor {
 
 		public KafkaPropertiesAccessor(Properties properties) {
@@ -842,6 +1146,10 @@ public class KafkaMessageBus extends MessageBusSupport {
 			return getProperty(MIN_PARTITION_COUNT, defaultPartitionCount);
 		}
 
+		public int getMaxInFlight(int defaultMaxInFlight) {
+			return getProperty(MAX_IN_FLIGHT, defaultMaxInFlight);
+		}
+
 	}
 
 	private class ReceivingHandler extends AbstractReplyProducingMessageHandler {
@@ -857,7 +1165,7 @@ public class KafkaMessageBus extends MessageBusSupport {
 				MessageValues messageValues;
 				try {
 					messageValues = embeddedHeadersMessageConverter.extractHeaders((Message<byte[]>) requestMessage,
-							true);
+							true, false);
 				}
 				catch (Exception e) {
 					logger.error(EmbeddedHeadersMessageConverter.decodeExceptionMessage(requestMessage), e);
@@ -896,18 +1204,31 @@ public class KafkaMessageBus extends MessageBusSupport {
 
 		private final String topicName;
 
-		private final int numberOfKafkaPartitions;
+		private volatile int numberOfKafkaPartitions;
+
+		private volatile ScheduledFuture<?> partitionCountRefresh;
 
 		private final ProducerConfiguration<byte[], byte[]> producerConfiguration;
 
+		private final Producer<byte[], byte[]> producer;
+
+		private final int maxInFlight;
+
+		/**
+		 * Permits for records sent but not yet acknowledged, or null if sends are not tracked.
+		 */
+		private final Semaphore inFlight;
 
 		private SendingHandler(String topicName, KafkaPropertiesAccessor properties, int numberOfPartitions,
-				ProducerConfiguration<byte[], byte[]> producerConfiguration) {
+				ProducerConfiguration<byte[], byte[]> producerConfiguration, Producer<byte[], byte[]> producer) {
 			this.topicName = topicName;
 			this.numberOfKafkaPartitions = numberOfPartitions;
 			this.partitioningMetadata = new PartitioningMetadata(properties, numberOfPartitions);
 			this.setBeanFactory(KafkaMessageBus.this.getBeanFactory());
 			this.producerConfiguration = producerConfiguration;
+			this.producer = producer;
+			this.maxInFlight = properties.getMaxInFlight(defaultMaxInFlight);
+			this.inFlight = this.maxInFlight > 0 ? new Semaphore(this.maxInFlight) : null;
 		}
 
 		@Override
@@ -917,14 +1238,14 @@ public class KafkaMessageBus extends MessageBusSupport {
 				targetPartition = determinePartition(message, partitioningMetadata);
 			}
 			else {
-				targetPartition = roundRobin() % numberOfKafkaPartitions;
+				targetPartition = roundRobin() % this.numberOfKafkaPartitions;
 			}
 
 			if (Mode.embeddedHeaders.equals(mode)) {
-				MessageValues transformed = serializePayloadIfNecessary(message);
+				MessageValues transformed = serializePayloadForEmbedding(message);
 				byte[] messageToSend = embeddedHeadersMessageConverter.embedHeaders(transformed,
 						KafkaMessageBus.this.headersToMap);
-				producerConfiguration.send(topicName, targetPartition, null, messageToSend);
+				send(targetPartition, messageToSend, message);
 			}
 			else if (Mode.raw.equals(mode)) {
 				Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
@@ -934,7 +1255,7 @@ public class KafkaMessageBus extends MessageBusSupport {
 							+ message.getPayload().getClass());
 				}
 				if (message.getPayload() instanceof byte[]) {
-					producerConfiguration.send(topicName, targetPartition, null, (byte[]) message.getPayload());
+					send(targetPartition, (byte[]) message.getPayload(), message);
 				}
 				else {
 					logger.error("Raw mode supports only byte[] payloads but value sent was of type "
@@ -943,6 +1264,102 @@ public class KafkaMessageBus extends MessageBusSupport {
 			}
 		}
 
+		/**
+		 * Hand the record to the producer, which batches records per partition and sends them from its own I/O
+		 * thread. With an in-flight window, blocks only while the window is full, and accounts for the outcome of
+		 * the send once the brokers have answered.
+		 */
+		private void send(int targetPartition, byte[] value, Message<?> message) throws InterruptedException {
+			if (this.inFlight == null) {
+				this.producerConfiguration.send(this.topicName, targetPartition, null, value);
+				return;
+			}
+			this.inFlight.acquire();
+			inFlightCount.incrementAndGet();
+			try {
+				this.producer.send(new ProducerRecord<byte[], byte[]>(this.topicName, targetPartition, null, value),
+						new InFlightCallback(targetPartition, message));
+			}
+			catch (RuntimeException e) {
+				completed();
+				sendFailureCount.incrementAndGet();
+				throw e;
+			}
+		}
+
+		private void completed() {
+			inFlightCount.decrementAndGet();
+			this.inFlight.release();
+		}
+
+		/**
+		 * Wait until all records sent through this handler have been acknowledged (or have failed).
+		 * @param timeout the maximum time to wait, in milliseconds
+		 */
+		private void awaitInFlight(long timeout) {
+			if (this.inFlight == null) {
+				return;
+			}
+			try {
+				if (this.inFlight.tryAcquire(this.maxInFlight, timeout, TimeUnit.MILLISECONDS)) {
+					this.inFlight.release(this.maxInFlight);
+				}
+				else {
+					logger.warn("Timed out waiting for " + (this.maxInFlight - this.inFlight.availablePermits())
+							+ " in-flight record(s) to topic " + this.topicName);
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * With dynamic partition assignment, consumers may grow the topic; spread records over the new partitions too.
+		 * The partition count is re-read periodically, off the sending thread.
+		 */
+		private void startRefreshingPartitionCount() {
+			if (partitionCountRefresher != null && !this.partitioningMetadata.isPartitionedModule()) {
+				this.partitionCountRefresh = partitionCountRefresher.scheduleWithFixedDelay(new Runnable() {
+
+					@Override
+					public void run() {
+						refreshPartitionCount();
+					}
+				}, PARTITION_COUNT_REFRESH_INTERVAL, PARTITION_COUNT_REFRESH_INTERVAL, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		private void stopRefreshingPartitionCount() {
+			if (this.partitionCountRefresh != null) {
+				this.partitionCountRefresh.cancel(false);
+				this.partitionCountRefresh = null;
+			}
+		}
+
+		private void refreshPartitionCount() {
+			try {
+				connectionFactory.refreshMetadata(Collections.singleton(this.topicName));
+				this.numberOfKafkaPartitions = Math.max(this.numberOfKafkaPartitions,
+						connectionFactory.getPartitions(this.topicName).size());
+			}
+			catch (Exception e) {
+				logger.warn("Could not refresh the partition count of topic " + this.topicName, e);
+			}
+		}
+
+		/**
+		 * Return where to report that the given message could not be sent: its error channel if it carries one,
+		 * otherwise the global error channel of the bus, if any.
+		 */
+		private MessageChannel errorChannelFor(Message<?> message) {
+			Object errorChannel = message.getHeaders().getErrorChannel();
+			if (errorChannel instanceof MessageChannel) {
+				return (MessageChannel) errorChannel;
+			}
+			return getBeanFactory() != null ? IntegrationContextUtils.getErrorChannel(getBeanFactory()) : null;
+		}
+
 		private int roundRobin() {
 			int result = roundRobinCount.incrementAndGet();
 			if (result == Integer.MAX_VALUE) {
@@ -951,6 +1368,45 @@ public class KafkaMessageBus extends MessageBusSupport {
 			return result;
 		}
 
+		private class InFlightCallback implements Callback {
+
+			private final int partition;
+
+			private final Message<?> message;
+
+			private InFlightCallback(int partition, Message<?> message) {
+				this.partition = partition;
+				this.message = message;
+			}
+
+			@Override
+			public void onCompletion(RecordMetadata metadata, Exception exception) {
+				completed();
+				if (exception == null) {
+					sendSuccessCount.incrementAndGet();
+				}
+				else {
+					sendFailureCount.incrementAndGet();
+					String description = "Failed to send record to topic " + topicName + ", partition "
+							+ this.partition;
+					MessageChannel errorChannel = errorChannelFor(this.message);
+					if (errorChannel == null) {
+						logger.error(description, exception);
+						return;
+					}
+					try {
+						// runs on the producer I/O thread: error flows should hand the message off, not block
+						errorChannel.send(new ErrorMessage(new MessageDeliveryException(this.message, description,
+								exception)));
+					}
+					catch (RuntimeException e) {
+						logger.error(description + ", and could not report it to the error channel", exception);
+					}
+				}
+			}
+
+		}
+
 	}
 
 	public enum Mode {
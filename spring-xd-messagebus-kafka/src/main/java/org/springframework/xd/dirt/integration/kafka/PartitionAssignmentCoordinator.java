@@ -0,0 +1,368 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.kafka;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.I0Itec.zkclient.IZkChildListener;
+import org.I0Itec.zkclient.IZkDataListener;
+import org.I0Itec.zkclient.IZkStateListener;
+import org.I0Itec.zkclient.ZkClient;
+import org.I0Itec.zkclient.exception.ZkNodeExistsException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+
+import org.springframework.integration.kafka.core.Partition;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Spreads the partitions of a topic over the live consumers of that topic. Each consumer registers an ephemeral node
+ * under {@code <root>/<topic>/members}; whenever that set of nodes changes (a consumer is bound, unbound or its
+ * container dies), every member recomputes its share: with members sorted by id, member {@code i} of {@code n} owns
+ * the partitions whose rank (by id) is {@code i} modulo {@code n}.
+ * <p>
+ * Partitions are handed over rather than just reassigned: a member consumes a partition only once it holds the
+ * ephemeral node {@code <root>/<topic>/owners/<partition id>}. A member that loses a partition first stops consuming
+ * it (flushing its offsets), then deletes that node; the new owner waits for the node to be gone before it starts, so
+ * a partition is never consumed by two members at once, and its new owner resumes from the flushed offsets.
+ * <p>
+ * If there are fewer partitions than members times concurrency, the first member grows the topic, then bumps the data
+ * of the topic node so that the others pick up the new partitions too.
+ * <p>
+ * Rebalancing happens on a dedicated thread, as it may block while ZooKeeper events keep coming.
+ *
+ * @author Eric Bottard
+ */
+abstract class PartitionAssignmentCoordinator implements IZkChildListener, IZkDataListener, IZkStateListener {
+
+	private static final int ZK_TIMEOUT = 10000;
+
+	/**
+	 * How long (ms) to wait before trying again after a failed rebalance.
+	 */
+	private static final long RETRY_DELAY = 1000;
+
+	private static final Comparator<Partition> BY_ID = new Comparator<Partition>() {
+
+		@Override
+		public int compare(Partition p1, Partition p2) {
+			return p1.getId() < p2.getId() ? -1 : (p1.getId() == p2.getId() ? 0 : 1);
+		}
+
+	};
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final String zkAddress;
+
+	private final String topicPath;
+
+	private final String membersPath;
+
+	private final String ownersPath;
+
+	private final String memberId;
+
+	private final String memberPath;
+
+	private final int concurrency;
+
+	private final AtomicBoolean rebalanceRequested = new AtomicBoolean();
+
+	/**
+	 * The partitions whose owner node this member holds, sorted by id.
+	 */
+	private List<Partition> held = new ArrayList<Partition>();
+
+	private ScheduledExecutorService rebalanceExecutor;
+
+	private ZkClient zkClient;
+
+	private volatile boolean running;
+
+	/**
+	 * @param zkAddress the ZooKeeper connect string
+	 * @param root the parent path of all topics' membership nodes
+	 * @param topic the topic whose partitions are shared
+	 * @param memberId the unique id of this consumer
+	 * @param concurrency the number of partitions each member would like to consume concurrently
+	 */
+	PartitionAssignmentCoordinator(String zkAddress, String root, String topic, String memberId, int concurrency) {
+		this.zkAddress = zkAddress;
+		this.topicPath = root + "/" + topic;
+		this.membersPath = this.topicPath + "/members";
+		this.ownersPath = this.topicPath + "/owners";
+		this.memberId = memberId;
+		this.memberPath = this.membersPath + "/" + memberId;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * @return the current partitions of the topic
+	 */
+	protected abstract Collection<Partition> getPartitions();
+
+	/**
+	 * Grow the topic to the given number of partitions.
+	 * @param count the desired number of partitions
+	 * @return the partitions of the topic once grown
+	 */
+	protected abstract Collection<Partition> ensurePartitions(int count);
+
+	/**
+	 * Called whenever the partitions this member may consume have changed, with the partitions it should now consume
+	 * (possibly none). Partitions that are no longer passed must have been released, and their offsets flushed, by
+	 * the time this method returns.
+	 * @param partitions the partitions owned by this member, sorted by id
+	 */
+	protected abstract void assign(List<Partition> partitions);
+
+	public synchronized void start() {
+		this.zkClient = new ZkClient(this.zkAddress, ZK_TIMEOUT, ZK_TIMEOUT, KafkaMessageBus.utf8Serializer);
+		this.rebalanceExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("rebalance-"
+				+ this.memberId + "-"));
+		this.running = true;
+		this.zkClient.createPersistent(this.membersPath, true);
+		this.zkClient.createPersistent(this.ownersPath, true);
+		this.zkClient.subscribeStateChanges(this);
+		this.zkClient.subscribeDataChanges(this.topicPath, this);
+		this.zkClient.createEphemeral(this.memberPath);
+		this.zkClient.subscribeChildChanges(this.membersPath, this);
+		rebalance();
+	}
+
+	public void stop() {
+		synchronized (this) {
+			if (!this.running) {
+				return;
+			}
+			this.running = false;
+		}
+		this.rebalanceExecutor.shutdown();
+		try {
+			if (!this.rebalanceExecutor.awaitTermination(ZK_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				this.logger.warn("Timed out waiting for the rebalancing of " + this.topicPath + " to complete");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// ZooKeeper events no longer take our lock, so closing the client while holding it is safe
+		synchronized (this) {
+			try {
+				// release our partitions (flushing their offsets) before leaving, so that the other members
+				// take them over from where we stopped
+				assign(Collections.<Partition> emptyList());
+			}
+			finally {
+				try {
+					this.zkClient.unsubscribeAll();
+					this.zkClient.delete(this.memberPath);
+					// now that the offsets are flushed, let the next owners in
+					for (Partition partition : this.held) {
+						this.zkClient.delete(ownerPath(partition));
+					}
+				}
+				finally {
+					this.zkClient.close();
+				}
+			}
+		}
+	}
+
+	@Override
+	public void handleChildChange(String parentPath, List<String> currentChilds) {
+		requestRebalance(0);
+	}
+
+	/**
+	 * The topic grew, or an owner node we wait for changed.
+	 */
+	@Override
+	public void handleDataChange(String dataPath, Object data) {
+		requestRebalance(0);
+	}
+
+	/**
+	 * An owner node we wait for is gone.
+	 */
+	@Override
+	public void handleDataDeleted(String dataPath) {
+		requestRebalance(0);
+	}
+
+	@Override
+	public void handleStateChanged(KeeperState state) {
+	}
+
+	/**
+	 * Our ephemeral nodes went away with the expired session, so others may have taken over our partitions: stop
+	 * consuming them, register again and start over.
+	 */
+	@Override
+	public void handleNewSession() {
+		if (!this.running) {
+			return;
+		}
+		try {
+			this.rebalanceExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					synchronized (PartitionAssignmentCoordinator.this) {
+						if (!running) {
+							return;
+						}
+						held = new ArrayList<Partition>();
+						assign(Collections.<Partition> emptyList());
+						if (!zkClient.exists(memberPath)) {
+							zkClient.createEphemeral(memberPath);
+						}
+					}
+					rebalance();
+				}
+
+			});
+		}
+		catch (RejectedExecutionException e) {
+			// stopping
+		}
+	}
+
+	/**
+	 * Schedule a rebalance on the rebalancing thread, unless one is already pending. Rebalancing reads the current
+	 * state from ZooKeeper, so one pending rebalance covers any number of events.
+	 * @param delay how long (ms) to wait before rebalancing
+	 */
+	private void requestRebalance(long delay) {
+		if (this.running && this.rebalanceRequested.compareAndSet(false, true)) {
+			try {
+				this.rebalanceExecutor.schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						rebalanceRequested.set(false);
+						rebalance();
+					}
+
+				}, delay, TimeUnit.MILLISECONDS);
+			}
+			catch (RejectedExecutionException e) {
+				// stopping
+			}
+		}
+	}
+
+	private synchronized void rebalance() {
+		if (!this.running) {
+			return;
+		}
+		try {
+			doRebalance();
+		}
+		catch (RuntimeException e) {
+			this.logger.error("Failed to rebalance " + this.topicPath + "; retrying", e);
+			requestRebalance(RETRY_DELAY);
+		}
+	}
+
+	private void doRebalance() {
+		List<String> sortedMembers = new ArrayList<String>(this.zkClient.getChildren(this.membersPath));
+		Collections.sort(sortedMembers);
+		int index = sortedMembers.indexOf(this.memberId);
+		List<Partition> owned = new ArrayList<Partition>();
+		if (index >= 0) {
+			List<Partition> partitions = new ArrayList<Partition>(getPartitions());
+			int wanted = sortedMembers.size() * this.concurrency;
+			if (partitions.size() < wanted && index == 0) {
+				partitions = new ArrayList<Partition>(ensurePartitions(wanted));
+				this.zkClient.writeData(this.topicPath, String.valueOf(partitions.size()));
+			}
+			Collections.sort(partitions, BY_ID);
+			for (int i = index; i < partitions.size(); i += sortedMembers.size()) {
+				owned.add(partitions.get(i));
+			}
+		}
+		// else not registered (yet, or any more): we will be called again once we are
+
+		// hand over the partitions we lost: stop consuming them (flushing their offsets), then let go of them
+		List<Partition> released = new ArrayList<Partition>(this.held);
+		released.removeAll(owned);
+		if (!released.isEmpty()) {
+			this.held.removeAll(released);
+			assign(new ArrayList<Partition>(this.held));
+			for (Partition partition : released) {
+				this.zkClient.delete(ownerPath(partition));
+			}
+		}
+
+		// take over the partitions we gained, as soon as their previous owners let go of them
+		List<Partition> waiting = new ArrayList<Partition>();
+		boolean acquired = false;
+		for (Partition partition : owned) {
+			if (this.held.contains(partition)) {
+				continue;
+			}
+			if (acquire(partition)) {
+				this.held.add(partition);
+				acquired = true;
+			}
+			else {
+				waiting.add(partition);
+			}
+		}
+		if (acquired) {
+			Collections.sort(this.held, BY_ID);
+			assign(new ArrayList<Partition>(this.held));
+		}
+		if (this.logger.isInfoEnabled()) {
+			this.logger.info("Member " + (index + 1) + " of " + sortedMembers.size() + " for " + this.topicPath
+					+ " now owns " + owned + (waiting.isEmpty() ? "" : ", waiting for " + waiting + " to be released"));
+		}
+	}
+
+	/**
+	 * Try to become the owner of the given partition, watching its owner node if it is still held by another member.
+	 */
+	private boolean acquire(Partition partition) {
+		String path = ownerPath(partition);
+		// watch first, so that a release happening right after our attempt is not missed
+		this.zkClient.subscribeDataChanges(path, this);
+		try {
+			this.zkClient.createEphemeral(path, this.memberId);
+			return true;
+		}
+		catch (ZkNodeExistsException e) {
+			return this.memberId.equals(this.zkClient.readData(path, true));
+		}
+	}
+
+	private String ownerPath(Partition partition) {
+		return this.ownersPath + "/" + partition.getId();
+	}
+
+}
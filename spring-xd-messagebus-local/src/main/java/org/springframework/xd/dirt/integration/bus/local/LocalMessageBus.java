@@ -15,11 +15,18 @@ package org.springframework.xd.dirt.integration.bus.local;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.channel.ExecutorChannel;
 import org.springframework.integration.channel.PublishSubscribeChannel;
@@ -37,6 +44,7 @@ import org.springframework.messaging.SubscribableChannel;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.Assert;
 import org.springframework.util.MimeType;
+import org.springframework.util.StringUtils;
 import org.springframework.xd.dirt.integration.bus.AbstractBusPropertiesAccessor;
 import org.springframework.xd.dirt.integration.bus.Binding;
 import org.springframework.xd.dirt.integration.bus.BusProperties;
@@ -46,7 +54,9 @@ import org.springframework.xd.dirt.integration.bus.MessageBusSupport;
  * A simple implementation of {@link org.springframework.xd.dirt.integration.bus.MessageBus} for in-process use. For inbound and outbound, creates a
  * {@link DirectChannel} or a {@link QueueChannel} depending on whether the binding is aliased or not then bridges the
  * passed {@link MessageChannel} to the channel which is registered in the given application context. If that channel
- * does not yet exist, it will be created.
+ * does not yet exist, it will be created. When {@link #setUseRingBuffer(boolean) enabled}, non aliased bindings use a
+ * {@link RingBufferChannel} instead of a {@link DirectChannel}, decoupling producer and consumer modules. A ring buffer
+ * channel is destroyed, with its threads, once the last producer and consumer bound to it are unbound.
  *
  * @author David Turanski
  * @author Mark Fisher
@@ -55,7 +65,7 @@ import org.springframework.xd.dirt.integration.bus.MessageBusSupport;
  * @author Ilayaperumal Gopinathan
  * @since 1.0
  */
-public class LocalMessageBus extends MessageBusSupport {
+public class LocalMessageBus extends MessageBusSupport implements DisposableBean {
 
 	private static final int DEFAULT_EXECUTOR_CORE_POOL_SIZE = 0;
 
@@ -67,6 +77,10 @@ public class LocalMessageBus extends MessageBusSupport {
 
 	private static final int DEFAULT_REQ_REPLY_CONCURRENCY = 1;
 
+	private static final int DEFAULT_RING_BUFFER_SIZE = 1024;
+
+	private static final int DEFAULT_RING_BUFFER_CONCURRENCY = 1;
+
 	protected static final Set<Object> CONSUMER_REQUEST_REPLY_PROPERTIES = new SetBuilder()
 			.addAll(CONSUMER_STANDARD_PROPERTIES)
 			.add(BusProperties.CONCURRENCY)
@@ -90,6 +104,24 @@ public class LocalMessageBus extends MessageBusSupport {
 
 	private final Map<String, ThreadPoolTaskExecutor> reqRepExecutors = new ConcurrentHashMap<>();
 
+	private volatile boolean useRingBuffer;
+
+	private volatile int ringBufferSize = DEFAULT_RING_BUFFER_SIZE;
+
+	private volatile int ringBufferConcurrency = DEFAULT_RING_BUFFER_CONCURRENCY;
+
+	private volatile Expression ringBufferOrderingExpression;
+
+	/**
+	 * The shared ring buffer channels, by name. Guarded by itself, as is {@link #ringBufferBindings}.
+	 */
+	private final Map<String, RingBufferChannel> ringBufferChannels = new HashMap<String, RingBufferChannel>();
+
+	/**
+	 * The name of the ring buffer channel each binding to one uses.
+	 */
+	private final Map<Binding, String> ringBufferBindings = new HashMap<Binding, String>();
+
 	/**
 	 * Used to create and customize {@link QueueChannel}s when the binding operation involves aliased names.
 	 */
@@ -103,6 +135,23 @@ public class LocalMessageBus extends MessageBusSupport {
 		}
 	};
 
+	/**
+	 * Used to create {@link RingBufferChannel}s in place of {@link DirectChannel}s, when enabled.
+	 */
+	private final SharedChannelProvider<RingBufferChannel> ringBufferChannelProvider = new SharedChannelProvider<RingBufferChannel>(
+			RingBufferChannel.class) {
+
+		@Override
+		protected RingBufferChannel createSharedChannel(String name) {
+			RingBufferChannel ringBufferChannel = new RingBufferChannel(ringBufferSize, ringBufferConcurrency);
+			ringBufferChannel.setOrderingKeyExpression(ringBufferOrderingExpression);
+			synchronized (ringBufferChannels) {
+				ringBufferChannels.put(name, ringBufferChannel);
+			}
+			return ringBufferChannel;
+		}
+	};
+
 	private final SharedChannelProvider<PublishSubscribeChannel> pubsubChannelProvider = new SharedChannelProvider<PublishSubscribeChannel>(
 			PublishSubscribeChannel.class) {
 
@@ -167,6 +216,46 @@ public class LocalMessageBus extends MessageBusSupport {
 		this.executorKeepAliveSeconds = executorKeepAliveSeconds;
 	}
 
+	/**
+	 * Set whether non aliased bindings should use {@link RingBufferChannel}s rather than {@link DirectChannel}s.
+	 * Default: false.
+	 * @param useRingBuffer true to use ring buffers.
+	 */
+	public void setUseRingBuffer(boolean useRingBuffer) {
+		this.useRingBuffer = useRingBuffer;
+	}
+
+	/**
+	 * Set the size of each ring buffer, must be a power of 2.
+	 * Default: 1024.
+	 * @param ringBufferSize the ring buffer size.
+	 */
+	public void setRingBufferSize(int ringBufferSize) {
+		this.ringBufferSize = ringBufferSize;
+	}
+
+	/**
+	 * Set the number of threads consuming from each {@link RingBufferChannel}. With more than one thread, messages are
+	 * only delivered in order relative to those with the same {@link #setRingBufferOrderingExpression(String) key}.
+	 * Default: 1.
+	 * @param ringBufferConcurrency the number of consumer threads.
+	 */
+	public void setRingBufferConcurrency(int ringBufferConcurrency) {
+		this.ringBufferConcurrency = ringBufferConcurrency;
+	}
+
+	/**
+	 * Set the SpEL expression, evaluated against each message, whose value decides which consumer thread of a
+	 * {@link RingBufferChannel} handles the message. Messages with the same key are delivered in order.
+	 * Default: none (messages are spread round robin).
+	 * @param ringBufferOrderingExpression the expression.
+	 */
+	public void setRingBufferOrderingExpression(String ringBufferOrderingExpression) {
+		this.ringBufferOrderingExpression = StringUtils.hasText(ringBufferOrderingExpression)
+				? new SpelExpressionParser().parseExpression(ringBufferOrderingExpression)
+				: null;
+	}
+
 	@Override
 	protected void onInit() {
 		this.executor.setCorePoolSize(this.executorCorePoolSize);
@@ -177,6 +266,17 @@ public class LocalMessageBus extends MessageBusSupport {
 		this.executor.initialize();
 	}
 
+	@Override
+	public void destroy() throws Exception {
+		synchronized (this.ringBufferChannels) {
+			for (RingBufferChannel ringBufferChannel : this.ringBufferChannels.values()) {
+				ringBufferChannel.destroy();
+			}
+			this.ringBufferChannels.clear();
+			this.ringBufferBindings.clear();
+		}
+	}
+
 	/**
 	 * For the local bus we bridge the router "output" channel to a queue channel; the queue
 	 * channel gets the name and the source channel is named 'dynamic.output.to.' + name.
@@ -198,7 +298,8 @@ public class LocalMessageBus extends MessageBusSupport {
 	}
 
 	private SharedChannelProvider<?> getChannelProvider(String name) {
-		SharedChannelProvider<?> channelProvider = directChannelProvider;
+		SharedChannelProvider<?> channelProvider = this.useRingBuffer ? ringBufferChannelProvider
+				: directChannelProvider;
 		// Use queue channel provider in case of named channels:
 		// point-to-point type syntax (queue:) and job input channel syntax (job:)
 		if (name.startsWith(P2P_NAMED_CHANNEL_TYPE_PREFIX) || name.startsWith(JOB_CHANNEL_TYPE_PREFIX)) {
@@ -345,6 +446,59 @@ public class LocalMessageBus extends MessageBusSupport {
 		}
 	}
 
+	@Override
+	protected void deleteBindings(String name) {
+		super.deleteBindings(name);
+		releaseRingBuffers(name, null);
+	}
+
+	@Override
+	protected void deleteBinding(String name, MessageChannel channel) {
+		super.deleteBinding(name, channel);
+		releaseRingBuffers(name, channel);
+	}
+
+	/**
+	 * Forget the ring buffer bindings just deleted (the one for {@code channel}, or all of them if null, like
+	 * {@link #deleteBindings(String)} does), and destroy the ring buffer channels no binding uses anymore.
+	 */
+	private void releaseRingBuffers(String bindingName, MessageChannel channel) {
+		synchronized (this.ringBufferChannels) {
+			Set<String> released = new HashSet<String>();
+			Iterator<Map.Entry<Binding, String>> iterator = this.ringBufferBindings.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<Binding, String> entry = iterator.next();
+				Binding binding = entry.getKey();
+				if (binding.getEndpoint().getComponentName().equals(bindingName)
+						&& (channel == null || binding.getChannel().equals(channel))) {
+					iterator.remove();
+					released.add(entry.getValue());
+					if (channel != null) {
+						break;
+					}
+				}
+			}
+			released.removeAll(this.ringBufferBindings.values());
+			for (String channelName : released) {
+				RingBufferChannel ringBufferChannel = this.ringBufferChannels.remove(channelName);
+				if (ringBufferChannel == null) {
+					continue;
+				}
+				try {
+					ringBufferChannel.destroy();
+				}
+				catch (Exception e) {
+					logger.warn("Failed to destroy ring buffer channel " + channelName, e);
+				}
+				// the next binding with that name will create a fresh channel
+				BeanFactory beanFactory = getApplicationContext().getBeanFactory();
+				if (beanFactory instanceof DefaultListableBeanFactory && beanFactory.containsBean(channelName)) {
+					((DefaultListableBeanFactory) beanFactory).destroySingleton(channelName);
+				}
+			}
+		}
+	}
+
 	protected BridgeHandler bridge(String name, MessageChannel from, MessageChannel to, String bridgeName,
 			LocalBusPropertiesAccessor properties) {
 		return bridge(name, from, to, bridgeName, null, properties);
@@ -395,6 +549,12 @@ public class LocalMessageBus extends MessageBusSupport {
 			Binding binding = isInbound ? Binding.forConsumer(name, cefb.getObject(), to, properties)
 					: Binding.forProducer(name, from, cefb.getObject(), properties);
 			addBinding(binding);
+			MessageChannel sharedChannel = isInbound ? from : to;
+			if (sharedChannel instanceof RingBufferChannel) {
+				synchronized (this.ringBufferChannels) {
+					this.ringBufferBindings.put(binding, name);
+				}
+			}
 			binding.start();
 		}
 		catch (Exception e) {
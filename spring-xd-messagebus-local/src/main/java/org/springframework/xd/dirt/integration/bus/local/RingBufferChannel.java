@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.bus.local;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.integration.channel.AbstractSubscribableChannel;
+import org.springframework.integration.dispatcher.MessageDispatcher;
+import org.springframework.integration.dispatcher.UnicastingDispatcher;
+import org.springframework.integration.expression.ExpressionUtils;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.util.Assert;
+
+import reactor.core.processor.RingBufferProcessor;
+
+/**
+ * A {@link org.springframework.messaging.SubscribableChannel} that hands messages over to {@code concurrency} consumer
+ * threads, each fed by its own bounded ring buffer. Senders only block when the ring buffer they publish to is full,
+ * and consumers are woken up as soon as a message is published, without the latency of a poller.
+ * <p>
+ * With a single consumer thread, messages are delivered in the order they were sent. With more, messages are spread
+ * over the consumer threads round robin, unless an ordering key expression is set: messages with the same key then
+ * always go through the same ring buffer, and are delivered in order relative to each other.
+ * <p>
+ * As with a {@link org.springframework.integration.channel.DirectChannel}, each message is delivered to one of the
+ * subscribed handlers. Delivery failures cannot be reported to the sender; they are logged.
+ *
+ * @author Eric Bottard
+ */
+public class RingBufferChannel extends AbstractSubscribableChannel implements DisposableBean {
+
+	private static final long SHUTDOWN_TIMEOUT = 5000;
+
+	private final UnicastingDispatcher handlers = new UnicastingDispatcher();
+
+	private final LaneDispatcher dispatcher = new LaneDispatcher();
+
+	private final int bufferSize;
+
+	private final int concurrency;
+
+	private final AtomicInteger roundRobin = new AtomicInteger();
+
+	private volatile Expression orderingKeyExpression;
+
+	private volatile EvaluationContext evaluationContext;
+
+	private volatile RingBufferProcessor<Message<?>>[] lanes;
+
+	/**
+	 * @param bufferSize the size of each ring buffer, must be a power of 2
+	 * @param concurrency the number of consumer threads
+	 */
+	public RingBufferChannel(int bufferSize, int concurrency) {
+		Assert.isTrue(bufferSize > 0 && Integer.bitCount(bufferSize) == 1, "bufferSize must be a power of 2");
+		Assert.isTrue(concurrency > 0, "concurrency must be positive");
+		this.bufferSize = bufferSize;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Set the expression that computes, for each message, the key whose messages must be delivered in order.
+	 * @param orderingKeyExpression the expression, evaluated against the message
+	 */
+	public void setOrderingKeyExpression(Expression orderingKeyExpression) {
+		this.orderingKeyExpression = orderingKeyExpression;
+	}
+
+	@Override
+	protected MessageDispatcher getDispatcher() {
+		return this.dispatcher;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected void onInit() throws Exception {
+		super.onInit();
+		if (this.orderingKeyExpression != null) {
+			this.evaluationContext = ExpressionUtils.createStandardEvaluationContext(getBeanFactory());
+		}
+		RingBufferProcessor<Message<?>>[] lanes = new RingBufferProcessor[this.concurrency];
+		for (int i = 0; i < this.concurrency; i++) {
+			// modules may send from several threads, hence a multi-producer ring buffer
+			lanes[i] = RingBufferProcessor.share(getComponentName() + "-" + i, this.bufferSize);
+			lanes[i].subscribe(new LaneSubscriber());
+		}
+		this.lanes = lanes;
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		RingBufferProcessor<Message<?>>[] lanes = this.lanes;
+		if (lanes != null) {
+			this.lanes = null;
+			for (RingBufferProcessor<Message<?>> lane : lanes) {
+				lane.awaitAndShutdown(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private int selectLane(Message<?> message) {
+		if (this.concurrency == 1) {
+			return 0;
+		}
+		if (this.orderingKeyExpression != null) {
+			Object key = this.orderingKeyExpression.getValue(this.evaluationContext, message);
+			if (key != null) {
+				return (key.hashCode() & Integer.MAX_VALUE) % this.concurrency;
+			}
+		}
+		return (this.roundRobin.getAndIncrement() & Integer.MAX_VALUE) % this.concurrency;
+	}
+
+	/**
+	 * Publishes messages to the ring buffers, and keeps track of the subscribed handlers.
+	 */
+	private class LaneDispatcher implements MessageDispatcher {
+
+		@Override
+		public boolean addHandler(MessageHandler handler) {
+			return handlers.addHandler(handler);
+		}
+
+		@Override
+		public boolean removeHandler(MessageHandler handler) {
+			return handlers.removeHandler(handler);
+		}
+
+		@Override
+		public boolean dispatch(Message<?> message) {
+			RingBufferProcessor<Message<?>>[] lanes = RingBufferChannel.this.lanes;
+			Assert.state(lanes != null, "channel '" + getComponentName() + "' is not running");
+			lanes[selectLane(message)].onNext(message);
+			return true;
+		}
+
+		@Override
+		public int getHandlerCount() {
+			return handlers.getHandlerCount();
+		}
+
+	}
+
+	/**
+	 * Delivers the messages of one ring buffer, on its consumer thread.
+	 */
+	private class LaneSubscriber implements Subscriber<Message<?>> {
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(Message<?> message) {
+			try {
+				handlers.dispatch(message);
+			}
+			catch (Exception e) {
+				// an exception would cancel this subscriber, and stop the lane
+				logger.error("Failed to deliver message on channel '" + getComponentName() + "'", e);
+			}
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			logger.error("Ring buffer of channel '" + getComponentName() + "' failed", t);
+		}
+
+		@Override
+		public void onComplete() {
+		}
+
+	}
+
+}
@@ -18,10 +18,12 @@ package org.springframework.xd.dirt.integration.rabbit;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -70,6 +72,7 @@ import org.springframework.integration.amqp.inbound.AmqpInboundChannelAdapter;
 import org.springframework.integration.amqp.outbound.AmqpOutboundEndpoint;
 import org.springframework.integration.amqp.support.DefaultAmqpHeaderMapper;
 import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.FixedSubscriberChannel;
 import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.endpoint.EventDrivenConsumer;
 import org.springframework.integration.handler.AbstractMessageHandler;
@@ -85,6 +88,7 @@ import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.xd.dirt.integration.bus.AbstractBusPropertiesAccessor;
+import org.springframework.xd.dirt.integration.bus.BatchDeliveryHandler;
 import org.springframework.xd.dirt.integration.bus.Binding;
 import org.springframework.xd.dirt.integration.bus.BusProperties;
 import org.springframework.xd.dirt.integration.bus.BusUtils;
@@ -153,22 +157,25 @@ public class RabbitMessageBus extends MessageBusSupport implements DisposableBea
 
 	private static final Set<Object> SUPPORTED_PUBSUB_CONSUMER_PROPERTIES = new SetBuilder()
 			.addAll(SUPPORTED_BASIC_CONSUMER_PROPERTIES)
+			.addAll(CONSUMER_BATCH_DELIVERY_PROPERTIES)
 			.add(BusProperties.DURABLE)
 			.build();
 
 	/**
-	 * Basic + concurrency.
+	 * Basic + concurrency + batch delivery.
 	 */
 	private static final Set<Object> SUPPORTED_NAMED_CONSUMER_PROPERTIES = new SetBuilder()
 			.addAll(SUPPORTED_BASIC_CONSUMER_PROPERTIES)
+			.addAll(CONSUMER_BATCH_DELIVERY_PROPERTIES)
 			.add(BusProperties.CONCURRENCY)
 			.build();
 
 	/**
-	 * Basic + concurrency + partitioning.
+	 * Basic + concurrency + partitioning + batch delivery.
 	 */
 	private static final Set<Object> SUPPORTED_CONSUMER_PROPERTIES = new SetBuilder()
 			.addAll(SUPPORTED_BASIC_CONSUMER_PROPERTIES)
+			.addAll(CONSUMER_BATCH_DELIVERY_PROPERTIES)
 			.add(BusProperties.CONCURRENCY)
 			.add(BusProperties.PARTITION_INDEX)
 			.build();
@@ -521,10 +528,23 @@ public class RabbitMessageBus extends MessageBusSupport implements DisposableBea
 			ClassUtils.overrideThreadContextClassLoader(SimpleMessageListenerContainer.class.getClassLoader());
 			SimpleMessageListenerContainer listenerContainer = new SimpleMessageListenerContainer(
 					this.connectionFactory);
-			listenerContainer.setAcknowledgeMode(properties.getAcknowledgeMode(this.defaultAcknowledgeMode));
+			AcknowledgeMode acknowledgeMode = properties.getAcknowledgeMode(this.defaultAcknowledgeMode);
+			boolean requeueRejected = properties.getRequeueRejected(this.defaultDefaultRequeueRejected);
+			int maxAttempts = properties.getMaxAttempts(this.defaultMaxAttempts);
+			boolean republishToDLQ = properties.getRepublishToDLQ(this.defaultRepublishToDLQ);
+			BatchAcknowledger batchAcknowledger = null;
+			if (properties.isBatchDelivery(false) && AcknowledgeMode.AUTO.equals(acknowledgeMode)) {
+				// messages waiting for their batch must not be acknowledged yet, so acknowledge them once delivered
+				Assert.isTrue(!properties.getTransacted(this.defaultChannelTransacted),
+						"Batch delivery is not supported on a transacted channel");
+				acknowledgeMode = AcknowledgeMode.MANUAL;
+				// as for single messages, only requeue failed messages if they were not retried
+				batchAcknowledger = new BatchAcknowledger(requeueRejected && maxAttempts <= 1 && !republishToDLQ,
+						republishToDLQ ? new DeadLetterRecoverer(name, properties) : null);
+			}
+			listenerContainer.setAcknowledgeMode(acknowledgeMode);
 			listenerContainer.setChannelTransacted(properties.getTransacted(this.defaultChannelTransacted));
-			listenerContainer.setDefaultRequeueRejected(properties.getRequeueRejected(this
-					.defaultDefaultRequeueRejected));
+			listenerContainer.setDefaultRequeueRejected(requeueRejected);
 			if (!isPubSub) {
 				int concurrency = properties.getConcurrency(this.defaultConcurrency);
 				concurrency = concurrency > 0 ? concurrency : 1;
@@ -534,12 +554,17 @@ public class RabbitMessageBus extends MessageBusSupport implements DisposableBea
 					listenerContainer.setMaxConcurrentConsumers(maxConcurrency);
 				}
 			}
-			listenerContainer.setPrefetchCount(properties.getPrefetchCount(this.defaultPrefetchCount));
+			int prefetchCount = properties.getPrefetchCount(this.defaultPrefetchCount);
+			if (batchAcknowledger != null) {
+				// unacknowledged messages count against the prefetch, which would otherwise cap the batch size
+				prefetchCount = Math.max(prefetchCount, properties.getBatchSize(this.defaultBatchSize));
+			}
+			listenerContainer.setPrefetchCount(prefetchCount);
 			listenerContainer.setTxSize(properties.getTxSize(this.defaultTxSize));
 			listenerContainer.setTaskExecutor(new SimpleAsyncTaskExecutor(queue.getName() + "-"));
 			listenerContainer.setQueues(queue);
-			int maxAttempts = properties.getMaxAttempts(this.defaultMaxAttempts);
-			if (maxAttempts > 1 || properties.getRepublishToDLQ(this.defaultRepublishToDLQ)) {
+			// batches are retried and recovered by their batch handler instead
+			if (batchAcknowledger == null && (maxAttempts > 1 || republishToDLQ)) {
 				RetryOperationsInterceptor retryInterceptor = RetryInterceptorBuilder.stateless()
 						.maxAttempts(maxAttempts)
 						.backOffOptions(properties.getBackOffInitialInterval(this.defaultBackOffInitialInterval),
@@ -566,8 +591,15 @@ public class RabbitMessageBus extends MessageBusSupport implements DisposableBea
 			adapter.afterPropertiesSet();
 			Binding consumerBinding = Binding.forConsumer(name, adapter, moduleInputChannel, properties);
 			addBinding(consumerBinding);
-			ReceivingHandler convertingBridge = new ReceivingHandler();
-			convertingBridge.setOutputChannel(moduleInputChannel);
+			BatchDeliveryHandler batchDeliveryHandler = createBatchDeliveryHandlerIfNeeded(name, moduleInputChannel,
+					properties, batchAcknowledger);
+			if (batchDeliveryHandler != null && batchAcknowledger != null) {
+				batchDeliveryHandler.setRecoverer(batchAcknowledger.recoverer);
+			}
+			consumerBinding.setBatchDeliveryHandler(batchDeliveryHandler);
+			ReceivingHandler convertingBridge = new ReceivingHandler(batchAcknowledger);
+			convertingBridge.setOutputChannel(batchDeliveryHandler == null ? moduleInputChannel
+					: new FixedSubscriberChannel(batchDeliveryHandler));
 			convertingBridge.setBeanName(name + ".convert.bridge");
 			convertingBridge.afterPropertiesSet();
 			bridgeToModuleChannel.subscribe(convertingBridge);
@@ -842,7 +874,7 @@ public class RabbitMessageBus extends MessageBusSupport implements DisposableBea
 
 	@Override
 	public void doManualAck(LinkedList<MessageHeaders> messageHeadersList) {
-		Iterator<MessageHeaders> iterator = messageHeadersList.iterator();
+		Iterator<MessageHeaders> iterator = unbatchHeaders(messageHeadersList).iterator();
 		Map<Object, Long> channelsToAck = new HashMap<Object, Long>();
 		while (iterator.hasNext()) {
 			MessageHeaders messageHeaders = iterator.next();
@@ -917,16 +949,118 @@ public class RabbitMessageBus extends MessageBusSupport implements DisposableBea
 
 	}
 
+	/**
+	 * Acknowledges the messages of a delivered batch, or rejects them if the module failed to process it and they could
+	 * not be recovered. Each message is acknowledged on its own rather than up to the last one of its channel, as
+	 * messages that failed before reaching their batch are rejected separately.
+	 */
+	private class BatchAcknowledger implements BatchDeliveryHandler.Acknowledger {
+
+		private final boolean requeueFailed;
+
+		private final MessageHandler recoverer;
+
+		/**
+		 * @param requeueFailed whether rejected messages are requeued, rather than dead-lettered or dropped
+		 * @param recoverer the handler failed messages are handed to, may be null
+		 */
+		private BatchAcknowledger(boolean requeueFailed, MessageHandler recoverer) {
+			this.requeueFailed = requeueFailed;
+			this.recoverer = recoverer;
+		}
+
+		@Override
+		public void acknowledge(List<MessageHeaders> headers, boolean delivered) {
+			for (MessageHeaders messageHeaders : headers) {
+				Channel channel = (Channel) messageHeaders.get(AmqpHeaders.CHANNEL);
+				Long deliveryTag = (Long) messageHeaders.get(AmqpHeaders.DELIVERY_TAG);
+				if (channel == null || deliveryTag == null) {
+					continue;
+				}
+				try {
+					if (delivered) {
+						channel.basicAck(deliveryTag, false);
+					}
+					else {
+						channel.basicNack(deliveryTag, false, this.requeueFailed);
+					}
+				}
+				catch (IOException e) {
+					logger.error("Exception while acknowledging a batched message " + e);
+				}
+			}
+		}
+
+		/**
+		 * Recover, or else reject, a message that failed before it could be added to a batch.
+		 */
+		private void rejectUnbatched(Message<?> message, Exception cause) {
+			logger.error("Failed to convert a message for batch delivery", cause);
+			boolean recovered = false;
+			if (this.recoverer != null) {
+				try {
+					this.recoverer.handleMessage(message);
+					recovered = true;
+				}
+				catch (Exception e) {
+					logger.error("Failed to recover a message that could not be converted", e);
+				}
+			}
+			acknowledge(Collections.singletonList(message.getHeaders()), recovered);
+		}
+
+	}
+
+	/**
+	 * Republishes the (decoded) messages of failed batches to the dead letter exchange, re-encoded as they were
+	 * received, for consumers that have {@code republishToDLQ} set.
+	 */
+	private class DeadLetterRecoverer extends AbstractMessageHandler {
+
+		private final AmqpOutboundEndpoint endpoint;
+
+		private DeadLetterRecoverer(String name, RabbitPropertiesAccessor properties) {
+			String prefix = properties.getPrefix(RabbitMessageBus.this.defaultPrefix);
+			this.endpoint = new AmqpOutboundEndpoint(new RabbitTemplate(RabbitMessageBus.this.connectionFactory));
+			this.endpoint.setExchangeName(deadLetterExchangeName(prefix));
+			this.endpoint.setRoutingKey(applyPrefix(prefix, name));
+			configureOutboundHandler(this.endpoint, properties);
+			this.setBeanFactory(RabbitMessageBus.this.getBeanFactory());
+		}
+
+		@Override
+		protected void handleMessageInternal(Message<?> message) throws Exception {
+			this.endpoint.handleMessage(serializePayloadIfNecessary(message).toMessage(getMessageBuilderFactory()));
+		}
+
+	}
+
 	private class ReceivingHandler extends AbstractReplyProducingMessageHandler {
 
-		public ReceivingHandler() {
+		private final BatchAcknowledger batchAcknowledger;
+
+		/**
+		 * @param batchAcknowledger the acknowledger of the batches this handler feeds, if any
+		 */
+		public ReceivingHandler(BatchAcknowledger batchAcknowledger) {
 			super();
+			this.batchAcknowledger = batchAcknowledger;
 			this.setBeanFactory(RabbitMessageBus.this.getBeanFactory());
 		}
 
 		@Override
 		protected Object handleRequestMessage(Message<?> requestMessage) {
-			return deserializePayloadIfNecessary(requestMessage).toMessage(getMessageBuilderFactory());
+			try {
+				return deserializePayloadIfNecessary(requestMessage).toMessage(getMessageBuilderFactory());
+			}
+			catch (RuntimeException e) {
+				if (this.batchAcknowledger == null) {
+					throw e;
+				}
+				// manually acknowledged, so the container would leave this message unacknowledged
+				this.batchAcknowledger.rejectUnbatched(requestMessage, e);
+				return null;
+			}
 		}
 
 		@Override
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.redis;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.integration.endpoint.MessageProducerSupport;
+import org.springframework.util.Assert;
+
+/**
+ * Consumes a Redis queue (filled by {@code LPUSH}) by draining up to {@code batchSize} elements per round trip, using
+ * a Lua script that atomically reads ({@code LRANGE}) and removes ({@code LTRIM}) the oldest elements. When the queue
+ * is empty, falls back to a blocking {@code BRPOP} so that idle consumers do not spin.
+ * <p>
+ * Runs {@code concurrency} consumer loops; as the script is atomic, each element is received by exactly one of them.
+ * <p>
+ * As elements are removed from the queue before they are delivered, the output channel is expected to deal with
+ * delivery failures itself: the {@link RedisMessageBus} always recovers them to the {@code ERRORS} queue of the
+ * consumer, after the configured retries, if any.
+ *
+ * @author Eric Bottard
+ */
+class BatchingRedisQueueMessageDrivenEndpoint extends MessageProducerSupport {
+
+	/**
+	 * Returns up to ARGV[1] elements from the tail of the list (oldest last) and removes them.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final RedisScript<List> DRAIN_SCRIPT = new DefaultRedisScript<List>(
+			"local items = redis.call('LRANGE', KEYS[1], -tonumber(ARGV[1]), -1)\n"
+					+ "if #items > 0 then redis.call('LTRIM', KEYS[1], 0, -#items - 1) end\n"
+					+ "return items", List.class);
+
+	private static final StringRedisSerializer stringSerializer = new StringRedisSerializer();
+
+	private final String queueName;
+
+	private final RedisTemplate<String, byte[]> template = new RedisTemplate<String, byte[]>();
+
+	private final int batchSize;
+
+	private final int concurrency;
+
+	private volatile long receiveTimeout = 1000;
+
+	private volatile long recoveryInterval = 5000;
+
+	private volatile Executor taskExecutor;
+
+	private volatile boolean active;
+
+	BatchingRedisQueueMessageDrivenEndpoint(String queueName, RedisConnectionFactory connectionFactory,
+			int batchSize, int concurrency) {
+		Assert.hasText(queueName, "queueName must not be empty");
+		Assert.isTrue(batchSize > 0, "batchSize must be positive");
+		Assert.isTrue(concurrency > 0, "concurrency must be positive");
+		this.queueName = queueName;
+		this.template.setConnectionFactory(connectionFactory);
+		this.template.setEnableDefaultSerializer(false);
+		this.template.setKeySerializer(stringSerializer);
+		this.template.afterPropertiesSet();
+		this.batchSize = batchSize;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Set how long (in milliseconds) to block on an empty queue before checking whether the endpoint was stopped.
+	 * @param receiveTimeout the timeout
+	 */
+	public void setReceiveTimeout(long receiveTimeout) {
+		this.receiveTimeout = receiveTimeout;
+	}
+
+	/**
+	 * Set how long (in milliseconds) to wait before retrying after a Redis failure.
+	 * @param recoveryInterval the interval
+	 */
+	public void setRecoveryInterval(long recoveryInterval) {
+		this.recoveryInterval = recoveryInterval;
+	}
+
+	public void setTaskExecutor(Executor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	@Override
+	protected void onInit() {
+		super.onInit();
+		if (this.taskExecutor == null) {
+			String beanName = getComponentName();
+			this.taskExecutor = new SimpleAsyncTaskExecutor((beanName == null ? "" : beanName + "-")
+					+ getComponentType());
+		}
+	}
+
+	@Override
+	protected void doStart() {
+		this.active = true;
+		for (int i = 0; i < this.concurrency; i++) {
+			this.taskExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					consume();
+				}
+
+			});
+		}
+	}
+
+	@Override
+	protected void doStop() {
+		this.active = false;
+	}
+
+	private void consume() {
+		while (this.active) {
+			try {
+				List<byte[]> batch = drain();
+				if (batch.isEmpty()) {
+					byte[] value = this.template.boundListOps(this.queueName).rightPop(this.receiveTimeout,
+							TimeUnit.MILLISECONDS);
+					if (value != null) {
+						send(value);
+					}
+				}
+				else {
+					// LRANGE returns the newest element first
+					for (int i = batch.size() - 1; i >= 0; i--) {
+						send(batch.get(i));
+					}
+				}
+			}
+			catch (Exception e) {
+				if (this.active) {
+					logger.error("Failed to read from queue '" + this.queueName + "', retrying in "
+							+ this.recoveryInterval + "ms", e);
+					try {
+						Thread.sleep(this.recoveryInterval);
+					}
+					catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<byte[]> drain() {
+		List<byte[]> result = this.template.execute(DRAIN_SCRIPT, stringSerializer, null,
+				Collections.singletonList(this.queueName), Integer.toString(this.batchSize));
+		return result == null ? Collections.<byte[]> emptyList() : result;
+	}
+
+	/**
+	 * Elements have already been removed from the queue, so a failure to deliver one must not prevent delivery of the
+	 * others. Failures are routed to the error channel, if any, by {@link #sendMessage}; an exception here means that
+	 * the message could not even be recovered.
+	 */
+	private void send(byte[] value) {
+		try {
+			sendMessage(getMessageBuilderFactory().withPayload(value).build());
+		}
+		catch (Exception e) {
+			logger.error("Failed to deliver or recover message from queue '" + this.queueName + "'", e);
+		}
+	}
+
+	@Override
+	public String getComponentType() {
+		return "redis:batching-queue-inbound-channel-adapter";
+	}
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.redis;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+import org.springframework.context.Lifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.integration.handler.AbstractMessageHandler;
+import org.springframework.messaging.Message;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.Assert;
+
+/**
+ * Accumulates the (already encoded) payloads sent to one or more Redis queues and pushes them in batches, using one
+ * multi-value {@code LPUSH} per queue, all sent in a single pipeline.
+ * <p>
+ * A batch is released when it holds {@code batchSize} messages or, if {@code batchTimeout} is positive, that many
+ * milliseconds after its first message was accumulated. Messages still pending are pushed when the handler is stopped.
+ * Because the payloads are pushed in arrival order with {@code LPUSH}, consumers popping from the right see them in the
+ * same order as with unbatched sends.
+ * <p>
+ * If a push fails, the batch is kept and pushed again with the next one; the message whose arrival released the
+ * batch is rejected with the push failure, so that its producer sees the error. As Redis may have applied part of a
+ * failed pipeline, some messages may then be pushed twice.
+ *
+ * @author Eric Bottard
+ */
+class BatchingRedisQueueOutboundHandler extends AbstractMessageHandler implements Lifecycle {
+
+	private static final StringRedisSerializer keySerializer = new StringRedisSerializer();
+
+	private final Expression queueNameExpression;
+
+	private final RedisTemplate<String, byte[]> template = new RedisTemplate<String, byte[]>();
+
+	private final int batchSize;
+
+	private final long batchTimeout;
+
+	private final Map<String, List<byte[]>> pending = new LinkedHashMap<String, List<byte[]>>();
+
+	private final Runnable timeoutFlush = new Runnable() {
+
+		@Override
+		public void run() {
+			try {
+				flush();
+			}
+			catch (Exception e) {
+				logger.error("Failed to push batched messages", e);
+			}
+		}
+
+	};
+
+	private volatile EvaluationContext evaluationContext;
+
+	private volatile TaskScheduler taskScheduler;
+
+	private volatile boolean running;
+
+	private int pendingCount;
+
+	private ScheduledFuture<?> scheduledFlush;
+
+	BatchingRedisQueueOutboundHandler(Expression queueNameExpression, RedisConnectionFactory connectionFactory,
+			int batchSize, long batchTimeout) {
+		Assert.notNull(queueNameExpression, "queueNameExpression must not be null");
+		Assert.isTrue(batchSize > 0, "batchSize must be positive");
+		this.queueNameExpression = queueNameExpression;
+		this.template.setConnectionFactory(connectionFactory);
+		this.template.setEnableDefaultSerializer(false);
+		this.template.setKeySerializer(keySerializer);
+		this.template.afterPropertiesSet();
+		this.batchSize = batchSize;
+		this.batchTimeout = batchTimeout;
+	}
+
+	public void setIntegrationEvaluationContext(EvaluationContext evaluationContext) {
+		this.evaluationContext = evaluationContext;
+	}
+
+	/**
+	 * Set the scheduler used to release batches after {@code batchTimeout}; required if that timeout is positive.
+	 * @param taskScheduler the scheduler
+	 */
+	public void setTaskScheduler(TaskScheduler taskScheduler) {
+		this.taskScheduler = taskScheduler;
+	}
+
+	@Override
+	protected void onInit() throws Exception {
+		super.onInit();
+		Assert.isTrue(this.batchTimeout <= 0 || this.taskScheduler != null,
+				"a taskScheduler is required when batchTimeout is positive");
+	}
+
+	@Override
+	protected void handleMessageInternal(Message<?> message) throws Exception {
+		Object payload = message.getPayload();
+		Assert.isInstanceOf(byte[].class, payload, "only byte[] payloads can be batched");
+		String queueName = this.queueNameExpression.getValue(this.evaluationContext, message, String.class);
+		Assert.hasText(queueName, "Failed to determine the queue name from " + message);
+		synchronized (this) {
+			List<byte[]> values = this.pending.get(queueName);
+			if (values == null) {
+				values = new ArrayList<byte[]>(this.batchSize);
+				this.pending.put(queueName, values);
+			}
+			values.add((byte[]) payload);
+			if (++this.pendingCount >= this.batchSize) {
+				try {
+					flush();
+				}
+				catch (RuntimeException e) {
+					values.remove(values.size() - 1);
+					if (values.isEmpty()) {
+						this.pending.remove(queueName);
+					}
+					this.pendingCount--;
+					throw e;
+				}
+			}
+			else if (this.pendingCount == 1 && this.batchTimeout > 0) {
+				this.scheduledFlush = this.taskScheduler.schedule(this.timeoutFlush,
+						new Date(System.currentTimeMillis() + this.batchTimeout));
+			}
+		}
+	}
+
+	/**
+	 * Push all pending messages now. Pushes happen while holding the lock, so that batches cannot overtake one
+	 * another. Messages are only discarded once pushed; if the push fails, they stay pending.
+	 */
+	public synchronized void flush() {
+		if (this.scheduledFlush != null) {
+			this.scheduledFlush.cancel(false);
+			this.scheduledFlush = null;
+		}
+		if (this.pendingCount == 0) {
+			return;
+		}
+		try {
+			this.template.executePipelined(new RedisCallback<Object>() {
+
+				@Override
+				public Object doInRedis(RedisConnection connection) throws DataAccessException {
+					for (Map.Entry<String, List<byte[]>> entry : pending.entrySet()) {
+						List<byte[]> values = entry.getValue();
+						connection.lPush(keySerializer.serialize(entry.getKey()),
+								values.toArray(new byte[values.size()][]));
+					}
+					return null;
+				}
+
+			});
+		}
+		catch (RuntimeException e) {
+			if (this.batchTimeout > 0 && this.running) {
+				// try again later, even if no more messages arrive
+				this.scheduledFlush = this.taskScheduler.schedule(this.timeoutFlush,
+						new Date(System.currentTimeMillis() + this.batchTimeout));
+			}
+			throw e;
+		}
+		this.pending.clear();
+		this.pendingCount = 0;
+	}
+
+	@Override
+	public void start() {
+		this.running = true;
+	}
+
+	@Override
+	public void stop() {
+		this.running = false;
+		flush();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	@Override
+	public String getComponentType() {
+		return "redis:batching-queue-outbound-channel-adapter";
+	}
+
+}
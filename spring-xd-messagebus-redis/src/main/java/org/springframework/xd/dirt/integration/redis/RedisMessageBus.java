@@ -23,10 +23,14 @@ import java.util.Properties;
 import java.util.Set;
 
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.Lifecycle;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.expression.Expression;
+import org.springframework.expression.common.LiteralExpression;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.FixedSubscriberChannel;
+import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.endpoint.EventDrivenConsumer;
 import org.springframework.integration.endpoint.MessageProducerSupport;
 import org.springframework.integration.handler.AbstractMessageHandler;
@@ -43,10 +47,13 @@ import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.retry.RecoveryCallback;
 import org.springframework.retry.RetryCallback;
 import org.springframework.retry.RetryContext;
+import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 import org.springframework.xd.dirt.integration.bus.AbstractBusPropertiesAccessor;
+import org.springframework.xd.dirt.integration.bus.BatchDeliveryHandler;
 import org.springframework.xd.dirt.integration.bus.Binding;
 import org.springframework.xd.dirt.integration.bus.BusProperties;
 import org.springframework.xd.dirt.integration.bus.EmbeddedHeadersMessageConverter;
@@ -62,6 +69,7 @@ import org.springframework.xd.dirt.integration.bus.serializer.MultiTypeCodec;
  * @author Gary Russell
  * @author David Turanski
  * @author Jennifer Hickey
+ * @author Eric Bottard
  */
 public class RedisMessageBus extends MessageBusSupport implements DisposableBean {
 
@@ -72,20 +80,24 @@ public class RedisMessageBus extends MessageBusSupport implements DisposableBean
 	private final String[] headersToMap;
 
 	/**
-	 * Retry only.
+	 * Retry + batch delivery.
 	 */
 	private static final Set<Object> SUPPORTED_PUBSUB_CONSUMER_PROPERTIES = new SetBuilder()
 			.addAll(CONSUMER_STANDARD_PROPERTIES)
 			.addAll(CONSUMER_RETRY_PROPERTIES)
+			.addAll(CONSUMER_BATCH_DELIVERY_PROPERTIES)
 			.build();
 
 	/**
-	 * Retry + concurrency.
+	 * Retry + concurrency + batching + batch delivery.
 	 */
 	private static final Set<Object> SUPPORTED_NAMED_CONSUMER_PROPERTIES = new SetBuilder()
 			.addAll(CONSUMER_STANDARD_PROPERTIES)
 			.addAll(CONSUMER_RETRY_PROPERTIES)
 			.add(BusProperties.CONCURRENCY)
+			.add(BusProperties.BATCHING_ENABLED)
+			.add(BusProperties.BATCH_SIZE)
+			.addAll(CONSUMER_BATCH_DELIVERY_PROPERTIES)
 			.build();
 
 	/**
@@ -112,16 +124,20 @@ public class RedisMessageBus extends MessageBusSupport implements DisposableBean
 	private static final Set<Object> SUPPORTED_PUBSUB_PRODUCER_PROPERTIES = PRODUCER_STANDARD_PROPERTIES;
 
 	/**
-	 * None.
+	 * Batching.
 	 */
-	private static final Set<Object> SUPPORTED_NAMED_PRODUCER_PROPERTIES = PRODUCER_STANDARD_PROPERTIES;
+	private static final Set<Object> SUPPORTED_NAMED_PRODUCER_PROPERTIES = new SetBuilder()
+			.addAll(PRODUCER_STANDARD_PROPERTIES)
+			.addAll(PRODUCER_BATCHING_BASIC_PROPERTIES)
+			.build();
 
 	/**
-	 * Partitioning.
+	 * Partitioning + batching.
 	 */
 	private static final Set<Object> SUPPORTED_PRODUCER_PROPERTIES = new SetBuilder()
 			.addAll(PRODUCER_PARTITIONING_PROPERTIES)
 			.addAll(PRODUCER_STANDARD_PROPERTIES)
+			.addAll(PRODUCER_BATCHING_BASIC_PROPERTIES)
 			.add(BusProperties.DIRECT_BINDING_ALLOWED)
 			.build();
 
@@ -166,6 +182,15 @@ public class RedisMessageBus extends MessageBusSupport implements DisposableBean
 		}
 	}
 
+	/**
+	 * Set the format used to embed headers in the payload.
+	 * @param embeddedHeadersFormat the format.
+	 * @see EmbeddedHeadersMessageConverter#setFormat(EmbeddedHeadersMessageConverter.Format)
+	 */
+	public void setEmbeddedHeadersFormat(EmbeddedHeadersMessageConverter.Format embeddedHeadersFormat) {
+		this.embeddedHeadersMessageConverter.setFormat(embeddedHeadersFormat);
+	}
+
 	@Override
 	protected void onInit() {
 		this.errorAdapter.setIntegrationEvaluationContext(this.evaluationContext);
@@ -195,7 +220,12 @@ public class RedisMessageBus extends MessageBusSupport implements DisposableBean
 		MessageProducerSupport adapter;
 		int concurrency = accessor.getConcurrency(this.defaultConcurrency);
 		concurrency = concurrency > 0 ? concurrency : 1;
-		if (concurrency == 1) {
+		if (accessor.isBatchingEnabled(this.defaultBatchingEnabled)) {
+			adapter = new BatchingRedisQueueMessageDrivenEndpoint(queueName, this.connectionFactory,
+					accessor.getBatchSize(this.defaultBatchSize), concurrency);
+			adapter.setBeanFactory(getBeanFactory());
+		}
+		else if (concurrency == 1) {
 			RedisQueueMessageDrivenEndpoint single = new RedisQueueMessageDrivenEndpoint(queueName,
 					this.connectionFactory);
 			single.setBeanFactory(getBeanFactory());
@@ -227,14 +257,25 @@ public class RedisMessageBus extends MessageBusSupport implements DisposableBean
 		DirectChannel bridgeToModuleChannel = new DirectChannel();
 		bridgeToModuleChannel.setBeanFactory(this.getBeanFactory());
 		bridgeToModuleChannel.setBeanName(channelName + ".bridge");
-		MessageChannel bridgeInputChannel = addRetryIfNeeded(channelName, bridgeToModuleChannel, properties);
+		// batched reads remove messages from the queue before they are delivered, so failures must always be
+		// recovered to the ERRORS queue
+		MessageChannel bridgeInputChannel = addRetryIfNeeded(channelName, bridgeToModuleChannel, properties,
+				adapter instanceof BatchingRedisQueueMessageDrivenEndpoint);
 		adapter.setOutputChannel(bridgeInputChannel);
 		adapter.setBeanName("inbound." + bindingName);
 		adapter.afterPropertiesSet();
 		Binding consumerBinding = Binding.forConsumer(bindingName, adapter, moduleInputChannel, properties);
 		addBinding(consumerBinding);
+		// messages are removed from the queue when read, so there is nothing to acknowledge
+		BatchDeliveryHandler batchDeliveryHandler = createBatchDeliveryHandlerIfNeeded(channelName,
+				moduleInputChannel, properties, null);
+		if (batchDeliveryHandler != null) {
+			batchDeliveryHandler.setRecoverer(new ErrorQueueRecoverer(channelName));
+		}
+		consumerBinding.setBatchDeliveryHandler(batchDeliveryHandler);
 		ReceivingHandler convertingBridge = new ReceivingHandler();
-		convertingBridge.setOutputChannel(moduleInputChannel);
+		convertingBridge.setOutputChannel(batchDeliveryHandler == null ? moduleInputChannel
+				: new FixedSubscriberChannel(batchDeliveryHandler));
 		convertingBridge.setBeanName(channelName + ".bridge.handler");
 		convertingBridge.afterPropertiesSet();
 		bridgeToModuleChannel.subscribe(convertingBridge);
@@ -247,11 +288,13 @@ public class RedisMessageBus extends MessageBusSupport implements DisposableBean
 	 * @param name The name.
 	 * @param bridgeToModuleChannel The channel.
 	 * @param properties The properties.
+	 * @param alwaysRecover whether failed messages should be sent to 'ERRORS:[name]' even if retry is disabled.
 	 * @return The channel, or a wrapper.
 	 */
 	private MessageChannel addRetryIfNeeded(final String name, final DirectChannel bridgeToModuleChannel,
-			RedisPropertiesAccessor properties) {
-		final RetryTemplate retryTemplate = buildRetryTemplateIfRetryEnabled(properties);
+			RedisPropertiesAccessor properties, boolean alwaysRecover) {
+		final RetryTemplate retryTemplate = alwaysRecover ? buildRecoveringRetryTemplate(properties)
+				: buildRetryTemplateIfRetryEnabled(properties);
 		if (retryTemplate == null) {
 			return bridgeToModuleChannel;
 		}
@@ -298,6 +341,23 @@ public class RedisMessageBus extends MessageBusSupport implements DisposableBean
 		}
 	}
 
+	/**
+	 * Build the configured retry template, or one that makes a single attempt if retry is disabled, so that failed
+	 * messages are still sent to the ERRORS queue.
+	 * @param properties The properties.
+	 * @return The retry template.
+	 */
+	private RetryTemplate buildRecoveringRetryTemplate(RedisPropertiesAccessor properties) {
+		RetryTemplate retryTemplate = buildRetryTemplateIfRetryEnabled(properties);
+		if (retryTemplate == null) {
+			SimpleRetryPolicy retryPolicy = new SimpleRetryPolicy();
+			retryPolicy.setMaxAttempts(1);
+			retryTemplate = new RetryTemplate();
+			retryTemplate.setRetryPolicy(retryPolicy);
+		}
+		return retryTemplate;
+	}
+
 	@Override
 	public void bindProducer(final String name, MessageChannel moduleOutputChannel,
 			Properties properties) {
@@ -312,22 +372,45 @@ public class RedisMessageBus extends MessageBusSupport implements DisposableBean
 		if (!bindNewProducerDirectlyIfPossible(name, (SubscribableChannel) moduleOutputChannel, accessor)) {
 			String partitionKeyExtractorClass = accessor.getPartitionKeyExtractorClass();
 			Expression partitionKeyExpression = accessor.getPartitionKeyExpression();
-			RedisQueueOutboundChannelAdapter queue;
 			String queueName = "queue." + name;
+			Expression queueNameExpression;
 			if (partitionKeyExpression == null && !StringUtils.hasText(partitionKeyExtractorClass)) {
-				queue = new RedisQueueOutboundChannelAdapter(queueName, this.connectionFactory);
+				queueNameExpression = new LiteralExpression(queueName);
 			}
 			else {
-				queue = new RedisQueueOutboundChannelAdapter(
-						parser.parseExpression(buildPartitionRoutingExpression(queueName)), this.connectionFactory);
+				queueNameExpression = parser.parseExpression(buildPartitionRoutingExpression(queueName));
+			}
+			MessageHandler queue;
+			if (accessor.isBatchingEnabled(this.defaultBatchingEnabled)) {
+				queue = createBatchingQueueHandler(queueNameExpression, accessor);
+			}
+			else {
+				RedisQueueOutboundChannelAdapter adapter = new RedisQueueOutboundChannelAdapter(queueNameExpression,
+						this.connectionFactory);
+				adapter.setIntegrationEvaluationContext(this.evaluationContext);
+				adapter.setBeanFactory(this.getBeanFactory());
+				adapter.afterPropertiesSet();
+				queue = adapter;
 			}
-			queue.setIntegrationEvaluationContext(this.evaluationContext);
-			queue.setBeanFactory(this.getBeanFactory());
-			queue.afterPropertiesSet();
 			doRegisterProducer(name, moduleOutputChannel, queue, accessor);
 		}
 	}
 
+	private BatchingRedisQueueOutboundHandler createBatchingQueueHandler(Expression queueNameExpression,
+			RedisPropertiesAccessor accessor) {
+		long batchTimeout = accessor.getBatchTimeout(this.defaultBatchTimeout);
+		BatchingRedisQueueOutboundHandler handler = new BatchingRedisQueueOutboundHandler(queueNameExpression,
+				this.connectionFactory, accessor.getBatchSize(this.defaultBatchSize), batchTimeout);
+		handler.setIntegrationEvaluationContext(this.evaluationContext);
+		handler.setBeanFactory(this.getBeanFactory());
+		if (batchTimeout > 0) {
+			handler.setTaskScheduler(getApplicationContext().getBean(IntegrationContextUtils.TASK_SCHEDULER_BEAN_NAME,
+					TaskScheduler.class));
+		}
+		handler.afterPropertiesSet();
+		return handler;
+	}
+
 	@Override
 	public void bindPubSubProducer(final String name, MessageChannel moduleOutputChannel,
 			Properties properties) {
@@ -344,11 +427,33 @@ public class RedisMessageBus extends MessageBusSupport implements DisposableBean
 		this.doRegisterProducer(name, moduleOutputChannel, delegate, null, properties);
 	}
 
-	private void doRegisterProducer(final String name, MessageChannel moduleOutputChannel, MessageHandler delegate,
-			String replyTo, RedisPropertiesAccessor properties) {
+	private void doRegisterProducer(final String name, MessageChannel moduleOutputChannel,
+			final MessageHandler delegate, String replyTo, RedisPropertiesAccessor properties) {
 		Assert.isInstanceOf(SubscribableChannel.class, moduleOutputChannel);
 		MessageHandler handler = new SendingHandler(delegate, replyTo, properties);
-		EventDrivenConsumer consumer = new EventDrivenConsumer((SubscribableChannel) moduleOutputChannel, handler);
+		EventDrivenConsumer consumer = new EventDrivenConsumer((SubscribableChannel) moduleOutputChannel, handler) {
+
+			/**
+			 * Propagate lifecycle to a batching delegate, so it pushes the messages it still holds when the binding
+			 * is stopped.
+			 */
+			@Override
+			protected void doStart() {
+				super.doStart();
+				if (delegate instanceof Lifecycle) {
+					((Lifecycle) delegate).start();
+				}
+			}
+
+			@Override
+			protected void doStop() {
+				super.doStop();
+				if (delegate instanceof Lifecycle) {
+					((Lifecycle) delegate).stop();
+				}
+			}
+
+		};
 		consumer.setBeanFactory(this.getBeanFactory());
 		consumer.setBeanName("outbound." + name);
 		consumer.afterPropertiesSet();
@@ -419,7 +524,7 @@ public class RedisMessageBus extends MessageBusSupport implements DisposableBean
 
 		@Override
 		protected void handleMessageInternal(Message<?> message) throws Exception {
-			MessageValues transformed = serializePayloadIfNecessary(message);
+			MessageValues transformed = serializePayloadForEmbedding(message);
 
 			if (replyTo != null) {
 				transformed.put(XdHeaders.REPLY_TO, this.replyTo);
@@ -436,6 +541,31 @@ public class RedisMessageBus extends MessageBusSupport implements DisposableBean
 
 	}
 
+	/**
+	 * Sends the (decoded) messages of failed batches to 'ERRORS:[name]', encoded as they were received.
+	 */
+	private class ErrorQueueRecoverer extends AbstractMessageHandler {
+
+		private final String name;
+
+		private ErrorQueueRecoverer(String name) {
+			this.name = name;
+			this.setBeanFactory(RedisMessageBus.this.getBeanFactory());
+		}
+
+		@Override
+		protected void handleMessageInternal(Message<?> message) throws Exception {
+			MessageValues transformed = serializePayloadForEmbedding(message);
+			byte[] messageToSend = embeddedHeadersMessageConverter.embedHeaders(transformed,
+					RedisMessageBus.this.headersToMap);
+			errorAdapter.handleMessage(MessageBuilder.withPayload(messageToSend)
+					.copyHeaders(transformed)
+					.setHeader(ERROR_HEADER, "ERRORS:" + this.name)
+					.build());
+		}
+
+	}
+
 	private class ReceivingHandler extends AbstractReplyProducingMessageHandler {
 
 		public ReceivingHandler() {
@@ -448,7 +578,8 @@ public class RedisMessageBus extends MessageBusSupport implements DisposableBean
 		protected Object handleRequestMessage(Message<?> requestMessage) {
 			MessageValues theRequestMessage;
 			try {
-				theRequestMessage = embeddedHeadersMessageConverter.extractHeaders((Message<byte[]>) requestMessage, true);
+				theRequestMessage = embeddedHeadersMessageConverter.extractHeaders((Message<byte[]>) requestMessage, true,
+						false);
 			}
 			catch (Exception e) {
 				logger.error(EmbeddedHeadersMessageConverter.decodeExceptionMessage(requestMessage), e);
@@ -19,6 +19,8 @@ package org.springframework.xd.dirt.integration.bus;
 import java.util.Properties;
 
 import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.util.StringUtils;
 
@@ -31,7 +33,12 @@ import org.springframework.util.StringUtils;
  */
 public abstract class AbstractBusPropertiesAccessor implements BusProperties {
 
-	private static final SpelExpressionParser spelExpressionParser = new SpelExpressionParser();
+	/**
+	 * Partition expressions are evaluated for every message a partitioned producer sends, so let SpEL compile them
+	 * once they have been interpreted a few times.
+	 */
+	private static final SpelExpressionParser spelExpressionParser = new SpelExpressionParser(
+			new SpelParserConfiguration(SpelCompilerMode.MIXED, null));
 
 	private final Properties properties;
 
@@ -335,6 +342,15 @@ public abstract class AbstractBusPropertiesAccessor implements BusProperties {
 		return getProperty(BATCH_TIMEOUT, defaultValue);
 	}
 
+	/**
+	 * If true, the consumer receives messages in batches.
+	 * @param defaultValue the default value.
+	 * @return the property or default value.
+	 */
+	public boolean isBatchDelivery(boolean defaultValue) {
+		return getProperty(BATCH_DELIVERY, defaultValue);
+	}
+
 	/**
 	 * If true, messages will be compressed.
 	 * @param defaultValue the default value.
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.bus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+import org.springframework.context.Lifecycle;
+import org.springframework.integration.handler.AbstractMessageHandler;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryOperations;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.Assert;
+
+/**
+ * Groups the messages received by a consumer binding into a single {@code Message<List<?>>}, whose payload holds the
+ * payloads of the messages in the order they were received and whose {@link XdHeaders#XD_BATCH_HEADERS} header holds
+ * their headers, in the same order.
+ * <p>
+ * A batch is delivered when it holds {@code batchSize} messages, {@code batchTimeout} milliseconds after its first
+ * message was received, or when this handler is stopped. Once stopped, messages still received (until the endpoint
+ * feeding this handler is stopped too) are delivered one by one. Batches are delivered one at a time, so that the
+ * order of messages is kept across batches.
+ * <p>
+ * As messages are held until their batch is delivered, buses that would otherwise acknowledge each message as soon as
+ * it is handed over should defer acknowledgement to an {@link Acknowledger}, called once the batch has been delivered
+ * (or has failed to be).
+ * <p>
+ * As the messages of a batch are no longer with the transport when the batch is delivered, delivery failures cannot
+ * be rethrown to it. Instead, a batch is delivered within the {@link RetryOperations} of the bus, if any, and once
+ * retries are exhausted each of its messages is handed to the recoverer of the bus, if any.
+ *
+ * @author Eric Bottard
+ */
+public class BatchDeliveryHandler extends AbstractMessageHandler implements Lifecycle {
+
+	private final MessageChannel outputChannel;
+
+	private final int batchSize;
+
+	private final long batchTimeout;
+
+	private final Acknowledger acknowledger;
+
+	private final Object lock = new Object();
+
+	private volatile TaskScheduler taskScheduler;
+
+	private volatile RetryOperations retryOperations;
+
+	private volatile MessageHandler recoverer;
+
+	private List<Message<?>> pending;
+
+	private ScheduledFuture<?> timeoutTask;
+
+	private volatile boolean running;
+
+	/**
+	 * Whether {@link #stop()} was called (and not {@link #start()} since); unlike {@link #running}, false until the
+	 * handler is first stopped.
+	 */
+	private boolean stopped;
+
+	/**
+	 * @param outputChannel the channel batches are sent to
+	 * @param batchSize the maximum number of messages per batch
+	 * @param batchTimeout how long (in milliseconds) a batch may wait for more messages
+	 * @param acknowledger called once each batch has been delivered, may be null
+	 */
+	public BatchDeliveryHandler(MessageChannel outputChannel, int batchSize, long batchTimeout,
+			Acknowledger acknowledger) {
+		Assert.notNull(outputChannel, "outputChannel must not be null");
+		Assert.isTrue(batchSize > 0, "batchSize must be positive");
+		Assert.isTrue(batchTimeout > 0, "batchTimeout must be positive");
+		this.outputChannel = outputChannel;
+		this.batchSize = batchSize;
+		this.batchTimeout = batchTimeout;
+		this.acknowledger = acknowledger;
+		this.pending = new ArrayList<Message<?>>(batchSize);
+	}
+
+	public void setTaskScheduler(TaskScheduler taskScheduler) {
+		this.taskScheduler = taskScheduler;
+	}
+
+	/**
+	 * Set the retry operations each batch is delivered within.
+	 * @param retryOperations the retry operations, may be null for a single attempt
+	 */
+	public void setRetryOperations(RetryOperations retryOperations) {
+		this.retryOperations = retryOperations;
+	}
+
+	/**
+	 * Set the handler each message of a batch is handed to once the batch failed to be delivered, such as one
+	 * sending them to an error queue.
+	 * @param recoverer the recoverer, may be null to only log failures
+	 */
+	public void setRecoverer(MessageHandler recoverer) {
+		this.recoverer = recoverer;
+	}
+
+	@Override
+	protected void onInit() throws Exception {
+		super.onInit();
+		Assert.notNull(this.taskScheduler, "taskScheduler is required");
+	}
+
+	@Override
+	protected void handleMessageInternal(Message<?> message) throws Exception {
+		synchronized (this.lock) {
+			this.pending.add(message);
+			if (this.pending.size() >= this.batchSize || this.stopped) {
+				deliver();
+			}
+			else if (this.pending.size() == 1) {
+				final List<Message<?>> batch = this.pending;
+				this.timeoutTask = this.taskScheduler.schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						synchronized (lock) {
+							// the batch may have been delivered (full) in the meantime
+							if (pending == batch) {
+								deliver();
+							}
+						}
+					}
+
+				}, new Date(System.currentTimeMillis() + this.batchTimeout));
+			}
+		}
+	}
+
+	/**
+	 * Deliver the current batch, if any. Must be called while holding the lock.
+	 */
+	private void deliver() {
+		if (this.timeoutTask != null) {
+			this.timeoutTask.cancel(false);
+			this.timeoutTask = null;
+		}
+		List<Message<?>> batch = this.pending;
+		if (batch.isEmpty()) {
+			return;
+		}
+		this.pending = new ArrayList<Message<?>>(this.batchSize);
+		List<Object> payloads = new ArrayList<Object>(batch.size());
+		List<MessageHeaders> headers = new ArrayList<MessageHeaders>(batch.size());
+		for (Message<?> message : batch) {
+			payloads.add(message.getPayload());
+			headers.add(message.getHeaders());
+		}
+		headers = Collections.unmodifiableList(headers);
+		final Message<List<Object>> batchMessage = MessageBuilder.withPayload(payloads)
+				.setHeader(XdHeaders.XD_BATCH_HEADERS, headers)
+				.build();
+		boolean delivered = false;
+		try {
+			if (this.retryOperations == null) {
+				this.outputChannel.send(batchMessage);
+			}
+			else {
+				this.retryOperations.execute(new RetryCallback<Boolean, RuntimeException>() {
+
+					@Override
+					public Boolean doWithRetry(RetryContext context) {
+						return outputChannel.send(batchMessage);
+					}
+
+				});
+			}
+			delivered = true;
+		}
+		catch (Exception e) {
+			delivered = recover(batch, e);
+		}
+		if (this.acknowledger != null) {
+			try {
+				this.acknowledger.acknowledge(headers, delivered);
+			}
+			catch (Exception e) {
+				logger.error("Failed to acknowledge a batch of " + batch.size() + " messages", e);
+			}
+		}
+	}
+
+	/**
+	 * Hand each message of a batch that failed to be delivered to the recoverer.
+	 * @return whether all messages were recovered
+	 */
+	private boolean recover(List<Message<?>> batch, Exception cause) {
+		if (this.recoverer == null) {
+			logger.error("Failed to deliver a batch of " + batch.size() + " messages", cause);
+			return false;
+		}
+		logger.error("Failed to deliver a batch of " + batch.size() + " messages; recovering them: " + cause);
+		boolean recovered = true;
+		for (Message<?> message : batch) {
+			try {
+				this.recoverer.handleMessage(message);
+			}
+			catch (Exception e) {
+				logger.error("Failed to recover a message of a failed batch", e);
+				recovered = false;
+			}
+		}
+		return recovered;
+	}
+
+	@Override
+	public void start() {
+		synchronized (this.lock) {
+			this.running = true;
+			this.stopped = false;
+		}
+	}
+
+	/**
+	 * Deliver the messages received so far, and any received from now on as they arrive.
+	 */
+	@Override
+	public void stop() {
+		synchronized (this.lock) {
+			this.running = false;
+			this.stopped = true;
+			deliver();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	@Override
+	public String getComponentType() {
+		return "bus:batch-delivery-handler";
+	}
+
+	/**
+	 * Acknowledges the messages of a batch to the transport, once the batch has been handed to the module.
+	 */
+	public interface Acknowledger {
+
+		/**
+		 * @param headers the headers of the messages in the batch
+		 * @param delivered whether the module accepted the batch, or its messages were all recovered
+		 */
+		void acknowledge(List<MessageHeaders> headers, boolean delivered);
+
+	}
+
+}
@@ -49,6 +49,8 @@ public class Binding implements Lifecycle {
 
 	private final AbstractBusPropertiesAccessor properties;
 
+	private volatile Lifecycle batchDeliveryHandler;
+
 	private Binding(String name, MessageChannel channel, AbstractEndpoint endpoint, String type,
 			AbstractBusPropertiesAccessor properties) {
 		Assert.notNull(channel, "channel must not be null");
@@ -95,13 +97,29 @@ public class Binding implements Lifecycle {
 		return properties;
 	}
 
+	/**
+	 * Set the handler that groups the messages of a consumer binding into batches; it is started before the
+	 * endpoint, and stopped (which delivers and acknowledges the last batch) before it too, while the transport can
+	 * still take acknowledgements.
+	 * @param batchDeliveryHandler the handler
+	 */
+	public void setBatchDeliveryHandler(Lifecycle batchDeliveryHandler) {
+		this.batchDeliveryHandler = batchDeliveryHandler;
+	}
+
 	@Override
 	public void start() {
+		if (batchDeliveryHandler != null) {
+			batchDeliveryHandler.start();
+		}
 		endpoint.start();
 	}
 
 	@Override
 	public void stop() {
+		if (batchDeliveryHandler != null) {
+			batchDeliveryHandler.stop();
+		}
 		endpoint.stop();
 	}
 
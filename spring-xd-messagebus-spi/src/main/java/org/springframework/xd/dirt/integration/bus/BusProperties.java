@@ -116,6 +116,11 @@ public interface BusProperties {
 	 */
 	public static final String BATCH_TIMEOUT = "batchTimeout";
 
+	/**
+	 * True if the consumer should receive messages in batches, as a {@code Message<List<?>>}.
+	 */
+	public static final String BATCH_DELIVERY = "batchDelivery";
+
 	/**
 	 * For all non-terminal modules, the number of modules coming after this one, irrespective of partitioning.
 	 */
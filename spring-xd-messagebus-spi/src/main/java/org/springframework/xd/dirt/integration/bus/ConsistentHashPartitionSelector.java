@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.bus;
+
+/**
+ * A {@link PartitionSelectorStrategy} based on the jump consistent hash of Lamping and Veach. Unlike
+ * {@code key.hashCode() % partitionCount}, growing from {@code n} to {@code n + 1} partitions only moves about
+ * {@code 1/(n + 1)} of the keys (all of them to the new partition), and shrinking back moves only the keys of the
+ * removed partition. This preserves locality for stateful downstream modules when a partitioned module is scaled.
+ * <p>
+ * Keys are first hashed to 64 bits by content: {@link CharSequence}s by their characters, {@code byte[]}s by their
+ * bytes and integral {@link Number}s by their value, so that the selection doesn't depend on the quality of
+ * {@link Object#hashCode()}. Other keys are hashed from their {@code hashCode()}, which should then be stable across
+ * JVMs.
+ * <p>
+ * Can be selected with {@code partitionSelectorClass=consistentHash} in the deployment properties.
+ *
+ * @author Eric Bottard
+ */
+public class ConsistentHashPartitionSelector implements PartitionSelectorStrategy {
+
+	/**
+	 * The name this selector can be referred to by, instead of its class name.
+	 */
+	public static final String NAME = "consistentHash";
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	@Override
+	public int selectPartition(Object key, int partitionCount) {
+		return jumpConsistentHash(hash(key), partitionCount);
+	}
+
+	/**
+	 * Map a 64 bit hash to a bucket in {@code [0, buckets)}.
+	 */
+	static int jumpConsistentHash(long hash, int buckets) {
+		long b = -1;
+		long j = 0;
+		while (j < buckets) {
+			b = j;
+			hash = hash * 2862933555777941757L + 1;
+			j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((hash >>> 33) + 1)));
+		}
+		return (int) b;
+	}
+
+	/**
+	 * Hash a key to 64 bits, using FNV-1a over its content followed by the MurmurHash3 finalizer for avalanche.
+	 */
+	static long hash(Object key) {
+		long h = FNV_OFFSET_BASIS;
+		if (key instanceof CharSequence) {
+			CharSequence chars = (CharSequence) key;
+			for (int i = 0; i < chars.length(); i++) {
+				h = (h ^ chars.charAt(i)) * FNV_PRIME;
+			}
+		}
+		else if (key instanceof byte[]) {
+			for (byte b : (byte[]) key) {
+				h = (h ^ (b & 0xff)) * FNV_PRIME;
+			}
+		}
+		else if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+			h = (h ^ ((Number) key).longValue()) * FNV_PRIME;
+		}
+		else {
+			h = (h ^ key.hashCode()) * FNV_PRIME;
+		}
+		return fmix64(h);
+	}
+
+	private static long fmix64(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
@@ -18,25 +18,35 @@ package org.springframework.xd.dirt.integration.bus;
 
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
+import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.Map;
+import java.util.UUID;
 
 import javax.xml.bind.DatatypeConverter;
 
 import org.springframework.integration.IntegrationMessageHeaderAccessor;
-import org.springframework.integration.support.MessageBuilder;
 import org.springframework.integration.support.json.Jackson2JsonObjectMapper;
 import org.springframework.messaging.Message;
-import org.springframework.messaging.MessageHeaders;
-import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.util.Assert;
+import org.springframework.util.MimeType;
 
 /**
  * Encodes requested headers into payload with format
  * {@code 0xff, n(1), [ [lenHdr(1), hdr, lenValue(4), value] ... ]}.
- * The 0xff indicates this new format; n is number of headers (max 255); for
+ * The 0xff indicates this new format; n is number of headers (max 254); for
  * each header, the name length (1 byte) is followed by the name, followed by
  * the value length (int) followed by the value (json).
  * <p>
+ * When the {@link Format#binary binary} format is selected, the headers are encoded as
+ * {@code 0xff, 0xff, n(1), [ [lenHdr(1), hdr, type(1), value] ... ]}, where n is also
+ * at most 254 and the value encoding depends on the type tag: Strings and MimeTypes are
+ * a varint length followed by UTF-8 bytes, Integers and Longs are 4 and 8 big-endian
+ * bytes, UUIDs are 16 bytes, and any other value falls back to a varint length followed
+ * by its json representation.
+ * Decoding always detects the format, so both formats can be read regardless of the
+ * format used to send.
+ * <p>
  * Previously, there was no leading 0xff; the value length was 1 byte and only
  * String header values were supported (no JSON conversion).
  *
@@ -45,51 +55,181 @@ import org.springframework.messaging.support.MessageHeaderAccessor;
  */
 public class EmbeddedHeadersMessageConverter {
 
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int FORMAT_MARKER = 0xff;
+
+	private static final int BINARY_FORMAT_MARKER = 0xff;
+
+	private static final byte TYPE_JSON = 0;
+
+	private static final byte TYPE_STRING = 1;
+
+	private static final byte TYPE_INTEGER = 2;
+
+	private static final byte TYPE_LONG = 3;
+
+	private static final byte TYPE_UUID = 4;
+
+	private static final byte TYPE_MIME_TYPE = 5;
+
+	/**
+	 * The formats in which headers can be embedded.
+	 */
+	public enum Format {
+		json,
+		binary
+	}
+
 	private final Jackson2JsonObjectMapper objectMapper = new Jackson2JsonObjectMapper();
 
+	private volatile Format format = Format.json;
+
 	public static String decodeExceptionMessage(Message<?> requestMessage) {
 		return "Could not convert message: " + DatatypeConverter.printHexBinary((byte[]) requestMessage.getPayload());
 	}
 
+	/**
+	 * Set the format used to embed headers; defaults to {@link Format#json}, which
+	 * can be read by all versions. Only select {@link Format#binary} once all
+	 * consumers are able to decode it.
+	 * @param format the format.
+	 */
+	public void setFormat(Format format) {
+		Assert.notNull(format, "'format' cannot be null");
+		this.format = format;
+	}
 
 	/**
 	 * Return a new message where some of the original headers of {@code original}
-	 * have been embedded into the new message payload.
+	 * have been embedded into the new message payload. The payload of {@code original}
+	 * may be a {@code byte[]} or a {@link ByteBuffer} (whose remaining bytes are used);
+	 * either way it is copied exactly once, into the returned array.
 	 */
 	public byte[] embedHeaders(MessageValues original, String... headers) throws Exception {
+		if (Format.binary.equals(this.format)) {
+			return embedBinaryHeaders(original, headers);
+		}
+		byte[][] headerNames = new byte[headers.length][];
 		byte[][] headerValues = new byte[headers.length][];
-		int n = 0;
 		int headerCount = 0;
 		int headersLength = 0;
-		for (String header : headers) {
-			Object value = original.get(header) == null ? null
-					: original.get(header);
+		for (int i = 0; i < headers.length; i++) {
+			Object value = original.get(headers[i]);
 			if (value != null) {
-				String json = this.objectMapper.toJson(value);
-				headerValues[n++] = json.getBytes("UTF-8");
+				headerNames[i] = headers[i].getBytes(UTF8);
+				headerValues[i] = this.objectMapper.toJson(value).getBytes(UTF8);
 				headerCount++;
-				headersLength += header.length() + json.length();
-			}
-			else {
-				headerValues[n++] = null;
+				headersLength += headerNames[i].length + headerValues[i].length;
 			}
 		}
+		// a count of 255 would be mistaken for the binary format marker
+		Assert.isTrue(headerCount < BINARY_FORMAT_MARKER, "Cannot embed more than 254 headers");
+		ByteBuffer payload = payloadAsByteBuffer(original.getPayload());
 		// 0xff, n(1), [ [lenHdr(1), hdr, lenValue(4), value] ... ]
-		byte[] newPayload = new byte[((byte[])original.getPayload()).length + headersLength + headerCount * 5 + 2];
+		byte[] newPayload = new byte[payload.remaining() + headersLength + headerCount * 5 + 2];
 		ByteBuffer byteBuffer = ByteBuffer.wrap(newPayload);
-		byteBuffer.put((byte) 0xff); // signal new format
+		byteBuffer.put((byte) FORMAT_MARKER); // signal new format
 		byteBuffer.put((byte) headerCount);
 		for (int i = 0; i < headers.length; i++) {
 			if (headerValues[i] != null) {
-				byteBuffer.put((byte) headers[i].length());
-				byteBuffer.put(headers[i].getBytes("UTF-8"));
+				byteBuffer.put((byte) headerNames[i].length);
+				byteBuffer.put(headerNames[i]);
 				byteBuffer.putInt(headerValues[i].length);
 				byteBuffer.put(headerValues[i]);
 			}
 		}
 
-		byteBuffer.put((byte[])original.getPayload());
-		return byteBuffer.array();
+		byteBuffer.put(payload);
+		return newPayload;
+	}
+
+	private byte[] embedBinaryHeaders(MessageValues original, String... headers) throws Exception {
+		byte[][] headerNames = new byte[headers.length][];
+		byte[] types = new byte[headers.length];
+		// encoded bytes of variable-length values, null for fixed-length ones
+		byte[][] variableValues = new byte[headers.length][];
+		int headerCount = 0;
+		int headersLength = 0;
+		for (int i = 0; i < headers.length; i++) {
+			Object value = original.get(headers[i]);
+			if (value == null) {
+				continue;
+			}
+			headerNames[i] = headers[i].getBytes(UTF8);
+			headerCount++;
+			headersLength += 2 + headerNames[i].length;
+			if (value instanceof String) {
+				types[i] = TYPE_STRING;
+				variableValues[i] = ((String) value).getBytes(UTF8);
+			}
+			else if (value instanceof Integer) {
+				types[i] = TYPE_INTEGER;
+				headersLength += 4;
+			}
+			else if (value instanceof Long) {
+				types[i] = TYPE_LONG;
+				headersLength += 8;
+			}
+			else if (value instanceof UUID) {
+				types[i] = TYPE_UUID;
+				headersLength += 16;
+			}
+			else if (value instanceof MimeType) {
+				types[i] = TYPE_MIME_TYPE;
+				variableValues[i] = value.toString().getBytes(UTF8);
+			}
+			else {
+				types[i] = TYPE_JSON;
+				variableValues[i] = this.objectMapper.toJson(value).getBytes(UTF8);
+			}
+			if (variableValues[i] != null) {
+				headersLength += varIntSize(variableValues[i].length) + variableValues[i].length;
+			}
+		}
+		Assert.isTrue(headerCount < BINARY_FORMAT_MARKER, "Cannot embed more than 254 headers");
+		ByteBuffer payload = payloadAsByteBuffer(original.getPayload());
+		// 0xff, 0xff, n(1), [ [lenHdr(1), hdr, type(1), value] ... ]
+		byte[] newPayload = new byte[payload.remaining() + headersLength + 3];
+		ByteBuffer byteBuffer = ByteBuffer.wrap(newPayload);
+		byteBuffer.put((byte) FORMAT_MARKER);
+		byteBuffer.put((byte) BINARY_FORMAT_MARKER);
+		byteBuffer.put((byte) headerCount);
+		for (int i = 0; i < headers.length; i++) {
+			if (headerNames[i] == null) {
+				continue;
+			}
+			byteBuffer.put((byte) headerNames[i].length);
+			byteBuffer.put(headerNames[i]);
+			byteBuffer.put(types[i]);
+			Object value = original.get(headers[i]);
+			switch (types[i]) {
+				case TYPE_INTEGER:
+					byteBuffer.putInt((Integer) value);
+					break;
+				case TYPE_LONG:
+					byteBuffer.putLong((Long) value);
+					break;
+				case TYPE_UUID:
+					byteBuffer.putLong(((UUID) value).getMostSignificantBits());
+					byteBuffer.putLong(((UUID) value).getLeastSignificantBits());
+					break;
+				default:
+					putVarInt(byteBuffer, variableValues[i].length);
+					byteBuffer.put(variableValues[i]);
+			}
+		}
+
+		byteBuffer.put(payload);
+		return newPayload;
+	}
+
+	private ByteBuffer payloadAsByteBuffer(Object payload) {
+		if (payload instanceof ByteBuffer) {
+			// don't disturb the position of the caller's buffer
+			return ((ByteBuffer) payload).duplicate();
+		}
+		return ByteBuffer.wrap((byte[]) payload);
 	}
 
 	/**
@@ -100,35 +240,116 @@ public class EmbeddedHeadersMessageConverter {
 	 * @param copyRequestHeaders boolean value to specify if original headers should be copied
 	 */
 	public MessageValues extractHeaders(Message<byte[]> message, boolean copyRequestHeaders) throws Exception {
+		return extractHeaders(message, copyRequestHeaders, true);
+	}
+
+	/**
+	 * Return a message where headers, that were originally embedded into the payload, have been promoted
+	 * back to actual headers. The new payload is now the original payload; if {@code copyPayload} is false,
+	 * the payload is a {@link ByteBuffer} view over the original array, positioned after the embedded headers,
+	 * instead of a copy.
+	 *
+	 * @param message the message to extract headers
+	 * @param copyRequestHeaders boolean value to specify if original headers should be copied
+	 * @param copyPayload false to return the payload as a view rather than a new {@code byte[]}
+	 */
+	public MessageValues extractHeaders(Message<byte[]> message, boolean copyRequestHeaders, boolean copyPayload)
+			throws Exception {
 		byte[] bytes = message.getPayload();
 		ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+		MessageValues messageValues = new MessageValues(bytes, Collections.<String, Object> emptyMap());
 		int headerCount = byteBuffer.get() & 0xff;
-		if (headerCount < 255) {
-			return oldExtractHeaders(byteBuffer, bytes, headerCount, message, copyRequestHeaders);
+		if (headerCount < FORMAT_MARKER) {
+			oldExtractHeaders(byteBuffer, bytes, headerCount, messageValues);
 		}
 		else {
 			headerCount = byteBuffer.get() & 0xff;
-			Map<String, Object> headers = new HashMap<String, Object>();
-			for (int i = 0; i < headerCount; i++) {
-				int len = byteBuffer.get() & 0xff;
-				String headerName = new String(bytes, byteBuffer.position(), len, "UTF-8");
-				byteBuffer.position(byteBuffer.position() + len);
-				len = byteBuffer.getInt();
-				String headerValue = new String(bytes, byteBuffer.position(), len, "UTF-8");
-				Object headerContent = this.objectMapper.fromJson(headerValue, Object.class);
-				headers.put(headerName, headerContent);
-				byteBuffer.position(byteBuffer.position() + len);
+			if (headerCount == BINARY_FORMAT_MARKER) {
+				extractBinaryHeaders(byteBuffer, bytes, messageValues);
 			}
+			else {
+				extractJsonHeaders(byteBuffer, bytes, headerCount, messageValues);
+			}
+		}
+		if (copyPayload) {
 			byte[] newPayload = new byte[byteBuffer.remaining()];
 			byteBuffer.get(newPayload);
-			return buildMessageValues(message, newPayload, headers, copyRequestHeaders);
+			messageValues.setPayload(newPayload);
 		}
+		else {
+			messageValues.setPayload(byteBuffer.slice());
+		}
+		if (copyRequestHeaders) {
+			messageValues.copyHeadersIfAbsent(message.getHeaders());
+		}
+		return messageValues;
 	}
 
-	private MessageValues oldExtractHeaders(ByteBuffer byteBuffer, byte[] bytes, int headerCount,
-			Message<byte[]> message, boolean copyRequestHeaders)
-			throws UnsupportedEncodingException {
-		Map<String, Object> headers = new HashMap<String, Object>();
+	private void extractJsonHeaders(ByteBuffer byteBuffer, byte[] bytes, int headerCount,
+			Map<String, Object> headers) {
+		for (int i = 0; i < headerCount; i++) {
+			int len = byteBuffer.get() & 0xff;
+			String headerName = new String(bytes, byteBuffer.position(), len, UTF8);
+			byteBuffer.position(byteBuffer.position() + len);
+			len = byteBuffer.getInt();
+			String headerValue = new String(bytes, byteBuffer.position(), len, UTF8);
+			headers.put(headerName, fromJson(headerValue));
+			byteBuffer.position(byteBuffer.position() + len);
+		}
+	}
+
+	private void extractBinaryHeaders(ByteBuffer byteBuffer, byte[] bytes, Map<String, Object> headers) {
+		int headerCount = byteBuffer.get() & 0xff;
+		for (int i = 0; i < headerCount; i++) {
+			int len = byteBuffer.get() & 0xff;
+			String headerName = new String(bytes, byteBuffer.position(), len, UTF8);
+			byteBuffer.position(byteBuffer.position() + len);
+			byte type = byteBuffer.get();
+			Object headerContent;
+			switch (type) {
+				case TYPE_INTEGER:
+					headerContent = byteBuffer.getInt();
+					break;
+				case TYPE_LONG:
+					headerContent = byteBuffer.getLong();
+					break;
+				case TYPE_UUID:
+					headerContent = new UUID(byteBuffer.getLong(), byteBuffer.getLong());
+					break;
+				case TYPE_STRING:
+				case TYPE_MIME_TYPE:
+				case TYPE_JSON:
+					len = getVarInt(byteBuffer);
+					String value = new String(bytes, byteBuffer.position(), len, UTF8);
+					byteBuffer.position(byteBuffer.position() + len);
+					if (type == TYPE_STRING) {
+						headerContent = value;
+					}
+					else if (type == TYPE_MIME_TYPE) {
+						headerContent = MimeType.valueOf(value);
+					}
+					else {
+						headerContent = fromJson(value);
+					}
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown embedded header type: " + type);
+			}
+			headers.put(headerName, headerContent);
+		}
+	}
+
+	private Object fromJson(String json) {
+		try {
+			return this.objectMapper.fromJson(json, Object.class);
+		}
+		catch (Exception e) {
+			throw new IllegalArgumentException("Could not decode header value: " + json, e);
+		}
+	}
+
+	private void oldExtractHeaders(ByteBuffer byteBuffer, byte[] bytes, int headerCount,
+			Map<String, Object> headers) throws UnsupportedEncodingException {
 		for (int i = 0; i < headerCount; i++) {
 			int len = byteBuffer.get();
 			String headerName = new String(bytes, byteBuffer.position(), len, "UTF-8");
@@ -144,18 +365,35 @@ public class EmbeddedHeadersMessageConverter {
 				headers.put(headerName, headerValue);
 			}
 		}
-		byte[] newPayload = new byte[byteBuffer.remaining()];
-		byteBuffer.get(newPayload);
-		return buildMessageValues(message, newPayload, headers, copyRequestHeaders);
 	}
 
-	private MessageValues buildMessageValues(Message<byte[]> message, byte[] payload, Map<String, Object> headers,
-			boolean copyRequestHeaders) {
-		MessageValues messageValues = new MessageValues(payload, headers);
-		if (copyRequestHeaders) {
-			messageValues.copyHeadersIfAbsent(message.getHeaders());
+	private static int varIntSize(int value) {
+		int size = 1;
+		while ((value & ~0x7f) != 0) {
+			value >>>= 7;
+			size++;
 		}
-		return messageValues;
+		return size;
+	}
+
+	private static void putVarInt(ByteBuffer byteBuffer, int value) {
+		while ((value & ~0x7f) != 0) {
+			byteBuffer.put((byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		byteBuffer.put((byte) value);
+	}
+
+	private static int getVarInt(ByteBuffer byteBuffer) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = byteBuffer.get();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint in embedded headers");
 	}
 
 }
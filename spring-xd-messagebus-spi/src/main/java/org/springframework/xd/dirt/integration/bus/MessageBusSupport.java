@@ -19,9 +19,10 @@ import static org.springframework.util.MimeTypeUtils.APPLICATION_OCTET_STREAM_VA
 import static org.springframework.util.MimeTypeUtils.TEXT_PLAIN;
 import static org.springframework.util.MimeTypeUtils.TEXT_PLAIN_VALUE;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -35,6 +36,8 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,12 +65,14 @@ import org.springframework.messaging.SubscribableChannel;
 import org.springframework.retry.backoff.ExponentialBackOffPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.util.AlternativeJdkIdGenerator;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.IdGenerator;
 import org.springframework.util.MimeType;
 import org.springframework.util.StringUtils;
+import org.springframework.xd.dirt.integration.bus.serializer.ByteArrayMultiTypeCodec;
 import org.springframework.xd.dirt.integration.bus.serializer.MultiTypeCodec;
 import org.springframework.xd.dirt.integration.bus.serializer.SerializationException;
 
@@ -115,6 +120,12 @@ public abstract class MessageBusSupport
 
 	private static final int DEFAULT_BATCH_TIMEOUT = 0;
 
+	private static final int DEFAULT_BATCH_DELIVERY_TIMEOUT = 1000;
+
+	private static final int INITIAL_SERIALIZATION_BUFFER_SIZE = 1024;
+
+	private static final int MAX_SERIALIZATION_BUFFER_SIZE = 1024 * 1024;
+
 	/**
 	 * The set of properties every bus implementation must support (or at least tolerate).
 	 */
@@ -152,6 +163,13 @@ public abstract class MessageBusSupport
 				BusProperties.BATCH_TIMEOUT,
 			}));
 
+	protected static final Set<Object> CONSUMER_BATCH_DELIVERY_PROPERTIES = new HashSet<Object>(
+			Arrays.asList(new String[] {
+				BusProperties.BATCH_DELIVERY,
+				BusProperties.BATCH_SIZE,
+				BusProperties.BATCH_TIMEOUT,
+			}));
+
 	protected static final Set<Object> PRODUCER_BATCHING_ADVANCED_PROPERTIES = new HashSet<Object>(
 			Arrays.asList(new String[] {
 				BusProperties.BATCH_BUFFER_LIMIT,
@@ -207,6 +225,16 @@ public abstract class MessageBusSupport
 	// Payload type cache
 	private volatile Map<String, Class<?>> payloadTypeCache = new ConcurrentHashMap<>();
 
+	// Per-thread buffer the codec serializes into, reused across messages
+	private final ThreadLocal<ReusableByteArrayOutputStream> serializationBuffer =
+			new ThreadLocal<ReusableByteArrayOutputStream>() {
+
+				@Override
+				protected ReusableByteArrayOutputStream initialValue() {
+					return new ReusableByteArrayOutputStream(INITIAL_SERIALIZATION_BUFFER_SIZE);
+				}
+			};
+
 	/**
 	 * For bus implementations that support a prefix, apply the prefix to the name.
 	 * @param prefix the prefix.
@@ -559,14 +587,59 @@ public abstract class MessageBusSupport
 	}
 
 	protected final MessageValues serializePayloadIfNecessary(Message<?> message) {
+		Object originalPayload = message.getPayload();
+		MessageValues messageValues = prepareSerializedMessageValues(message);
+		if (originalPayload instanceof byte[]) {
+			messageValues.setPayload(originalPayload);
+		}
+		else if (originalPayload instanceof String) {
+			messageValues.setPayload(encodeString((String) originalPayload));
+		}
+		else if (this.codec instanceof ByteArrayMultiTypeCodec) {
+			try {
+				messageValues.setPayload(((ByteArrayMultiTypeCodec<Object>) this.codec).serialize(originalPayload));
+			}
+			catch (IOException e) {
+				throw new SerializationException("unable to serialize payload ["
+						+ originalPayload.getClass().getName() + "]", e);
+			}
+		}
+		else {
+			messageValues.setPayload(serializeToBuffer(originalPayload).toByteArray());
+		}
+		return messageValues;
+	}
+
+	/**
+	 * Variant of {@link #serializePayloadIfNecessary(Message)} for buses that embed headers in the payload. When the
+	 * payload has to go through the codec, the returned payload is a {@link ByteBuffer} view over a buffer that is
+	 * reused by the calling thread, so that {@link EmbeddedHeadersMessageConverter#embedHeaders} can copy it straight
+	 * into the (exact-sized) outbound array. The view must be consumed before this thread serializes another payload.
+	 * @param message the message.
+	 * @return the message values, with either a {@code byte[]} or a {@link ByteBuffer} payload.
+	 */
+	protected final MessageValues serializePayloadForEmbedding(Message<?> message) {
+		Object originalPayload = message.getPayload();
+		MessageValues messageValues = prepareSerializedMessageValues(message);
+		if (originalPayload instanceof byte[]) {
+			messageValues.setPayload(originalPayload);
+		}
+		else if (originalPayload instanceof String) {
+			messageValues.setPayload(encodeString((String) originalPayload));
+		}
+		else {
+			messageValues.setPayload(serializeToBuffer(originalPayload).toByteBuffer());
+		}
+		return messageValues;
+	}
+
+	private MessageValues prepareSerializedMessageValues(Message<?> message) {
 		Object originalPayload = message.getPayload();
 		Object originalContentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
 
 		//Pass content type as String since some transport adapters will exclude CONTENT_TYPE Header otherwise
 		Object contentType = JavaClassMimeTypeConversion.mimeTypeFromObject(originalPayload).toString();
-		Object payload = serializePayloadIfNecessary(originalPayload);
 		MessageValues messageValues = new MessageValues(message);
-		messageValues.setPayload(payload);
 		messageValues.put(MessageHeaders.CONTENT_TYPE, contentType);
 		if (originalContentType != null) {
 			messageValues.put(XdHeaders.XD_ORIGINAL_CONTENT_TYPE, originalContentType);
@@ -574,23 +647,34 @@ public abstract class MessageBusSupport
 		return messageValues;
 	}
 
-	private byte[] serializePayloadIfNecessary(Object originalPayload) {
-		if (originalPayload instanceof byte[]) {
-			return (byte[]) originalPayload;
+	private byte[] encodeString(String payload) {
+		try {
+			return payload.getBytes("UTF-8");
 		}
-		else {
-			ByteArrayOutputStream bos = new ByteArrayOutputStream();
-			try {
-				if (originalPayload instanceof String) {
-					return ((String) originalPayload).getBytes("UTF-8");
-				}
-				this.codec.serialize(originalPayload, bos);
-				return bos.toByteArray();
-			}
-			catch (IOException e) {
-				throw new SerializationException("unable to serialize payload ["
-						+ originalPayload.getClass().getName() + "]", e);
-			}
+		catch (UnsupportedEncodingException e) {
+			throw new SerializationException("unable to serialize [java.lang.String]. Encoding not supported.", e);
+		}
+	}
+
+	/**
+	 * Serialize the payload with the codec into this thread's reusable buffer; the buffer content is only valid until
+	 * the next call on the same thread.
+	 */
+	private ReusableByteArrayOutputStream serializeToBuffer(Object originalPayload) {
+		ReusableByteArrayOutputStream buffer = this.serializationBuffer.get();
+		if (buffer.capacity() > MAX_SERIALIZATION_BUFFER_SIZE) {
+			// don't hang on to the memory of an unusually large payload
+			buffer = new ReusableByteArrayOutputStream(INITIAL_SERIALIZATION_BUFFER_SIZE);
+			this.serializationBuffer.set(buffer);
+		}
+		buffer.reset();
+		try {
+			this.codec.serialize(originalPayload, buffer);
+			return buffer;
+		}
+		catch (IOException e) {
+			throw new SerializationException("unable to serialize payload ["
+					+ originalPayload.getClass().getName() + "]", e);
 		}
 	}
 
@@ -619,16 +703,30 @@ public abstract class MessageBusSupport
 				return payload;
 			}
 			else {
-				return deserializePayload((byte[]) payload, contentType);
+				byte[] bytes = (byte[]) payload;
+				return deserializePayload(bytes, 0, bytes.length, contentType);
+			}
+		}
+		else if (payload instanceof ByteBuffer) {
+			// a view over the transport's array, as produced by EmbeddedHeadersMessageConverter
+			ByteBuffer buffer = (ByteBuffer) payload;
+			if (contentType == null || APPLICATION_OCTET_STREAM.equals(contentType)) {
+				byte[] bytes = new byte[buffer.remaining()];
+				buffer.duplicate().get(bytes);
+				return bytes;
+			}
+			else {
+				return deserializePayload(buffer.array(), buffer.arrayOffset() + buffer.position(),
+						buffer.remaining(), contentType);
 			}
 		}
 		return payload;
 	}
 
-	private Object deserializePayload(byte[] bytes, MimeType contentType) {
+	private Object deserializePayload(byte[] bytes, int offset, int length, MimeType contentType) {
 		if (TEXT_PLAIN.equals(contentType)) {
 			try {
-				return new String(bytes, "UTF-8");
+				return new String(bytes, offset, length, "UTF-8");
 			}
 			catch (UnsupportedEncodingException e) {
 				throw new SerializationException("unable to deserialize [java.lang.String]. Encoding not supported.", e);
@@ -643,7 +741,13 @@ public abstract class MessageBusSupport
 					targetType = ClassUtils.forName(className, null);
 					payloadTypeCache.put(className, targetType);
 				}
-				return codec.deserialize(bytes, targetType);
+				if (codec instanceof ByteArrayMultiTypeCodec) {
+					return ((ByteArrayMultiTypeCodec<Object>) codec).deserialize(bytes, offset, length, targetType);
+				}
+				if (offset == 0 && length == bytes.length) {
+					return codec.deserialize(bytes, targetType);
+				}
+				return codec.deserialize(new ByteArrayInputStream(bytes, offset, length), targetType);
 			} catch (ClassNotFoundException e) {
 				throw new SerializationException("unable to deserialize [" + className + "]. Class not found.", e);//NOSONAR
 			} catch (IOException e) {
@@ -667,15 +771,18 @@ public abstract class MessageBusSupport
 	protected int determinePartition(Message<?> message, PartitioningMetadata meta) {
 		Object key = null;
 		if (StringUtils.hasText(meta.partitionKeyExtractorClass)) {
-			key = invokeExtractor(meta.partitionKeyExtractorClass, message);
+			key = getPartitionKeyExtractor(meta).extractKey(message);
 		}
 		else if (meta.partitionKeyExpression != null) {
-			key = meta.partitionKeyExpression.getValue(this.evaluationContext, message);
+			key = meta.extractSimpleKey(message);
+			if (key == null) {
+				key = meta.partitionKeyExpression.getValue(this.evaluationContext, message);
+			}
 		}
 		Assert.notNull(key, "Partition key cannot be null");
 		int partition;
 		if (StringUtils.hasText(meta.partitionSelectorClass)) {
-			partition = invokePartitionSelector(meta.partitionSelectorClass, key, meta.partitionCount);
+			partition = getPartitionSelector(meta).selectPartition(key, meta.partitionCount);
 		}
 		else if (meta.partitionSelectorExpression != null) {
 			partition = meta.partitionSelectorExpression.getValue(this.evaluationContext, key, Integer.class);
@@ -690,56 +797,54 @@ public abstract class MessageBusSupport
 		return partition;
 	}
 
-	private Object invokeExtractor(String partitionKeyExtractorClassName, Message<?> message) {
-		if (this.applicationContext.containsBean(partitionKeyExtractorClassName)) {
-			return this.applicationContext.getBean(partitionKeyExtractorClassName, PartitionKeyExtractorStrategy.class)
-					.extractKey(message);
-		}
-		Class<?> clazz;
-		try {
-			clazz = ClassUtils.forName(partitionKeyExtractorClassName, this.applicationContext.getClassLoader());
+	private PartitionKeyExtractorStrategy getPartitionKeyExtractor(PartitioningMetadata meta) {
+		PartitionKeyExtractorStrategy extractor = meta.partitionKeyExtractor;
+		if (extractor == null) {
+			extractor = lookupOrCreateStrategy(meta.partitionKeyExtractorClass, PartitionKeyExtractorStrategy.class,
+					"key extractor");
+			meta.partitionKeyExtractor = extractor;
 		}
-		catch (Exception e) {
-			logger.error("Failed to load key extractor", e);
-			throw new MessageBusException("Failed to load key extractor: " + partitionKeyExtractorClassName, e);
-		}
-		try {
-			Object extractor = clazz.newInstance();
-			Assert.isInstanceOf(PartitionKeyExtractorStrategy.class, extractor);
-			this.applicationContext.getBeanFactory().registerSingleton(partitionKeyExtractorClassName, extractor);
-			this.applicationContext.getBeanFactory().initializeBean(extractor, partitionKeyExtractorClassName);
-			return ((PartitionKeyExtractorStrategy) extractor).extractKey(message);
-		}
-		catch (Exception e) {
-			logger.error("Failed to instantiate key extractor", e);
-			throw new MessageBusException("Failed to instantiate key extractor: " + partitionKeyExtractorClassName, e);
+		return extractor;
+	}
+
+	private PartitionSelectorStrategy getPartitionSelector(PartitioningMetadata meta) {
+		PartitionSelectorStrategy selector = meta.partitionSelector;
+		if (selector == null) {
+			String className = ConsistentHashPartitionSelector.NAME.equals(meta.partitionSelectorClass)
+					? ConsistentHashPartitionSelector.class.getName()
+					: meta.partitionSelectorClass;
+			selector = lookupOrCreateStrategy(className, PartitionSelectorStrategy.class, "partition selector");
+			meta.partitionSelector = selector;
 		}
+		return selector;
 	}
 
-	private int invokePartitionSelector(String partitionSelectorClassName, Object key, int partitionCount) {
-		if (this.applicationContext.containsBean(partitionSelectorClassName)) {
-			return this.applicationContext.getBean(partitionSelectorClassName, PartitionSelectorStrategy.class)
-					.selectPartition(key, partitionCount);
+	/**
+	 * Return the bean named after the given class, instantiating, registering and initializing it first if needed.
+	 * Synchronized so that concurrent producers don't attempt to register the same singleton twice.
+	 */
+	private synchronized <T> T lookupOrCreateStrategy(String className, Class<T> requiredType, String description) {
+		if (this.applicationContext.containsBean(className)) {
+			return this.applicationContext.getBean(className, requiredType);
 		}
 		Class<?> clazz;
 		try {
-			clazz = ClassUtils.forName(partitionSelectorClassName, this.applicationContext.getClassLoader());
+			clazz = ClassUtils.forName(className, this.applicationContext.getClassLoader());
 		}
 		catch (Exception e) {
-			logger.error("Failed to load partition selector", e);
-			throw new MessageBusException("Failed to load partition selector: " + partitionSelectorClassName, e);
+			logger.error("Failed to load " + description, e);
+			throw new MessageBusException("Failed to load " + description + ": " + className, e);
 		}
 		try {
-			Object extractor = clazz.newInstance();
-			Assert.isInstanceOf(PartitionKeyExtractorStrategy.class, extractor);
-			this.applicationContext.getBeanFactory().registerSingleton(partitionSelectorClassName, extractor);
-			this.applicationContext.getBeanFactory().initializeBean(extractor, partitionSelectorClassName);
-			return ((PartitionSelectorStrategy) extractor).selectPartition(key, partitionCount);
+			Object strategy = clazz.newInstance();
+			Assert.isInstanceOf(requiredType, strategy);
+			this.applicationContext.getBeanFactory().registerSingleton(className, strategy);
+			this.applicationContext.getBeanFactory().initializeBean(strategy, className);
+			return requiredType.cast(strategy);
 		}
 		catch (Exception e) {
-			logger.error("Failed to instantiate partition selector", e);
-			throw new MessageBusException("Failed to instantiate partition selector: " + partitionSelectorClassName,
-					e);
+			logger.error("Failed to instantiate " + description, e);
+			throw new MessageBusException("Failed to instantiate " + description + ": " + className, e);
 		}
 	}
 
@@ -818,6 +923,54 @@ public abstract class MessageBusSupport
 		}
 	}
 
+	/**
+	 * Create a handler that groups the messages for a consumer into batches, if the consumer 'batchDelivery' property
+	 * is set. The batch timeout of a consumer defaults to one second, as the producer default of 0 would never deliver
+	 * a partial batch. Batches are delivered with the retry configuration of the consumer.
+	 * @param name The name of the binding.
+	 * @param moduleInputChannel The channel batches are delivered to.
+	 * @param properties The properties.
+	 * @param acknowledger The acknowledger for delivered batches, or null if the transport needs none.
+	 * @return The handler, or null if batch delivery is not enabled.
+	 */
+	protected BatchDeliveryHandler createBatchDeliveryHandlerIfNeeded(String name, MessageChannel moduleInputChannel,
+			AbstractBusPropertiesAccessor properties, BatchDeliveryHandler.Acknowledger acknowledger) {
+		if (!properties.isBatchDelivery(false)) {
+			return null;
+		}
+		BatchDeliveryHandler handler = new BatchDeliveryHandler(moduleInputChannel,
+				properties.getBatchSize(this.defaultBatchSize),
+				properties.getBatchTimeout(DEFAULT_BATCH_DELIVERY_TIMEOUT), acknowledger);
+		handler.setRetryOperations(buildRetryTemplateIfRetryEnabled(properties));
+		handler.setTaskScheduler(getApplicationContext().getBean(IntegrationContextUtils.TASK_SCHEDULER_BEAN_NAME,
+				TaskScheduler.class));
+		handler.setBeanFactory(getBeanFactory());
+		handler.setBeanName(name + ".batch.handler");
+		handler.afterPropertiesSet();
+		return handler;
+	}
+
+	/**
+	 * Replace the headers of each batch delivered by a {@link BatchDeliveryHandler} with the headers of the messages
+	 * it holds, so that acknowledging a batch acknowledges all of its messages.
+	 * @param messageHeaders The headers of the messages to acknowledge.
+	 * @return The headers of the individual messages.
+	 */
+	@SuppressWarnings("unchecked")
+	protected LinkedList<MessageHeaders> unbatchHeaders(LinkedList<MessageHeaders> messageHeaders) {
+		LinkedList<MessageHeaders> result = new LinkedList<MessageHeaders>();
+		for (MessageHeaders headers : messageHeaders) {
+			List<MessageHeaders> batchHeaders = (List<MessageHeaders>) headers.get(XdHeaders.XD_BATCH_HEADERS);
+			if (batchHeaders != null) {
+				result.addAll(batchHeaders);
+			}
+			else {
+				result.add(headers);
+			}
+		}
+		return result;
+	}
+
 	protected boolean isNamedChannel(String name) {
 		return name.startsWith(PUBSUB_NAMED_CHANNEL_TYPE_PREFIX) || name.startsWith(P2P_NAMED_CHANNEL_TYPE_PREFIX)
 				|| name.startsWith(JOB_CHANNEL_TYPE_PREFIX);
@@ -854,7 +1007,8 @@ public abstract class MessageBusSupport
 					}
 				}
 			}
-			if (consumerBinding == null) {
+			if (consumerBinding == null || isBatchConsumer(consumerBinding)) {
+				// a direct binding would bypass batch delivery
 				return false;
 			}
 			else {
@@ -895,6 +1049,12 @@ public abstract class MessageBusSupport
 						break;
 					}
 				}
+				for (Binding binding : this.bindings) {
+					if (binding.getChannel() == consumerChannel && isBatchConsumer(binding)) {
+						// a direct binding would bypass batch delivery
+						return;
+					}
+				}
 				if (producerBinding != null && producerBinding.getChannel() instanceof SubscribableChannel) {
 					AbstractBusPropertiesAccessor properties = producerBinding.getPropertiesAccessor();
 					if (properties.isDirectBindingAllowed()) {
@@ -908,6 +1068,11 @@ public abstract class MessageBusSupport
 		}
 	}
 
+	private boolean isBatchConsumer(Binding binding) {
+		return Binding.CONSUMER.equals(binding.getType()) && binding.getPropertiesAccessor() != null
+				&& binding.getPropertiesAccessor().isBatchDelivery(false);
+	}
+
 	private void revertDirectBindingIfNecessary(Binding binding) {
 		try {
 			synchronized (this.bindings) { // Not necessary, called while synchronized, but just in case...
@@ -954,8 +1119,19 @@ public abstract class MessageBusSupport
 
 	}
 
+	/**
+	 * The partitioning settings of a producer. The key extractor and partition selector strategies named here are
+	 * resolved on first use and cached, as this is consulted for every message sent.
+	 */
 	protected static class PartitioningMetadata {
 
+		/**
+		 * Matches key expressions that merely read an entry of the payload or of the headers, such as
+		 * {@code payload.customerId}, {@code payload['customerId']} or {@code headers['customerId']}.
+		 */
+		private static final Pattern SIMPLE_KEY_EXPRESSION = Pattern.compile(
+				"\\s*(payload|headers)\\s*(?:\\.\\s*([A-Za-z_$][\\w$]*)|\\[\\s*'([^']*)'\\s*\\])\\s*");
+
 		private final String partitionKeyExtractorClass;
 
 		private final Expression partitionKeyExpression;
@@ -966,12 +1142,34 @@ public abstract class MessageBusSupport
 
 		private final int partitionCount;
 
+		/**
+		 * When the key expression is a simple one, the name of the entry it reads; {@code null} otherwise.
+		 */
+		private final String simpleKeyName;
+
+		private final boolean simpleKeyInHeaders;
+
+		private volatile PartitionKeyExtractorStrategy partitionKeyExtractor;
+
+		private volatile PartitionSelectorStrategy partitionSelector;
+
 		public PartitioningMetadata(AbstractBusPropertiesAccessor properties, int partitionCount) {
 			this.partitionCount = partitionCount;
 			this.partitionKeyExtractorClass = properties.getPartitionKeyExtractorClass();
 			this.partitionKeyExpression = properties.getPartitionKeyExpression();
 			this.partitionSelectorClass = properties.getPartitionSelectorClass();
 			this.partitionSelectorExpression = properties.getPartitionSelectorExpression();
+			Matcher matcher = this.partitionKeyExpression != null
+					? SIMPLE_KEY_EXPRESSION.matcher(this.partitionKeyExpression.getExpressionString())
+					: null;
+			if (matcher != null && matcher.matches()) {
+				this.simpleKeyInHeaders = "headers".equals(matcher.group(1));
+				this.simpleKeyName = matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+			}
+			else {
+				this.simpleKeyInHeaders = false;
+				this.simpleKeyName = null;
+			}
 		}
 
 		public boolean isPartitionedModule() {
@@ -981,6 +1179,24 @@ public abstract class MessageBusSupport
 		public int getPartitionCount() {
 			return partitionCount;
 		}
+
+		/**
+		 * Read the partition key straight from the headers or from a {@link Map} payload when the key expression is a
+		 * simple one, sparing the SpEL evaluation.
+		 * @param message the message.
+		 * @return the key, or {@code null} if the key expression needs to be evaluated.
+		 */
+		Object extractSimpleKey(Message<?> message) {
+			if (this.simpleKeyName == null) {
+				return null;
+			}
+			Object source = this.simpleKeyInHeaders ? message.getHeaders() : message.getPayload();
+			if (source instanceof Map) {
+				return ((Map<?, ?>) source).get(this.simpleKeyName);
+			}
+			return null;
+		}
+
 	}
 
 	/**
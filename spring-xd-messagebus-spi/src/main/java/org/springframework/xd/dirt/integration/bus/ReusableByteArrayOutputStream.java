@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.dirt.integration.bus;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ByteArrayOutputStream} meant to be {@link #reset()} and reused across serializations, which can expose its
+ * content as a {@link ByteBuffer} view without copying it.
+ *
+ * @author Eric Bottard
+ */
+class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+
+	ReusableByteArrayOutputStream(int initialCapacity) {
+		super(initialCapacity);
+	}
+
+	/**
+	 * Return a read-only view over the bytes written so far. The view is only valid until the next time this stream
+	 * is reset or written to.
+	 */
+	public synchronized ByteBuffer toByteBuffer() {
+		return ByteBuffer.wrap(this.buf, 0, this.count).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Return the size of the underlying buffer, which may be larger than {@link #size()}.
+	 */
+	public synchronized int capacity() {
+		return this.buf.length;
+	}
+
+}
@@ -41,6 +41,11 @@ public final class XdHeaders {
 	 */
 	public static final String REPLY_TO = "replyTo";
 
+	/**
+	 * On a batch of messages delivered by a bus, the headers of each message in the batch.
+	 */
+	public static final String XD_BATCH_HEADERS = "xdBatchHeaders";
+
 	/**
 	 * The headers that will be propagated, by default, by message bus implementations
 	 * that have no inherent header support (by embedding the headers in the payload).
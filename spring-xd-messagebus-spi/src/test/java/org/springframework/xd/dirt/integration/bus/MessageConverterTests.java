@@ -19,14 +19,22 @@ package org.springframework.xd.dirt.integration.bus;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
 import org.junit.Assert;
 import org.junit.Test;
 
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.support.GenericMessage;
+import org.springframework.util.MimeTypeUtils;
 
 /**
  * @author Gary Russell
@@ -65,6 +73,106 @@ public class MessageConverterTests {
 				new String(embedded).substring(1));
 	}
 
+	@Test
+	public void testHeaderEmbeddingByteBufferPayload() throws Exception {
+		EmbeddedHeadersMessageConverter converter = new EmbeddedHeadersMessageConverter();
+		ByteBuffer payload = ByteBuffer.wrap("xxHelloyy".getBytes(), 2, 5).slice();
+		MessageValues original = new MessageValues(payload, Collections.<String, Object> singletonMap("foo", "bar"));
+		byte[] embedded = converter.embedHeaders(original, "foo");
+		assertEquals(0xff, embedded[0] & 0xff);
+		assertEquals("\u0001\u0003foo\u0000\u0000\u0000\u0005\"bar\"Hello",
+				new String(embedded).substring(1));
+		assertEquals(0, payload.position());
+	}
+
+	@Test
+	public void testBinaryHeaderEmbedding() throws Exception {
+		EmbeddedHeadersMessageConverter converter = new EmbeddedHeadersMessageConverter();
+		converter.setFormat(EmbeddedHeadersMessageConverter.Format.binary);
+		UUID uuid = UUID.randomUUID();
+		Message<byte[]> message = MessageBuilder.withPayload("Hello".getBytes())
+				.setHeader("foo", "bar")
+				.setHeader("int", 42)
+				.setHeader("long", 1234567890123L)
+				.setHeader("uuid", uuid)
+				.setHeader("mime", MimeTypeUtils.APPLICATION_JSON)
+				.setHeader("list", Arrays.asList("a", "b"))
+				.build();
+		byte[] embedded = converter.embedHeaders(new MessageValues(message), "foo", "int", "long", "uuid", "mime",
+				"list", "missing");
+		assertEquals(0xff, embedded[0] & 0xff);
+		assertEquals(0xff, embedded[1] & 0xff);
+		assertEquals(6, embedded[2]);
+		assertEquals("\u0003foo\u0001\u0003bar", new String(embedded, 3, 9));
+
+		MessageValues extracted = new EmbeddedHeadersMessageConverter().extractHeaders(
+				MessageBuilder.withPayload(embedded).build(), false);
+		assertEquals("Hello", new String((byte[]) extracted.getPayload()));
+		assertEquals("bar", extracted.get("foo"));
+		assertEquals(42, extracted.get("int"));
+		assertEquals(1234567890123L, extracted.get("long"));
+		assertEquals(uuid, extracted.get("uuid"));
+		assertEquals(MimeTypeUtils.APPLICATION_JSON, extracted.get("mime"));
+		assertEquals(Arrays.asList("a", "b"), extracted.get("list"));
+		assertFalse(extracted.containsKey("missing"));
+	}
+
+	@Test
+	public void testBinaryHeaderEmbeddingLongValue() throws Exception {
+		EmbeddedHeadersMessageConverter converter = new EmbeddedHeadersMessageConverter();
+		converter.setFormat(EmbeddedHeadersMessageConverter.Format.binary);
+		String value = new String(new char[300]).replace('\0', 'x');
+		Message<byte[]> message = MessageBuilder.withPayload("Hello".getBytes())
+				.setHeader("foo", value)
+				.build();
+		byte[] embedded = converter.embedHeaders(new MessageValues(message), "foo");
+		MessageValues extracted = converter.extractHeaders(MessageBuilder.withPayload(embedded).build(), false);
+		assertEquals("Hello", new String((byte[]) extracted.getPayload()));
+		assertEquals(value, extracted.get("foo"));
+	}
+
+	@Test
+	public void testTooManyHeaders() throws Exception {
+		MessageBuilder<byte[]> builder = MessageBuilder.withPayload("Hello".getBytes());
+		String[] headers = new String[255];
+		for (int i = 0; i < headers.length; i++) {
+			headers[i] = "h" + i;
+			builder.setHeader(headers[i], i);
+		}
+		MessageValues values = new MessageValues(builder.build());
+		for (EmbeddedHeadersMessageConverter.Format format : EmbeddedHeadersMessageConverter.Format.values()) {
+			EmbeddedHeadersMessageConverter converter = new EmbeddedHeadersMessageConverter();
+			converter.setFormat(format);
+			try {
+				converter.embedHeaders(values, headers);
+				Assert.fail("Exception expected for format " + format);
+			}
+			catch (IllegalArgumentException e) {
+				assertEquals("Cannot embed more than 254 headers", e.getMessage());
+			}
+			byte[] embedded = converter.embedHeaders(values, Arrays.copyOf(headers, 254));
+			MessageValues extracted = converter.extractHeaders(MessageBuilder.withPayload(embedded).build(), false);
+			assertEquals("Hello", new String((byte[]) extracted.getPayload()));
+			assertEquals(253, extracted.get("h253"));
+		}
+	}
+
+	@Test
+	public void testExtractHeadersPayloadView() throws Exception {
+		EmbeddedHeadersMessageConverter converter = new EmbeddedHeadersMessageConverter();
+		Message<byte[]> message = MessageBuilder.withPayload("Hello".getBytes())
+				.setHeader("foo", "bar")
+				.build();
+		byte[] embedded = converter.embedHeaders(new MessageValues(message), "foo");
+		MessageValues extracted = converter.extractHeaders(MessageBuilder.withPayload(embedded).build(), false,
+				false);
+		ByteBuffer payload = (ByteBuffer) extracted.getPayload();
+		assertSame(embedded, payload.array());
+		assertEquals("Hello", new String(payload.array(), payload.arrayOffset() + payload.position(),
+				payload.remaining()));
+		assertEquals("bar", extracted.get("foo"));
+	}
+
 	@Test
 	public void testCanDecodeOldFormat() throws Exception {
 		EmbeddedHeadersMessageConverter converter = new EmbeddedHeadersMessageConverter();
@@ -16,8 +16,11 @@
 
 package org.springframework.xd.module.core;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -36,6 +39,7 @@ import org.springframework.xd.module.options.ModuleOptionsMetadata;
 import org.springframework.xd.module.options.ModuleOptionsMetadataResolver;
 import org.springframework.xd.module.options.PrefixNarrowingModuleOptions;
 import org.springframework.xd.module.options.ModuleUtils;
+import org.springframework.xd.module.support.ModuleClassLoaderCache;
 
 /**
  * Determines the type of {@link Module} to create from the Module's metadata and creates a module instance. Also,
@@ -43,6 +47,7 @@ import org.springframework.xd.module.options.ModuleUtils;
  *
  * @author David Turanski
  * @author Ilayaperumal Gopinathan
+ * @author Eric Bottard
  */
 public class ModuleFactory implements BeanClassLoaderAware {
 
@@ -52,6 +57,8 @@ public class ModuleFactory implements BeanClassLoaderAware {
 
 	private volatile ClassLoader parentClassLoader = ModuleFactory.class.getClassLoader();
 
+	private volatile ModuleClassLoaderCache moduleClassLoaderCache = new ModuleClassLoaderCache();
+
 	/**
 	 * This key is used by the module to define the execution framework(spark streaming, reactor etc.,) to be used when
 	 * deploying it.
@@ -115,15 +122,47 @@ public class ModuleFactory implements BeanClassLoaderAware {
 			log.info("creating simple module " + moduleDescriptor);
 		}
 		SimpleModuleDefinition definition = (SimpleModuleDefinition) moduleDescriptor.getModuleDefinition();
-		ClassLoader moduleClassLoader = ModuleUtils.createModuleRuntimeClassLoader(definition, moduleOptions, this.parentClassLoader);
-
-		Class<? extends SimpleModule> moduleClass = determineModuleClass((SimpleModuleDefinition) moduleDescriptor.getModuleDefinition(),
-				moduleOptions);
-		Assert.notNull(moduleClass,
-				String.format("Required module artifacts are either missing or invalid. Unable to determine module type for module definition: '%s:%s'.",
-						moduleDescriptor.getType(), moduleDescriptor.getModuleName()));
-		return SimpleModuleCreator
-				.createModule(moduleDescriptor, deploymentProperties, moduleClassLoader, moduleOptions, moduleClass);
+		ClassLoader moduleClassLoader = createModuleClassLoader(definition, moduleOptions);
+		Module module = null;
+		try {
+			Class<? extends SimpleModule> moduleClass = determineModuleClass((SimpleModuleDefinition) moduleDescriptor.getModuleDefinition(),
+					moduleOptions);
+			Assert.notNull(moduleClass,
+					String.format("Required module artifacts are either missing or invalid. Unable to determine module type for module definition: '%s:%s'.",
+							moduleDescriptor.getType(), moduleDescriptor.getModuleName()));
+			module = SimpleModuleCreator
+					.createModule(moduleDescriptor, deploymentProperties, moduleClassLoader, moduleOptions, moduleClass);
+			return module;
+		}
+		finally {
+			if (module == null) {
+				// the module never took ownership of the ClassLoader, release our reference to it
+				closeQuietly(moduleClassLoader);
+			}
+		}
+	}
+
+	private static void closeQuietly(ClassLoader classLoader) {
+		if (classLoader instanceof Closeable) {
+			try {
+				((Closeable) classLoader).close();
+			}
+			catch (IOException e) {
+				log.debug("Error closing module ClassLoader", e);
+			}
+		}
+	}
+
+	/**
+	 * Return the ClassLoader the given module should run with, shared with other instances of the same module if
+	 * {@link #setShareModuleClassLoaders(boolean) enabled}.
+	 */
+	private ClassLoader createModuleClassLoader(SimpleModuleDefinition definition, ModuleOptions moduleOptions) {
+		if (moduleClassLoaderCache == null) {
+			return ModuleUtils.createModuleRuntimeClassLoader(definition, moduleOptions, this.parentClassLoader);
+		}
+		URL[] classpath = ModuleUtils.moduleRuntimeClasspath(definition, moduleOptions);
+		return moduleClassLoaderCache.acquire(ModuleUtils.moduleHash(definition), classpath, this.parentClassLoader);
 	}
 
 	private Class<? extends SimpleModule> determineModuleClass(SimpleModuleDefinition moduleDefinition,
@@ -196,6 +235,15 @@ public class ModuleFactory implements BeanClassLoaderAware {
 		this.parentClassLoader = classLoader;
 	}
 
+	/**
+	 * Set whether module instances with an identical classpath (same module archive and extra libraries) should share
+	 * a single ClassLoader, rather than each loading the module classes anew. Note that this implies that such
+	 * instances also share static state. Defaults to {@code true}.
+	 */
+	public void setShareModuleClassLoaders(boolean shareModuleClassLoaders) {
+		this.moduleClassLoaderCache = shareModuleClassLoaders ? new ModuleClassLoaderCache() : null;
+	}
+
 	static class SimpleModuleCreator {
 
 		public static <T extends SimpleModule> T createModule(ModuleDescriptor descriptor,
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.module.options;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.StringUtils;
+import org.springframework.xd.module.ModuleDefinition;
+import org.springframework.xd.module.ModuleType;
+import org.springframework.xd.module.SimpleModuleDefinition;
+
+/**
+ * A decorator around another {@link ModuleOptionsMetadataResolver} that remembers the metadata of simple modules, as
+ * resolving it may involve loading properties from the module archive, creating a module classloader and introspecting
+ * an options POJO.
+ *
+ * <p>
+ * Entries are keyed by module type and name, and are only reused if the module location and version are unchanged.
+ * The version of a module is the content of the {@code .md5} hash file sitting next to its archive or, for modules
+ * without one (such as exploded modules), the last modification time of its files. Hence a re-uploaded or edited module
+ * is picked up even if this cache is not told about it. Modules that have no hash file and don't live on the file
+ * system are not cached. Composed modules are not cached, but their children are resolved
+ * through this cache if it is the composite resolver of the delegate.
+ * </p>
+ *
+ * <p>
+ * The delegate must return metadata that can be shared, <i>i.e.</i> that supports being interpolated several times,
+ * possibly concurrently.
+ * </p>
+ *
+ * @author Eric Bottard
+ */
+@ManagedResource
+public class CachingModuleOptionsMetadataResolver implements ModuleOptionsMetadataResolver {
+
+	private static final Logger logger = LoggerFactory.getLogger(CachingModuleOptionsMetadataResolver.class);
+
+	private static final ResourceLoader resourceLoader = new DefaultResourceLoader();
+
+	private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private ModuleOptionsMetadataResolver delegate;
+
+	public CachingModuleOptionsMetadataResolver() {
+	}
+
+	public CachingModuleOptionsMetadataResolver(ModuleOptionsMetadataResolver delegate) {
+		this.delegate = delegate;
+	}
+
+	public void setDelegate(ModuleOptionsMetadataResolver delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public ModuleOptionsMetadata resolve(ModuleDefinition moduleDefinition) {
+		if (moduleDefinition.isComposed()) {
+			return delegate.resolve(moduleDefinition);
+		}
+		SimpleModuleDefinition definition = (SimpleModuleDefinition) moduleDefinition;
+		String key = key(definition.getName(), definition.getType());
+		String version = version(definition);
+		Entry entry = cache.get(key);
+		if (entry != null && entry.matches(definition.getLocation(), version)) {
+			hitCount.incrementAndGet();
+			return entry.metadata;
+		}
+		missCount.incrementAndGet();
+		ModuleOptionsMetadata metadata = delegate.resolve(definition);
+		if (metadata != null && version != null) {
+			cache.put(key, new Entry(definition.getLocation(), version, metadata));
+		}
+		else {
+			cache.remove(key);
+		}
+		return metadata;
+	}
+
+	/**
+	 * Return a string that changes whenever the given module does, or null if there is no cheap way to tell.
+	 */
+	private String version(SimpleModuleDefinition definition) {
+		String hash = ModuleUtils.moduleHash(definition);
+		if (hash != null) {
+			return hash;
+		}
+		File file;
+		try {
+			file = resourceLoader.getResource(StringUtils.trimTrailingCharacter(definition.getLocation(), '/')).getFile();
+		}
+		catch (IOException e) {
+			return null;
+		}
+		if (!file.exists()) {
+			return null;
+		}
+		long[] lastModifiedAndCount = new long[2];
+		lastModified(file, lastModifiedAndCount);
+		return lastModifiedAndCount[0] + "/" + lastModifiedAndCount[1] + "/" + file.length();
+	}
+
+	/**
+	 * Accumulate the most recent modification time of the given file or directory tree, and its number of files.
+	 */
+	private void lastModified(File file, long[] lastModifiedAndCount) {
+		lastModifiedAndCount[0] = Math.max(lastModifiedAndCount[0], file.lastModified());
+		lastModifiedAndCount[1]++;
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				lastModified(child, lastModifiedAndCount);
+			}
+		}
+	}
+
+	/**
+	 * Forget about the metadata of the given module, typically because it has been uploaded or deleted.
+	 */
+	public void evict(String name, ModuleType type) {
+		if (cache.remove(key(name, type)) != null) {
+			logger.debug("Evicted options metadata of module {}:{}", type, name);
+		}
+	}
+
+	/**
+	 * Forget about the metadata of all modules.
+	 */
+	@ManagedOperation
+	public void clear() {
+		cache.clear();
+	}
+
+	@ManagedMetric
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	@ManagedMetric
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	@ManagedAttribute
+	public int getSize() {
+		return cache.size();
+	}
+
+	private String key(String name, ModuleType type) {
+		return type + ":" + name;
+	}
+
+	private static class Entry {
+
+		private final String location;
+
+		private final String version;
+
+		private final ModuleOptionsMetadata metadata;
+
+		private Entry(String location, String version, ModuleOptionsMetadata metadata) {
+			this.location = location;
+			this.version = version;
+			this.metadata = metadata;
+		}
+
+		private boolean matches(String location, String version) {
+			return this.location.equals(location) && this.version.equals(version);
+		}
+
+	}
+
+}
@@ -38,6 +38,7 @@ import org.springframework.core.io.UrlResource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.core.io.support.ResourcePatternResolver;
 import org.springframework.util.Assert;
+import org.springframework.util.FileCopyUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.xd.module.SimpleModuleDefinition;
 import org.springframework.xd.module.options.ModuleOptions;
@@ -57,6 +58,11 @@ public class ModuleUtils {
 
 	private static final String MODULE_CLASSPATH_KEY = "module.classpath";
 
+	/**
+	 * The extension of the file holding the hash of an uploaded module archive.
+	 */
+	private static final String HASH_EXTENSION = ".md5";
+
 	/**
 	 * Used to resolve the module 'location'. Always a file: location at the time of writing.
 	 */
@@ -68,6 +74,15 @@ public class ModuleUtils {
 	 * path (including those starting with a protocol) will be dealt with by a classical resource pattern resolver.
 	 */
 	public static ClassLoader createModuleRuntimeClassLoader(SimpleModuleDefinition definition, ModuleOptions moduleOptions, ClassLoader parent) {
+		return new ParentLastURLClassLoader(moduleRuntimeClasspath(definition, moduleOptions), parent);
+	}
+
+	/**
+	 * Return the classpath of a ClassLoader suitable for running a module, that is the module archive itself and its
+	 * extra libraries, as derived from module options.
+	 * @see #createModuleRuntimeClassLoader(SimpleModuleDefinition, ModuleOptions, ClassLoader)
+	 */
+	public static URL[] moduleRuntimeClasspath(SimpleModuleDefinition definition, ModuleOptions moduleOptions) {
 		Resource moduleLocation = simpleResourceResolver.getResource(definition.getLocation());
 
 		Properties moduleProperties = loadModuleProperties(definition);
@@ -86,7 +101,7 @@ public class ModuleUtils {
 			}
 		}
 
-		return createModuleClassLoader(moduleLocation, parent, extraLibs);
+		return moduleClasspath(moduleLocation, extraLibs);
 	}
 
 	/**
@@ -94,12 +109,11 @@ public class ModuleUtils {
 	 * Only the default library paths are used.
 	 */
 	public static ClassLoader createModuleDiscoveryClassLoader(Resource moduleLocation, ClassLoader parent) {
-		return createModuleClassLoader(moduleLocation, parent, DEFAULT_EXTRA_LIBS);
+		return new ParentLastURLClassLoader(moduleClasspath(moduleLocation, DEFAULT_EXTRA_LIBS), parent);
 	}
 
 
-	private static ClassLoader createModuleClassLoader(Resource moduleLocation, ClassLoader parent,
-			Iterable<String> patterns) {
+	private static URL[] moduleClasspath(Resource moduleLocation, Iterable<String> patterns) {
 		try {
 			File moduleFile = moduleLocation.getFile();
 			Archive moduleArchive = moduleFile.isDirectory() ? new ExplodedArchive(moduleFile) : new JarFileArchive
@@ -117,13 +131,32 @@ public class ModuleUtils {
 
 			// Add the module archive itself
 			urls.add(moduleArchive.getUrl());
-			return new ParentLastURLClassLoader(urls.toArray(new URL[urls.size()]), parent);
+			return urls.toArray(new URL[urls.size()]);
 		}
 		catch (IOException e) {
 			throw new RuntimeException("Exception creating module classloader for " + moduleLocation, e);
 		}
 	}
 
+	/**
+	 * Return the content of the {@code .md5} hash file sitting next to the module archive, or {@code null} if there is
+	 * none (as is the case for exploded and out of the box modules).
+	 */
+	public static String moduleHash(SimpleModuleDefinition definition) {
+		String location = StringUtils.trimTrailingCharacter(definition.getLocation(), '/');
+		Resource resource = simpleResourceResolver.getResource(location + HASH_EXTENSION);
+		if (!resource.isReadable()) {
+			return null;
+		}
+		try (InputStream inputStream = resource.getInputStream()) {
+			return new String(FileCopyUtils.copyToByteArray(inputStream), "UTF-8");
+		}
+		catch (IOException e) {
+			throw new RuntimeException(String.format("Unable to read module hash for %s:%s",
+					definition.getName(), definition.getType()), e);
+		}
+	}
+
 	/**
 	 * Return a resource that can be used to load the module '.properties' file (containing <i>e.g.</i> information
 	 * about module options, or null if no such file exists.
@@ -61,9 +61,9 @@ import org.springframework.xd.module.options.spi.ValidationGroupsProvider;
  */
 public class PojoModuleOptionsMetadata implements ModuleOptionsMetadata {
 
-	private BeanWrapperImpl beanWrapper;
+	private final BeanWrapperImpl beanWrapper;
 
-	private List<ModuleOption> options;
+	private final List<ModuleOption> options;
 
 	/**
 	 * Used to perform conversion from String representation of options to actual arguments of setters.
@@ -136,20 +136,22 @@ public class PojoModuleOptionsMetadata implements ModuleOptionsMetadata {
 
 	@Override
 	public ModuleOptions interpolate(Map<String, String> raw) throws BindException {
-		bindAndValidate(raw);
+		// Bind to a fresh instance, so that this metadata can be shared and interpolated concurrently
+		final BeanWrapper instance = new BeanWrapperImpl(beanWrapper.getWrappedClass());
+		bindAndValidate(instance, raw);
 
 		return new ModuleOptions() {
 
 			@Override
 			public EnumerablePropertySource<?> asPropertySource() {
-				return new EnumerablePropertySource<BeanWrapper>(this.toString(), beanWrapper) {
+				return new EnumerablePropertySource<BeanWrapper>(this.toString(), instance) {
 
 					@Override
 					public String[] getPropertyNames() {
 						List<String> result = new ArrayList<String>();
-						for (PropertyDescriptor pd : beanWrapper.getPropertyDescriptors()) {
+						for (PropertyDescriptor pd : instance.getPropertyDescriptors()) {
 							String name = pd.getName();
-							if (beanWrapper.isReadableProperty(name) && !"class".equals(name)) {
+							if (instance.isReadableProperty(name) && !"class".equals(name)) {
 								result.add(name);
 							}
 						}
@@ -159,7 +161,7 @@ public class PojoModuleOptionsMetadata implements ModuleOptionsMetadata {
 					@Override
 					public Object getProperty(String name) {
 						if (Arrays.asList(getPropertyNames()).contains(name)) {
-							return beanWrapper.getPropertyValue(name);
+							return instance.getPropertyValue(name);
 						}
 						else {
 							return null;
@@ -170,8 +172,8 @@ public class PojoModuleOptionsMetadata implements ModuleOptionsMetadata {
 
 			@Override
 			public String[] profilesToActivate() {
-				if (beanWrapper.getWrappedInstance() instanceof ProfileNamesProvider) {
-					return ((ProfileNamesProvider) beanWrapper.getWrappedInstance()).profilesToActivate();
+				if (instance.getWrappedInstance() instanceof ProfileNamesProvider) {
+					return ((ProfileNamesProvider) instance.getWrappedInstance()).profilesToActivate();
 				}
 				else {
 					return super.profilesToActivate();
@@ -181,8 +183,8 @@ public class PojoModuleOptionsMetadata implements ModuleOptionsMetadata {
 	}
 
 	@SuppressWarnings("unchecked")
-	private void bindAndValidate(Map<String, String> raw) throws BindException {
-		DataBinder dataBinder = new DataBinder(beanWrapper.getWrappedInstance());
+	private void bindAndValidate(BeanWrapper instance, Map<String, String> raw) throws BindException {
+		DataBinder dataBinder = new DataBinder(instance.getWrappedInstance());
 		dataBinder.setIgnoreUnknownFields(false);
 		dataBinder.setConversionService(conversionService);
 		MutablePropertySources mps = new MutablePropertySources();
@@ -198,7 +200,7 @@ public class PojoModuleOptionsMetadata implements ModuleOptionsMetadata {
 		validator.afterPropertiesSet();
 		dataBinder.setValidator(validator);
 
-		Class<?>[] groups = determineGroupsToUse(beanWrapper.getWrappedInstance());
+		Class<?>[] groups = determineGroupsToUse(instance.getWrappedInstance());
 		dataBinder.validate((Object[]) groups);
 
 		if (dataBinder.getBindingResult().hasErrors()) {
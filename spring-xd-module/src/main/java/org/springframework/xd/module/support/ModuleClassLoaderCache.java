@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.module.support;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Hands out module ClassLoaders that are shared by all module instances with an identical classpath, so that deploying
+ * several instances of a module on the same container only loads (and JITs) its classes once.
+ *
+ * <p>
+ * ClassLoaders are keyed by the hash of the module archive (see {@code .md5} files), the URLs of their classpath
+ * (which reflect the effective set of extra libraries) and their parent. They are reference counted: each
+ * {@link #acquire(String, URL[], ClassLoader)} returns a distinct handle, that delegates to the shared ClassLoader and
+ * must be closed (see {@link java.io.Closeable#close()}) once no longer used, typically when the module is destroyed.
+ * Closing a handle releases its reference once, however many times it is closed, and the shared ClassLoader is only
+ * actually closed (and forgotten) when the last module using it is gone.
+ * </p>
+ *
+ * @author Eric Bottard
+ */
+public class ModuleClassLoaderCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(ModuleClassLoaderCache.class);
+
+	private final Map<Key, SharedClassLoader> classLoaders = new HashMap<Key, SharedClassLoader>();
+
+	/**
+	 * Return a ClassLoader for the given classpath, creating it if no module currently uses such a ClassLoader.
+	 *
+	 * @param moduleHash the hash of the module archive, if any
+	 * @param classpath the module archive and its extra libraries
+	 * @param parent the parent ClassLoader
+	 * @return a handle on the shared ClassLoader, that must be closed once no longer used
+	 */
+	public synchronized ClassLoader acquire(String moduleHash, URL[] classpath, ClassLoader parent) {
+		Key key = new Key(moduleHash, classpath, parent);
+		SharedClassLoader classLoader = classLoaders.get(key);
+		if (classLoader == null) {
+			classLoader = new SharedClassLoader(key, classpath, parent);
+			classLoaders.put(key, classLoader);
+		}
+		classLoader.references++;
+		logger.debug("Module ClassLoader for {} now used by {} module(s)", key.urls, classLoader.references);
+		return new ClassLoaderHandle(this, classLoader);
+	}
+
+	/**
+	 * Return the number of ClassLoaders currently in use.
+	 */
+	public synchronized int size() {
+		return classLoaders.size();
+	}
+
+	/**
+	 * Decrement the reference count of a ClassLoader.
+	 *
+	 * @return whether this was the last reference, in which case the ClassLoader should be closed
+	 */
+	private synchronized boolean release(SharedClassLoader classLoader) {
+		if (--classLoader.references > 0) {
+			return false;
+		}
+		classLoaders.remove(classLoader.key);
+		return true;
+	}
+
+	private static class SharedClassLoader extends ParentLastURLClassLoader {
+
+		static {
+			ClassLoader.registerAsParallelCapable();
+		}
+
+		private final Key key;
+
+		/**
+		 * Guarded by the cache monitor.
+		 */
+		private int references;
+
+		private SharedClassLoader(Key key, URL[] classpath, ClassLoader parent) {
+			super(classpath, parent);
+			this.key = key;
+		}
+
+	}
+
+	/**
+	 * What a module gets: loads everything through the shared ClassLoader, but has the same URLs and parent, and
+	 * releases its reference at most once.
+	 */
+	private static class ClassLoaderHandle extends URLClassLoader {
+
+		static {
+			ClassLoader.registerAsParallelCapable();
+		}
+
+		private final ModuleClassLoaderCache cache;
+
+		private final SharedClassLoader shared;
+
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		private ClassLoaderHandle(ModuleClassLoaderCache cache, SharedClassLoader shared) {
+			super(new URL[0], shared.getParent());
+			this.cache = cache;
+			this.shared = shared;
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			return shared.loadClass(name);
+		}
+
+		@Override
+		public URL getResource(String name) {
+			return shared.getResource(name);
+		}
+
+		@Override
+		public Enumeration<URL> getResources(String name) throws IOException {
+			return shared.getResources(name);
+		}
+
+		@Override
+		public URL[] getURLs() {
+			return shared.getURLs();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed.compareAndSet(false, true) && cache.release(shared)) {
+				shared.close();
+			}
+		}
+
+	}
+
+	private static class Key {
+
+		private final String moduleHash;
+
+		/**
+		 * External forms rather than URLs, as {@link URL#equals(Object)} may resolve host names.
+		 */
+		private final List<String> urls;
+
+		private final ClassLoader parent;
+
+		private Key(String moduleHash, URL[] classpath, ClassLoader parent) {
+			this.moduleHash = moduleHash;
+			this.urls = new ArrayList<String>(classpath.length);
+			for (URL url : classpath) {
+				this.urls.add(url.toExternalForm());
+			}
+			this.parent = parent;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return ObjectUtils.nullSafeEquals(moduleHash, other.moduleHash) && urls.equals(other.urls)
+					&& parent == other.parent;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * ObjectUtils.nullSafeHashCode(moduleHash) + urls.hashCode())
+					+ System.identityHashCode(parent);
+		}
+
+	}
+
+}
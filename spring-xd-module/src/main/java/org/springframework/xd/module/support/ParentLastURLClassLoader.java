@@ -33,11 +33,19 @@ import org.springframework.core.io.support.PropertiesLoaderUtils;
 
 /**
  * Extension for {@link URLClassLoader} that uses a parent-last (or child first) delegation.
+ * <p>
+ * Registered as parallel capable, so that concurrent loading of different classes (as happens when several modules
+ * sharing this loader start at the same time) does not contend on a single lock.
  * 
  * @author Costin Leau
+ * @author Eric Bottard
  */
 public class ParentLastURLClassLoader extends URLClassLoader {
 
+	static {
+		ClassLoader.registerAsParallelCapable();
+	}
+
 	private final ClassLoader system;
 
 	private static final String[] SPECIAL_CASES = new String[] { "META-INF/spring.handlers", "META-INF/spring.schemas" };
@@ -65,33 +73,35 @@ public class ParentLastURLClassLoader extends URLClassLoader {
 	}
 
 	@Override
-	protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
-		// First, check if the class has already been loaded
-		Class<?> c = findLoadedClass(name);
-		if (c == null) {
-			// always check system class loader (for jvm classes & co)
-			if (system != null) {
-				try {
-					c = system.loadClass(name);
-				}
-				catch (ClassNotFoundException ignored) {
-				}
-			}
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		synchronized (getClassLoadingLock(name)) {
+			// First, check if the class has already been loaded
+			Class<?> c = findLoadedClass(name);
 			if (c == null) {
-				try {
-					// load local
-					c = findClass(name);
+				// always check system class loader (for jvm classes & co)
+				if (system != null) {
+					try {
+						c = system.loadClass(name);
+					}
+					catch (ClassNotFoundException ignored) {
+					}
 				}
-				catch (ClassNotFoundException e) {
-					// fall back to parent
-					c = super.loadClass(name, resolve);
+				if (c == null) {
+					try {
+						// load local
+						c = findClass(name);
+					}
+					catch (ClassNotFoundException e) {
+						// fall back to parent
+						c = super.loadClass(name, resolve);
+					}
 				}
 			}
+			if (resolve) {
+				resolveClass(c);
+			}
+			return c;
 		}
-		if (resolve) {
-			resolveClass(c);
-		}
-		return c;
 	}
 
 	@Override
@@ -22,15 +22,18 @@ import static org.junit.Assert.fail;
 import org.junit.Test;
 
 import org.springframework.messaging.MessageChannel;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.xd.module.ModuleDefinition;
 import org.springframework.xd.module.ModuleDefinitions;
 import org.springframework.xd.module.ModuleDeploymentProperties;
 import org.springframework.xd.module.ModuleDescriptor;
 import org.springframework.xd.module.ModuleType;
 import org.springframework.xd.module.options.DefaultModuleOptionsMetadataResolver;
+import org.springframework.xd.module.support.ModuleClassLoaderCache;
 
 /**
  * @author David Turanski
+ * @author Eric Bottard
  */
 public class ModuleFactoryTests {
 	private ModuleFactory moduleFactory = new ModuleFactory(new DefaultModuleOptionsMetadataResolver());
@@ -96,6 +99,19 @@ public class ModuleFactoryTests {
 	}
 
 
+	@Test
+	public void failedCreationReleasesClassLoader() {
+		ModuleClassLoaderCache cache = (ModuleClassLoaderCache) ReflectionTestUtils.getField(moduleFactory,
+				"moduleClassLoaderCache");
+		try {
+			createResourceConfiguredModule("missing", ModuleType.processor);
+			fail("should throw exception");
+		}
+		catch (IllegalArgumentException e) {
+			assertEquals(0, cache.size());
+		}
+	}
+
 	@Test
 	public void createGroovyModule() {
 		createResourceConfiguredModule("groovyModule", ModuleType.processor);
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.module.options;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.springframework.xd.module.ModuleType.source;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.util.FileCopyUtils;
+import org.springframework.xd.module.ModuleDefinition;
+import org.springframework.xd.module.ModuleDefinitions;
+
+/**
+ * Tests for {@link CachingModuleOptionsMetadataResolver}.
+ *
+ * @author Eric Bottard
+ */
+public class CachingModuleOptionsMetadataResolverTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final CachingModuleOptionsMetadataResolver resolver = new CachingModuleOptionsMetadataResolver(
+			new DefaultModuleOptionsMetadataResolver());
+
+	@Test
+	public void testMetadataIsReused() {
+		String resource = "classpath:/DefaultModuleOptionsMetadataResolverTests-modules/source/module1/";
+		ModuleDefinition definition = ModuleDefinitions.simple("module1", source, resource);
+		ModuleOptionsMetadata first = resolver.resolve(definition);
+		assertSame(first, resolver.resolve(definition));
+		assertEquals(1, resolver.getHitCount());
+		assertEquals(1, resolver.getMissCount());
+
+		resolver.evict("module1", source);
+		assertNotSame(first, resolver.resolve(definition));
+		assertEquals(2, resolver.getMissCount());
+	}
+
+	@Test
+	public void testChangedHashIsAMiss() throws Exception {
+		File archive = folder.newFile("module1.jar");
+		File hash = folder.newFile("module1.jar.md5");
+		FileCopyUtils.copy("CAFEBABE".getBytes(), hash);
+		CachingModuleOptionsMetadataResolver resolver = new CachingModuleOptionsMetadataResolver(
+				new ModuleOptionsMetadataResolver() {
+
+					@Override
+					public ModuleOptionsMetadata resolve(ModuleDefinition moduleDefinition) {
+						return new PassthruModuleOptionsMetadata();
+					}
+
+				});
+		ModuleDefinition definition = ModuleDefinitions.simple("module1", source, archive.toURI().toString());
+		ModuleOptionsMetadata first = resolver.resolve(definition);
+		assertSame(first, resolver.resolve(definition));
+
+		FileCopyUtils.copy("DEADBEEF".getBytes(), hash);
+		assertNotSame(first, resolver.resolve(definition));
+		assertEquals(2, resolver.getMissCount());
+		assertEquals(1, resolver.getSize());
+	}
+
+	@Test
+	public void testEditedExplodedModuleIsAMiss() throws Exception {
+		File module = folder.newFolder("module1");
+		File config = new File(module, "config");
+		config.mkdir();
+		File properties = new File(config, "module1.properties");
+		FileCopyUtils.copy("options.foo.description = foo".getBytes(), properties);
+		CachingModuleOptionsMetadataResolver resolver = new CachingModuleOptionsMetadataResolver(
+				new ModuleOptionsMetadataResolver() {
+
+					@Override
+					public ModuleOptionsMetadata resolve(ModuleDefinition moduleDefinition) {
+						return new PassthruModuleOptionsMetadata();
+					}
+
+				});
+		ModuleDefinition definition = ModuleDefinitions.simple("module1", source, module.toURI().toString());
+		ModuleOptionsMetadata first = resolver.resolve(definition);
+		assertSame(first, resolver.resolve(definition));
+
+		// no hash file: edits are detected through modification times
+		FileCopyUtils.copy("options.bar.description = bar".getBytes(), properties);
+		properties.setLastModified(properties.lastModified() + 2000L);
+		assertNotSame(first, resolver.resolve(definition));
+		assertEquals(2, resolver.getMissCount());
+	}
+
+}
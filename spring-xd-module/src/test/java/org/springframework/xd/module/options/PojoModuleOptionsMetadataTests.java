@@ -139,6 +139,17 @@ public class PojoModuleOptionsMetadataTests {
 
 	}
 
+	@Test
+	public void testInterpolationsAreIndependent() throws BindException {
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("bar", "1729");
+		ModuleOptions first = metadata.interpolate(values);
+
+		ModuleOptions second = metadata.interpolate(new HashMap<String, String>());
+		assertThat(second.profilesToActivate().length, equalTo(0));
+		assertThat(first.profilesToActivate(), arrayContaining("high-profile"));
+	}
+
 	@Test
 	public void testGroupValidation() throws BindException {
 		Map<String, String> values = new HashMap<String, String>();
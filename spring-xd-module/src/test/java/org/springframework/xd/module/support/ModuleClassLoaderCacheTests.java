@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.module.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.Closeable;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.Test;
+
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Tests for {@link ModuleClassLoaderCache}.
+ *
+ * @author Eric Bottard
+ */
+public class ModuleClassLoaderCacheTests {
+
+	private final ModuleClassLoaderCache cache = new ModuleClassLoaderCache();
+
+	private final ClassLoader parent = getClass().getClassLoader();
+
+	@Test
+	public void testIdenticalClasspathsShareClassLoader() throws Exception {
+		URL[] classpath = new URL[] { new URL("file:/tmp/foo.jar"), new URL("file:/tmp/bar.jar") };
+		ClassLoader first = cache.acquire("CAFEBABE", classpath, parent);
+		ClassLoader second = cache.acquire("CAFEBABE", classpath.clone(), parent);
+		assertNotSame(first, second);
+		assertSame(shared(first), shared(second));
+		assertEquals(1, cache.size());
+		// handles look like the module ClassLoader they stand for
+		assertSame(parent, first.getParent());
+		assertEquals(2, ((URLClassLoader) first).getURLs().length);
+
+		assertNotSame(shared(first), shared(cache.acquire("DEADBEEF", classpath, parent)));
+		assertNotSame(shared(first),
+				shared(cache.acquire("CAFEBABE", new URL[] { new URL("file:/tmp/foo.jar") }, parent)));
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void testClassLoaderReleasedWithLastReference() throws Exception {
+		URL[] classpath = new URL[] { new URL("file:/tmp/foo.jar") };
+		ClassLoader first = cache.acquire(null, classpath, parent);
+		ClassLoader second = cache.acquire(null, classpath, parent);
+
+		((Closeable) first).close();
+		assertEquals(1, cache.size());
+		// Extra close of the same handle does not release the other one
+		((Closeable) first).close();
+		assertEquals(1, cache.size());
+		((Closeable) second).close();
+		assertEquals(0, cache.size());
+
+		assertNotSame(shared(first), shared(cache.acquire(null, classpath, parent)));
+	}
+
+	@Test
+	public void testHandlesLoadThroughSharedClassLoader() throws Exception {
+		URL[] classpath = new URL[] { new URL("file:/tmp/foo.jar") };
+		ClassLoader first = cache.acquire(null, classpath, parent);
+		ClassLoader second = cache.acquire(null, classpath, parent);
+		Class<?> clazz = first.loadClass(ModuleClassLoaderCacheTests.class.getName());
+		assertSame(clazz, second.loadClass(ModuleClassLoaderCacheTests.class.getName()));
+	}
+
+	private Object shared(ClassLoader handle) {
+		return ReflectionTestUtils.getField(handle, "shared");
+	}
+
+}
@@ -41,6 +41,7 @@ import org.springframework.util.ClassUtils;
  * @author Mark Pollack
  * @author David Turanski
  * @author Michael Minella
+ * @author Eric Bottard
  */
 public class DefaultTuple implements Tuple {
 
@@ -61,7 +62,7 @@ public class DefaultTuple implements Tuple {
 			throw new IllegalArgumentException("Field names must be same length as values: names=" + names
 					+ ", values=" + values);
 		}
-		this.names = new ArrayList<>(names);
+		this.names = FieldNameList.of(names);
 		this.values = new ArrayList<>(values); // shallow copy
 		this.configurableConversionService = configurableConversionService;
 	}
@@ -82,7 +83,7 @@ public class DefaultTuple implements Tuple {
 	 */
 	@Override
 	public List<String> getFieldNames() {
-		return Collections.unmodifiableList(names);
+		return names;
 	}
 
 	/**
@@ -596,7 +597,7 @@ public class DefaultTuple implements Tuple {
 	}
 
 	/**
-	 * Find the index in the names collection for the given name.
+	 * Find the index in the names collection for the given name, in constant time.
 	 * Returns -1 if not found.
 	 */
 	protected int indexOf(String name) {
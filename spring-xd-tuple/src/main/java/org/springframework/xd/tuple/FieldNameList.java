@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.tuple;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable list of tuple field names that finds the index of a name in constant time. Instances are interned per
+ * tuple "shape" (see {@link #of(List)}) and shared by all the tuples having that shape, so that the name to index
+ * map is only computed once.
+ *
+ * @author Eric Bottard
+ */
+public final class FieldNameList extends AbstractList<String> implements RandomAccess {
+
+	/**
+	 * Past this many distinct shapes (which would denote field names computed from data), instances are no longer
+	 * interned.
+	 */
+	static final int MAX_INTERNED = 1024;
+
+	private static final ConcurrentMap<List<String>, FieldNameList> interned = new ConcurrentHashMap<List<String>, FieldNameList>();
+
+	private final String[] names;
+
+	private final Map<String, Integer> indexes;
+
+	private final int hashCode;
+
+	private FieldNameList(List<String> names) {
+		this.names = names.toArray(new String[names.size()]);
+		Map<String, Integer> indexes = new HashMap<String, Integer>(this.names.length * 2);
+		for (int i = this.names.length - 1; i >= 0; i--) {
+			// iterate backwards so that the first occurrence of a duplicate name wins, as with List.indexOf()
+			indexes.put(this.names[i], i);
+		}
+		this.indexes = Collections.unmodifiableMap(indexes);
+		this.hashCode = super.hashCode();
+	}
+
+	/**
+	 * Return the shared list having the given names. This is a constant time operation if {@code names} is itself a
+	 * {@link FieldNameList}.
+	 */
+	public static FieldNameList of(List<String> names) {
+		if (names instanceof FieldNameList) {
+			return (FieldNameList) names;
+		}
+		FieldNameList result = interned.get(names);
+		if (result == null) {
+			result = new FieldNameList(names);
+			if (interned.size() < MAX_INTERNED) {
+				FieldNameList existing = interned.putIfAbsent(result, result);
+				if (existing != null) {
+					result = existing;
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public String get(int index) {
+		return names[index];
+	}
+
+	@Override
+	public int size() {
+		return names.length;
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		Integer index = indexes.get(o);
+		return index == null ? -1 : index;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return indexes.containsKey(o);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof FieldNameList && ((FieldNameList) o).hashCode != hashCode) {
+			return false;
+		}
+		return super.equals(o);
+	}
+
+}
@@ -16,26 +16,90 @@
 package org.springframework.xd.tuple.serializer.kryo;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
-import java.util.UUID;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 
+import org.springframework.xd.tuple.DefaultTuple;
 import org.springframework.xd.tuple.Tuple;
 import org.springframework.xd.tuple.TupleBuilder;
 
 /**
  * Deserializes Tuples by writing the field names and then the values as class/object pairs
  * followed by the tuple Id and timestamp.
+ * <p>
+ * When schema encoding is enabled, tuples are instead written using a schema encoding: a marker byte,
+ * the id of the tuple shape and its pre-encoded field names (both computed once per shape), followed by the values,
+ * where common types are written as a one byte tag and their raw value rather than as class/object pairs. Both
+ * encodings can always be read.
  *
  * @author David Turanski
+ * @author Eric Bottard
  */
 public class DefaultTupleSerializer extends Serializer<Tuple> {
+
+	/**
+	 * Marks the schema encoding. The legacy encoding starts with the reference flag of the (never null) field names
+	 * list, so it can't start with {@link Kryo#NULL}.
+	 */
+	private static final byte SCHEMA_FORMAT = Kryo.NULL;
+
+	private static final byte NULL = 0;
+
+	private static final byte STRING = 1;
+
+	private static final byte INTEGER = 2;
+
+	private static final byte LONG = 3;
+
+	private static final byte DOUBLE = 4;
+
+	private static final byte FLOAT = 5;
+
+	private static final byte TRUE = 6;
+
+	private static final byte FALSE = 7;
+
+	private static final byte SHORT = 8;
+
+	private static final byte BYTE = 9;
+
+	private static final byte CHARACTER = 10;
+
+	private static final byte DATE = 11;
+
+	private static final byte TUPLE = 12;
+
+	private static final byte OBJECT = 13;
+
+	private final TupleSchemaCache schemaCache;
+
+	private final boolean schemaEncoding;
+
+	public DefaultTupleSerializer() {
+		this(new TupleSchemaCache(), false);
+	}
+
+	/**
+	 * Create a serializer interning tuple shapes in the given cache, which may be shared.
+	 * @param schemaCache the cache of tuple shapes
+	 * @param schemaEncoding whether to write the schema encoding rather than the legacy one
+	 */
+	DefaultTupleSerializer(TupleSchemaCache schemaCache, boolean schemaEncoding) {
+		this.schemaCache = schemaCache;
+		this.schemaEncoding = schemaEncoding;
+	}
+
 	@Override
 	public void write(Kryo kryo, Output output, Tuple tuple) {
+		if (schemaEncoding) {
+			writeWithSchema(kryo, output, tuple);
+			return;
+		}
 		kryo.writeObject(output, tuple.getFieldNames());
 		for (Object val: tuple.getValues()) {
 			kryo.writeClassAndObject(output, val);
@@ -45,6 +109,11 @@ public class DefaultTupleSerializer extends Serializer<Tuple> {
 	@Override
 	@SuppressWarnings("unchecked")
 	public Tuple read(Kryo kryo, Input input, Class<Tuple> type) {
+		if (input.readByte() == SCHEMA_FORMAT) {
+			return readWithSchema(kryo, input);
+		}
+		// Not a marker: the byte is still in the buffer, step back
+		input.setPosition(input.position() - 1);
 		List<String> names = kryo.readObject(input, ArrayList.class);
 		List<Object> values = new ArrayList<>(names.size());
 		for (int i = 0; i < names.size(); i++) {
@@ -53,4 +122,127 @@ public class DefaultTupleSerializer extends Serializer<Tuple> {
 		}
 		return TupleBuilder.tuple().ofNamesAndValues(names, values);
 	}
+
+	private void writeWithSchema(Kryo kryo, Output output, Tuple tuple) {
+		TupleSchemaCache.Schema schema = schemaCache.forNames(tuple.getFieldNames());
+		output.writeByte(SCHEMA_FORMAT);
+		output.writeLong(schema.id);
+		output.writeVarInt(schema.encodedNames.length, true);
+		output.writeBytes(schema.encodedNames);
+		for (Object val : tuple.getValues()) {
+			writeValue(kryo, output, val);
+		}
+	}
+
+	private Tuple readWithSchema(Kryo kryo, Input input) {
+		long id = input.readLong();
+		int length = input.readVarInt(true);
+		TupleSchemaCache.Schema schema = schemaCache.forId(id, length);
+		if (schema != null) {
+			input.skip(length);
+		}
+		else {
+			schema = schemaCache.decode(id, input.readBytes(length));
+		}
+		int size = schema.names.size();
+		List<Object> values = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			values.add(readValue(kryo, input));
+		}
+		return TupleBuilder.tuple().ofNamesAndValues(schema.names, values);
+	}
+
+	private void writeValue(Kryo kryo, Output output, Object val) {
+		if (val == null) {
+			output.writeByte(NULL);
+			return;
+		}
+		Class<?> clazz = val.getClass();
+		if (clazz == String.class) {
+			output.writeByte(STRING);
+			output.writeString((String) val);
+		}
+		else if (clazz == Integer.class) {
+			output.writeByte(INTEGER);
+			output.writeVarInt((Integer) val, false);
+		}
+		else if (clazz == Long.class) {
+			output.writeByte(LONG);
+			output.writeLong((Long) val, false);
+		}
+		else if (clazz == Double.class) {
+			output.writeByte(DOUBLE);
+			output.writeDouble((Double) val);
+		}
+		else if (clazz == Float.class) {
+			output.writeByte(FLOAT);
+			output.writeFloat((Float) val);
+		}
+		else if (clazz == Boolean.class) {
+			output.writeByte((Boolean) val ? TRUE : FALSE);
+		}
+		else if (clazz == Short.class) {
+			output.writeByte(SHORT);
+			output.writeShort((Short) val);
+		}
+		else if (clazz == Byte.class) {
+			output.writeByte(BYTE);
+			output.writeByte((Byte) val);
+		}
+		else if (clazz == Character.class) {
+			output.writeByte(CHARACTER);
+			output.writeChar((Character) val);
+		}
+		else if (clazz == Date.class) {
+			output.writeByte(DATE);
+			output.writeLong(((Date) val).getTime(), false);
+		}
+		else if (clazz == DefaultTuple.class) {
+			output.writeByte(TUPLE);
+			writeWithSchema(kryo, output, (Tuple) val);
+		}
+		else {
+			output.writeByte(OBJECT);
+			kryo.writeClassAndObject(output, val);
+		}
+	}
+
+	private Object readValue(Kryo kryo, Input input) {
+		byte tag = input.readByte();
+		switch (tag) {
+			case NULL:
+				return null;
+			case STRING:
+				return input.readString();
+			case INTEGER:
+				return input.readVarInt(false);
+			case LONG:
+				return input.readLong(false);
+			case DOUBLE:
+				return input.readDouble();
+			case FLOAT:
+				return input.readFloat();
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case SHORT:
+				return input.readShort();
+			case BYTE:
+				return input.readByte();
+			case CHARACTER:
+				return input.readChar();
+			case DATE:
+				return new Date(input.readLong(false));
+			case TUPLE:
+				if (input.readByte() != SCHEMA_FORMAT) {
+					throw new IllegalStateException("Expected a schema encoded nested tuple");
+				}
+				return readWithSchema(kryo, input);
+			case OBJECT:
+				return kryo.readClassAndObject(input);
+			default:
+				throw new IllegalStateException("Unknown tuple value tag: " + tag);
+		}
+	}
 }
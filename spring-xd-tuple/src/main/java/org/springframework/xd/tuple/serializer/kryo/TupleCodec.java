@@ -30,10 +30,27 @@ import org.springframework.xd.tuple.Tuple;
 /**
  * Kryo serializer for {@link Tuple}
  * @author David Turanski
+ * @author Eric Bottard
  * @since 1.0
  */
 public class TupleCodec extends AbstractKryoCodec<Tuple> {
 
+	private final TupleSchemaCache schemaCache = new TupleSchemaCache();
+
+	private final boolean schemaEncoding;
+
+	public TupleCodec() {
+		this(false);
+	}
+
+	/**
+	 * @param schemaEncoding whether to write tuples using the more compact schema encoding, which older
+	 * versions can't read. Both encodings are always accepted on read.
+	 */
+	public TupleCodec(boolean schemaEncoding) {
+		this.schemaEncoding = schemaEncoding;
+	}
+
 	@Override
 	protected void doSerialize(Kryo kryo, Tuple object, Output output) {
 		kryo.writeObject(output, object);
@@ -45,7 +62,7 @@ public class TupleCodec extends AbstractKryoCodec<Tuple> {
 	}
 
 	protected void configureKryoInstance(Kryo kryo) {
-		kryo.register(DefaultTuple.class, new DefaultTupleSerializer(), TUPLE_REGISTRATION_ID);
+		kryo.register(DefaultTuple.class, new DefaultTupleSerializer(schemaCache, schemaEncoding), TUPLE_REGISTRATION_ID);
 		kryo.register(ArrayList.class, ARRAY_LIST_REGISTRATION_ID);
 		kryo.register(UUID.class, UUID_REGISTRATION_ID);
 		kryo.register(Long.class, LONG_REGISTRATION_ID);
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.tuple.serializer.kryo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import org.springframework.xd.tuple.FieldNameList;
+
+/**
+ * Interns tuple "shapes" (ordered lists of field names) for the schema encoding of {@link DefaultTupleSerializer}.
+ * Shapes are cached by field names on the sending side, and by schema id on the receiving side, so that the names of
+ * a given shape are encoded and decoded only once per codec. Both caches are bounded: past {@link #MAX_SCHEMAS}
+ * shapes, schemas are computed on the fly rather than cached. Schema names are {@link FieldNameList}s, shared with the
+ * tuples built from them.
+ *
+ * @author Eric Bottard
+ */
+class TupleSchemaCache {
+
+	static final int MAX_SCHEMAS = 1024;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final ConcurrentMap<List<String>, Schema> byNames = new ConcurrentHashMap<List<String>, Schema>();
+
+	private final ConcurrentMap<Long, Schema> byId = new ConcurrentHashMap<Long, Schema>();
+
+	/**
+	 * Return the schema for the given field names, encoding it if this shape has not been seen before.
+	 */
+	Schema forNames(List<String> names) {
+		Schema schema = byNames.get(names);
+		if (schema == null) {
+			List<String> interned = FieldNameList.of(names);
+			schema = new Schema(interned, encode(interned));
+			if (byNames.size() < MAX_SCHEMAS) {
+				Schema existing = byNames.putIfAbsent(interned, schema);
+				if (existing != null) {
+					schema = existing;
+				}
+			}
+		}
+		return schema;
+	}
+
+	/**
+	 * Return the schema with the given id, if it has already been decoded and has the expected encoded length.
+	 * @return the schema, or {@code null} if unknown
+	 */
+	Schema forId(long id, int encodedLength) {
+		Schema schema = byId.get(id);
+		return schema != null && schema.encodedNames.length == encodedLength ? schema : null;
+	}
+
+	/**
+	 * Decode (and remember) the schema carried by the given encoded names.
+	 */
+	Schema decode(long id, byte[] encodedNames) {
+		Input input = new Input(encodedNames);
+		int size = input.readVarInt(true);
+		List<String> names = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			names.add(input.readString());
+		}
+		Schema schema = new Schema(FieldNameList.of(names), encodedNames);
+		if (schema.id != id) {
+			throw new IllegalStateException("Corrupt tuple schema: expected id " + id + " but got " + schema.id);
+		}
+		if (byId.size() < MAX_SCHEMAS) {
+			Schema existing = byId.putIfAbsent(id, schema);
+			if (existing != null) {
+				schema = existing;
+			}
+		}
+		return schema;
+	}
+
+	private static byte[] encode(List<String> names) {
+		Output output = new Output(64, -1);
+		output.writeVarInt(names.size(), true);
+		for (String name : names) {
+			output.writeString(name);
+		}
+		return output.toBytes();
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the encoded names.
+	 */
+	private static long fingerprint(byte[] bytes) {
+		long hash = FNV_OFFSET_BASIS;
+		for (byte b : bytes) {
+			hash ^= (b & 0xff);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * An interned tuple shape.
+	 */
+	static class Schema {
+
+		final long id;
+
+		final List<String> names;
+
+		final byte[] encodedNames;
+
+		private Schema(List<String> names, byte[] encodedNames) {
+			this.names = names;
+			this.encodedNames = encodedNames;
+			this.id = fingerprint(encodedNames);
+		}
+
+	}
+
+}
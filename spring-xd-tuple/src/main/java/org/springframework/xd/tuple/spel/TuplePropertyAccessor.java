@@ -27,6 +27,7 @@ import org.springframework.xd.tuple.Tuple;
  * expressions. Writing is not supported since {@link Tuple}s are immutable.
  * 
  * @author Mark Fisher
+ * @author Eric Bottard
  */
 public class TuplePropertyAccessor implements PropertyAccessor {
 
@@ -66,9 +67,11 @@ public class TuplePropertyAccessor implements PropertyAccessor {
 		Tuple tuple = (Tuple) target;
 		boolean hasKey = false;
 		Object value = null;
-		if (tuple.hasFieldName(name)) {
+		// a single lookup, which is constant time for DefaultTuple
+		int nameIndex = tuple.getFieldNames().indexOf(name);
+		if (nameIndex != -1) {
 			hasKey = true;
-			value = tuple.getValue(name);
+			value = tuple.getValue(nameIndex);
 		}
 		else {
 			Integer index = maybeIndex(name, tuple);
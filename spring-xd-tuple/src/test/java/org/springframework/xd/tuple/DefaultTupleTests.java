@@ -493,4 +493,19 @@ public class DefaultTupleTests {
 		t.getTuple("list");
 	}
 
+	@Test
+	public void testFieldNamesSharedPerShape() {
+		Tuple t1 = tuple().of("foo", 1, "bar", 2, "foo", 3);
+		Tuple t2 = tuple().of("foo", "a", "bar", "b", "foo", "c");
+		assertThat(t1.getFieldNames(), sameInstance(t2.getFieldNames()));
+		assertThat(tuple().ofNamesAndValues(t1.getFieldNames(), new ArrayList<Object>(t1.getValues()))
+				.getFieldNames(), sameInstance(t1.getFieldNames()));
+		// first occurrence wins, as with a linear scan
+		assertThat(t1.getInt("foo"), equalTo(1));
+		assertThat(t1.getFieldNames().indexOf("bar"), equalTo(1));
+		assertThat(t1.getFieldNames().indexOf("baz"), equalTo(-1));
+		assertTrue(t2.hasFieldName("bar"));
+		assertThat(t2.hasFieldName("baz"), equalTo(false));
+	}
+
 }
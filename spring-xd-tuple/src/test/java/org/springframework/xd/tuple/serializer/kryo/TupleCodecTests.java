@@ -16,9 +16,14 @@
 package org.springframework.xd.tuple.serializer.kryo;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -36,6 +41,7 @@ import org.springframework.xd.tuple.serializer.kryo.TupleCodec;
 
 /**
  * @author David Turanski
+ * @author Eric Bottard
  */
 public class TupleCodecTests {
 	private MultiTypeCodec<Object> codec;
@@ -77,4 +83,42 @@ public class TupleCodecTests {
 		assertEquals(foo.getInt(0), foo2.getInt(0));
 		assertEquals(foo.getString(1), foo2.getString(1));
 	}
+
+	@Test
+	public void testSchemaEncodedTupleSerialization() throws IOException {
+		TupleCodec serializer = new TupleCodec(true);
+		Date now = new Date();
+		Tuple nested = TupleBuilder.tuple().of("one", 1, "two", 2L);
+		Tuple foo = TupleBuilder.tuple().put("s", "bar").put("i", -123).put("l", Long.MAX_VALUE).put("d", 1.5d)
+				.put("f", 2.5f).put("b", true).put("date", now).put("n", null).put("big", new BigDecimal("3.14"))
+				.put("t", nested).build();
+		for (int i = 0; i < 2; i++) {
+			Tuple foo2 = serializer.deserialize(serializer.serialize(foo));
+			assertEquals(foo, foo2);
+			assertEquals(now, foo2.getValue("date"));
+			assertNull(foo2.getValue("n"));
+			assertEquals(nested, foo2.getValue("t"));
+		}
+	}
+
+	@Test
+	public void testSchemaEncodingIsSmaller() throws IOException {
+		Tuple foo = TupleBuilder.tuple().put("hello", 123).put("foo", "bar").put("baz", 456L).put("qux", true)
+				.put("quux", 1.5d).build();
+		int legacy = new TupleCodec().serialize(foo).length;
+		int schema = new TupleCodec(true).serialize(foo).length;
+		assertTrue(schema + " should be smaller than " + legacy, schema < legacy);
+	}
+
+	@Test
+	public void testMixedEncodingsReadable() throws IOException {
+		TupleCodec legacy = new TupleCodec();
+		TupleCodec schema = new TupleCodec(true);
+		Tuple foo = TupleBuilder.tuple().of("hello", 123, "foo", "bar");
+		assertEquals(foo, schema.deserialize(legacy.serialize(foo)));
+		assertEquals(foo, legacy.deserialize(schema.serialize(foo)));
+		// Also read from a stream, as opposed to a byte array
+		assertEquals(foo, schema.deserialize(new ByteArrayInputStream(legacy.serialize(foo))));
+		assertEquals(foo, legacy.deserialize(new ByteArrayInputStream(schema.serialize(foo))));
+	}
 }